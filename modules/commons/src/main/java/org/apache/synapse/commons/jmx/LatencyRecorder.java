@@ -0,0 +1,401 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.jmx;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records latency values (in milliseconds), or other non negative values such as message sizes,
+ * into rolling high dynamic range histograms, and reports percentiles over the last 1 to 60
+ * minutes of execution.
+ *
+ * <p>A histogram is kept per minute, for the last 60 minutes by default, or for fewer minutes
+ * if only shorter windows are reported, as each histogram takes about 2 KB. Each histogram has
+ * a fixed set of buckets, with 16 linear sub-buckets for each power of two. Hence a value is
+ * reported within about 6% of its actual value, from 0 up to several weeks. Values are
+ * recorded by incrementing a bucket counter, which neither takes a lock nor allocates memory.
+ * The only allocation is that of a new histogram, once a minute, by the first thread recording
+ * a value in that minute.</p>
+ *
+ * <p>The values of the last minute are also recorded in histograms of 10 seconds each, so that
+ * the window of the last minute rolls along with the time, instead of covering only the part
+ * of the current minute which has elapsed.</p>
+ *
+ * <p>The windows are computed by merging the histograms of the minutes they cover, on
+ * demand. They are meant to be read by monitoring tools, not on the hot path.</p>
+ */
+public class LatencyRecorder {
+
+    /** Number of bits of the sub-bucket index, which decides the precision of the values */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** Values larger than 2^(MAX_MAGNITUDE + 1) - 1 are recorded as that value */
+    private static final int MAX_MAGNITUDE = 31;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    static final int BUCKET_COUNT = 2 * SUB_BUCKET_COUNT +
+            (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private static final int DEFAULT_MINUTES = 60;
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    /** Number of the sub-minute slots of the last minute window */
+    private static final int SLOTS = 6;
+    private static final long SLOT_MILLIS = MINUTE_MILLIS / SLOTS;
+
+    /** Percentiles reported by the percentile maps */
+    private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+    private static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p99.9" };
+
+    /** The number of minutes for which histograms are kept, the longest window reported */
+    private final int minutes;
+    private final AtomicReferenceArray<Histogram> histograms;
+    private final AtomicReferenceArray<Histogram> slots =
+            new AtomicReferenceArray<Histogram>(SLOTS);
+
+    private final AtomicLong totalCount = new AtomicLong(0);
+    private final AtomicLong totalSum = new AtomicLong(0);
+    private final AtomicLong lastValue = new AtomicLong(0);
+
+    public LatencyRecorder() {
+        this(DEFAULT_MINUTES);
+    }
+
+    /**
+     * Create a recorder which keeps the histograms of the given number of minutes
+     *
+     * @param minutes the longest window reported, between 1 and 60 minutes
+     */
+    public LatencyRecorder(int minutes) {
+        this.minutes = Math.max(1, Math.min(DEFAULT_MINUTES, minutes));
+        this.histograms = new AtomicReferenceArray<Histogram>(this.minutes);
+    }
+
+    /**
+     * Record a latency value
+     *
+     * @param value the latency in milliseconds. Negative values are recorded as 0
+     */
+    public void record(long value) {
+        record(value, System.currentTimeMillis());
+    }
+
+    void record(long value, long now) {
+        if (value < 0) {
+            value = 0;
+        }
+        lastValue.set(value);
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(value);
+        getHistogram(histograms, now / MINUTE_MILLIS).record(value);
+        getHistogram(slots, now / SLOT_MILLIS).record(value);
+    }
+
+    /**
+     * Get the histogram of the given period, replacing the histogram of an older period which
+     * was kept at the same index
+     */
+    private static Histogram getHistogram(AtomicReferenceArray<Histogram> histograms,
+                                          long period) {
+        int index = (int) (period % histograms.length());
+        while (true) {
+            Histogram histogram = histograms.get(index);
+            if (histogram != null && histogram.period == period) {
+                return histogram;
+            }
+            if (histogram != null && histogram.period > period) {
+                // the clock moved backwards, record in the newer histogram
+                return histogram;
+            }
+            Histogram newHistogram = new Histogram(period);
+            if (histograms.compareAndSet(index, histogram, newHistogram)) {
+                return newHistogram;
+            }
+        }
+    }
+
+    /**
+     * Get the value at the given percentile, over the last n minutes
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @param minutes the number of minutes, between 1 and the number of minutes kept
+     * @return the value at the percentile, or 0 if no values were recorded
+     */
+    public long getPercentile(double percentile, int minutes) {
+        return getPercentile(percentile, minutes, System.currentTimeMillis());
+    }
+
+    long getPercentile(double percentile, int minutes, long now) {
+        Snapshot snapshot = snapshot(minutes, now);
+        return snapshot.getValueAtPercentile(percentile);
+    }
+
+    /**
+     * Get the maximum value recorded over the last n minutes
+     *
+     * @param minutes the number of minutes, between 1 and the number of minutes kept
+     * @return the maximum value, or 0 if no values were recorded
+     */
+    public long getMax(int minutes) {
+        return snapshot(minutes, System.currentTimeMillis()).max;
+    }
+
+    /**
+     * Get the average of the values recorded over the last n minutes
+     *
+     * @param minutes the number of minutes, between 1 and the number of minutes kept
+     * @return the average value, or 0 if no values were recorded
+     */
+    public double getMean(int minutes) {
+        return getMean(minutes, System.currentTimeMillis());
+    }
+
+    double getMean(int minutes, long now) {
+        Snapshot snapshot = snapshot(minutes, now);
+        return snapshot.count == 0 ? 0.0 : (double) snapshot.sum / snapshot.count;
+    }
+
+    /**
+     * Get the number of values recorded over the last n minutes
+     *
+     * @param minutes the number of minutes, between 1 and the number of minutes kept
+     * @return the number of values
+     */
+    public long getCount(int minutes) {
+        return snapshot(minutes, System.currentTimeMillis()).count;
+    }
+
+    /**
+     * Get the 50th, 90th, 99th and 99.9th percentiles and the maximum of the values recorded
+     * over the last n minutes, as a table which can be exposed over JMX
+     *
+     * @param minutes the number of minutes, between 1 and the number of minutes kept
+     * @return the percentiles keyed by p50, p90, p99, p99.9 and max
+     */
+    public Map<String, Long> getPercentiles(int minutes) {
+        return getPercentiles(minutes, System.currentTimeMillis());
+    }
+
+    Map<String, Long> getPercentiles(int minutes, long now) {
+        return snapshot(minutes, now).getPercentiles();
+    }
+
+    /**
+     * Get the percentiles and the maximum of the values recorded by all the given recorders
+     * over the last n minutes, as if they were recorded by a single recorder
+     *
+     * @param recorders the recorders to be merged
+     * @param minutes the number of minutes, between 1 and the number of minutes kept
+     * @return the percentiles keyed by p50, p90, p99, p99.9 and max
+     */
+    public static Map<String, Long> getPercentiles(Collection<LatencyRecorder> recorders,
+                                                   int minutes) {
+        long now = System.currentTimeMillis();
+        Snapshot snapshot = new Snapshot();
+        for (LatencyRecorder recorder : recorders) {
+            recorder.addTo(snapshot, minutes, now);
+        }
+        return snapshot.getPercentiles();
+    }
+
+    /**
+     * Get the average of all the values recorded since the last reset
+     *
+     * @return the average value
+     */
+    public double getAllTimeMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0.0 : (double) totalSum.get() / count;
+    }
+
+    public long getAllTimeCount() {
+        return totalCount.get();
+    }
+
+    public long getLastValue() {
+        return lastValue.get();
+    }
+
+    /**
+     * Discard all the recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < histograms.length(); i++) {
+            histograms.set(i, null);
+        }
+        for (int i = 0; i < SLOTS; i++) {
+            slots.set(i, null);
+        }
+        totalCount.set(0);
+        totalSum.set(0);
+        lastValue.set(0);
+    }
+
+    private Snapshot snapshot(int minutes, long now) {
+        Snapshot snapshot = new Snapshot();
+        addTo(snapshot, minutes, now);
+        return snapshot;
+    }
+
+    private void addTo(Snapshot snapshot, int minutes, long now) {
+        minutes = Math.max(1, Math.min(this.minutes, minutes));
+        if (minutes == 1) {
+            // the last 50 to 60 seconds, rather than the elapsed part of the current minute
+            addTo(snapshot, slots, now / SLOT_MILLIS, SLOTS);
+        } else {
+            addTo(snapshot, histograms, now / MINUTE_MILLIS, minutes);
+        }
+    }
+
+    /**
+     * Add the histograms of the given number of periods, up to the current one, to a snapshot
+     */
+    private static void addTo(Snapshot snapshot, AtomicReferenceArray<Histogram> histograms,
+                              long currentPeriod, int periods) {
+        for (int i = 0; i < histograms.length(); i++) {
+            Histogram histogram = histograms.get(i);
+            if (histogram != null && histogram.period <= currentPeriod &&
+                    histogram.period > currentPeriod - periods) {
+                snapshot.add(histogram);
+            }
+        }
+    }
+
+    /**
+     * Get the index of the bucket a value is counted in
+     *
+     * @param value a non negative value
+     * @return the bucket index
+     */
+    static int getBucketIndex(long value) {
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        if (value < 2 * SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift);
+        return 2 * SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_COUNT +
+                (subBucket - SUB_BUCKET_COUNT);
+    }
+
+    /**
+     * Get the largest value counted in a bucket
+     *
+     * @param index the bucket index
+     * @return the highest value of the bucket
+     */
+    static long getBucketHighestValue(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int offset = index - 2 * SUB_BUCKET_COUNT;
+        int shift = offset / SUB_BUCKET_COUNT + 1;
+        long subBucket = offset % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * The values recorded in a single minute, or in a single slot of the last minute
+     */
+    private static final class Histogram {
+
+        /** The minute or the slot, counted from the epoch */
+        private final long period;
+        private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong(0);
+        private final AtomicLong sum = new AtomicLong(0);
+        private final AtomicLong max = new AtomicLong(0);
+
+        private Histogram(long period) {
+            this.period = period;
+        }
+
+        private void record(long value) {
+            counts.incrementAndGet(getBucketIndex(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long currentMax;
+            while (value > (currentMax = max.get())) {
+                if (max.compareAndSet(currentMax, value)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The merged histograms of a window
+     */
+    private static final class Snapshot {
+
+        private final long[] counts = new long[BUCKET_COUNT];
+        private long count;
+        private long sum;
+        private long max;
+
+        private void add(Histogram histogram) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += histogram.counts.get(i);
+            }
+            count += histogram.count.get();
+            sum += histogram.sum.get();
+            max = Math.max(max, histogram.max.get());
+        }
+
+        private Map<String, Long> getPercentiles() {
+            // keys are returned in the order they are inserted, for better readability
+            Map<String, Long> map = new LinkedHashMap<String, Long>();
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                map.put(PERCENTILE_NAMES[i], getValueAtPercentile(PERCENTILES[i]));
+            }
+            map.put("max", max);
+            return map;
+        }
+
+        private long getValueAtPercentile(double percentile) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(
+                    Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(getBucketHighestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.commons.jmx;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+
+public class LatencyRecorderTest extends TestCase {
+
+    private static final long MINUTE = 60 * 1000;
+
+    public void testBucketsCoverAllValues() {
+        int previous = -1;
+        for (long value = 0; value < 100000; value++) {
+            int index = LatencyRecorder.getBucketIndex(value);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(LatencyRecorder.getBucketHighestValue(index) >= value);
+            previous = index;
+        }
+        assertEquals(LatencyRecorder.BUCKET_COUNT - 1,
+                LatencyRecorder.getBucketIndex(Long.MAX_VALUE));
+    }
+
+    public void testPercentiles() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        long now = 100 * MINUTE;
+        for (int i = 1; i <= 1000; i++) {
+            recorder.record(i, now);
+        }
+
+        assertWithin(500, recorder.getPercentile(50, 1, now));
+        assertWithin(900, recorder.getPercentile(90, 1, now));
+        assertWithin(990, recorder.getPercentile(99, 1, now));
+
+        Map<String, Long> percentiles = recorder.getPercentiles(1, now);
+        assertEquals(Long.valueOf(1000), percentiles.get("max"));
+        assertTrue(percentiles.get("p99.9") <= 1000);
+        assertEquals(500.5, recorder.getAllTimeMean());
+    }
+
+    public void testRollingWindows() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        long now = 100 * MINUTE;
+        recorder.record(5000, now - 10 * MINUTE);
+        recorder.record(10, now);
+
+        assertEquals(10, recorder.getPercentile(100, 1, now));
+        assertWithin(5000, recorder.getPercentile(100, 15, now));
+        // older than an hour
+        assertEquals(0, recorder.getPercentile(100, 60, now + 61 * MINUTE));
+    }
+
+    public void testLastMinuteRolls() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        long now = 100 * MINUTE + 5000;
+        // recorded in the previous minute, but less than a minute ago
+        recorder.record(700, now - 30000);
+        recorder.record(100, now);
+
+        assertWithin(700, recorder.getPercentile(100, 1, now));
+        assertEquals(400.0, recorder.getMean(1, now));
+        // once it is more than a minute old, the first value is no longer reported
+        recorder.record(200, now + 40000);
+        assertWithin(200, recorder.getPercentile(100, 1, now + 40000));
+    }
+
+    public void testShorterHistory() {
+        LatencyRecorder recorder = new LatencyRecorder(15);
+        long now = 100 * MINUTE;
+        recorder.record(5000, now - 20 * MINUTE);
+        recorder.record(2000, now - 10 * MINUTE);
+        recorder.record(10, now);
+
+        assertWithin(2000, recorder.getPercentile(100, 15, now));
+        // windows are limited to the minutes kept
+        assertWithin(2000, recorder.getPercentile(100, 60, now));
+        assertEquals(3, recorder.getAllTimeCount());
+    }
+
+    public void testReset() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        recorder.record(10);
+        recorder.reset();
+        assertEquals(0, recorder.getAllTimeCount());
+        assertEquals(0, recorder.getPercentile(50, 60));
+    }
+
+    private void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 16 + 1);
+    }
+}
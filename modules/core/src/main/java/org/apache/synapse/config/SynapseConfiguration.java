@@ -49,6 +49,7 @@ import org.apache.synapse.mediators.base.SequenceMediator;
 import org.apache.synapse.registry.Registry;
 import org.apache.axiom.om.OMNode;
 import org.apache.synapse.rest.API;
+import org.apache.synapse.rest.APIDispatchIndex;
 
 import javax.xml.namespace.QName;
 import java.io.IOException;
@@ -154,6 +155,9 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
 
     private Map<String, API> apiTable = new ConcurrentHashMap<String, API>();
 
+    /** Index of the APIs used to dispatch requests, recreated whenever the APIs change */
+    private volatile APIDispatchIndex apiDispatchIndex = APIDispatchIndex.EMPTY;
+
     /**
      * Description/documentation of the configuration
      */
@@ -326,6 +330,7 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
                 }
             }
             apiTable.put(name, api);
+            rebuildAPIDispatchIndex();
         } else {
             handleException("Duplicate resource definition by the name: " + name);
         }
@@ -342,6 +347,7 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
                 }
             }
             apiTable.put(name, api);
+            rebuildAPIDispatchIndex();
         }
     }
 
@@ -357,11 +363,25 @@ public class SynapseConfiguration implements ManagedLifecycle, SynapseArtifact {
         API api = apiTable.get(name);
         if (api != null) {
             apiTable.remove(name);
+            rebuildAPIDispatchIndex();
         } else {
             handleException("No API exists by the name: " + name);
         }
     }
 
+    /**
+     * Get the index used to locate the APIs which may process a request
+     *
+     * @return the index of the APIs currently deployed
+     */
+    public APIDispatchIndex getAPIDispatchIndex() {
+        return apiDispatchIndex;
+    }
+
+    private synchronized void rebuildAPIDispatchIndex() {
+        apiDispatchIndex = new APIDispatchIndex(apiTable.values());
+    }
+
      /**
      * Return the template specified with the given key
      *
@@ -72,6 +72,11 @@ public class AggregateMediatorFactory extends AbstractMediatorFactory {
             = new QName(XMLConfigConstants.NULL_NAMESPACE, "sequence");
     private static final QName ID_Q
             = new QName(XMLConfigConstants.NULL_NAMESPACE, "id");
+    private static final QName MODE_Q
+            = new QName(XMLConfigConstants.NULL_NAMESPACE, "mode");
+
+    /** The value of the mode attribute for incremental aggregation */
+    private static final String INCREMENTAL_MODE = "incremental";
 
 
     @Override
@@ -133,6 +138,15 @@ public class AggregateMediatorFactory extends AbstractMediatorFactory {
                 }
             }
 
+            OMAttribute mode = onComplete.getAttribute(MODE_Q);
+            if (mode != null) {
+                if (INCREMENTAL_MODE.equals(mode.getAttributeValue())) {
+                    mediator.setIncrementalAggregation(true);
+                } else {
+                    handleException("Unknown aggregation mode : " + mode.getAttributeValue());
+                }
+            }
+
             OMAttribute onCompleteSequence = onComplete.getAttribute(SEQUENCE_Q);
             if (onCompleteSequence != null) {
                 mediator.setOnCompleteSequenceRef(onCompleteSequence.getAttributeValue());
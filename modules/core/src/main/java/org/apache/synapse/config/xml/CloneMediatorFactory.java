@@ -62,6 +62,7 @@ public class CloneMediatorFactory extends AbstractMediatorFactory {
     private static final QName ID_Q
             = new QName(XMLConfigConstants.NULL_NAMESPACE, "id");
     private static final QName SEQUENTIAL_Q = new QName("sequential");
+    private static final QName MAX_IN_FLIGHT_Q = new QName("maxInFlight");
 
     /**
      * This method implements the createMediator method of the MediatorFactory interface
@@ -95,6 +96,16 @@ public class CloneMediatorFactory extends AbstractMediatorFactory {
         if (synchronousExeAttr != null && synchronousExeAttr.getAttributeValue().equals("true")) {
         	asynchronousExe = false;
         }
+
+        OMAttribute maxInFlightAttr = elem.getAttribute(MAX_IN_FLIGHT_Q);
+        if (maxInFlightAttr != null) {
+            try {
+                mediator.setMaxInFlight(Integer.parseInt(maxInFlightAttr.getAttributeValue()));
+            } catch (NumberFormatException e) {
+                handleException("Invalid maxInFlight value for the clone mediator : " +
+                    maxInFlightAttr.getAttributeValue());
+            }
+        }
         
         Iterator targetElements = elem.getChildrenWithName(TARGET_Q);
         while (targetElements.hasNext()) {
@@ -71,6 +71,11 @@ public class CloneMediatorSerializer extends AbstractMediatorSerializer {
             cloneElem.addAttribute("sequential", "true", nullNS);
         }
 
+        if (clone.getMaxInFlight() > 0) {
+            cloneElem.addAttribute("maxInFlight", Integer.toString(clone.getMaxInFlight()),
+                    nullNS);
+        }
+
         for (Target o : clone.getTargets()) {
             cloneElem.addChild(TargetSerializer.serializeTarget(o));
         }
@@ -64,6 +64,8 @@ public class IterateMediatorFactory extends AbstractMediatorFactory {
     private static final QName ATT_PREPLD = new QName("preservePayload");
     private static final QName ATT_ATTACHPATH = new QName("attachPath");
     private static final QName ATT_SEQUENTIAL = new QName("sequential");
+    private static final QName ATT_MAX_IN_FLIGHT = new QName("maxInFlight");
+    private static final QName ATT_STREAMING = new QName("streaming");
 
     private static final QName ID_Q
             = new QName(XMLConfigConstants.NULL_NAMESPACE, "id");
@@ -111,6 +113,11 @@ public class IterateMediatorFactory extends AbstractMediatorFactory {
                 "for an IterateMediator under the \"expression\" attribute");
         }
 
+        OMAttribute streaming = elem.getAttribute(ATT_STREAMING);
+        if (streaming != null) {
+            mediator.setStreaming(Boolean.valueOf(streaming.getAttributeValue()));
+        }
+
         OMAttribute attachPath = elem.getAttribute(ATT_ATTACHPATH);
         String attachPathValue = ".";
         if (attachPath != null && !mediator.isPreservePayload()) {
@@ -135,6 +142,16 @@ public class IterateMediatorFactory extends AbstractMediatorFactory {
             asynchronous = false;
         }
 
+        OMAttribute maxInFlightAttr = elem.getAttribute(ATT_MAX_IN_FLIGHT);
+        if (maxInFlightAttr != null) {
+            try {
+                mediator.setMaxInFlight(Integer.parseInt(maxInFlightAttr.getAttributeValue()));
+            } catch (NumberFormatException e) {
+                handleException("Invalid maxInFlight value for the iterate mediator : " +
+                    maxInFlightAttr.getAttributeValue());
+            }
+        }
+
         OMElement targetElement = elem.getFirstChildWithName(TARGET_Q);
         if (targetElement != null) {
             Target target = TargetFactory.createTarget(targetElement, properties);
@@ -76,6 +76,10 @@ public class IterateMediatorSerializer extends AbstractMediatorSerializer {
             itrElem.addAttribute("preservePayload", Boolean.toString(true), nullNS);
         }
 
+        if (itrMed.isStreaming()) {
+            itrElem.addAttribute("streaming", Boolean.toString(true), nullNS);
+        }
+
         if (itrMed.getAttachPath() != null && !".".equals(itrMed.getAttachPath().toString())) {
             SynapseXPathSerializer.serializeXPath(itrMed.getAttachPath(), itrElem, "attachPath");
         }
@@ -90,6 +94,10 @@ public class IterateMediatorSerializer extends AbstractMediatorSerializer {
             itrElem.addAttribute("sequential", "true", nullNS);
         }
 
+        if (itrMed.getMaxInFlight() > 0) {
+            itrElem.addAttribute("maxInFlight", Integer.toString(itrMed.getMaxInFlight()), nullNS);
+        }
+
         itrElem.addChild(TargetSerializer.serializeTarget(itrMed.getTarget()));
 
         return itrElem;
@@ -38,6 +38,9 @@ public class AsyncCallback implements AxisCallback {
     /** Action to perform when timeout occurs */
     private int timeOutAction = SynapseConstants.NONE;
 
+    /** Time at which the message was handed over to the transport */
+    private final long sendTime = System.currentTimeMillis();
+
     public AsyncCallback(MessageContext synapseOutMsgCtx) {
         this.synapseOutMsgCtx = synapseOutMsgCtx;
     }
@@ -58,6 +61,10 @@ public class AsyncCallback implements AxisCallback {
         return synapseOutMsgCtx;
     }
 
+    public long getSendTime() {
+        return sendTime;
+    }
+
     public long getTimeOutOn() {
         return timeOutOn;
     }
@@ -42,6 +42,7 @@ import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.endpoints.Endpoint;
 import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.util.PolicyInfo;
 import org.apache.synapse.util.resolver.CustomWSDLLocator;
 import org.apache.synapse.util.resolver.CustomXmlSchemaURIResolver;
@@ -612,6 +613,22 @@ public class ProxyService implements AspectConfigurable, SynapseArtifact {
         moduleEngaged = wsSecEnabled || wsAddrEnabled;
         wsdlPublished = wsdlFound;
 
+        // the engaged modules need the body of every message, which rules out header only routing
+        Parameter headerOnlyRouting = proxyService.getParameter(
+                PassThroughConstants.HEADER_ONLY_ROUTING_PARAM_NAME);
+        if (moduleEngaged && headerOnlyRouting != null &&
+                JavaUtils.isTrueExplicitly(headerOnlyRouting.getValue())) {
+            log.warn("Header only routing cannot be used with WS-Security or WS-Addressing. " +
+                    "Disabling header only routing on proxy service : " + name);
+            try {
+                proxyService.removeParameter(headerOnlyRouting);
+            } catch (AxisFault axisFault) {
+                handleException("Error removing parameter : " +
+                        PassThroughConstants.HEADER_ONLY_ROUTING_PARAM_NAME +
+                        " from proxy service : " + name, axisFault);
+            }
+        }
+
         auditInfo("Successfully created the Axis2 service for Proxy service : " + name);
         return proxyService;
     }
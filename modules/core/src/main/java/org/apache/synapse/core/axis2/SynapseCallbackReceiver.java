@@ -44,6 +44,8 @@ import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.EndpointView;
+import org.apache.synapse.endpoints.LoadbalanceEndpoint;
 import org.apache.synapse.endpoints.dispatch.Dispatcher;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
@@ -52,6 +54,7 @@ import org.apache.synapse.transport.passthru.config.SourceConfiguration;
 import org.apache.synapse.util.ResponseAcceptEncodingProcessor;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is the message receiver that receives the responses for outgoing messages sent out
@@ -70,13 +73,16 @@ public class SynapseCallbackReceiver implements MessageReceiver {
 
     private static final SynapseCallbackReceiver instance = new SynapseCallbackReceiver();
 
-    /** This is the synchronized callbackStore that maps outgoing messageID's to callback objects */
-    private final Map<String, AxisCallback> callbackStore;  // will be made thread safe in the constructor
+    /** This is the concurrent callbackStore that maps outgoing messageID's to callback objects */
+    private final Map<String, AxisCallback> callbackStore;
+
+    /** The timeout handler which indexes and expires the callbacks in the callbackStore */
+    private volatile TimeoutHandler timeoutHandler;
 
     private boolean initialized = false;
 
     private SynapseCallbackReceiver() {
-        callbackStore = Collections.synchronizedMap(new HashMap<String, AxisCallback>());
+        callbackStore = new ConcurrentHashMap<String, AxisCallback>();
     }
 
     /**
@@ -108,8 +114,11 @@ public class SynapseCallbackReceiver implements MessageReceiver {
         }
 
         // create the Timer object and a TimeoutHandler task
-        TimeoutHandler timeoutHandler = new TimeoutHandler(callbackStore, contextInformation);
-        
+        timeoutHandler = new TimeoutHandler(callbackStore, contextInformation);
+        // callbacks added until now were not indexed, as there was no handler to index them.
+        // Indexing a callback twice is harmless, so this does not race with addCallback()
+        timeoutHandler.registerAll();
+
         Timer timeOutTimer = synCfg.getSynapseTimer();
         long timeoutHandlerInterval = SynapseConfigUtils.getTimeoutHandlerInterval();
 
@@ -143,24 +152,60 @@ public class SynapseCallbackReceiver implements MessageReceiver {
     }
 
     public String[] getPendingCallbacks() {
-        Set<String> keys = callbackStore.keySet();
-        List<String> list = new ArrayList<String>();
-        synchronized (callbackStore) {
-            Iterator<String> iterator = keys.iterator();
-            while (iterator.hasNext()) {
-                list.add(iterator.next());
-            }
-        }
+        List<String> list = new ArrayList<String>(callbackStore.keySet());
         return list.toArray(new String[list.size()]);
     }
 
+    public int getLastExpiredCallbackCount() {
+        TimeoutHandler handler = timeoutHandler;
+        return handler != null ? handler.getLastExpiredCount() : 0;
+    }
+
+    public long getTotalExpiredCallbackCount() {
+        TimeoutHandler handler = timeoutHandler;
+        return handler != null ? handler.getTotalExpiredCount() : 0;
+    }
+
+    public long getLastSweepTime() {
+        TimeoutHandler handler = timeoutHandler;
+        return handler != null ? handler.getLastSweepTime() : 0;
+    }
+
+    public long getMaxSweepTime() {
+        TimeoutHandler handler = timeoutHandler;
+        return handler != null ? handler.getMaxSweepTime() : 0;
+    }
+
     public void addCallback(String MsgID, AxisCallback callback) {
         callbackStore.put(MsgID, callback);
+        TimeoutHandler handler = timeoutHandler;
+        if (handler != null) {
+            handler.register(MsgID, callback);
+        }
         if (log.isDebugEnabled()) {
             log.debug("Callback added. Total callbacks waiting for : " + callbackStore.size());
         }
     }
 
+    /**
+     * Remove the callback registered against the given message ID from the callback store, and
+     * drop it from the timeout index
+     *
+     * @param messageID the message ID of the outgoing request
+     * @return the removed callback or null if there was no callback registered
+     */
+    private AxisCallback removeCallback(String messageID) {
+        if (messageID == null) {
+            return null;
+        }
+        AxisCallback callback = callbackStore.remove(messageID);
+        TimeoutHandler handler = timeoutHandler;
+        if (callback != null && handler != null) {
+            handler.cancel(messageID, callback);
+        }
+        return callback;
+    }
+
     /**
      * Every time a response message is received this method gets invoked. It will then select
      * the outgoing *Synapse* message context for the reply we received, and determine what action
@@ -181,8 +226,8 @@ public class SynapseCallbackReceiver implements MessageReceiver {
          */
         if (messageCtx.getProperty(NhttpConstants.HTTP_202_RECEIVED) != null && "true".equals(
                 messageCtx.getProperty(NhttpConstants.HTTP_202_RECEIVED))) {
-            if (callbackStore.containsKey(messageCtx.getMessageID())) {
-                callbackStore.remove(messageCtx.getMessageID());
+            AxisCallback callback = removeCallback(messageCtx.getMessageID());
+            if (callback != null) {
                 if (log.isDebugEnabled()) {
                     log.debug("CallBack registered with Message id : " + messageCtx.getMessageID() +
                             " removed from the " +
@@ -208,7 +253,7 @@ public class SynapseCallbackReceiver implements MessageReceiver {
         }
 
         if (messageID != null) {
-            AxisCallback callback = callbackStore.remove(messageID);
+            AxisCallback callback = removeCallback(messageID);
             if (log.isDebugEnabled()) {
                 log.debug("Callback removed for request message id : " + messageID +
                         ". Pending callbacks count : " + callbackStore.size());
@@ -261,8 +306,7 @@ public class SynapseCallbackReceiver implements MessageReceiver {
                         getAxis2MessageContext().getProperty(PassThroughConstants.PASS_THROUGH_SOURCE_CONNECTION);
                 SourceConfiguration sourceConfiguration = (SourceConfiguration) ((Axis2MessageContext) synapseOutMsgCtx)
                         .getAxis2MessageContext().getProperty(PassThroughConstants.PASS_THROUGH_SOURCE_CONFIGURATION);
-                Pipe newPipe = new Pipe(conn, sourceConfiguration.getBufferFactory().getBuffer(),
-                        PassThroughConstants.SOURCE, sourceConfiguration);
+                Pipe newPipe = sourceConfiguration.newPipe(conn, PassThroughConstants.SOURCE);
                 ((Axis2MessageContext) synapseOutMsgCtx).getAxis2MessageContext()
                         .setProperty(PassThroughConstants.PASS_THROUGH_PIPE, newPipe);
             }
@@ -310,6 +354,8 @@ public class SynapseCallbackReceiver implements MessageReceiver {
                     log.warn("Synapse timed out for the request with Message ID : " + messageID +
                             ". Ignoring fault handlers since the timeout action is DISCARD.");
                     faultStack.removeAllElements();
+                    LoadbalanceEndpoint.onChildEndpointResponse(synapseOutMsgCtx,
+                            System.currentTimeMillis() - callback.getSendTime());
                 } else {
                     ((FaultHandler) faultStack.pop()).handleFault(synapseOutMsgCtx, null);
                 }
@@ -324,7 +370,13 @@ public class SynapseCallbackReceiver implements MessageReceiver {
                 && faultStack.peek() instanceof Endpoint) {
                 Endpoint successfulEndpoint = (Endpoint) faultStack.pop();
                 successfulEndpoint.onSuccess();
+                EndpointView view = successfulEndpoint.getMetricsMBean();
+                if (view != null) {
+                    view.notifyResponseTime(System.currentTimeMillis() - callback.getSendTime());
+                }
             }
+            LoadbalanceEndpoint.onChildEndpointResponse(synapseOutMsgCtx,
+                    System.currentTimeMillis() - callback.getSendTime());
             if (log.isDebugEnabled()) {
                 log.debug("Synapse received an asynchronous response message");
                 log.debug("Received To: " +
@@ -36,4 +36,24 @@ public class SynapseCallbackStoreView implements SynapseCallbackStoreViewMBean {
     public String[] getPendingCallbacks() {
         return receiver.getPendingCallbacks();
     }
+
+    @Override
+    public int getLastExpiredCallbackCount() {
+        return receiver.getLastExpiredCallbackCount();
+    }
+
+    @Override
+    public long getTotalExpiredCallbackCount() {
+        return receiver.getTotalExpiredCallbackCount();
+    }
+
+    @Override
+    public long getLastSweepTime() {
+        return receiver.getLastSweepTime();
+    }
+
+    @Override
+    public long getMaxSweepTime() {
+        return receiver.getMaxSweepTime();
+    }
 }
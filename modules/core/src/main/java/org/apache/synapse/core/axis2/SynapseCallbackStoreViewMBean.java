@@ -38,4 +38,32 @@ public interface SynapseCallbackStoreViewMBean {
      */
     public String[] getPendingCallbacks();
 
+    /**
+     * Get the number of callbacks expired by the last run of the timeout handler
+     *
+     * @return An integer
+     */
+    public int getLastExpiredCallbackCount();
+
+    /**
+     * Get the total number of callbacks expired by the timeout handler
+     *
+     * @return A long
+     */
+    public long getTotalExpiredCallbackCount();
+
+    /**
+     * Get the time taken (in milliseconds) by the last callback sweep of the timeout handler
+     *
+     * @return A long
+     */
+    public long getLastSweepTime();
+
+    /**
+     * Get the maximum time taken (in milliseconds) by a callback sweep of the timeout handler
+     *
+     * @return A long
+     */
+    public long getMaxSweepTime();
+
 }
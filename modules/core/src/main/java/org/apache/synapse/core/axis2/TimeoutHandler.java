@@ -19,6 +19,7 @@
 
 package org.apache.synapse.core.axis2;
 
+import org.apache.axis2.client.async.AxisCallback;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.FaultHandler;
@@ -28,9 +29,13 @@ import org.apache.synapse.ServerContextInformation;
 import org.apache.synapse.aspects.statistics.StatisticsCleaner;
 import org.apache.synapse.aspects.statistics.StatisticsCollector;
 import org.apache.synapse.config.SynapseConfigUtils;
+import org.apache.synapse.endpoints.LoadbalanceEndpoint;
 import org.apache.synapse.endpoints.dispatch.SALSessions;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.TimerTask;
 
@@ -42,6 +47,10 @@ import java.util.TimerTask;
  * although longer intervals would introduce larger error between the actual timeout and the
  * specified timeout.
  *
+ * Callbacks are indexed by their expiry time in a {@link TimeoutWheel} whose tick is the
+ * invocation interval of this handler, so that each invocation only looks at the callbacks
+ * expiring since the previous one, rather than sweeping the complete callback store.
+ *
  * For each invocation this gets a time value to be compared against the timeouts of the callback
  * objects. This time is the System.currentTimeMillis() for Java 1.4 and System.nanoTime() for
  * Java 1.5 and later.
@@ -50,8 +59,10 @@ public class TimeoutHandler extends TimerTask {
 
     private static final Log log = LogFactory.getLog(TimeoutHandler.class);
 
-    /** The callback map - already a Collections.synchronized() hash map */
-    private final Map callbackStore;
+    /** The callback map - a concurrent map shared with the SynapseCallbackReceiver */
+    private final Map<String, AxisCallback> callbackStore;
+    /** The index of callback keys by expiry time */
+    private final TimeoutWheel timeoutWheel;
     /** a lock to prevent concurrent execution while ensuring least overhead */
     private final Object lock = new Object();
     private boolean alreadyExecuting = false;
@@ -61,15 +72,69 @@ public class TimeoutHandler extends TimerTask {
     private StatisticsCleaner statisticsCleaner;
     private ServerContextInformation contextInfo = null;
 
-    public TimeoutHandler(Map callbacks, ServerContextInformation contextInfo) {
+    /** Statistics of the callback sweeps, exposed through the SynapseCallbackStoreView */
+    private volatile int lastExpiredCount = 0;
+    private volatile long totalExpiredCount = 0;
+    private volatile long lastSweepTime = 0;
+    private volatile long maxSweepTime = 0;
+
+    public TimeoutHandler(Map<String, AxisCallback> callbacks,
+                          ServerContextInformation contextInfo) {
+        this(callbacks, contextInfo, SynapseConfigUtils.getTimeoutHandlerInterval());
+    }
+
+    /**
+     * @param callbacks the callback store shared with the SynapseCallbackReceiver
+     * @param contextInfo server runtime information
+     * @param interval the interval at which this handler is run, in milliseconds
+     */
+    TimeoutHandler(Map<String, AxisCallback> callbacks, ServerContextInformation contextInfo,
+                   long interval) {
         this.callbackStore = callbacks;
         this.contextInfo = contextInfo;
         this.globalTimeout = SynapseConfigUtils.getGlobalTimeoutInterval();
+        this.timeoutWheel = new TimeoutWheel(interval, TimeoutWheel.DEFAULT_TICKS_PER_WHEEL,
+                currentTime());
         log.info("This engine will expire all callbacks after : " + (globalTimeout / 1000) +
                 " seconds, irrespective of the timeout action," +
                 " after the specified or optional timeout");
     }
 
+    /**
+     * Index a callback which has been added to the callback store, so that it is expired
+     * when its timeout is reached
+     *
+     * @param key the message ID the callback is stored against
+     * @param callback the callback
+     */
+    public void register(String key, AxisCallback callback) {
+        if (callback instanceof AsyncCallback) {
+            timeoutWheel.add(key, getExpiryTime((AsyncCallback) callback));
+        }
+    }
+
+    /**
+     * Index all the callbacks currently in the callback store, including those added before
+     * this handler was made available to the SynapseCallbackReceiver
+     */
+    void registerAll() {
+        for (Map.Entry<String, AxisCallback> entry : callbackStore.entrySet()) {
+            register(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Drop the index entry of a callback which has been removed from the callback store
+     *
+     * @param key the message ID the callback was stored against
+     * @param callback the callback
+     */
+    public void cancel(String key, AxisCallback callback) {
+        if (callback instanceof AsyncCallback) {
+            timeoutWheel.remove(key, getExpiryTime((AsyncCallback) callback));
+        }
+    }
+
     /**
      * Checks if the timeout has expired for each callback in the callback store. If expired, removes
      * the callback. If specified sends a fault message to the client about the timeout.
@@ -87,6 +152,22 @@ public class TimeoutHandler extends TimerTask {
         }
     }
 
+    public int getLastExpiredCount() {
+        return lastExpiredCount;
+    }
+
+    public long getTotalExpiredCount() {
+        return totalExpiredCount;
+    }
+
+    public long getLastSweepTime() {
+        return lastSweepTime;
+    }
+
+    public long getMaxSweepTime() {
+        return maxSweepTime;
+    }
+
     private void processCallbacks() {
 
         //clear the expired statistics
@@ -103,66 +184,107 @@ public class TimeoutHandler extends TimerTask {
         //clear all the expired sessions
         SALSessions.getInstance().clearSessions();
 
-        // checks if callback store contains at least one entry before proceeding. otherwise getting
-        // the time for doing nothing would be a inefficient task.
+        long currentTime = currentTime();
+        int expired = 0;
 
-        // we have to synchronize this on the callbackStore as iterators of thread safe collections
-        // are not thread safe. callbackStore can be modified
-        // concurrently by the SynapseCallbackReceiver.
-        synchronized(callbackStore) {
+        // only the buckets of the ticks elapsed since the last run need to be visited. The
+        // callback store is a concurrent map and the buckets are concurrent sets, so neither
+        // of them has to be locked while the SynapseCallbackReceiver keeps on modifying them.
+        List<Set<String>> buckets = timeoutWheel.advance(currentTime);
+        for (Set<String> bucket : buckets) {
+            Iterator<String> keys = bucket.iterator();
+            while (keys.hasNext()) {
+                String key = keys.next();
 
-            if (callbackStore.size() > 0) {
+                AxisCallback axisCallback = callbackStore.get(key);
+                if (!(axisCallback instanceof AsyncCallback)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("There is no callback for key :" + key);
+                    }
+                    keys.remove();
+                    continue;
+                }
 
-                long currentTime = currentTime();
+                AsyncCallback callback = (AsyncCallback) axisCallback;
+                if (getExpiryTime(callback) > currentTime) {
+                    // expires on a later revolution of the wheel
+                    continue;
+                }
 
-                for (Object key : callbackStore.keySet()) {
+                keys.remove();
+                // the response may arrive concurrently - only the party removing the
+                // callback from the store gets to process it
+                if (callbackStore.remove(key, callback)) {
+                    expired++;
+                    handleTimeout(key, callback);
+                }
+            }
+        }
 
-                    AsyncCallback callback = (AsyncCallback) callbackStore.get(key);
-                    if (callback == null) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("There is no callback for key :" + key);
-                        }
-                        continue;
-                    }
-                    if (callback.getTimeOutAction() != SynapseConstants.NONE) {
+        long sweepTime = currentTime() - currentTime;
+        lastSweepTime = sweepTime;
+        if (sweepTime > maxSweepTime) {
+            maxSweepTime = sweepTime;
+        }
+        lastExpiredCount = expired;
+        totalExpiredCount += expired;
+    }
 
-                        if (callback.getTimeOutOn() <= currentTime) {
-                            callbackStore.remove(key);
+    private void handleTimeout(String key, AsyncCallback callback) {
 
-                            if (callback.getTimeOutAction() == SynapseConstants.DISCARD_AND_FAULT) {
+        if (callback.getTimeOutAction() == SynapseConstants.NONE) {
+            log.warn("Expiring message ID : " + key + "; dropping message after " +
+                    "global timeout of : " + (globalTimeout / 1000) + " seconds");
+            // no fault handler is run, so let the load balancers know the message is over
+            LoadbalanceEndpoint.onChildEndpointResponse(callback.getSynapseOutMsgCtx(),
+                    currentTime() - callback.getSendTime());
 
-                                // actiavte the fault sequence of the current sequence mediator
-                                MessageContext msgContext = callback.getSynapseOutMsgCtx();
+        } else if (callback.getTimeOutAction() == SynapseConstants.DISCARD) {
+            if (log.isDebugEnabled()) {
+                log.debug("Expiring message ID : " + key + "; discarding message after " +
+                        "timing out");
+            }
+            // the fault handlers are not run either, so the load balancers are told here
+            LoadbalanceEndpoint.onChildEndpointResponse(callback.getSynapseOutMsgCtx(),
+                    currentTime() - callback.getSendTime());
 
-                                // add an error code to the message context, so that error sequences
-                                // can identify the cause of error
-                                msgContext.setProperty(SynapseConstants.ERROR_CODE,
-                                        SynapseConstants.HANDLER_TIME_OUT);
-                                msgContext.setProperty(SynapseConstants.ERROR_MESSAGE,
-                                        SEND_TIMEOUT_MESSAGE);
+        } else if (callback.getTimeOutAction() == SynapseConstants.DISCARD_AND_FAULT) {
 
-                                Stack faultStack = msgContext.getFaultStack();
+            // actiavte the fault sequence of the current sequence mediator
+            MessageContext msgContext = callback.getSynapseOutMsgCtx();
 
-                                for (int j = 0; j < faultStack.size(); j++) {
-                                    Object o = faultStack.pop();
-                                    if (o instanceof FaultHandler) {
-                                        ((FaultHandler) o).handleFault(msgContext);
-                                    }
-                                }
+            // add an error code to the message context, so that error sequences
+            // can identify the cause of error
+            msgContext.setProperty(SynapseConstants.ERROR_CODE,
+                    SynapseConstants.HANDLER_TIME_OUT);
+            msgContext.setProperty(SynapseConstants.ERROR_MESSAGE,
+                    SEND_TIMEOUT_MESSAGE);
 
-                            }
-                        }
+            Stack faultStack = msgContext.getFaultStack();
 
-                    } else if (currentTime > globalTimeout + callback.getTimeOutOn()) {
-                        log.warn("Expiring message ID : " + key + "; dropping message after " +
-                                "global timeout of : " + (globalTimeout / 1000) + " seconds");
-                        callbackStore.remove(key);
-                    }
+            for (int j = 0; j < faultStack.size(); j++) {
+                Object o = faultStack.pop();
+                if (o instanceof FaultHandler) {
+                    ((FaultHandler) o).handleFault(msgContext);
                 }
             }
         }
     }
 
+    /**
+     * Get the time at which the given callback should be expired. Callbacks without a timeout
+     * action are expired after the global timeout.
+     *
+     * @param callback the callback
+     * @return the expiry time of the callback
+     */
+    private long getExpiryTime(AsyncCallback callback) {
+        if (callback.getTimeOutAction() != SynapseConstants.NONE) {
+            return callback.getTimeOutOn();
+        }
+        return callback.getTimeOutOn() + globalTimeout;
+    }
+
     /**
      * Returns the current time.
      *
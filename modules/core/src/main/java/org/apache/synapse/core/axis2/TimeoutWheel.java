@@ -0,0 +1,158 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A hashed timing wheel which indexes callback keys by their expiry time. The wheel is made of
+ * a fixed number of buckets, each covering one tick of time. A key is placed in the bucket of
+ * the first tick starting at or after its expiry time, so that registering and cancelling a key
+ * are O(1) operations and the TimeoutHandler only needs to look at the buckets of the ticks
+ * elapsed since its last run, instead of the whole callback store.
+ *
+ * Keys expiring more than one revolution of the wheel ahead share a bucket with keys of earlier
+ * revolutions. Those are simply left in place when the bucket is visited, since the handler
+ * always compares the actual expiry time of a callback before expiring it.
+ */
+class TimeoutWheel {
+
+    /** Default number of buckets in the wheel */
+    static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+    private final long tickDuration;
+    private final int mask;
+    private final List<Set<String>> buckets;
+
+    /** The last tick that has been (or is being) visited by the handler */
+    private volatile long lastProcessedTick;
+
+    TimeoutWheel(long tickDuration, int ticksPerWheel, long startTime) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive : " + tickDuration);
+        }
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Ticks per wheel must be positive : " +
+                    ticksPerWheel);
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.tickDuration = tickDuration;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<Set<String>>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+        }
+        this.lastProcessedTick = startTime / tickDuration;
+    }
+
+    /**
+     * Add the given key to the bucket matching the specified expiry time. A key expiring at a tick
+     * already visited by the handler is placed in the next tick to be visited.
+     *
+     * @param key the callback key
+     * @param expiryTime the time at which the callback expires
+     */
+    void add(String key, long expiryTime) {
+        long tick = Math.max(tickOf(expiryTime), lastProcessedTick + 1);
+        Set<String> bucket = bucketOf(tick);
+        bucket.add(key);
+
+        // the handler may have advanced past the selected tick while we were adding the key -
+        // if so move it forward, so that it does not have to wait for a full revolution
+        long processed = lastProcessedTick;
+        while (processed >= tick) {
+            bucket.remove(key);
+            tick = processed + 1;
+            bucket = bucketOf(tick);
+            bucket.add(key);
+            processed = lastProcessedTick;
+        }
+    }
+
+    /**
+     * Remove the given key from the bucket matching the specified expiry time. Keys which have
+     * been moved to a later bucket on registration are left in place, and cleaned up by the
+     * handler when that bucket is next visited.
+     *
+     * @param key the callback key
+     * @param expiryTime the time at which the callback expires
+     */
+    void remove(String key, long expiryTime) {
+        bucketOf(tickOf(expiryTime)).remove(key);
+    }
+
+    /**
+     * Advance the wheel up to the tick of the given time and return the buckets to be visited by
+     * the handler. If the wheel has fallen behind by a full revolution or more, all buckets are
+     * returned.
+     *
+     * @param currentTime the current time
+     * @return the buckets of the ticks elapsed since the last call, in order
+     */
+    List<Set<String>> advance(long currentTime) {
+        long currentTick = currentTime / tickDuration;
+        long from = lastProcessedTick + 1;
+        if (currentTick < from) {
+            return Collections.emptyList();
+        }
+        // publish the new position before the buckets are visited - see add()
+        lastProcessedTick = currentTick;
+
+        long count = Math.min(currentTick - from + 1, buckets.size());
+        List<Set<String>> elapsed = new ArrayList<Set<String>>((int) count);
+        for (long tick = currentTick - count + 1; tick <= currentTick; tick++) {
+            elapsed.add(bucketOf(tick));
+        }
+        return elapsed;
+    }
+
+    /**
+     * Get the number of keys currently indexed by the wheel
+     *
+     * @return number of keys in all buckets
+     */
+    int size() {
+        int size = 0;
+        for (Set<String> bucket : buckets) {
+            size += bucket.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get the tick at which a key expiring at the given time is visited. This is the first tick
+     * starting at or after the expiry time.
+     */
+    private long tickOf(long expiryTime) {
+        long tick = expiryTime / tickDuration;
+        return (expiryTime % tickDuration == 0) ? tick : tick + 1;
+    }
+
+    private Set<String> bucketOf(long tick) {
+        return buckets.get((int) (tick & mask));
+    }
+}
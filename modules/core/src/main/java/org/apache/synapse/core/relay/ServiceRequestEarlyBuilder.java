@@ -29,6 +29,7 @@ import org.apache.axis2.wsdl.WSDLConstants;
 import org.apache.synapse.SynapseConstants;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.core.axis2.ProxyService;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.transport.passthru.util.RelayConstants;
 import org.apache.synapse.transport.passthru.util.RelayUtils;
 
@@ -56,11 +57,15 @@ public class ServiceRequestEarlyBuilder extends AbstractHandler {
                 ProxyService proxy = synapseConfig.getProxyService(service.getName());
                 if (proxy != null) {
                     AxisOperation operation = messageContext.getAxisOperation();
-                    if (proxy.isModuleEngaged() || (operation == null && proxy.isWsdlPublished())) {
+                    // requests routed on headers only are never dispatched on their body
+                    boolean headerOnly = messageContext.isPropertyTrue(
+                            PassThroughConstants.HEADER_ONLY_ROUTING);
+                    if (proxy.isModuleEngaged() ||
+                            (operation == null && proxy.isWsdlPublished() && !headerOnly)) {
                         // We have some Axis2 level processing to do (security, RM, addressing etc)
                         // or we have more dispatching left to do
                         return buildMessage(messageContext);
-                    } else if (operation == null && !proxy.isWsdlPublished()) {
+                    } else if (operation == null) {
                         operation = service.getOperation(SynapseConstants.SYNAPSE_OPERATION_NAME);
                     }
 
@@ -0,0 +1,111 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A table of counts keyed by an error or response code, which can be updated concurrently
+ * without taking a lock. Each code is counted in a striped counter created the first time it is
+ * reported, held in a fixed array for the codes in the range of HTTP status codes, and in a map
+ * for any other code.
+ */
+class CodeCountTable {
+
+    /** Codes below this value are counted in the fixed array */
+    private static final int FIXED_CODES = 600;
+
+    private final AtomicReferenceArray<LongAdder> fixedCounts =
+            new AtomicReferenceArray<LongAdder>(FIXED_CODES);
+    private final ConcurrentHashMap<Integer, LongAdder> otherCounts =
+            new ConcurrentHashMap<Integer, LongAdder>();
+
+    /**
+     * Increment the count of the given code by one
+     * @param code the code to count
+     */
+    public void increment(int code) {
+        if (code >= 0 && code < FIXED_CODES) {
+            LongAdder counter = fixedCounts.get(code);
+            if (counter == null) {
+                LongAdder newCounter = new LongAdder();
+                counter = fixedCounts.compareAndSet(code, null, newCounter) ?
+                        newCounter : fixedCounts.get(code);
+            }
+            counter.increment();
+            return;
+        }
+        LongAdder counter = otherCounts.get(code);
+        if (counter == null) {
+            LongAdder newCounter = new LongAdder();
+            counter = otherCounts.putIfAbsent(code, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * Add the non zero counts of this table to the given map
+     * @param map the map to which the counts are added
+     */
+    public void addTo(Map<Integer, Long> map) {
+        for (int i = 0; i < FIXED_CODES; i++) {
+            LongAdder counter = fixedCounts.get(i);
+            long count = counter != null ? counter.sum() : 0;
+            if (count > 0) {
+                add(map, i, count);
+            }
+        }
+        for (Map.Entry<Integer, LongAdder> e : otherCounts.entrySet()) {
+            long count = e.getValue().sum();
+            if (count > 0) {
+                add(map, e.getKey(), count);
+            }
+        }
+    }
+
+    /**
+     * Take a snapshot of the non zero counts of this table
+     * @return a new map of codes to counts, ordered by the code
+     */
+    public Map<Integer, Long> toMap() {
+        Map<Integer, Long> map = new TreeMap<Integer, Long>();
+        addTo(map);
+        return map;
+    }
+
+    public void clear() {
+        for (int i = 0; i < FIXED_CODES; i++) {
+            fixedCounts.set(i, null);
+        }
+        otherCounts.clear();
+    }
+
+    private static void add(Map<Integer, Long> map, int code, long count) {
+        Long current = map.get(code);
+        map.put(code, current == null ? count : current + count);
+    }
+}
@@ -22,18 +22,25 @@ package org.apache.synapse.endpoints;
 import org.apache.axis2.transport.base.MessageLevelMetricsCollector;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.commons.jmx.LatencyRecorder;
 
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * This class is the metrics collector and JMX control point for Endpoints
+ * This class is the metrics collector and JMX control point for Endpoints.
+ *
+ * The metrics are updated on every message sent to or received from the endpoint, by many
+ * threads at once. Hence counters are striped (LongAdder), and fault and response code counts
+ * are kept in lock free tables, so that reporting a metric never blocks a message. Readers
+ * see a sum of the stripes at the time of reading, which is all JMX and metrics exporters need.
  */
 public class EndpointView implements EndpointViewMBean, MessageLevelMetricsCollector {
 
     private static final Log log = LogFactory.getLog(EndpointView.class);
-    private static final Long ONE = 1L;
     private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(20,
         new ThreadFactory() {
             @Override
@@ -49,46 +56,47 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
     private Endpoint endpoint = null;
 
     // metrics collected / maintained
-    private long messagesReceived;
-    private long faultsReceiving;
-    private long timeoutsReceiving;
-    private long bytesReceived;
-    private long minSizeReceived;
-    private long maxSizeReceived;
-    private double avgSizeReceived;
-    private final Map<Integer, Long> receivingFaultTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
-
-    private long messagesSent;
-    private long faultsSending;
-    private long timeoutsSending;
-    private long bytesSent;
-    private long minSizeSent;
-    private long maxSizeSent;
-    private double avgSizeSent;
-
-    private int consecutiveSuspensions;
-    private int consecutiveTimeouts;
-    private int totalSuspensions;
-    private int totalTimeouts;
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder faultsReceiving = new LongAdder();
+    private final LongAdder timeoutsReceiving = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final SizeStatistics sizesReceived = new SizeStatistics();
+    private final CodeCountTable receivingFaultTable = new CodeCountTable();
+
+    private final LongAdder messagesSent = new LongAdder();
+    private final LongAdder faultsSending = new LongAdder();
+    private final LongAdder timeoutsSending = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final SizeStatistics sizesSent = new SizeStatistics();
+
+    private final AtomicInteger consecutiveSuspensions = new AtomicInteger(0);
+    private final AtomicInteger consecutiveTimeouts = new AtomicInteger(0);
+    private final AtomicInteger totalSuspensions = new AtomicInteger(0);
+    private final AtomicInteger totalTimeouts = new AtomicInteger(0);
     private AtomicInteger suspensions = new AtomicInteger(0);
     private AtomicInteger timeouts = new AtomicInteger(0);
     private Date suspendedAt;
     private Date timedoutAt;
 
-    private final Map<Integer, Long> sendingFaultTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
+    private final CodeCountTable sendingFaultTable = new CodeCountTable();
 
-    private final Map<Integer, Long> responseCodeTable =
-        Collections.synchronizedMap(new HashMap<Integer, Long>());
+    private final CodeCountTable responseCodeTable = new CodeCountTable();
 
-    private long lastResetTime = System.currentTimeMillis();
+    private volatile long lastResetTime = System.currentTimeMillis();
 
     private ScheduledFuture future;
 
     private Queue<Integer> suspensionCounts = new LinkedList<Integer>();
     private Queue<Integer> timeoutCounts = new LinkedList<Integer>();
 
+    /** Response times of this (leaf) endpoint, in milliseconds */
+    private final LatencyRecorder responseTimes = new LatencyRecorder();
+
+    /** Recorders of which percentiles are reported, merged across the children of a group */
+    private static final int RESPONSE_TIMES = 0;
+    private static final int SIZES_RECEIVED = 1;
+    private static final int SIZES_SENT = 2;
+
     /**
      * Create a new MBean to manage the given endpoint
      * @param endpointName the name of the endpoint
@@ -288,10 +296,10 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
                     addTableMaps(receivingFaultTable, e.getMetricsMBean().getReceivingFaultTable());
                 }
             }
-            addTableMaps(receivingFaultTable, this.receivingFaultTable);
+            this.receivingFaultTable.addTo(receivingFaultTable);
             return receivingFaultTable;
         } else {
-            return receivingFaultTable;
+            return receivingFaultTable.toMap();
         }
     }
 
@@ -308,10 +316,10 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
                     addTableMaps(sendingFaultTable, e.getMetricsMBean().getSendingFaultTable());
                 }
             }
-            addTableMaps(sendingFaultTable, this.sendingFaultTable);
+            this.sendingFaultTable.addTo(sendingFaultTable);
             return sendingFaultTable;
         } else {
-            return sendingFaultTable;
+            return sendingFaultTable.toMap();
         }
     }
 
@@ -330,7 +338,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return responseCodeTable;
         } else {
-            return responseCodeTable;
+            return responseCodeTable.toMap();
         }
     }
 
@@ -354,42 +362,42 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
 
     @Override
     public int getConsecutiveEndpointSuspensions() {
-        return consecutiveSuspensions;
+        return consecutiveSuspensions.get();
     }
 
     public void incrementSuspensions() {
-        consecutiveSuspensions++;
-        totalSuspensions++;
+        consecutiveSuspensions.incrementAndGet();
+        totalSuspensions.incrementAndGet();
         suspensions.incrementAndGet();
     }
 
     public void resetConsecutiveSuspensions() {
-        consecutiveSuspensions = 0;
+        consecutiveSuspensions.set(0);
     }
 
     @Override
     public int getConsecutiveEndpointTimeouts() {
-        return consecutiveTimeouts;
+        return consecutiveTimeouts.get();
     }
 
     public void incrementTimeouts() {
-        consecutiveTimeouts++;
-        totalTimeouts++;
+        consecutiveTimeouts.incrementAndGet();
+        totalTimeouts.incrementAndGet();
         timeouts.incrementAndGet();
     }
 
     public void resetConsecutiveTimeouts() {
-        consecutiveTimeouts = 0;
+        consecutiveTimeouts.set(0);
     }
 
     @Override
     public int getTotalEndpointSuspensions() {
-        return totalSuspensions;
+        return totalSuspensions.get();
     }
 
     @Override
     public int getTotalEndpointTimeouts() {
-        return totalTimeouts;
+        return totalTimeouts.get();
     }
 
     @Override
@@ -422,6 +430,77 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         return getTotal(timeoutCounts, 15);
     }
 
+    @Override
+    public Map<String, Long> getLastMinuteResponseTimePercentiles() {
+        return getPercentiles(RESPONSE_TIMES, 1);
+    }
+
+    @Override
+    public Map<String, Long> getLast5MinuteResponseTimePercentiles() {
+        return getPercentiles(RESPONSE_TIMES, 5);
+    }
+
+    @Override
+    public Map<String, Long> getLast15MinuteResponseTimePercentiles() {
+        return getPercentiles(RESPONSE_TIMES, 15);
+    }
+
+    @Override
+    public Map<String, Long> getLastHourResponseTimePercentiles() {
+        return getPercentiles(RESPONSE_TIMES, 60);
+    }
+
+    @Override
+    public Map<String, Long> getLast15MinuteSizeReceivedPercentiles() {
+        return getPercentiles(SIZES_RECEIVED, 15);
+    }
+
+    @Override
+    public Map<String, Long> getLast15MinuteSizeSentPercentiles() {
+        return getPercentiles(SIZES_SENT, 15);
+    }
+
+    /**
+     * Report the time taken by this endpoint to respond to a message
+     * @param responseTime the response time in milliseconds
+     */
+    public void notifyResponseTime(long responseTime) {
+        responseTimes.record(responseTime);
+    }
+
+    private Map<String, Long> getPercentiles(int type, int minutes) {
+        if (endpoint.getChildren() == null) {
+            return getRecorder(type).getPercentiles(minutes);
+        }
+        // percentiles cannot be summed up, so merge the histograms of all the leaf endpoints
+        List<LatencyRecorder> recorders = new ArrayList<LatencyRecorder>();
+        collectRecorders(type, recorders);
+        return LatencyRecorder.getPercentiles(recorders, minutes);
+    }
+
+    private void collectRecorders(int type, List<LatencyRecorder> recorders) {
+        if (endpoint.getChildren() == null) {
+            recorders.add(getRecorder(type));
+            return;
+        }
+        for (Endpoint e : endpoint.getChildren()) {
+            if (e.getMetricsMBean() != null) {
+                e.getMetricsMBean().collectRecorders(type, recorders);
+            }
+        }
+    }
+
+    private LatencyRecorder getRecorder(int type) {
+        switch (type) {
+            case SIZES_RECEIVED:
+                return sizesReceived.histogram;
+            case SIZES_SENT:
+                return sizesSent.histogram;
+            default:
+                return responseTimes;
+        }
+    }
+
     private int getTotal(Queue<Integer> queue, int count) {
         int sum = 0;
         Integer[] array = queue.toArray(new Integer[queue.size()]);
@@ -453,7 +532,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return messagesReceived;
         } else {
-            return messagesReceived;
+            return messagesReceived.sum();
         }
     }
 
@@ -472,7 +551,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return faultsReceiving;
         } else {
-            return faultsReceiving;
+            return faultsReceiving.sum();
         }
     }
 
@@ -491,7 +570,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return timeoutsReceiving;
         } else {
-            return timeoutsReceiving;
+            return timeoutsReceiving.sum();
         }
     }
 
@@ -510,7 +589,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return bytesReceived;
         } else {
-            return bytesReceived;
+            return bytesReceived.sum();
         }
     }
 
@@ -529,7 +608,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return messagesSent;
         } else {
-            return messagesSent;
+            return messagesSent.sum();
         }
     }
 
@@ -548,7 +627,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return faultsSending;
         } else {
-            return faultsSending;
+            return faultsSending.sum();
         }
     }
 
@@ -567,7 +646,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return timeoutsSending;
         } else {
-            return timeoutsSending;
+            return timeoutsSending.sum();
         }
     }
 
@@ -586,7 +665,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return bytesSent;
         } else {
-            return bytesSent;
+            return bytesSent.sum();
         }
     }
 
@@ -605,7 +684,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return minSizeReceived;
         } else {
-            return minSizeReceived;
+            return sizesReceived.getMin();
         }
     }
 
@@ -624,7 +703,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return maxSizeReceived;
         } else {
-            return maxSizeReceived;
+            return sizesReceived.getMax();
         }
     }
 
@@ -643,7 +722,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return minSizeSent;
         } else {
-            return minSizeSent;
+            return sizesSent.getMin();
         }
     }
 
@@ -662,7 +741,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return maxSizeSent;
         } else {
-            return maxSizeSent;
+            return sizesSent.getMax();
         }
     }
 
@@ -680,7 +759,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return avgSizeReceived;
         } else {
-            return avgSizeReceived;
+            return sizesReceived.getAvg();
         }
     }
 
@@ -697,7 +776,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
             }
             return avgSizeSent;
         } else {
-            return avgSizeSent;
+            return sizesSent.getAvg();
         }
     }
 
@@ -705,25 +784,22 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
     @Override
     public void resetStatistics() {
 
-        messagesReceived  = 0;
-        faultsReceiving   = 0;
-        timeoutsReceiving = 0;
-        bytesReceived     = 0;
-        minSizeReceived   = 0;
-        maxSizeReceived   = 0;
-        avgSizeReceived   = 0;
+        messagesReceived.reset();
+        faultsReceiving.reset();
+        timeoutsReceiving.reset();
+        bytesReceived.reset();
+        sizesReceived.reset();
         receivingFaultTable.clear();
 
-        messagesSent      = 0;
-        faultsSending     = 0;
-        timeoutsSending   = 0;
-        bytesSent         = 0;
-        minSizeSent       = 0;
-        maxSizeSent       = 0;
-        avgSizeSent       = 0;
+        messagesSent.reset();
+        faultsSending.reset();
+        timeoutsSending.reset();
+        bytesSent.reset();
+        sizesSent.reset();
         sendingFaultTable.clear();
 
         responseCodeTable.clear();
+        responseTimes.reset();
         lastResetTime = System.currentTimeMillis();
 
         if (endpoint.getChildren() != null) {
@@ -737,77 +813,55 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
     }
 
     @Override
-    public synchronized void incrementMessagesReceived() {
-        messagesReceived++;
+    public void incrementMessagesReceived() {
+        messagesReceived.increment();
     }
 
     @Override
-    public synchronized void incrementFaultsReceiving(int errorCode) {
-        faultsReceiving++;
-        Object o = receivingFaultTable.get(errorCode);
-        if (o == null) {
-            receivingFaultTable.put(errorCode, ONE);
-        } else {
-            receivingFaultTable.put(errorCode, (Long) o + 1);
-        }
+    public void incrementFaultsReceiving(int errorCode) {
+        faultsReceiving.increment();
+        receivingFaultTable.increment(errorCode);
     }
 
     @Override
-    public synchronized void incrementTimeoutsReceiving() {
-        timeoutsReceiving++;
+    public void incrementTimeoutsReceiving() {
+        timeoutsReceiving.increment();
     }
 
     @Override
-    public synchronized void incrementBytesReceived(long size) {
-        bytesReceived += size;
+    public void incrementBytesReceived(long size) {
+        bytesReceived.add(size);
     }
 
     @Override
-    public synchronized void incrementMessagesSent() {
-        messagesSent++;
+    public void incrementMessagesSent() {
+        messagesSent.increment();
     }
 
     @Override
-    public synchronized void incrementFaultsSending(int errorCode) {
-        faultsSending++;
-        Object o = sendingFaultTable.get(errorCode);
-        if (o == null) {
-            sendingFaultTable.put(errorCode, ONE);
-        } else {
-            sendingFaultTable.put(errorCode, (Long) o + 1);
-        }
+    public void incrementFaultsSending(int errorCode) {
+        faultsSending.increment();
+        sendingFaultTable.increment(errorCode);
     }
 
     @Override
-    public synchronized void incrementTimeoutsSending() {
-        timeoutsSending++;
+    public void incrementTimeoutsSending() {
+        timeoutsSending.increment();
     }
 
     @Override
-    public synchronized void incrementBytesSent(long size) {
-        bytesSent += size;
+    public void incrementBytesSent(long size) {
+        bytesSent.add(size);
     }
 
     @Override
-    public synchronized void notifyReceivedMessageSize(long size) {
-        if (minSizeReceived == 0 || size < minSizeReceived) {
-            minSizeReceived = size;
-        }
-        if (size > maxSizeReceived) {
-            maxSizeReceived = size;
-        }
-        avgSizeReceived = (avgSizeReceived == 0 ? size : (avgSizeReceived + size) / 2);
+    public void notifyReceivedMessageSize(long size) {
+        sizesReceived.notifySize(size);
     }
 
     @Override
-    public synchronized void notifySentMessageSize(long size) {
-        if (minSizeSent == 0 || size < minSizeSent) {
-            minSizeSent = size;
-        }
-        if (size > maxSizeSent) {
-            maxSizeSent = size;
-        }
-        avgSizeSent = (avgSizeSent == 0 ? size : (avgSizeSent + size) / 2);
+    public void notifySentMessageSize(long size) {
+        sizesSent.notifySize(size);
     }
 
     /**
@@ -817,14 +871,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      */
     @Override
     public void reportSendingFault(int errorCode) {
-        synchronized(sendingFaultTable) {
-            Object o = sendingFaultTable.get(errorCode);
-            if (o == null) {
-                sendingFaultTable.put(errorCode, ONE);
-            } else {
-                sendingFaultTable.put(errorCode, (Long) o + 1);
-            }
-        }
+        sendingFaultTable.increment(errorCode);
     }
 
     /**
@@ -834,14 +881,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      */
     @Override
     public void reportReceivingFault(int errorCode) {
-        synchronized(receivingFaultTable) {
-            Object o = receivingFaultTable.get(errorCode);
-            if (o == null) {
-                receivingFaultTable.put(errorCode, ONE);
-            } else {
-                receivingFaultTable.put(errorCode, (Long) o + 1);
-            }
-        }
+        receivingFaultTable.increment(errorCode);
     }
 
     /**
@@ -850,14 +890,7 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
      */
     @Override
     public void reportResponseCode(int respCode) {
-        synchronized(responseCodeTable) {
-            Object o = responseCodeTable.get(respCode);
-            if (o == null) {
-                responseCodeTable.put(respCode, ONE);
-            } else {
-                responseCodeTable.put(respCode, (Long) o + 1);
-            }
-        }
+        responseCodeTable.increment(respCode);
     }
 
     //---------- utility methods ---------------
@@ -893,4 +926,194 @@ public class EndpointView implements EndpointViewMBean, MessageLevelMetricsColle
         return false;
     }
 
+    /**
+     * Take a snapshot of the message level metrics of this endpoint (or of all the endpoints of
+     * a group). Taking a snapshot does not block the threads updating the metrics, hence it can
+     * be polled by metrics exporters as often as required.
+     *
+     * @return a snapshot of the current metrics
+     */
+    public Snapshot getSnapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * Min, max and average sizes of messages, along with a histogram of the recent sizes
+     */
+    private static class SizeStatistics {
+
+        private final AtomicLong min = new AtomicLong(0);
+        private final AtomicLong max = new AtomicLong(0);
+        private final LongAdder total = new LongAdder();
+        private final LongAdder count = new LongAdder();
+        /** sizes are only reported over the last 15 minutes, older histograms are not kept */
+        private final LatencyRecorder histogram = new LatencyRecorder(15);
+
+        private void notifySize(long size) {
+            long current;
+            do {
+                current = min.get();
+            } while ((current == 0 || size < current) && !min.compareAndSet(current, size));
+            do {
+                current = max.get();
+            } while (size > current && !max.compareAndSet(current, size));
+            total.add(size);
+            count.increment();
+            histogram.record(size);
+        }
+
+        private long getMin() {
+            return min.get();
+        }
+
+        private long getMax() {
+            return max.get();
+        }
+
+        private double getAvg() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) total.sum() / n;
+        }
+
+        private void reset() {
+            min.set(0);
+            max.set(0);
+            total.reset();
+            count.reset();
+            histogram.reset();
+        }
+    }
+
+    /**
+     * An immutable snapshot of the message level metrics of an endpoint
+     */
+    public static class Snapshot {
+
+        private final String endpointName;
+        private final long timestamp;
+
+        private final long messagesReceived;
+        private final long faultsReceiving;
+        private final long timeoutsReceiving;
+        private final long bytesReceived;
+        private final long minSizeReceived;
+        private final long maxSizeReceived;
+        private final double avgSizeReceived;
+        private final Map<Integer, Long> receivingFaultTable;
+
+        private final long messagesSent;
+        private final long faultsSending;
+        private final long timeoutsSending;
+        private final long bytesSent;
+        private final long minSizeSent;
+        private final long maxSizeSent;
+        private final double avgSizeSent;
+        private final Map<Integer, Long> sendingFaultTable;
+
+        private final Map<Integer, Long> responseCodeTable;
+
+        private Snapshot(EndpointView view) {
+            this.endpointName = view.endpointName;
+            this.timestamp = System.currentTimeMillis();
+
+            this.messagesReceived = view.getMessagesReceived();
+            this.faultsReceiving = view.getFaultsReceiving();
+            this.timeoutsReceiving = view.getTimeoutsReceiving();
+            this.bytesReceived = view.getBytesReceived();
+            this.minSizeReceived = view.getMinSizeReceived();
+            this.maxSizeReceived = view.getMaxSizeReceived();
+            this.avgSizeReceived = view.getAvgSizeReceived();
+            this.receivingFaultTable = Collections.unmodifiableMap(view.getReceivingFaultTable());
+
+            this.messagesSent = view.getMessagesSent();
+            this.faultsSending = view.getFaultsSending();
+            this.timeoutsSending = view.getTimeoutsSending();
+            this.bytesSent = view.getBytesSent();
+            this.minSizeSent = view.getMinSizeSent();
+            this.maxSizeSent = view.getMaxSizeSent();
+            this.avgSizeSent = view.getAvgSizeSent();
+            this.sendingFaultTable = Collections.unmodifiableMap(view.getSendingFaultTable());
+
+            this.responseCodeTable = Collections.unmodifiableMap(view.getResponseCodeTable());
+        }
+
+        public String getEndpointName() {
+            return endpointName;
+        }
+
+        /**
+         * @return the time at which this snapshot was taken
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getMessagesReceived() {
+            return messagesReceived;
+        }
+
+        public long getFaultsReceiving() {
+            return faultsReceiving;
+        }
+
+        public long getTimeoutsReceiving() {
+            return timeoutsReceiving;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getMinSizeReceived() {
+            return minSizeReceived;
+        }
+
+        public long getMaxSizeReceived() {
+            return maxSizeReceived;
+        }
+
+        public double getAvgSizeReceived() {
+            return avgSizeReceived;
+        }
+
+        public Map<Integer, Long> getReceivingFaultTable() {
+            return receivingFaultTable;
+        }
+
+        public long getMessagesSent() {
+            return messagesSent;
+        }
+
+        public long getFaultsSending() {
+            return faultsSending;
+        }
+
+        public long getTimeoutsSending() {
+            return timeoutsSending;
+        }
+
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getMinSizeSent() {
+            return minSizeSent;
+        }
+
+        public long getMaxSizeSent() {
+            return maxSizeSent;
+        }
+
+        public double getAvgSizeSent() {
+            return avgSizeSent;
+        }
+
+        public Map<Integer, Long> getSendingFaultTable() {
+            return sendingFaultTable;
+        }
+
+        public Map<Integer, Long> getResponseCodeTable() {
+            return responseCodeTable;
+        }
+    }
 }
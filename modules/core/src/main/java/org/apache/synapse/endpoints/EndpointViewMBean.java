@@ -56,6 +56,12 @@ public interface EndpointViewMBean {
     public int getLastMinuteEndpointTimeouts();
     public int getLast5MinuteEndpointTimeouts();
     public int getLast15MinuteEndpointTimeouts();
+    public Map<String, Long> getLastMinuteResponseTimePercentiles();
+    public Map<String, Long> getLast5MinuteResponseTimePercentiles();
+    public Map<String, Long> getLast15MinuteResponseTimePercentiles();
+    public Map<String, Long> getLastHourResponseTimePercentiles();
+    public Map<String, Long> getLast15MinuteSizeReceivedPercentiles();
+    public Map<String, Long> getLast15MinuteSizeSentPercentiles();
 
     // JMX Operations
     public void switchOn() throws Exception;
@@ -27,6 +27,7 @@ import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.endpoints.algorithms.AlgorithmContext;
+import org.apache.synapse.endpoints.algorithms.FeedbackLoadbalanceAlgorithm;
 import org.apache.synapse.endpoints.algorithms.LoadbalanceAlgorithm;
 import org.apache.synapse.mediators.MediatorProperty;
 
@@ -45,6 +46,12 @@ import java.io.IOException;
  */
 public class LoadbalanceEndpoint extends AbstractEndpoint {
 
+    /**
+     * The message property holding the child endpoint chosen for the message by each load
+     * balance endpoint, which reports the outcome of the message to its algorithm
+     */
+    public static final String CHOSEN_CHILD_ENDPOINTS = "LOADBALANCE_CHOSEN_CHILD_ENDPOINTS";
+
     /** Should this load balancer fail over as well? */
     private boolean failover = true;
     /** The algorithm used for selecting the next endpoint */
@@ -101,30 +108,39 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
             log.debug("Sending using Load-balance " + toString());
         }
 
+        // evaluate the endpoint properties
+        evaluateProperties(synCtx);
+
         Endpoint endpoint = null;
         if (activeMembers == null) {
             endpoint = getNextChild(synCtx);
         }
 
-        // evaluate the endpoint properties
-        evaluateProperties(synCtx);
-
         if (endpoint != null) {
-            // if this is not a retry
-            if (synCtx.getProperty(SynapseConstants.LAST_ENDPOINT) == null) {
-                // We have to build the envelop when we are supporting failover, as we
-                // may have to retry this message for failover support
-                if (failover) {
-                    synCtx.getEnvelope().build();
+            boolean prepared = false;
+            try {
+                // if this is not a retry
+                if (synCtx.getProperty(SynapseConstants.LAST_ENDPOINT) == null) {
+                    // We have to build the envelop when we are supporting failover, as we
+                    // may have to retry this message for failover support
+                    if (failover) {
+                        synCtx.getEnvelope().build();
+                    }
+                } else {
+                    if (metricsMBean != null) {
+                        // this is a retry, where we are now failing over to an active node
+                        metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_LB_FAIL_OVER);
+                    }
                 }
-            } else {
-                if (metricsMBean != null) {
-                    // this is a retry, where we are now failing over to an active node
-                    metricsMBean.reportSendingFault(SynapseConstants.ENDPOINT_LB_FAIL_OVER);
+                synCtx.pushFaultHandler(this);
+                prepared = true;
+            } finally {
+                if (!prepared) {
+                    // the message never reaches the chosen child endpoint
+                    releaseChosenChild(synCtx, endpoint);
                 }
             }
-            synCtx.pushFaultHandler(this);
-            endpoint.send(synCtx);
+            sendToChild(synCtx, endpoint);
 
         } else if (activeMembers != null && !activeMembers.isEmpty()) {
             EndpointReference to = synCtx.getTo();
@@ -143,6 +159,102 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
         }
     }
 
+    /**
+     * Send the message to a child endpoint chosen by the algorithm. The child is released if
+     * the message could not be sent, or once it is sent if no response is expected for it
+     *
+     * @param synCtx the message to be sent
+     * @param endpoint the child endpoint returned by getNextChild(...) for the message
+     */
+    void sendToChild(MessageContext synCtx, Endpoint endpoint) {
+        boolean sent = false;
+        try {
+            endpoint.send(synCtx);
+            sent = true;
+        } finally {
+            if (!sent || synCtx.isResponse() ||
+                    "true".equals(synCtx.getProperty(SynapseConstants.OUT_ONLY))) {
+                // the message is not in flight to the child endpoint anymore
+                releaseChosenChild(synCtx, endpoint);
+            }
+        }
+    }
+
+    /**
+     * Let the algorithm know that the message is no longer in flight to the child endpoint
+     * chosen for it, if any
+     *
+     * @param synCtx the message sent to the child endpoint
+     */
+    void releaseChosenChild(MessageContext synCtx) {
+        releaseChosenChild(synCtx, null);
+    }
+
+    /**
+     * Let the algorithm know that the message is no longer in flight to the given child
+     * endpoint, if that is still the child chosen for the message. A message is released at
+     * most once for each choice, whichever of the send and the fault handling paths gets to
+     * it first
+     *
+     * @param synCtx the message sent to the child endpoint
+     * @param endpoint the child endpoint to be released, or null to release any chosen child
+     */
+    private void releaseChosenChild(MessageContext synCtx, Endpoint endpoint) {
+        Map<LoadbalanceEndpoint, Endpoint> chosen = getChosenChildEndpoints(synCtx, false);
+        if (chosen == null) {
+            return;
+        }
+        Endpoint released;
+        synchronized (chosen) {
+            released = chosen.get(this);
+            if (released == null || (endpoint != null && released != endpoint)) {
+                return;
+            }
+            chosen.remove(this);
+        }
+        if (algorithm instanceof FeedbackLoadbalanceAlgorithm) {
+            ((FeedbackLoadbalanceAlgorithm) algorithm).onRelease(released);
+        }
+    }
+
+    /**
+     * Report the latency of a message to the algorithms of all the load balance endpoints
+     * which chose a child endpoint for it. This is called once the message has received a
+     * response, or has been dropped after timing out.
+     *
+     * @param synCtx the message sent to the endpoints
+     * @param latency the time taken by the endpoints, in milliseconds
+     */
+    public static void onChildEndpointResponse(MessageContext synCtx, long latency) {
+        Map<LoadbalanceEndpoint, Endpoint> chosen = getChosenChildEndpoints(synCtx, false);
+        if (chosen == null) {
+            return;
+        }
+        synCtx.getPropertyKeySet().remove(CHOSEN_CHILD_ENDPOINTS);
+        for (Map.Entry<LoadbalanceEndpoint, Endpoint> entry : chosen.entrySet()) {
+            LoadbalanceAlgorithm algorithm = entry.getKey().getAlgorithm();
+            if (algorithm instanceof FeedbackLoadbalanceAlgorithm) {
+                ((FeedbackLoadbalanceAlgorithm) algorithm).onResponse(entry.getValue(), latency);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<LoadbalanceEndpoint, Endpoint> getChosenChildEndpoints(
+            MessageContext synCtx, boolean create) {
+        Object o = synCtx.getProperty(CHOSEN_CHILD_ENDPOINTS);
+        if (o instanceof Map) {
+            return (Map<LoadbalanceEndpoint, Endpoint>) o;
+        } else if (create) {
+            // a message is sent by one thread at a time, but responses are handled by another
+            Map<LoadbalanceEndpoint, Endpoint> chosen = Collections.synchronizedMap(
+                    new IdentityHashMap<LoadbalanceEndpoint, Endpoint>());
+            synCtx.setProperty(CHOSEN_CHILD_ENDPOINTS, chosen);
+            return chosen;
+        }
+        return null;
+    }
+
     private void sendToApplicationMember(MessageContext synCtx,
                                          EndpointReference to,
                                          LoadbalanceFaultHandler faultHandler) {
@@ -223,6 +335,7 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
     public void onChildEndpointFail(Endpoint endpoint, MessageContext synMessageContext) {
 
         logOnChildEndpointFail(endpoint, synMessageContext);
+        releaseChosenChild(synMessageContext);
         // resend (to a different endpoint) only if we support failover
         if (failover) {
             if (!((AbstractEndpoint)endpoint).isRetryDisabled(synMessageContext)) {
@@ -273,7 +386,17 @@ public class LoadbalanceEndpoint extends AbstractEndpoint {
     }
 
     protected Endpoint getNextChild(MessageContext synCtx) {
-        return algorithm.getNextEndpoint(synCtx, algorithmContext);
+        Endpoint endpoint = algorithm.getNextEndpoint(synCtx, algorithmContext);
+        if (endpoint != null && algorithm instanceof FeedbackLoadbalanceAlgorithm) {
+            // the algorithm counts the message in flight to the endpoint from now on, so the
+            // choice is recorded on the message to release it on every path it may take
+            Endpoint previous = getChosenChildEndpoints(synCtx, true).put(this, endpoint);
+            if (previous != null) {
+                // a resend, for which the previous choice was not released
+                ((FeedbackLoadbalanceAlgorithm) algorithm).onRelease(previous);
+            }
+        }
+        return endpoint;
     }
     
     /**
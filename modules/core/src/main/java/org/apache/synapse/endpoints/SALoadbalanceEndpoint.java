@@ -177,6 +177,7 @@ public class SALoadbalanceEndpoint extends LoadbalanceEndpoint {
     public void onChildEndpointFail(Endpoint endpoint, MessageContext synCtx) {
 
         logOnChildEndpointFail(endpoint, synCtx);
+        releaseChosenChild(synCtx);
         Object o = synCtx.getProperty(
                 SynapseConstants.PROP_SAL_ENDPOINT_FIRST_MESSAGE_IN_SESSION);
 
@@ -287,18 +288,28 @@ public class SALoadbalanceEndpoint extends LoadbalanceEndpoint {
                     "SLALoadbalance endpoint : " + getName() + " - no ready child endpoints");
         } else {
 
-            prepareEndPointSequence(synCtx, endpoint);
-
-            // this is the first request. so an endpoint has not been bound to this session and we
-            // are free to failover if the currently selected endpoint is not working. but for
-            // failover to work, we have to build the soap envelope.
-            synCtx.getEnvelope().build();
-
-            // we should also indicate that this is the first message in the session. so that
-            // onFault(...) method can resend only the failed attempts for the first message.
-            synCtx.setProperty(SynapseConstants.PROP_SAL_ENDPOINT_FIRST_MESSAGE_IN_SESSION, Boolean.TRUE);
-            synCtx.pushFaultHandler(this);
-            endpoint.send(synCtx);
+            boolean prepared = false;
+            try {
+                prepareEndPointSequence(synCtx, endpoint);
+
+                // this is the first request. so an endpoint has not been bound to this session
+                // and we are free to failover if the currently selected endpoint is not working.
+                // but for failover to work, we have to build the soap envelope.
+                synCtx.getEnvelope().build();
+
+                // we should also indicate that this is the first message in the session. so that
+                // onFault(...) method can resend only the failed attempts for the first message.
+                synCtx.setProperty(SynapseConstants.PROP_SAL_ENDPOINT_FIRST_MESSAGE_IN_SESSION,
+                        Boolean.TRUE);
+                synCtx.pushFaultHandler(this);
+                prepared = true;
+            } finally {
+                if (!prepared) {
+                    // the message never reaches the chosen child endpoint
+                    releaseChosenChild(synCtx);
+                }
+            }
+            sendToChild(synCtx, endpoint);
         }
     }  
 
@@ -0,0 +1,220 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.axis2.clustering.Member;
+import org.apache.synapse.endpoints.Endpoint;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base class of the load balance algorithms which choose endpoints based on the load they
+ * observe on each endpoint. It keeps the number of messages in flight and a peak EWMA
+ * (exponentially weighted moving average) of the latency of each endpoint, updated from the
+ * feedback reported by the load balance endpoint. All the state is updated without a lock.
+ */
+public abstract class AbstractFeedbackAlgorithm implements FeedbackLoadbalanceAlgorithm {
+
+    /** The default time over which old latencies lose their weight, in milliseconds */
+    public static final long DEFAULT_DECAY_TIME = 10000;
+
+    /**
+     * Endpoints list for the algorithm
+     */
+    protected List<Endpoint> endpoints = null;
+
+    /** Load balance endpoint */
+    protected Endpoint loadBalanceEndpoint = null;
+
+    /** Time over which old latencies lose their weight, in milliseconds */
+    protected long decayTime = DEFAULT_DECAY_TIME;
+
+    private final ConcurrentMap<Endpoint, EndpointLoad> loads =
+            new ConcurrentHashMap<Endpoint, EndpointLoad>();
+
+    @Override
+    public void setApplicationMembers(List<Member> members) {}
+
+    @Override
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    @Override
+    public void setLoadBalanceEndpoint(Endpoint endpoint) {
+        this.loadBalanceEndpoint = endpoint;
+    }
+
+    @Override
+    public Member getNextApplicationMember(AlgorithmContext algorithmContext) {
+        // application members do not report any feedback
+        return null;
+    }
+
+    @Override
+    public void reset(AlgorithmContext algorithmContext) {
+        loads.clear();
+    }
+
+    @Override
+    public abstract LoadbalanceAlgorithm clone();
+
+    @Override
+    public void onResponse(Endpoint endpoint, long latency) {
+        EndpointLoad load = getLoad(endpoint);
+        load.release();
+        load.observe(latency, System.currentTimeMillis());
+    }
+
+    @Override
+    public void onRelease(Endpoint endpoint) {
+        getLoad(endpoint).release();
+    }
+
+    /**
+     * Get the load of the given endpoint, creating it if the endpoint has not been seen before
+     *
+     * @param endpoint a child endpoint
+     * @return the load of the endpoint
+     */
+    protected EndpointLoad getLoad(Endpoint endpoint) {
+        EndpointLoad load = loads.get(endpoint);
+        if (load == null) {
+            EndpointLoad newLoad = new EndpointLoad(decayTime);
+            load = loads.putIfAbsent(endpoint, newLoad);
+            if (load == null) {
+                load = newLoad;
+            }
+        }
+        return load;
+    }
+
+    /**
+     * Mark a message as being sent to the given endpoint, and return the endpoint
+     *
+     * @param endpoint the chosen endpoint, or null if no endpoint could be chosen
+     * @return the given endpoint
+     */
+    protected Endpoint choose(Endpoint endpoint) {
+        if (endpoint != null) {
+            getLoad(endpoint).acquire();
+        }
+        return endpoint;
+    }
+
+    /**
+     * The number of messages in flight and the latency observed on an endpoint
+     */
+    public static class EndpointLoad {
+
+        /** The cost of an endpoint with messages in flight but no latency observed yet */
+        private static final double PENALTY = Integer.MAX_VALUE;
+
+        private final AtomicInteger inFlight = new AtomicInteger(0);
+        private final AtomicReference<Latency> latency =
+                new AtomicReference<Latency>(new Latency(0, System.currentTimeMillis()));
+        private final long decayTime;
+
+        private EndpointLoad(long decayTime) {
+            this.decayTime = decayTime > 0 ? decayTime : DEFAULT_DECAY_TIME;
+        }
+
+        private void acquire() {
+            inFlight.incrementAndGet();
+        }
+
+        private void release() {
+            int current;
+            do {
+                current = inFlight.get();
+            } while (current > 0 && !inFlight.compareAndSet(current, current - 1));
+        }
+
+        /**
+         * Add a latency to the average. A latency higher than the average replaces it at once,
+         * so that a slowing down endpoint is avoided immediately, while lower latencies bring
+         * the average down gradually.
+         */
+        private void observe(long value, long now) {
+            Latency current;
+            Latency next;
+            do {
+                current = latency.get();
+                double average;
+                if (value > current.average) {
+                    average = value;
+                } else {
+                    double weight = current.weight(now, decayTime);
+                    average = current.average * weight + value * (1 - weight);
+                }
+                next = new Latency(average, Math.max(now, current.time));
+            } while (!latency.compareAndSet(current, next));
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        /**
+         * @param now the current time
+         * @return the average latency, decayed towards 0 for the time without any latency
+         * observed, so that an endpoint which is not used becomes a candidate again
+         */
+        public double getLatency(long now) {
+            return latency.get().decayTo(now, decayTime);
+        }
+
+        /**
+         * @param now the current time
+         * @return the expected time to serve one more message on this endpoint
+         */
+        public double getCost(long now) {
+            double average = getLatency(now);
+            int pending = inFlight.get();
+            if (average == 0 && pending > 0) {
+                return PENALTY + pending;
+            }
+            return average * (pending + 1);
+        }
+    }
+
+    private static class Latency {
+
+        private final double average;
+        private final long time;
+
+        private Latency(double average, long time) {
+            this.average = average;
+            this.time = time;
+        }
+
+        private double weight(long now, long decayTime) {
+            return Math.exp(-(double) Math.max(now - time, 0) / decayTime);
+        }
+
+        private double decayTo(long now, long decayTime) {
+            return average * weight(now, decayTime);
+        }
+    }
+}
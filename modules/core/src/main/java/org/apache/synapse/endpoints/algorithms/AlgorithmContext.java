@@ -25,6 +25,7 @@ import org.apache.synapse.util.Replicator;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Keeps the runtime state of the algorithm
@@ -49,7 +50,7 @@ public class AlgorithmContext {
     private String PROPERTY_KEY_PREFIX;
 
     /* The pointer to current epr - The position of the current EPR */
-    private int currentEPR = 0;
+    private final AtomicInteger currentEPR = new AtomicInteger(0);
 
     /* The map of properties stored locally */
     private Map<String, Object> localProperties;
@@ -83,7 +84,7 @@ public class AlgorithmContext {
                 return ((Integer) value);
             }
         } else {
-            return currentEPR;
+            return currentEPR.get();
         }
         return 0;
     }
@@ -94,10 +95,41 @@ public class AlgorithmContext {
      * @param currentEPR The current position
      */
     public void setCurrentEndpointIndex(int currentEPR) {
-        this.currentEPR = currentEPR;
+        this.currentEPR.set(currentEPR);
         cfgCtx.setNonReplicableProperty(CURRENT_EPR_PROP_KEY, currentEPR);
     }
 
+    /**
+     * Move the current EPR to the next position, going back to the first position after the
+     * last one. Without clustering this does not take a lock, so that concurrent messages can
+     * move the position at the same time, each of them getting a different position.
+     *
+     * @param endpointCount The number of endpoints (or members) to go through
+     * @return The position of the current EPR before it was moved
+     */
+    public int getAndIncrementEndpointIndex(int endpointCount) {
+        if (isClusteringEnabled) {
+            synchronized (this) {
+                int current = getCurrentEndpointIndex();
+                if (current >= endpointCount) {
+                    current = 0;
+                }
+                setCurrentEndpointIndex(current == endpointCount - 1 ? 0 : current + 1);
+                return current;
+            }
+        }
+
+        while (true) {
+            int value = currentEPR.get();
+            // the list of endpoints could have shrunk since the position was last moved
+            int current = value >= endpointCount ? 0 : value;
+            int next = current == endpointCount - 1 ? 0 : current + 1;
+            if (currentEPR.compareAndSet(value, next)) {
+                return current;
+            }
+        }
+    }
+
     /**
      * Get the configuration context instance . This is only available for cluster env.
      *
@@ -0,0 +1,50 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.synapse.endpoints.Endpoint;
+
+/**
+ * A load balance algorithm which chooses endpoints based on how they handled the previous
+ * messages. The load balance endpoint reports the outcome of every message sent to a child
+ * endpoint chosen by such an algorithm, so that the algorithm can track the messages in flight
+ * and the latency of each endpoint.
+ *
+ * <p>Every endpoint returned by getNextEndpoint(...) is followed by exactly one call to either
+ * onResponse(...) or onRelease(...) for that endpoint.</p>
+ */
+public interface FeedbackLoadbalanceAlgorithm extends LoadbalanceAlgorithm {
+
+    /**
+     * A message sent to the given endpoint received a response, or was dropped after timing out
+     *
+     * @param endpoint the endpoint chosen for the message
+     * @param latency the time taken by the endpoint, in milliseconds
+     */
+    void onResponse(Endpoint endpoint, long latency);
+
+    /**
+     * A message sent to the given endpoint is no longer in flight, without a latency to report.
+     * i.e. the endpoint failed, or no response is expected for the message
+     *
+     * @param endpoint the endpoint chosen for the message
+     */
+    void onRelease(Endpoint endpoint);
+}
@@ -0,0 +1,102 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.ManagedLifecycle;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.PropertyInclude;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.mediators.MediatorProperty;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This algorithm sends each message to the endpoint expected to serve it the fastest. The
+ * expected time is the peak EWMA of the latency of the endpoint, multiplied by the number of
+ * messages in flight to the endpoint (plus the new one).
+ *
+ * <p> The peak EWMA jumps to a latency higher than the current average at once, and comes down
+ * gradually with lower latencies. Hence an endpoint which slows down stops receiving messages
+ * immediately, and gets them back as it recovers. The average also decays while an endpoint is
+ * not used, so that it is tried again after a while. The decay time can be set with the
+ * loadbalance.latency.decayTime property of the load balance endpoint, in milliseconds.</p>
+ */
+public class PeakEWMAAlgorithm extends AbstractFeedbackAlgorithm implements ManagedLifecycle {
+
+    private static final Log log = LogFactory.getLog(PeakEWMAAlgorithm.class);
+
+    public static final String LB_LATENCY_DECAY_TIME = "loadbalance.latency.decayTime";
+
+    @Override
+    public Endpoint getNextEndpoint(MessageContext synCtx, AlgorithmContext algorithmContext) {
+        int size = endpoints.size();
+        if (size == 0) {
+            return null;
+        }
+
+        // start from a random endpoint, so that endpoints with the same cost share the load
+        long now = System.currentTimeMillis();
+        int start = ThreadLocalRandom.current().nextInt(size);
+        Endpoint best = null;
+        double bestCost = 0;
+        for (int i = 0; i < size; i++) {
+            Endpoint endpoint = endpoints.get((start + i) % size);
+            if (!endpoint.readyToSend()) {
+                continue;
+            }
+            double cost = getLoad(endpoint).getCost(now);
+            if (best == null || cost < bestCost) {
+                best = endpoint;
+                bestCost = cost;
+            }
+        }
+        return choose(best);
+    }
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        if (loadBalanceEndpoint instanceof PropertyInclude) {
+            MediatorProperty val = ((PropertyInclude) loadBalanceEndpoint).getProperty(
+                    LB_LATENCY_DECAY_TIME);
+            if (val != null) {
+                decayTime = Long.parseLong(val.getValue().trim());
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Peak EWMA load balancing with a decay time of " + decayTime + "ms");
+        }
+    }
+
+    @Override
+    public void destroy() {}
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new PeakEWMAAlgorithm();
+    }
+
+    @Override
+    public String getName() {
+        return PeakEWMAAlgorithm.class.getName();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.endpoints.Endpoint;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * This algorithm picks two endpoints at random, and sends the message to the one with fewer
+ * messages in flight. This avoids an endpoint which is slow to respond, as its messages pile up,
+ * without all the load balancers (or threads) herding on the same least loaded endpoint.
+ *
+ * <p> If only one of the two endpoints is ready, the message goes to that one. If neither is
+ * ready, the message goes to the next ready endpoint after the first one.</p>
+ */
+public class PowerOfTwoChoicesAlgorithm extends AbstractFeedbackAlgorithm {
+
+    @Override
+    public Endpoint getNextEndpoint(MessageContext synCtx, AlgorithmContext algorithmContext) {
+        int size = endpoints.size();
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            Endpoint endpoint = endpoints.get(0);
+            return choose(endpoint.readyToSend() ? endpoint : null);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        Endpoint a = endpoints.get(first);
+        Endpoint b = endpoints.get(second);
+        boolean aReady = a.readyToSend();
+        boolean bReady = b.readyToSend();
+        if (aReady && bReady) {
+            return choose(getLoad(b).getInFlight() < getLoad(a).getInFlight() ? b : a);
+        } else if (aReady) {
+            return choose(a);
+        } else if (bReady) {
+            return choose(b);
+        }
+
+        for (int i = 1; i < size; i++) {
+            Endpoint endpoint = endpoints.get((first + i) % size);
+            if (endpoint.readyToSend()) {
+                return choose(endpoint);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public LoadbalanceAlgorithm clone() {
+        return new PowerOfTwoChoicesAlgorithm();
+    }
+
+    @Override
+    public String getName() {
+        return PowerOfTwoChoicesAlgorithm.class.getName();
+    }
+}
@@ -35,6 +35,8 @@ import org.apache.commons.logging.LogFactory;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.net.URL;
 import java.net.MalformedURLException;
 
@@ -50,6 +52,10 @@ import java.net.MalformedURLException;
  * to endpoint weight to total weights ratio. If the ratios are different it tries to align them
  * by changing the weights dynamically.</p>
  *
+ * <p> The sends of a round are laid out in an immutable schedule, and every message takes a
+ * ticket which decides its position in the schedule. At the end of a round the schedule is
+ * replaced as a whole with the one for the next round, recalculating the weights when required.
+ * Hence choosing an endpoint does not take a lock.</p>
  */
 public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifecycle {
     private static final Log log = LogFactory.getLog(WeightedRRLCAlgorithm.class);
@@ -63,17 +69,15 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     /** We keep a sorted array of endpoint states, first state will point to the
      * endpoint with the highest weight */
     private WeightedState[] list;
-    /** Keep track of the current poistion we are operating on the endpointStates array */
-    private int endpointCursor = 0;
     /** How many rounds should go before re-calculating the dynamic weights based
      * on number of active connections */
     private int roundsPerRecalculation = 1;
-    /** How many rounds we have gone throug */
-    private int currentRound = 0;
     /** total weight of the endpoints */
     private int totalWeight = 0;
-    /** current connection count */
-    private int totalConnections = 0;
+    /** The schedule of the current round */
+    private final AtomicReference<Schedule> schedule = new AtomicReference<Schedule>();
+    /** Tickets handed out to the messages, in the order they ask for an endpoint */
+    private final AtomicLong tickets = new AtomicLong(0);
 
     public static final String LB_WEIGHTED_RRLC_ROUNDS_PER_RECAL =
             "loadbalance.weightedRRLC.roundsPerRecal";
@@ -96,33 +100,23 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     }
 
     @Override
-    public synchronized Endpoint getNextEndpoint(MessageContext messageContext,
-                                                 AlgorithmContext algorithmContext) {                
-        WeightedState s = list[endpointCursor];
-
-        // once we choose an endpoit we countinue to use that until all
-        // the chances are over for this round
-        if (!s.isSendsAvailable()) {
-            // reset this state for this round
-            s.resetPerRound();
-            do {
-                if (++endpointCursor == list.length) {
-                    endpointCursor = 0;             
-                    // if we we have gone through enough cycles to recalculate the weights based
-                    // on the current connection count recalculate the current weights
-                    if (++currentRound == roundsPerRecalculation) {
-                        currentRound = 0;
-                        // we recalculate the current weights based on the connections and weights
-                        reCalcuateWeights(messageContext);
-                    }
-                }
-                s = list[endpointCursor];
-            } while (!s.isSendsAvailable());
+    public Endpoint getNextEndpoint(MessageContext messageContext,
+                                    AlgorithmContext algorithmContext) {
+        long ticket = tickets.getAndIncrement();
+        while (true) {
+            Schedule current = schedule.get();
+            int state = current.getState(ticket);
+            if (state >= 0) {
+                // get the endpoint corresponding to the state of this ticket and return it
+                return endpoints.get(list[state].getEndpointPosition());
+            } else if (ticket < current.start) {
+                // a ticket of a round which is long over, take a ticket in the current round
+                ticket = tickets.getAndIncrement();
+            } else {
+                // the round is over, only one of the threads installs the schedule of the next
+                schedule.compareAndSet(current, nextSchedule(current, messageContext));
+            }
         }
-
-        s.chosenToSend();
-        // get the endpoint correspondint to the current poistion and return it
-        return endpoints.get(s.getEndpointPosition());
     }
 
     /**
@@ -225,6 +219,8 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
                 return o2.getFixedWeight() - o1.getFixedWeight();
             }
         });
+
+        schedule.set(new Schedule(tickets.get(), 0, getFixedWeights(), 0, null));
     }
 
     @Override
@@ -235,9 +231,8 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
 
     @Override
     public void reset(AlgorithmContext algorithmContext) {
-        for (WeightedState state : list) {
-            state.reset();
-        }
+        Schedule current = schedule.get();
+        schedule.set(new Schedule(tickets.get(), current.round, getFixedWeights(), 0, null));
     }
 
     @Override
@@ -250,8 +245,14 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
         return null;
     }
 
+    /**
+     * Position of the endpoint state chosen for the last message, in the sorted states array
+     *
+     * @return the position of the current endpoint state
+     */
     public int getEndpointCursor() {
-        return endpointCursor;
+        int state = schedule.get().getState(tickets.get() - 1);
+        return state >= 0 ? state : 0;
     }
 
     public int getRoundsPerRecalculation() {
@@ -259,7 +260,7 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     }
 
     public int getCurrentRound() {
-        return currentRound;
+        return roundsPerRecalculation > 0 ? schedule.get().round % roundsPerRecalculation : 0;
     }
 
     public int getTotalWeight() {
@@ -267,15 +268,53 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     }
 
     public int getTotalConnections() {
-        return totalConnections;
+        return schedule.get().totalConnections;
+    }
+
+    private int[] getFixedWeights() {
+        int[] weights = new int[list.length];
+        for (int i = 0; i < list.length; i++) {
+            weights[i] = list[i].getFixedWeight();
+        }
+        return weights;
+    }
+
+    /**
+     * Create the schedule of the round following the given one. If we have gone through enough
+     * rounds, the weights are recalculated based on the current connection count.
+     *
+     * @param current the schedule of the round which is over
+     * @param messageContext synapse message context
+     * @return the schedule of the next round
+     */
+    private Schedule nextSchedule(Schedule current, MessageContext messageContext) {
+        int round = current.round + 1;
+        int[] weights = current.weights;
+        int totalConnections = current.totalConnections;
+        if (roundsPerRecalculation > 0 && round % roundsPerRecalculation == 0) {
+            int[] connections = getConnectionCounts(messageContext);
+            totalConnections = 0;
+            for (int count : connections) {
+                totalConnections += count;
+            }
+            if (totalConnections > 0) {
+                weights = new int[list.length];
+                for (int i = 0; i < list.length; i++) {
+                    weights[i] = list[i].calculateWeight(connections[i], totalConnections);
+                }
+            }
+        }
+        return new Schedule(current.start + current.states.length, round, weights,
+                totalConnections, current);
     }
 
     /**
-     * Recalculate the dynamic weights based on the active connection count.
+     * Get the active connection count of each endpoint state.
      *
      * @param messageContext synapse message context
+     * @return the connection counts, in the order of the states array
      */
-    private void reCalcuateWeights(MessageContext messageContext) {
+    private int[] getConnectionCounts(MessageContext messageContext) {
         Map connectionsMap = null;
         // fetch the connections map
         if (messageContext instanceof Axis2MessageContext) {
@@ -295,22 +334,13 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
             throw new SynapseException(msg);
         }
 
-        for (WeightedState state : list) {
-            String key = state.getKeyToConnectionCount();
+        int[] connections = new int[list.length];
+        for (int i = 0; i < list.length; i++) {
+            String key = list[i].getKeyToConnectionCount();
             AtomicInteger integer = (AtomicInteger) connectionsMap.get(key);
-
-            if (integer != null) {
-                state.setCurrentConnectionCount(integer.get());
-            } else {
-                state.setCurrentConnectionCount(0);
-            }
-
-            totalConnections += state.getCurrentConnectionCount();
-        }
-
-        for (WeightedState state : list) {
-            state.reCalcuateWeight();
+            connections[i] = integer != null ? integer.get() : 0;
         }
+        return connections;
     }
 
     @Override
@@ -321,6 +351,77 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
     @Override
     public void destroy() {}
 
+    /**
+     * The sends of a round, with the weights they were laid out from. Once created a schedule
+     * is never changed, so that it can be read by any number of threads without a lock.
+     */
+    private class Schedule {
+        /** the ticket of the first message of this round */
+        private final long start;
+        /** the number of rounds gone through before this one */
+        private final int round;
+        /** the current weight of each endpoint state */
+        private final int[] weights;
+        /** the connection count the weights were calculated from */
+        private final int totalConnections;
+        /** the endpoint state chosen for each message of this round */
+        private final int[] states;
+        /** the start and states of the previous round, for the tickets still being served */
+        private final long previousStart;
+        private final int[] previousStates;
+
+        private Schedule(long start, int round, int[] weights, int totalConnections,
+                         Schedule previous) {
+            this.start = start;
+            this.round = round;
+            this.weights = weights;
+            this.totalConnections = totalConnections;
+            this.states = layOut(weights);
+            this.previousStart = previous != null ? previous.start : start;
+            this.previousStates = previous != null ? previous.states : new int[0];
+        }
+
+        /**
+         * Once we choose an endpoint we continue to use that until all the chances are over
+         * for this round, then we move on to the next endpoint with a weight.
+         */
+        private int[] layOut(int[] weights) {
+            int total = 0;
+            for (int weight : weights) {
+                total += weight;
+            }
+            if (total == 0) {
+                // no endpoint has a chance, so give each of them one in turn
+                weights = new int[weights.length];
+                Arrays.fill(weights, 1);
+                total = weights.length;
+            }
+            int[] states = new int[total];
+            int position = 0;
+            for (int i = 0; i < weights.length; i++) {
+                for (int j = 0; j < weights[i]; j++) {
+                    states[position++] = i;
+                }
+            }
+            return states;
+        }
+
+        /**
+         * @param ticket the ticket of a message
+         * @return the endpoint state for the given ticket, or -1 if the ticket is not of
+         * this or the previous round
+         */
+        private int getState(long ticket) {
+            if (ticket >= start) {
+                return ticket - start < states.length ? states[(int) (ticket - start)] : -1;
+            }
+            if (ticket >= previousStart && ticket - previousStart < previousStates.length) {
+                return previousStates[(int) (ticket - previousStart)];
+            }
+            return -1;
+        }
+    }
+
     /**
      * Simple class for holding the states about the endpoints.
      */
@@ -329,12 +430,6 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
         private int fixedWeight = 0;
         /** position of the endpoint related to this state */
         private int endpointPosition = 0;
-        /** current weight of the algorithm, this is calculated based on sends through this epr */
-        private int currentWeight = 1;
-        /** calculated weight for this round */
-        private int currentCalcWeight = 0;
-        /** current connection count */
-        private int currentConnectionCount = 0;
         /** minimum possible weight */
         private int minWeight = 0;
         /** maximum possible weight */
@@ -345,8 +440,6 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
         public WeightedState(int weight, int endpointPosition, String keyToConnectionCount) {
             this.fixedWeight = weight;
             this.endpointPosition = endpointPosition;
-            this.currentWeight = fixedWeight;
-            this.currentCalcWeight = fixedWeight;
             this.keyToConnectionCount = keyToConnectionCount;
             this.maxWeight = fixedWeight + LB_WEIGHTED_RRLC_WEIGHT_SKEW;
             this.minWeight = fixedWeight - LB_WEIGHTED_RRLC_WEIGHT_SKEW > 0 ?
@@ -361,18 +454,6 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
             return fixedWeight;
         }
 
-        public boolean isSendsAvailable() {
-            return currentCalcWeight > 0;
-        }
-
-        public void chosenToSend() {
-            currentCalcWeight--;
-        }
-
-        public int getCurrentWeight() {
-            return currentWeight;
-        }
-
         public void setMinWeight(int minWeight) {
             this.minWeight = minWeight;
         }
@@ -381,58 +462,39 @@ public class WeightedRRLCAlgorithm implements LoadbalanceAlgorithm, ManagedLifec
             return keyToConnectionCount;
         }
 
-        public void setCurrentWeight(int currentWeight) {
-            this.currentWeight = currentWeight;
-        }
-
-        public void setCurrentConnectionCount(int currentConnectionCount) {
-            this.currentConnectionCount = currentConnectionCount;
-        }
-
-        public int getCurrentConnectionCount() {
-            return currentConnectionCount;
-        }
-
         public void setMaxWeight(int maxWeight) {
             this.maxWeight = maxWeight;
         }
 
         /**
-         * Recalcualate the weights based on the current connection count for this set of rounds.         
+         * Calculate the weight based on the current connection count for this set of rounds.
+         *
+         * @param currentConnectionCount the connection count of this endpoint
+         * @param totalConnections the connection count of all the endpoints, greater than 0
+         * @return the weight for the next set of rounds
          */
-        public void reCalcuateWeight() {
-            if (totalConnections > 0) {
-                double weightRatio = (double) fixedWeight / totalWeight;
-                double connectionRatio = (double) currentConnectionCount / totalConnections;
-                double diff = weightRatio - connectionRatio;
-                double multiple = diff * totalConnections;
-                double floor = Math.floor(multiple);
-
-                if (floor - multiple >= -0.5) {
-                    currentWeight = fixedWeight + (int) floor;
-                } else {
-                    currentWeight = fixedWeight + (int) Math.ceil(multiple);
-                }
-
-                if (diff < 0) {
-                    // we always return the max from minWeight and calculated Current weight
-                    currentWeight = minWeight > currentWeight ? minWeight : currentWeight;
-                } else {
-                    // we always return the min from maxWeight and calculated Current weight
-                    currentWeight = maxWeight < currentWeight ? maxWeight : currentWeight;
-                }
-                currentCalcWeight = currentWeight;
+        public int calculateWeight(int currentConnectionCount, int totalConnections) {
+            int currentWeight;
+            double weightRatio = (double) fixedWeight / totalWeight;
+            double connectionRatio = (double) currentConnectionCount / totalConnections;
+            double diff = weightRatio - connectionRatio;
+            double multiple = diff * totalConnections;
+            double floor = Math.floor(multiple);
+
+            if (floor - multiple >= -0.5) {
+                currentWeight = fixedWeight + (int) floor;
+            } else {
+                currentWeight = fixedWeight + (int) Math.ceil(multiple);
             }
-        }
 
-        public void resetPerRound() {
-            currentCalcWeight = currentWeight;
-        }
-
-        public void reset() {
-            currentWeight = fixedWeight;
-            currentConnectionCount = 0;
-            currentCalcWeight = fixedWeight;
+            if (diff < 0) {
+                // we always return the max from minWeight and calculated Current weight
+                currentWeight = minWeight > currentWeight ? minWeight : currentWeight;
+            } else {
+                // we always return the min from maxWeight and calculated Current weight
+                currentWeight = maxWeight < currentWeight ? maxWeight : currentWeight;
+            }
+            return currentWeight;
         }
     }
 }
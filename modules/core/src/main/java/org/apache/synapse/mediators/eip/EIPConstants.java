@@ -32,4 +32,10 @@ public final class EIPConstants {
 
     /** Delimiter for the message sequence value */
     public static final String MESSAGE_SEQUENCE_DELEMITER = "/";
+
+    /**
+     * Total of the message sequence when it is not yet known at the time the message is created,
+     * as with a streaming split. The last message of such a sequence carries the actual total
+     */
+    public static final String MESSAGE_COUNT_UNKNOWN = "?";
 }
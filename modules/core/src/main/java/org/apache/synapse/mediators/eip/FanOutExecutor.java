@@ -0,0 +1,193 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.Mediator;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.mediators.MediatorWorker;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatches the messages created by a splitting mediator (clone or iterate) to their target
+ * sequences, with at most a configured number of them being mediated on the Synapse worker pool
+ * at any given time.
+ *
+ * When that limit is reached, the message is mediated by the thread running the splitting
+ * mediator itself. This slows the splitting loop down to the pace of the targets without
+ * blocking it on other workers, so that a single large split can not flood the shared worker
+ * pool and starve the other services.
+ */
+public class FanOutExecutor {
+
+    private static final Log log = LogFactory.getLog(FanOutExecutor.class);
+
+    /** The JMX category of the fan-out statistics of the splitting mediators */
+    public static final String FAN_OUT_EXECUTOR_VIEW = "FanOutExecutor";
+
+    private final int maxInFlight;
+    private final Semaphore permits;
+
+    /** The name under which the statistics are registered in JMX, if they are registered */
+    private String mbeanName = null;
+
+    /** Fan-out statistics, exposed through the FanOutExecutorView */
+    private final AtomicLong dispatchedCount = new AtomicLong(0);
+    private final AtomicLong callerRunsCount = new AtomicLong(0);
+    private final AtomicLong completedCount = new AtomicLong(0);
+    private final AtomicLong totalLatency = new AtomicLong(0);
+    private final AtomicLong maxLatency = new AtomicLong(0);
+
+    public FanOutExecutor(int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("The maximum number of in-flight messages " +
+                    "must be positive : " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Create the fan-out executor of a splitting mediator if its maxInFlight is set, and register
+     * its statistics in JMX
+     *
+     * @param maxInFlight the maxInFlight of the mediator, or 0 if it is not set
+     * @param name the ID of the mediator, or its type if it has no ID
+     * @param mediator the mediator, which tells apart the mediators with the same name
+     * @return the executor, or null if the maxInFlight is not set
+     */
+    public static FanOutExecutor create(int maxInFlight, String name, Object mediator) {
+        if (maxInFlight <= 0) {
+            return null;
+        }
+        FanOutExecutor executor = new FanOutExecutor(maxInFlight);
+        executor.mbeanName = name + "-" + Integer.toHexString(System.identityHashCode(mediator));
+        MBeanRegistrar.getInstance().registerMBean(new FanOutExecutorView(executor),
+                FAN_OUT_EXECUTOR_VIEW, executor.mbeanName);
+        return executor;
+    }
+
+    /**
+     * Unregister the statistics of this executor from JMX, once its mediator is destroyed
+     */
+    public void destroy() {
+        if (mbeanName != null) {
+            MBeanRegistrar.getInstance().unRegisterMBean(FAN_OUT_EXECUTOR_VIEW, mbeanName);
+            mbeanName = null;
+        }
+    }
+
+    /**
+     * Mediate the given message through the given sequence, on the Synapse worker pool if the
+     * number of in-flight messages permits it, or in the calling thread otherwise
+     *
+     * @param seq the target sequence
+     * @param synCtx the message created by the split
+     */
+    public void execute(Mediator seq, MessageContext synCtx) {
+        dispatchedCount.incrementAndGet();
+        final long start = System.currentTimeMillis();
+        final MediatorWorker worker = new MediatorWorker(seq, synCtx);
+
+        if (permits.tryAcquire()) {
+            try {
+                synCtx.getEnvironment().getExecutorService().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            worker.run();
+                        } finally {
+                            permits.release();
+                            completed(start);
+                        }
+                    }
+                });
+                return;
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                if (log.isDebugEnabled()) {
+                    log.debug("Worker pool rejected the split message, mediating it in the " +
+                            "calling thread");
+                }
+            }
+        }
+
+        callerRunsCount.incrementAndGet();
+        try {
+            worker.run();
+        } finally {
+            completed(start);
+        }
+    }
+
+    private void completed(long start) {
+        long latency = System.currentTimeMillis() - start;
+        completedCount.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        long max;
+        while (latency > (max = maxLatency.get())) {
+            if (maxLatency.compareAndSet(max, latency)) {
+                break;
+            }
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlightCount() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getAverageLatency() {
+        long completed = completedCount.get();
+        return completed == 0 ? 0 : totalLatency.get() / completed;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    public void resetStatistics() {
+        dispatchedCount.set(0);
+        callerRunsCount.set(0);
+        completedCount.set(0);
+        totalLatency.set(0);
+        maxLatency.set(0);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip;
+
+public class FanOutExecutorView implements FanOutExecutorViewMBean {
+
+    private FanOutExecutor executor;
+
+    public FanOutExecutorView(FanOutExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public int getMaxInFlight() {
+        return executor.getMaxInFlight();
+    }
+
+    @Override
+    public int getInFlightCount() {
+        return executor.getInFlightCount();
+    }
+
+    @Override
+    public long getDispatchedCount() {
+        return executor.getDispatchedCount();
+    }
+
+    @Override
+    public long getCallerRunsCount() {
+        return executor.getCallerRunsCount();
+    }
+
+    @Override
+    public long getCompletedCount() {
+        return executor.getCompletedCount();
+    }
+
+    @Override
+    public long getAverageLatency() {
+        return executor.getAverageLatency();
+    }
+
+    @Override
+    public long getMaxLatency() {
+        return executor.getMaxLatency();
+    }
+
+    @Override
+    public void resetStatistics() {
+        executor.resetStatistics();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip;
+
+/**
+ * JMX MBean interface for monitoring the messages dispatched by a clone or iterate mediator.
+ */
+public interface FanOutExecutorViewMBean {
+
+    /**
+     * Get the maximum number of split messages mediated on the worker pool at a time
+     *
+     * @return An integer
+     */
+    public int getMaxInFlight();
+
+    /**
+     * Get the number of split messages currently being mediated on the worker pool
+     *
+     * @return An integer
+     */
+    public int getInFlightCount();
+
+    /**
+     * Get the number of split messages dispatched to the target sequences
+     *
+     * @return A long
+     */
+    public long getDispatchedCount();
+
+    /**
+     * Get the number of split messages mediated by the splitting thread, since the maximum
+     * number of in-flight messages was reached
+     *
+     * @return A long
+     */
+    public long getCallerRunsCount();
+
+    /**
+     * Get the number of split messages which completed their mediation
+     *
+     * @return A long
+     */
+    public long getCompletedCount();
+
+    /**
+     * Get the average time (in milliseconds) from the dispatch to the completion of the
+     * mediation of a split message
+     *
+     * @return A long
+     */
+    public long getAverageLatency();
+
+    /**
+     * Get the maximum time (in milliseconds) from the dispatch to the completion of the
+     * mediation of a split message
+     *
+     * @return A long
+     */
+    public long getMaxLatency();
+
+    /**
+     * Reset the fan-out statistics
+     */
+    public void resetStatistics();
+
+}
@@ -65,6 +65,20 @@ public class Target {
      * mediation returns <code>false</code>, <code>true</code> otherwise
      */
     public boolean mediate(MessageContext synCtx) {
+        return mediate(synCtx, null);
+    }
+
+    /**
+     * process the message through this target, handing the message over to the given fan-out
+     * executor instead of the environment if the target sequence is mediated asynchronously
+     *
+     * @param synCtx - MessageContext to be mediated
+     * @param fanOutExecutor - executor bounding the asynchronous mediations of the splitting
+     * mediator, or <code>null</code> to inject the message asynchronously to the environment
+     * @return <code>false</code> if the target is mediated as synchronous and the sequence
+     * mediation returns <code>false</code>, <code>true</code> otherwise
+     */
+    public boolean mediate(MessageContext synCtx, FanOutExecutor fanOutExecutor) {
 
         boolean returnValue = true;
 
@@ -97,7 +111,7 @@ public class Target {
                 if (log.isDebugEnabled()) {
                     log.debug("Asynchronously mediating using the in-lined anonymous sequence");
                 }
-                synCtx.getEnvironment().injectAsync(synCtx, sequence);
+                injectAsync(synCtx, sequence, fanOutExecutor);
             } else {
                 if (log.isDebugEnabled()) {
                     log.debug("Synchronously mediating using the in-lined anonymous sequence");
@@ -112,7 +126,7 @@ public class Target {
                         log.debug("Asynchronously mediating using the sequence " +
                                 "named : " + sequenceRef);
                     }
-                    synCtx.getEnvironment().injectAsync(synCtx, refSequence);
+                    injectAsync(synCtx, refSequence, fanOutExecutor);
                 } else {
                     if (log.isDebugEnabled()) {
                         log.debug("Synchronously mediating using the sequence " +
@@ -147,6 +161,15 @@ public class Target {
         return returnValue;
     }
 
+    private void injectAsync(MessageContext synCtx, SequenceMediator seq,
+                             FanOutExecutor fanOutExecutor) {
+        if (fanOutExecutor != null) {
+            fanOutExecutor.execute(seq, synCtx);
+        } else {
+            synCtx.getEnvironment().injectAsync(synCtx, seq);
+        }
+    }
+
     private void handleException(String message) {
         log.error(message);
         throw new SynapseException(message);
@@ -26,19 +26,38 @@ import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An instance of this class is created to manage each aggregation group, and it holds
- * the aggregation properties and the messages collected during aggregation. This class also
- * times out itself after the timeout expires it
+ * the aggregation properties and the messages collected during aggregation. Aggregates with
+ * a timeout are expired by the AggregateMediator which created them, in the order of their
+ * expiry times
  */
-public class Aggregate extends TimerTask {
+public class Aggregate {
 
     private static final Log log = LogFactory.getLog(Aggregate.class);
 
+    /** Orders aggregates by their expiry time, and then by their creation order */
+    static final Comparator<Aggregate> EXPIRY_ORDER = new Comparator<Aggregate>() {
+        public int compare(Aggregate a1, Aggregate a2) {
+            if (a1.expiryTimeMillis != a2.expiryTimeMillis) {
+                return a1.expiryTimeMillis < a2.expiryTimeMillis ? -1 : 1;
+            }
+            return a1.sequence < a2.sequence ? -1 : (a1.sequence == a2.sequence ? 0 : 1);
+        }
+    };
+
+    private static final AtomicLong sequenceGenerator = new AtomicLong(0);
+
+    /** The creation order of this aggregate, used to order aggregates expiring together */
+    private final long sequence = sequenceGenerator.incrementAndGet();
+    /** The time in millis at which this aggregation was started */
+    private final long createdTimeMillis = System.currentTimeMillis();
+
     private long timeoutMillis = 0;
     /** The time in millis at which this aggregation should be considered as expired */
     private long expiryTimeMillis = 0;
@@ -49,9 +68,19 @@ public class Aggregate extends TimerTask {
     private String correlation = null;
     /** The AggregateMediator that should be invoked on completion of the aggregation */
     private AggregateMediator aggregateMediator = null;
+    /**
+     * The messages collected. In the incremental aggregation mode this only holds the first
+     * message, into which the other messages are merged as they arrive
+     */
     private List<MessageContext> messages = new ArrayList<MessageContext>();
-    private boolean locked = false;
-    private boolean completed = false;
+    /** The number of messages collected */
+    private int messageCount = 0;
+    /**
+     * The total number of messages in the sequence being aggregated, as carried by the collected
+     * messages, or -1 if it is not known (yet)
+     */
+    private int expectedCount = -1;
+    private volatile boolean completed = false;
     private SynapseEnvironment synEnv = null;
 
     /**
@@ -81,20 +110,54 @@ public class Aggregate extends TimerTask {
     }
 
     /**
-     * Add a message to the interlan message list
+     * Add a message to the interlan message list. In the incremental aggregation mode, the parts
+     * of the message selected by the aggregation expression are merged into the first message
+     * right away, and the message itself is not retained
      *
      * @param synCtx message to be added into this aggregation group
      * @return true if the message was added or false if not
      */
     public synchronized boolean addMessage(MessageContext synCtx) {
-        if (maxCount <= 0 || (maxCount > 0 && messages.size() < maxCount)) {
-            messages.add(synCtx);
+        if (completed) {
+            return false;
+        }
+        if (maxCount <= 0 || (maxCount > 0 && messageCount < maxCount)) {
+            updateExpectedCount(synCtx);
+            if (aggregateMediator.isIncrementalAggregation() && !messages.isEmpty()) {
+                aggregateMediator.mergeMessage(messages.get(0), synCtx);
+            } else {
+                messages.add(synCtx);
+            }
+            messageCount++;
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Read the total number of messages of the sequence being aggregated from a collected
+     * message. A message split while streaming does not know the total, unless it is the last
+     * one of the split, hence the total is taken from any message which carries it
+     *
+     * @param synCtx a message collected by this aggregation group
+     */
+    private void updateExpectedCount(MessageContext synCtx) {
+        if (expectedCount > 0) {
+            return;
+        }
+        Object prop = synCtx.getProperty(EIPConstants.MESSAGE_SEQUENCE +
+                (aggregateMediator.getId() != null ? "." + aggregateMediator.getId() : ""));
+        if (prop != null && prop instanceof String) {
+            String[] msgSequence = prop.toString().split(
+                    EIPConstants.MESSAGE_SEQUENCE_DELEMITER);
+            if (msgSequence.length > 1 &&
+                    !EIPConstants.MESSAGE_COUNT_UNKNOWN.equals(msgSequence[1])) {
+                expectedCount = Integer.parseInt(msgSequence[1]);
+            }
+        }
+    }
+
     /**
      * Has this aggregation group completed?
      *
@@ -109,22 +172,14 @@ public class Aggregate extends TimerTask {
             // if any messages have been collected, check if the completion criteria is met
             if (!messages.isEmpty()) {
 
-                // get total messages for this group, from the first message we have collected
-                MessageContext mc = messages.get(0);
-                Object prop = mc.getProperty(EIPConstants.MESSAGE_SEQUENCE +
-                        (aggregateMediator.getId() != null ? "." + aggregateMediator.getId() : ""));
-            
-                if (prop != null && prop instanceof String) {
-                    String[] msgSequence = prop.toString().split(
-                            EIPConstants.MESSAGE_SEQUENCE_DELEMITER);
-                    int total = Integer.parseInt(msgSequence[1]);
-
+                // the total messages for this group, as carried by the messages collected
+                if (expectedCount > 0) {
                     if (synLog.isTraceOrDebugEnabled()) {
-                        synLog.traceOrDebug(messages.size() +
-                                " messages of " + total + " collected in current aggregation");
+                        synLog.traceOrDebug(messageCount + " messages of " + expectedCount +
+                                " collected in current aggregation");
                     }
 
-                    if (messages.size() >= total) {
+                    if (messageCount >= expectedCount) {
                         synLog.traceOrDebug("Aggregation complete");
                         return true;
                     }
@@ -134,7 +189,7 @@ public class Aggregate extends TimerTask {
             }
 
             // if the minimum number of messages has been reached, its complete
-            if (minCount > 0 && messages.size() >= minCount) {
+            if (minCount > 0 && messageCount >= minCount) {
                 if (synLog.isTraceOrDebugEnabled()) {
                     synLog.traceOrDebug(
                             "Aggregation complete - the minimum : " + minCount
@@ -143,7 +198,7 @@ public class Aggregate extends TimerTask {
                 return true;
             }
 
-            if (maxCount > 0 && messages.size() >= maxCount) {
+            if (maxCount > 0 && messageCount >= maxCount) {
                 if (synLog.isTraceOrDebugEnabled()) {
                     synLog.traceOrDebug(
                             "Aggregation complete - the maximum : " + maxCount
@@ -203,8 +258,13 @@ public class Aggregate extends TimerTask {
         return new ArrayList<MessageContext>(messages);
     }
 
-    public void setMessages(List<MessageContext> messages) {
+    public synchronized void setMessages(List<MessageContext> messages) {
         this.messages = messages;
+        this.messageCount = messages.size();
+    }
+
+    public synchronized int getMessageCount() {
+        return messageCount;
     }
 
     public long getExpiryTimeMillis() {
@@ -215,41 +275,12 @@ public class Aggregate extends TimerTask {
         this.expiryTimeMillis = expiryTimeMillis;
     }
 
-    @Override
-    public void run() {
-        while (true) {
-            if (completed) {
-                break;
-            }
-            if (getLock()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Time : " + System.currentTimeMillis() + " and this aggregator " +
-                            "expired at : " + expiryTimeMillis);
-                }
-                synEnv.getExecutorService().execute(new AggregateTimeout(this));
-                break;
-            }
-        }
+    public SynapseEnvironment getSynapseEnvironment() {
+        return synEnv;
     }
 
-    private class AggregateTimeout implements Runnable {
-        private Aggregate aggregate = null;
-        AggregateTimeout(Aggregate aggregate) {
-            this.aggregate = aggregate;
-        }
-
-        @Override
-        public void run() {
-            aggregateMediator.completeAggregate(aggregate);
-        }
-    }
-
-    public synchronized boolean getLock() {
-        return !locked;
-    }
-
-    public void releaseLock() {
-        locked = false;
+    public long getCreatedTimeMillis() {
+        return createdTimeMillis;
     }
 
     public boolean isCompleted() {
@@ -259,4 +290,18 @@ public class Aggregate extends TimerTask {
     public void setCompleted(boolean completed) {
         this.completed = completed;
     }
+
+    /**
+     * Mark this aggregate as completed, unless it has already been completed. No more messages
+     * are collected once the aggregate has been completed
+     *
+     * @return true if the aggregate was marked as completed by this call
+     */
+    public synchronized boolean markCompleted() {
+        if (completed) {
+            return false;
+        }
+        completed = true;
+        return true;
+    }
 }
@@ -26,6 +26,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseLog;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.base.SequenceMediator;
@@ -34,9 +35,14 @@ import org.apache.synapse.mediators.eip.EIPUtils;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Aggregate a number of messages that are determined to be for a particular group, and combine
@@ -44,14 +50,23 @@ import java.util.Map;
  * an aggregator acts like a filter, and may look at a correlation XPath expression to select
  * messages for aggregation - or look at messageSequence number properties for aggregation or
  * let any other (i.e. non aggregatable) messages flow through
- * An instance of this mediator will register with a Timer to be notified after a specified timeout,
- * so that aggregations that never would complete could be timed out and cleared from memory and
- * any fault conditions handled
+ * In the incremental aggregation mode, each message is merged into the aggregated message as
+ * soon as it is collected, so that only the aggregated message is held in memory
+ * An instance of this mediator keeps at most one task scheduled with the Synapse Timer, due at
+ * the earliest expiry time of its pending aggregations, which expires the aggregations that
+ * reached their completion timeout, so that aggregations that never would complete could be
+ * timed out and cleared from memory and any fault conditions handled. No task is scheduled while
+ * there are no aggregations waiting for a completion timeout
  */
 public class AggregateMediator extends AbstractMediator implements ManagedLifecycle {
 
     private static final Log log = LogFactory.getLog(AggregateMediator.class);
 
+    /** The concurrency level hint given to the active aggregates map */
+    private static final int AGGREGATE_STORE_CONCURRENCY = 64;
+    /** JMX category of the aggregation statistics */
+    private static final String AGGREGATE_MEDIATOR_VIEW = "AggregateMediator";
+
     /** The duration as a number of milliseconds for this aggregation to complete */
     private long completionTimeoutMillis = 0;
     /** The minimum number of messages required to complete aggregation */
@@ -72,19 +87,48 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
      */
     private SynapseXPath aggregationExpression = null;
 
+    /**
+     * Whether the messages are merged into the aggregated message as they arrive, instead of
+     * being held until the aggregation completes
+     */
+    private boolean incrementalAggregation = false;
+
     /** This holds the reference sequence name of the */
     private String onCompleteSequenceRef = null;
     /** Inline sequence definition holder that holds the onComplete sequence */
     private SequenceMediator onCompleteSequence = null;
 
-    /** The active aggregates currently being processd */
-    private Map<String, Aggregate> activeAggregates =
-        Collections.synchronizedMap(new HashMap<String, Aggregate>());
+    /**
+     * The active aggregates currently being processd, looked up and started without locking the
+     * mediator, so that messages of different aggregation groups do not wait for each other
+     */
+    private final ConcurrentMap<String, Aggregate> activeAggregates =
+        new ConcurrentHashMap<String, Aggregate>(16, 0.75f, AGGREGATE_STORE_CONCURRENCY);
+
+    /** The active aggregates with a completion timeout, in the order of their expiry times */
+    private final ConcurrentSkipListSet<Aggregate> expiringAggregates =
+        new ConcurrentSkipListSet<Aggregate>(Aggregate.EXPIRY_ORDER);
+
+    /**
+     * The task expiring the aggregates which reached their completion timeout, scheduled once for
+     * the earliest expiry time. Changed only while holding the lock of expiringAggregates
+     */
+    private volatile AggregateTimeoutTask timeoutTask = null;
+    /** The expiry time for which the current timeout task is scheduled */
+    private volatile long timeoutTaskDeadline = 0;
+    /** The Synapse Timer on which the timeout task is scheduled */
+    private Timer timeoutTimer = null;
 
     private String id = null;
 
-    /** Lock object to provide the synchronized access to the activeAggregates on checking */
-    private final Object lock = new Object();
+    /** The name under which the statistics of this mediator are registered in JMX */
+    private String mbeanName = null;
+
+    /** Aggregation statistics, exposed through the AggregateMediatorView */
+    private final AtomicLong completedAggregateCount = new AtomicLong(0);
+    private final AtomicLong timedOutAggregateCount = new AtomicLong(0);
+    private final AtomicLong totalCompletionTime = new AtomicLong(0);
+    private final AtomicLong maxCompletionTime = new AtomicLong(0);
 
     public AggregateMediator() {
         try {
@@ -105,6 +149,11 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         if (onCompleteSequence != null) {
             onCompleteSequence.init(se);
         }
+
+        mbeanName = (id != null ? id : "aggregate") + "-" +
+                Integer.toHexString(System.identityHashCode(this));
+        MBeanRegistrar.getInstance().registerMBean(
+                new AggregateMediatorView(this), AGGREGATE_MEDIATOR_VIEW, mbeanName);
     }
 
     @Override
@@ -112,6 +161,17 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         if (onCompleteSequence != null) {
             onCompleteSequence.destroy();
         }
+
+        synchronized (expiringAggregates) {
+            if (timeoutTask != null) {
+                timeoutTask.cancel();
+                timeoutTask = null;
+            }
+        }
+        if (mbeanName != null) {
+            MBeanRegistrar.getInstance().unRegisterMBean(AGGREGATE_MEDIATOR_VIEW, mbeanName);
+            mbeanName = null;
+        }
     }
 
     /**
@@ -143,44 +203,7 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
             if (correlateExpression != null
                     && correlateExpression.evaluate(synCtx) != null) {
 
-                while (aggregate == null) {
-
-                    synchronized (lock) {
-
-                        if (activeAggregates.containsKey(correlateExpression.toString())) {
-
-                            aggregate = activeAggregates.get(correlateExpression.toString());
-                            if (aggregate != null) {
-                                if (!aggregate.getLock()) {
-                                    aggregate = null;
-                                }
-                            }
-
-                        } else {
-
-                            if (synLog.isTraceOrDebugEnabled()) {
-                                synLog.traceOrDebug("Creating new Aggregator - " +
-                                        (completionTimeoutMillis > 0 ? "expires in : "
-                                                + (completionTimeoutMillis / 1000) + "secs" :
-                                                "without expiry time"));
-                            }
-
-                            aggregate = new Aggregate(
-                                    synCtx.getEnvironment(),
-                                    correlateExpression.toString(),
-                                    completionTimeoutMillis,
-                                    minMessagesToComplete,
-                                    maxMessagesToComplete, this);
-
-                            if (completionTimeoutMillis > 0) {
-                                synCtx.getConfiguration().getSynapseTimer().
-                                        schedule(aggregate, completionTimeoutMillis);
-                            }
-                            aggregate.getLock();
-                            activeAggregates.put(correlateExpression.toString(), aggregate);
-                        }
-                    }
-                }
+                aggregate = getAggregate(synCtx, correlateExpression.toString(), synLog);
 
             } else if (synCtx.getProperty(correlationIdName) != null) {
                 // if the correlation cannot be found using the correlateExpression then
@@ -189,50 +212,9 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
                 // which thus can be used to uniquely group messages into aggregates
 
                 Object o = synCtx.getProperty(correlationIdName);
-                String correlation;
 
                 if (o != null && o instanceof String) {
-                    correlation = (String) o;
-                    while (aggregate == null) {
-                        synchronized (lock) {
-                            if (activeAggregates.containsKey(correlation)) {
-                                aggregate = activeAggregates.get(correlation);
-                                if (aggregate != null) {
-                                    if (!aggregate.getLock()) {
-                                        aggregate = null;
-                                    }
-                                } else {
-                                    break;
-                                }
-                            } else {
-                                if (synLog.isTraceOrDebugEnabled()) {
-                                    synLog.traceOrDebug("Creating new Aggregator - " +
-                                            (completionTimeoutMillis > 0 ? "expires in : "
-                                                    + (completionTimeoutMillis / 1000) + "secs" :
-                                                    "without expiry time"));
-                                }
-                        
-                                aggregate = new Aggregate(
-                                        synCtx.getEnvironment(),
-                                        correlation,
-                                        completionTimeoutMillis,
-                                        minMessagesToComplete,
-                                        maxMessagesToComplete, this);
-
-                                if (completionTimeoutMillis > 0) {
-                                    synchronized(aggregate) {
-                                        if (!aggregate.isCompleted()) {
-                                            synCtx.getConfiguration().getSynapseTimer().
-                                                schedule(aggregate, completionTimeoutMillis);
-                                        }
-                                    }
-                                }
-                                aggregate.getLock();
-                                activeAggregates.put(correlation, aggregate);
-                            }
-                        }
-                    }
-                    
+                    aggregate = getAggregate(synCtx, (String) o, synLog);
                 } else {
                     synLog.traceOrDebug("Unable to find aggrgation correlation property");
                     return true;
@@ -263,8 +245,6 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
                     
                     synLog.traceOrDebug("End : Aggregate mediator");
                     return true;
-                } else {
-                    aggregate.releaseLock();
                 }
 
             } else {
@@ -285,43 +265,148 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
     }
 
     /**
-     * Invoked by the Aggregate objects that are timed out, to signal timeout/completion of
-     * itself
-     * @param aggregate the timed out Aggregate that holds collected messages and properties
+     * Get the active aggregate of the given correlation, or start a new aggregate if there is
+     * none. Only one of the threads starting an aggregate concurrently for the same correlation
+     * succeeds, and the others use the aggregate it started
+     *
+     * @param synCtx the message to be aggregated
+     * @param correlation the correlation of the aggregation group
+     * @param synLog the Synapse log to use
+     * @return the aggregate of the correlation
      */
-    public void completeAggregate(Aggregate aggregate) {
+    private Aggregate getAggregate(MessageContext synCtx, String correlation, SynapseLog synLog) {
+
+        Aggregate aggregate = activeAggregates.get(correlation);
+        if (aggregate != null) {
+            return aggregate;
+        }
+
+        Aggregate newAggregate = new Aggregate(
+                synCtx.getEnvironment(),
+                correlation,
+                completionTimeoutMillis,
+                minMessagesToComplete,
+                maxMessagesToComplete, this);
+
+        aggregate = activeAggregates.putIfAbsent(correlation, newAggregate);
+        if (aggregate != null) {
+            return aggregate;
+        }
+
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Creating new Aggregator - " +
+                    (completionTimeoutMillis > 0 ? "expires in : "
+                            + (completionTimeoutMillis / 1000) + "secs" :
+                            "without expiry time"));
+        }
+
+        if (completionTimeoutMillis > 0) {
+            scheduleTimeout(newAggregate, synCtx);
+        }
+        return newAggregate;
+    }
+
+    /**
+     * Register the given aggregate to be expired once its completion timeout is reached. A
+     * timeout task is scheduled unless one is already due no later than the expiry time of the
+     * aggregate
+     *
+     * @param aggregate the aggregate with a completion timeout
+     * @param synCtx the message which started the aggregate
+     */
+    private void scheduleTimeout(Aggregate aggregate, MessageContext synCtx) {
+        expiringAggregates.add(aggregate);
+        if (aggregate.isCompleted()) {
+            // completed while it was being registered
+            expiringAggregates.remove(aggregate);
+            return;
+        }
 
-        boolean markedCompletedNow = false;
-        boolean wasComplete = aggregate.isCompleted();
-        if (wasComplete) {
+        if (timeoutTask != null && timeoutTaskDeadline <= aggregate.getExpiryTimeMillis()) {
             return;
         }
+        synchronized (expiringAggregates) {
+            if (timeoutTimer == null) {
+                timeoutTimer = synCtx.getConfiguration().getSynapseTimer();
+            }
+            scheduleTimeoutTask();
+        }
+    }
 
-        if (log.isDebugEnabled()) {
-            log.debug("Aggregation completed or timed out");
+    /**
+     * Make sure that a timeout task is due at the earliest expiry time of the pending
+     * aggregates, or that none is scheduled if there are no pending aggregates. Must be invoked
+     * holding the lock of expiringAggregates
+     */
+    private void scheduleTimeoutTask() {
+        Aggregate earliest;
+        try {
+            earliest = expiringAggregates.first();
+        } catch (NoSuchElementException e) {
+            earliest = null;
         }
 
-        // cancel the timer
-        synchronized(this) {
-            if (!aggregate.isCompleted()) {
-                aggregate.cancel();
-                aggregate.setCompleted(true);
-                markedCompletedNow = true;
+        if (earliest == null || timeoutTimer == null) {
+            if (timeoutTask != null) {
+                timeoutTask.cancel();
+                timeoutTask = null;
             }
+            return;
         }
 
-        if (!markedCompletedNow) {
+        long deadline = earliest.getExpiryTimeMillis();
+        if (timeoutTask != null) {
+            if (timeoutTaskDeadline <= deadline) {
+                return;
+            }
+            timeoutTask.cancel();
+        }
+        timeoutTask = new AggregateTimeoutTask();
+        timeoutTaskDeadline = deadline;
+        timeoutTimer.schedule(timeoutTask,
+                Math.max(0, deadline - System.currentTimeMillis()));
+    }
+
+    /**
+     * Invoked when an aggregate has reached its completion criteria, or has timed out, to
+     * complete it
+     * @param aggregate the Aggregate that holds collected messages and properties
+     */
+    public void completeAggregate(Aggregate aggregate) {
+        completeAggregate(aggregate, false);
+    }
+
+    private void completeAggregate(Aggregate aggregate, boolean timedOut) {
+
+        if (!aggregate.markCompleted()) {
             return;
         }
-        
+
+        if (log.isDebugEnabled()) {
+            log.debug("Aggregation " + (timedOut ? "timed out" : "completed"));
+        }
+
+        // no more messages are collected once completed - release the aggregation state
+        expiringAggregates.remove(aggregate);
+        activeAggregates.remove(aggregate.getCorrelation(), aggregate);
+
+        long completionTime = System.currentTimeMillis() - aggregate.getCreatedTimeMillis();
+        completedAggregateCount.incrementAndGet();
+        if (timedOut) {
+            timedOutAggregateCount.incrementAndGet();
+        }
+        totalCompletionTime.addAndGet(completionTime);
+        long max = maxCompletionTime.get();
+        while (completionTime > max && !maxCompletionTime.compareAndSet(max, completionTime)) {
+            max = maxCompletionTime.get();
+        }
+
         MessageContext newSynCtx = getAggregatedMessage(aggregate);
         if (newSynCtx == null) {
             log.warn("An aggregation of messages timed out with no aggregated messages", null);
             return;
         }
 
-        activeAggregates.remove(aggregate.getCorrelation());
-
         if ((correlateExpression != null &&
             !correlateExpression.toString().equals(aggregate.getCorrelation())) ||
             correlateExpression == null) {
@@ -340,6 +425,102 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         }
     }
 
+    /**
+     * Expires the aggregates which reached their completion timeout. Each run only looks at
+     * the aggregates at the head of the expiry order, and hands the expired ones over to the
+     * Synapse executor for completion. The next run is scheduled for the earliest expiry time
+     * among the remaining aggregates, if there are any
+     */
+    private class AggregateTimeoutTask extends TimerTask {
+
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            while (!expiringAggregates.isEmpty()) {
+                final Aggregate aggregate;
+                try {
+                    aggregate = expiringAggregates.first();
+                } catch (NoSuchElementException e) {
+                    break;
+                }
+                if (aggregate.getExpiryTimeMillis() > now) {
+                    break;
+                }
+                if (expiringAggregates.remove(aggregate)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Time : " + now + " and this aggregator " +
+                                "expired at : " + aggregate.getExpiryTimeMillis());
+                    }
+                    aggregate.getSynapseEnvironment().getExecutorService().execute(
+                            new Runnable() {
+                                public void run() {
+                                    completeAggregate(aggregate, true);
+                                }
+                            });
+                }
+            }
+
+            synchronized (expiringAggregates) {
+                if (timeoutTask == this) {
+                    timeoutTask = null;
+                    scheduleTimeoutTask();
+                }
+            }
+        }
+    }
+
+    public int getActiveAggregateCount() {
+        return activeAggregates.size();
+    }
+
+    public long getCompletedAggregateCount() {
+        return completedAggregateCount.get();
+    }
+
+    public long getTimedOutAggregateCount() {
+        return timedOutAggregateCount.get();
+    }
+
+    public long getAverageCompletionTime() {
+        long completed = completedAggregateCount.get();
+        return completed > 0 ? totalCompletionTime.get() / completed : 0;
+    }
+
+    public long getMaxCompletionTime() {
+        return maxCompletionTime.get();
+    }
+
+    public void resetStatistics() {
+        completedAggregateCount.set(0);
+        timedOutAggregateCount.set(0);
+        totalCompletionTime.set(0);
+        maxCompletionTime.set(0);
+    }
+
+    /**
+     * Merge the parts of the given message selected by the aggregation expression into the
+     * aggregated message. Used by the incremental aggregation mode as each message arrives
+     *
+     * @param aggregatedCtx the message into which the messages of the aggregate are merged
+     * @param synCtx the message to be merged
+     */
+    void mergeMessage(MessageContext aggregatedCtx, MessageContext synCtx) {
+        try {
+            if (log.isDebugEnabled()) {
+                log.debug("Merging message : " + synCtx.getEnvelope() + " using XPath : " +
+                        aggregationExpression);
+            }
+
+            EIPUtils.enrichEnvelope(
+                    aggregatedCtx.getEnvelope(), synCtx.getEnvelope(), synCtx,
+                    aggregationExpression);
+
+        } catch (JaxenException e) {
+            handleException("Error merging aggregation results using XPath : " +
+                    aggregationExpression.toString(), e, synCtx);
+        }
+    }
+
     /**
      * Get the aggregated message from the specified Aggregate instance
      *
@@ -423,6 +604,14 @@ public class AggregateMediator extends AbstractMediator implements ManagedLifecy
         this.aggregationExpression = aggregationExpression;
     }
 
+    public boolean isIncrementalAggregation() {
+        return incrementalAggregation;
+    }
+
+    public void setIncrementalAggregation(boolean incrementalAggregation) {
+        this.incrementalAggregation = incrementalAggregation;
+    }
+
     public String getOnCompleteSequenceRef() {
         return onCompleteSequenceRef;
     }
@@ -0,0 +1,59 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip.aggregator;
+
+public class AggregateMediatorView implements AggregateMediatorViewMBean {
+
+    private AggregateMediator mediator;
+
+    public AggregateMediatorView(AggregateMediator mediator) {
+        this.mediator = mediator;
+    }
+
+    @Override
+    public int getActiveAggregateCount() {
+        return mediator.getActiveAggregateCount();
+    }
+
+    @Override
+    public long getCompletedAggregateCount() {
+        return mediator.getCompletedAggregateCount();
+    }
+
+    @Override
+    public long getTimedOutAggregateCount() {
+        return mediator.getTimedOutAggregateCount();
+    }
+
+    @Override
+    public long getAverageCompletionTime() {
+        return mediator.getAverageCompletionTime();
+    }
+
+    @Override
+    public long getMaxCompletionTime() {
+        return mediator.getMaxCompletionTime();
+    }
+
+    @Override
+    public void resetStatistics() {
+        mediator.resetStatistics();
+    }
+}
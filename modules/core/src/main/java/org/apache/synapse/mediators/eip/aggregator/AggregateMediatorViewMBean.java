@@ -0,0 +1,67 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip.aggregator;
+
+/**
+ * JMX MBean interface for monitoring the aggregations of an aggregate mediator.
+ */
+public interface AggregateMediatorViewMBean {
+
+    /**
+     * Get the number of aggregation groups currently collecting messages
+     *
+     * @return An integer
+     */
+    public int getActiveAggregateCount();
+
+    /**
+     * Get the number of aggregation groups completed, including the timed out ones
+     *
+     * @return A long
+     */
+    public long getCompletedAggregateCount();
+
+    /**
+     * Get the number of aggregation groups completed by reaching their completion timeout
+     *
+     * @return A long
+     */
+    public long getTimedOutAggregateCount();
+
+    /**
+     * Get the average time (in milliseconds) from the start to the completion of an aggregation
+     *
+     * @return A long
+     */
+    public long getAverageCompletionTime();
+
+    /**
+     * Get the maximum time (in milliseconds) from the start to the completion of an aggregation
+     *
+     * @return A long
+     */
+    public long getMaxCompletionTime();
+
+    /**
+     * Reset the completion statistics
+     */
+    public void resetStatistics();
+
+}
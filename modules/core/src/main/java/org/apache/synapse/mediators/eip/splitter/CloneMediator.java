@@ -27,6 +27,7 @@ import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.util.MessageHelper;
 import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.eip.FanOutExecutor;
 import org.apache.synapse.mediators.eip.Target;
 import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.axis2.AxisFault;
@@ -56,6 +57,15 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
 
     private String id = null;
 
+    /**
+     * The maximum number of split messages of this mediator mediated in parallel on the worker
+     * pool, or 0 if there is no limit other than the size of the pool
+     */
+    private int maxInFlight = 0;
+
+    /** Dispatches the split messages when the maxInFlight is set */
+    private FanOutExecutor fanOutExecutor = null;
+
     private boolean sequential = false;
 
     /**
@@ -88,7 +98,8 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
                     " messages for processing in parallel");
             }
 
-            iter.next().mediate(getClonedMessageContext(synCtx, i++, targets.size()));
+            iter.next().mediate(getClonedMessageContext(synCtx, i++, targets.size()),
+                    fanOutExecutor);
         }
 
         // if the continuation of the parent message is stopped from here set the RESPONSE_WRITTEN
@@ -188,8 +199,17 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
         this.sequential = sequential;
     }
 
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
     @Override
     public void init(SynapseEnvironment se) {
+        fanOutExecutor = FanOutExecutor.create(maxInFlight, id != null ? id : "clone", this);
 
         for (Target target : targets) {
             ManagedLifecycle seq = target.getSequence();
@@ -205,6 +225,10 @@ public class CloneMediator extends AbstractMediator implements ManagedLifecycle
 
     @Override
     public void destroy() {
+        if (fanOutExecutor != null) {
+            fanOutExecutor.destroy();
+            fanOutExecutor = null;
+        }
 
         for (Target target : targets) {
             ManagedLifecycle seq = target.getSequence();
@@ -19,9 +19,13 @@
 
 package org.apache.synapse.mediators.eip.splitter;
 
+import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMNode;
+import org.apache.axiom.om.util.ElementHelper;
+import org.apache.axiom.om.util.StAXUtils;
 import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.Constants;
 import org.apache.axis2.context.OperationContext;
@@ -34,11 +38,20 @@ import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.eip.EIPConstants;
 import org.apache.synapse.mediators.eip.EIPUtils;
+import org.apache.synapse.mediators.eip.FanOutExecutor;
 import org.apache.synapse.mediators.eip.Target;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
+import org.apache.synapse.transport.passthru.Pipe;
+import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
 import org.apache.synapse.util.MessageHelper;
 import org.apache.synapse.util.xpath.SynapseXPath;
 import org.jaxen.JaxenException;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -70,8 +83,27 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
     /** The target for the newly splitted messages */
     private Target target = null;
 
+    /**
+     * Split pass-through messages while reading their payload, instead of building them first.
+     * Only applies to expressions which are simple child axis location paths, and when the
+     * payload is not preserved
+     */
+    private boolean streaming = false;
+
+    /** Splits the payloads while streaming, when streaming is enabled and possible */
+    private StreamingSplitter streamingSplitter = null;
+
     private String id = null;
 
+    /**
+     * The maximum number of split messages of this mediator mediated in parallel on the worker
+     * pool, or 0 if there is no limit other than the size of the pool
+     */
+    private int maxInFlight = 0;
+
+    /** Dispatches the split messages when the maxInFlight is set */
+    private FanOutExecutor fanOutExecutor = null;
+
     /**
      * Splits the message by iterating over the results of the given XPath expression
      *
@@ -91,6 +123,31 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
             }
         }
 
+        if (streamingSplitter == null || !splitStreaming(synCtx, synLog)) {
+            splitBuiltMessage(synCtx, synLog);
+        }
+
+        // if the continuation of the parent message is stopped from here set the RESPONSE_WRITTEN
+        // property to SKIP to skip the blank http response 
+        OperationContext opCtx
+            = ((Axis2MessageContext) synCtx).getAxis2MessageContext().getOperationContext();
+        if (!continueParent && opCtx != null) {
+            opCtx.setProperty(Constants.RESPONSE_WRITTEN,"SKIP");
+        }
+
+        synLog.traceOrDebug("End : Iterate mediator");
+
+        // whether to continue mediation on the original message
+        return continueParent;
+    }
+
+    /**
+     * Split the built message by evaluating the expression over a copy of its envelope
+     *
+     * @param synCtx - MessageContext to be split
+     * @param synLog - the logger to be used
+     */
+    private void splitBuiltMessage(MessageContext synCtx, SynapseLog synLog) {
         try {
             // get a copy of the message for the processing, if the continueParent is set to true
             // this original message can go in further mediations and hence we should not change
@@ -130,8 +187,11 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
                                     " messages for processing sequentially"));
                 }
 
+                // the split elements have all been detached above, only the copy of the
+                // envelope holding each of them is made as it is handed over to the target
                 target.mediate(
-                    getIteratedMessage(synCtx, msgNumber++, msgCount, envelope, (OMNode) o));
+                    getIteratedMessage(synCtx, msgNumber++, msgCount, envelope, (OMNode) o),
+                    fanOutExecutor);
             }
 
         } catch (JaxenException e) {
@@ -139,39 +199,195 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         } catch (AxisFault af) {
             handleException("Error creating an iterated copy of the message", af, synCtx);
         }
+    }
 
-        // if the continuation of the parent message is stopped from here set the RESPONSE_WRITTEN
-        // property to SKIP to skip the blank http response 
-        OperationContext opCtx
-            = ((Axis2MessageContext) synCtx).getAxis2MessageContext().getOperationContext();
-        if (!continueParent && opCtx != null) {
-            opCtx.setProperty(Constants.RESPONSE_WRITTEN,"SKIP");
+    /**
+     * Split the payload of a pass-through message while it is being read from the transport,
+     * without building it. Only the matched elements are built, and each of them is handed over
+     * to the target as soon as it has been read, so that the payload is never held in memory
+     * as a whole. The payload is consumed by the split, hence the message is only split this
+     * way if the parent message does not continue after the split.
+     *
+     * @param synCtx - MessageContext to be split
+     * @param synLog - the logger to be used
+     * @return true if the message was split, false if it has to be split after building it
+     */
+    private boolean splitStreaming(MessageContext synCtx, SynapseLog synLog) {
+
+        if (preservePayload || continueParent || !(synCtx instanceof Axis2MessageContext)) {
+            // the payload is still needed after the split, so it has to be built
+            return false;
         }
 
-        synLog.traceOrDebug("End : Iterate mediator");
+        org.apache.axis2.context.MessageContext axis2MC =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        Pipe pipe = (Pipe) axis2MC.getProperty(PassThroughConstants.PASS_THROUGH_PIPE);
+        Object contentType = axis2MC.getProperty(Constants.Configuration.CONTENT_TYPE);
+        if (pipe == null || PassThroughTransportUtils.builderInvoked(axis2MC) ||
+                axis2MC.getProperty(PassThroughConstants.BUFFERED_INPUT_STREAM) != null ||
+                contentType == null || !isXMLContentType(contentType.toString())) {
+            // only XML payloads which have not been read yet can be streamed
+            return false;
+        }
 
-        // whether to continue mediation on the original message
-        return continueParent;
+        if (synLog.isTraceOrDebugEnabled()) {
+            synLog.traceOrDebug("Splitting the pass-through message payload while streaming " +
+                    "with XPath : " + expression);
+        }
+
+        InputStream in = pipe.getInputStream();
+        XMLStreamReader reader = null;
+        int msgNumber = 0;
+        try {
+            String charSetEncoding = getCharSetEncoding(contentType.toString());
+            reader = charSetEncoding != null ?
+                    StAXUtils.createXMLStreamReader(in, charSetEncoding) :
+                    StAXUtils.createXMLStreamReader(in);
+            StreamingSplitter.Split split = streamingSplitter.split(reader, synCtx.isSOAP11());
+            // the payload is consumed from the pipe by the split
+            axis2MC.setProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED, Boolean.TRUE);
+
+            // read one element ahead, so that the last message can carry the total count
+            OMElement element = split.next();
+            while (element != null) {
+                OMElement nextElement = split.next();
+                String msgCount = nextElement == null ?
+                        String.valueOf(msgNumber + 1) : EIPConstants.MESSAGE_COUNT_UNKNOWN;
+
+                if (synLog.isTraceOrDebugEnabled()) {
+                    synLog.traceOrDebug("Submitting streamed message " + (msgNumber + 1) +
+                            (target.isAsynchronous() ?
+                                    " for processing in parallel" :
+                                    " for processing sequentially"));
+                }
+
+                target.mediate(getStreamedMessage(synCtx, msgNumber++, msgCount,
+                        split.getHeader(), element), fanOutExecutor);
+                element = nextElement;
+            }
+
+            // discard anything left in the pipe after the document, such as trailing whitespace
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // drain
+            }
+
+            if (synLog.isTraceOrDebugEnabled()) {
+                synLog.traceOrDebug("Streaming split with XPath : " + expression +
+                        " resulted in " + msgNumber + " elements");
+            }
+
+        } catch (XMLStreamException e) {
+            handleException("Error reading the message payload to be split with XPath : " +
+                    expression, e, synCtx);
+        } catch (IOException e) {
+            handleException("Error reading the message payload to be split with XPath : " +
+                    expression, e, synCtx);
+        } catch (AxisFault af) {
+            handleException("Error creating an iterated copy of the message", af, synCtx);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignore) {
+                }
+            }
+        }
+        return true;
     }
 
     /**
-     * Create a new message context using the given original message context, the envelope
-     * and the split result element.
+     * Whether the given content type denotes a plain XML payload, which could be read as a
+     * single XML document. Multipart payloads such as MTOM or SwA are not plain XML, even though
+     * their content type parameters may name an XML type
+     *
+     * @param contentType the content type of the message
+     * @return true if the base media type is an XML or a SOAP media type
+     */
+    public static boolean isXMLContentType(String contentType) {
+        int index = contentType.indexOf(';');
+        String mediaType = (index < 0 ? contentType : contentType.substring(0, index))
+                .trim().toLowerCase();
+        return "text/xml".equals(mediaType) || "application/xml".equals(mediaType) ||
+                "application/soap+xml".equals(mediaType) || mediaType.endsWith("+xml");
+    }
+
+    /**
+     * Get the character set encoding given by the charset parameter of the content type
+     *
+     * @param contentType the content type of the message
+     * @return the character set encoding, or null if the content type does not specify one
+     */
+    public static String getCharSetEncoding(String contentType) {
+        String[] parts = contentType.split(";");
+        for (int i = 1; i < parts.length; i++) {
+            int index = parts[i].indexOf('=');
+            if (index > 0 && "charset".equalsIgnoreCase(parts[i].substring(0, index).trim())) {
+                String charSet = parts[i].substring(index + 1).trim();
+                if (charSet.length() > 1 && charSet.startsWith("\"") && charSet.endsWith("\"")) {
+                    charSet = charSet.substring(1, charSet.length() - 1);
+                }
+                return charSet.length() > 0 ? charSet : null;
+            }
+        }
+        // let the parser detect the encoding of the document
+        return null;
+    }
+
+    /**
+     * Create a new message context for an element read by a streaming split. The new message
+     * holds the element as its payload, along with the SOAP headers of the original message
      *
      * @param synCtx    - original message context
      * @param msgNumber - message number in the iteration
-     * @param msgCount  - total number of messages in the split
-     * @param envelope  - envelope to be used in the iteration
-     * @param o         - element which participates in the iteration replacement
+     * @param msgCount  - total number of messages in the split, if it is already known
+     * @param header    - the SOAP header of the original message, or null if there is none
+     * @param element   - the element read by the split
      * @return newCtx created by the iteration
      * @throws AxisFault if there is a message creation failure
-     * @throws JaxenException if the expression evauation failure
      */
-    private MessageContext getIteratedMessage(MessageContext synCtx, int msgNumber, int msgCount,
-        SOAPEnvelope envelope, OMNode o) throws AxisFault, JaxenException {
-        
-        // clone the message for the mediation in iteration
-        MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx);
+    private MessageContext getStreamedMessage(MessageContext synCtx, int msgNumber,
+        String msgCount, OMElement header, OMElement element) throws AxisFault {
+
+        // the new message carries its payload in its envelope, rather than in a pipe
+        MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx, false);
+        setSequenceProperties(synCtx, newCtx, msgNumber, msgCount);
+        ((Axis2MessageContext) newCtx).getAxis2MessageContext().setProperty(
+                PassThroughConstants.MESSAGE_BUILDER_INVOKED, Boolean.TRUE);
+
+        SOAPFactory factory = synCtx.isSOAP11() ? OMAbstractFactory.getSOAP11Factory() :
+                OMAbstractFactory.getSOAP12Factory();
+        SOAPEnvelope newEnvelope = factory.getDefaultEnvelope();
+        if (header != null) {
+            Iterator headerBlocks = header.getChildElements();
+            while (headerBlocks.hasNext()) {
+                OMElement headerBlock = ((OMElement) headerBlocks.next()).cloneOMElement();
+                try {
+                    newEnvelope.getHeader().addChild(
+                            ElementHelper.toSOAPHeaderBlock(headerBlock, factory));
+                } catch (Exception e) {
+                    handleException("Error copying the SOAP header : " +
+                            headerBlock.getQName() + " to the iterated message", e, synCtx);
+                }
+            }
+        }
+        newEnvelope.getBody().addChild(element);
+        newCtx.setEnvelope(newEnvelope);
+
+        return newCtx;
+    }
+
+    /**
+     * Set the correlation and the message sequence properties, used to aggregate the split
+     * messages, on a new message
+     *
+     * @param synCtx    - original message context
+     * @param newCtx    - new message context created by the iteration
+     * @param msgNumber - message number in the iteration
+     * @param msgCount  - total number of messages in the split
+     */
+    private void setSequenceProperties(MessageContext synCtx, MessageContext newCtx,
+        int msgNumber, String msgCount) {
 
         if (id != null) {
             // set the parent correlation details to the cloned MC -
@@ -187,6 +403,28 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
                     EIPConstants.MESSAGE_SEQUENCE,
                     msgNumber + EIPConstants.MESSAGE_SEQUENCE_DELEMITER + msgCount);
         }
+    }
+
+    /**
+     * Create a new message context using the given original message context, the envelope
+     * and the split result element.
+     *
+     * @param synCtx    - original message context
+     * @param msgNumber - message number in the iteration
+     * @param msgCount  - total number of messages in the split
+     * @param envelope  - envelope to be used in the iteration
+     * @param o         - element which participates in the iteration replacement
+     * @return newCtx created by the iteration
+     * @throws AxisFault if there is a message creation failure
+     * @throws JaxenException if the expression evauation failure
+     */
+    private MessageContext getIteratedMessage(MessageContext synCtx, int msgNumber, int msgCount,
+        SOAPEnvelope envelope, OMNode o) throws AxisFault, JaxenException {
+        
+        // clone the message for the mediation in iteration. The payload of the new message is
+        // its envelope, a pipe is created by the transport if the message is sent out
+        MessageContext newCtx = MessageHelper.cloneMessageContext(synCtx, false);
+        setSequenceProperties(synCtx, newCtx, msgNumber, String.valueOf(msgCount));
 
         // get a clone of the envelope to be attached
         SOAPEnvelope newEnvelope = MessageHelper.cloneSOAPEnvelope(envelope);
@@ -273,8 +511,35 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
         this.id = id;
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
     @Override
     public void init(SynapseEnvironment se) {
+        fanOutExecutor = FanOutExecutor.create(maxInFlight, id != null ? id : "iterate", this);
+
+        if (streaming && expression != null) {
+            streamingSplitter = StreamingSplitter.newInstance(expression);
+            if (streamingSplitter == null) {
+                log.warn("The XPath expression : " + expression + " of the iterate mediator " +
+                        "is not a simple child axis location path and can not be evaluated " +
+                        "while streaming. Messages will be built before splitting them");
+            }
+        }
+
         if (target != null) {
             Endpoint endpoint = target.getEndpoint();
             if (endpoint != null) {
@@ -290,6 +555,11 @@ public class IterateMediator extends AbstractMediator implements ManagedLifecycl
 
     @Override
     public void destroy() {
+        if (fanOutExecutor != null) {
+            fanOutExecutor.destroy();
+            fanOutExecutor = null;
+        }
+
         if (target != null) {
             Endpoint endpoint = target.getEndpoint();
             if (endpoint != null && endpoint.isInitialized()) {
@@ -0,0 +1,247 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip.splitter;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAP11Constants;
+import org.apache.axiom.soap.SOAP12Constants;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits an XML document read from a StAX stream, on the elements selected by a simple location
+ * path which only uses the child axis, such as <code>//m:orders/m:order</code> or
+ * <code>s11:Body/m:orders/m:order</code>. Only the matched elements are built, one at a time,
+ * while the rest of the document is skipped as it is read.
+ *
+ * As with the iterate mediator, relative paths are evaluated against the SOAP envelope. When the
+ * stream holds a plain XML payload rather than a SOAP envelope, the payload is considered to be
+ * the first child of the SOAP body, as it would be once built.
+ */
+class StreamingSplitter {
+
+    /** The steps of the location path, a null local name or namespace matches any */
+    private final List<QName> steps;
+    /** Whether the path is absolute, i.e. starts with a single slash */
+    private final boolean absolute;
+    /** Whether the first step may match at any depth, i.e. the path starts with // */
+    private final boolean anyDepth;
+
+    private StreamingSplitter(List<QName> steps, boolean absolute, boolean anyDepth) {
+        this.steps = steps;
+        this.absolute = absolute;
+        this.anyDepth = anyDepth;
+    }
+
+    /**
+     * Create a splitter for the given expression
+     *
+     * @param expression the split expression of the iterate mediator
+     * @return a splitter, or null if the expression is not a simple child axis location path
+     */
+    static StreamingSplitter newInstance(SynapseXPath expression) {
+        String path = expression.toString().trim();
+        boolean anyDepth = path.startsWith("//");
+        boolean absolute = !anyDepth && path.startsWith("/");
+        if (anyDepth) {
+            path = path.substring(2);
+        } else if (absolute) {
+            path = path.substring(1);
+        }
+        if (path.length() == 0) {
+            return null;
+        }
+
+        Map namespaces = expression.getNamespaces();
+        List<QName> steps = new ArrayList<QName>();
+        for (String step : path.split("/", -1)) {
+            step = step.trim();
+            if (step.startsWith("child::")) {
+                step = step.substring("child::".length());
+            }
+            if (step.length() == 0 || !isName(step)) {
+                return null;
+            }
+
+            int colon = step.indexOf(':');
+            String prefix = colon < 0 ? null : step.substring(0, colon);
+            String localName = colon < 0 ? step : step.substring(colon + 1);
+            String namespace;
+            if (prefix == null) {
+                // unprefixed names only match elements without a namespace, as in XPath 1.0
+                namespace = "*".equals(localName) ? null : "";
+            } else {
+                Object uri = namespaces.get(prefix);
+                if (uri == null) {
+                    return null;
+                }
+                namespace = uri.toString();
+            }
+            steps.add(new QName(namespace == null ? "*" : namespace,
+                    "*".equals(localName) ? "*" : localName));
+        }
+        return new StreamingSplitter(steps, absolute, anyDepth);
+    }
+
+    private static boolean isName(String step) {
+        if (step.indexOf(':') != step.lastIndexOf(':')) {
+            return false;
+        }
+        for (int i = 0; i < step.length(); i++) {
+            char c = step.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' ||
+                    c == ':' || c == '*')) {
+                return false;
+            }
+        }
+        return !step.startsWith(":") && !step.endsWith(":") &&
+                (step.indexOf('*') < 0 || step.equals("*") || step.endsWith(":*"));
+    }
+
+    /**
+     * Start splitting the document read by the given reader
+     *
+     * @param reader a reader positioned at the start of the document
+     * @param soap11 whether a plain XML payload should be considered as the body of a SOAP 1.1
+     * envelope, or of a SOAP 1.2 envelope
+     * @return the split of the document
+     */
+    Split split(XMLStreamReader reader, boolean soap11) {
+        return new Split(reader, soap11);
+    }
+
+    private boolean matches(List<QName> path) {
+        // relative paths start at the envelope, the root of the document
+        int offset = absolute ? 0 : 1;
+        if (anyDepth) {
+            offset = path.size() - steps.size();
+            if (offset < 0) {
+                return false;
+            }
+        } else if (path.size() != steps.size() + offset) {
+            return false;
+        }
+        for (int i = 0; i < steps.size(); i++) {
+            QName step = steps.get(i);
+            QName name = path.get(i + offset);
+            if (!"*".equals(step.getNamespaceURI()) &&
+                    !step.getNamespaceURI().equals(name.getNamespaceURI())) {
+                return false;
+            }
+            if (!"*".equals(step.getLocalPart()) &&
+                    !step.getLocalPart().equals(name.getLocalPart())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The state of the split of a single document
+     */
+    class Split {
+
+        private final XMLStreamReader reader;
+        private final boolean soap11;
+        /** The names of the elements enclosing the current position of the reader */
+        private final List<QName> path = new ArrayList<QName>();
+        private boolean started = false;
+        private boolean soapEnvelope = false;
+        private OMElement header = null;
+
+        private Split(XMLStreamReader reader, boolean soap11) {
+            this.reader = reader;
+            this.soap11 = soap11;
+        }
+
+        /**
+         * Read the document up to the next matching element, and build that element
+         *
+         * @return the next matching element, detached from any parent, or null if the end of
+         * the document has been reached
+         * @throws XMLStreamException if the document could not be read
+         */
+        OMElement next() throws XMLStreamException {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    QName name = reader.getName();
+                    if (!started) {
+                        started = true;
+                        String ns = name.getNamespaceURI();
+                        soapEnvelope = "Envelope".equals(name.getLocalPart()) &&
+                                (SOAP11Constants.SOAP_ENVELOPE_NAMESPACE_URI.equals(ns) ||
+                                 SOAP12Constants.SOAP_ENVELOPE_NAMESPACE_URI.equals(ns));
+                        if (!soapEnvelope) {
+                            String envNs = soap11 ? SOAP11Constants.SOAP_ENVELOPE_NAMESPACE_URI :
+                                    SOAP12Constants.SOAP_ENVELOPE_NAMESPACE_URI;
+                            path.add(new QName(envNs, "Envelope"));
+                            path.add(new QName(envNs, "Body"));
+                        }
+                    }
+
+                    path.add(name);
+                    if (matches(path)) {
+                        path.remove(path.size() - 1);
+                        return buildElement();
+                    }
+                    if (soapEnvelope && path.size() == 2 && "Header".equals(name.getLocalPart())) {
+                        // keep the SOAP headers, so that they can be copied to each message
+                        path.remove(path.size() - 1);
+                        header = buildElement();
+                    }
+
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    path.remove(path.size() - 1);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Build the element at the current position of the reader, leaving the reader at the
+         * end of that element
+         */
+        private OMElement buildElement() {
+            OMElement element =
+                    OMXMLBuilderFactory.createStAXOMBuilder(reader).getDocumentElement();
+            element.build();
+            element.detach();
+            return element;
+        }
+
+        /**
+         * Get the SOAP header of the envelope being split
+         *
+         * @return the header read so far, or null if there is none
+         */
+        OMElement getHeader() {
+            return header;
+        }
+    }
+}
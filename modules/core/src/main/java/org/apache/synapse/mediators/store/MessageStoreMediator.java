@@ -81,7 +81,10 @@ public class MessageStoreMediator extends AbstractMediator{
 
                 }
 
-                messageStore.offer(synCtx);
+                if (!messageStore.offer(synCtx)) {
+                    handleException("Message store : " + messageStoreName +
+                            " did not accept the message", synCtx);
+                }
 
                 // with the nio transport, this causes the listener not to write a 202
                 // Accepted response, as this implies that Synapse does not yet know if
@@ -0,0 +1,339 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.transform;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.config.SynapsePropertiesLoader;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded cache of compiled XSLT Templates, shared by all the XSLT mediators. Templates
+ * are cached against the evaluated registry key of the stylesheet and the configuration of the
+ * TransformerFactory used to compile them, and are tagged with the registry entry (and entry
+ * version) they were compiled from, so that a changed stylesheet is compiled again.
+ *
+ * Lookups do not take any lock. When many threads miss on the same key concurrently, only one
+ * of them compiles the stylesheet while the others wait for the result. A failed compilation is
+ * removed from the cache and reported to all the threads waiting for it. Once the cache grows
+ * beyond its maximum size, the least recently used tenth of the Templates is evicted in one go,
+ * so that the cost of finding them is spread over many insertions.
+ *
+ * Each cached Templates keeps a small pool of Transformer instances, so that a Transformer does
+ * not have to be created for every message.
+ */
+public class TemplatesCache {
+
+    private static final Log log = LogFactory.getLog(TemplatesCache.class);
+
+    /** synapse.properties entries for the maximum size of the cache and the Transformer pools */
+    public static final String TEMPLATES_CACHE_SIZE = "synapse.xslt.templates.cache.size";
+    public static final String TRANSFORMER_POOL_SIZE = "synapse.xslt.transformer.pool.size";
+
+    private static final int DEFAULT_TEMPLATES_CACHE_SIZE = 1000;
+    private static final int DEFAULT_TRANSFORMER_POOL_SIZE = 20;
+
+    private static final String TEMPLATES_CACHE_VIEW = "XSLTTemplatesCache";
+
+    private static final TemplatesCache instance = new TemplatesCache(
+            Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(TEMPLATES_CACHE_SIZE,
+                    String.valueOf(DEFAULT_TEMPLATES_CACHE_SIZE))),
+            Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(TRANSFORMER_POOL_SIZE,
+                    String.valueOf(DEFAULT_TRANSFORMER_POOL_SIZE))));
+
+    static {
+        MBeanRegistrar.getInstance().registerMBean(new TemplatesCacheView(instance),
+                TEMPLATES_CACHE_VIEW, TEMPLATES_CACHE_VIEW);
+    }
+
+    private final ConcurrentHashMap<String, CachedTemplates> cache =
+            new ConcurrentHashMap<String, CachedTemplates>();
+
+    private final int maxSize;
+    private final int transformerPoolSize;
+
+    /** A logical clock used to order the cached Templates by their last access */
+    private final AtomicLong clock = new AtomicLong(0);
+
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong evictionCount = new AtomicLong(0);
+
+    /** Set while a thread is evicting, so that concurrent insertions do not scan the cache */
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    TemplatesCache(int maxSize, int transformerPoolSize) {
+        this.maxSize = maxSize > 0 ? maxSize : DEFAULT_TEMPLATES_CACHE_SIZE;
+        this.transformerPoolSize = transformerPoolSize >= 0 ? transformerPoolSize :
+                DEFAULT_TRANSFORMER_POOL_SIZE;
+    }
+
+    public static TemplatesCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Get the Templates cached against the given key, if they were compiled from the given
+     * registry entry and version. If they are still being compiled, this waits for the
+     * compilation to complete.
+     *
+     * @param key the cache key
+     * @param entry the registry entry of the stylesheet, or null if there is none
+     * @param version the version of the registry entry
+     * @return the cached Templates or null if there are none, or if they are stale
+     * @throws TransformerConfigurationException if the pending compilation of the Templates
+     * failed
+     */
+    public CachedTemplates get(String key, Object entry, long version)
+            throws TransformerConfigurationException {
+        CachedTemplates cached = cache.get(key);
+        if (cached != null && cached.isCompiledFrom(entry, version)) {
+            cached.lastAccess = clock.incrementAndGet();
+            hitCount.incrementAndGet();
+            cached.awaitTemplates(key, this);
+            return cached;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Get the Templates cached against the given key, compiling them with the given compiler if
+     * they are not cached or are stale. Only one of the threads calling this concurrently for
+     * the same key compiles the Templates.
+     *
+     * @param key the cache key
+     * @param entry the registry entry of the stylesheet, or null if there is none
+     * @param version the version of the registry entry
+     * @param compiler the compiler of the stylesheet
+     * @return the cached Templates
+     * @throws TransformerConfigurationException if the stylesheet could not be compiled
+     */
+    public CachedTemplates compile(String key, Object entry, long version,
+                                   Callable<Templates> compiler)
+            throws TransformerConfigurationException {
+
+        while (true) {
+            CachedTemplates current = cache.get(key);
+            if (current != null && current.isCompiledFrom(entry, version)) {
+                current.lastAccess = clock.incrementAndGet();
+                current.awaitTemplates(key, this);
+                return current;
+            }
+
+            CachedTemplates created = new CachedTemplates(entry, version, compiler,
+                    transformerPoolSize);
+            boolean installed = current == null ? cache.putIfAbsent(key, created) == null :
+                    cache.replace(key, current, created);
+            if (installed) {
+                created.lastAccess = clock.incrementAndGet();
+                created.compilation.run();
+                created.awaitTemplates(key, this);
+                evictIfRequired();
+                return created;
+            }
+        }
+    }
+
+    /**
+     * Once the cache is beyond its maximum size, remove the least recently used Templates until
+     * it is back to nine tenths of the maximum size. Only one thread evicts at a time.
+     */
+    private void evictIfRequired() {
+        if (cache.size() <= maxSize || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int target = Math.max(1, maxSize - maxSize / 10);
+            int excess = cache.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+
+            // keep the most recently used of the eldest entries on top of the heap
+            PriorityQueue<Map.Entry<String, CachedTemplates>> eldest =
+                    new PriorityQueue<Map.Entry<String, CachedTemplates>>(excess,
+                            new Comparator<Map.Entry<String, CachedTemplates>>() {
+                                public int compare(Map.Entry<String, CachedTemplates> a,
+                                                   Map.Entry<String, CachedTemplates> b) {
+                                    long x = a.getValue().lastAccess;
+                                    long y = b.getValue().lastAccess;
+                                    return x < y ? 1 : (x == y ? 0 : -1);
+                                }
+                            });
+            for (Map.Entry<String, CachedTemplates> e : cache.entrySet()) {
+                if (eldest.size() < excess) {
+                    eldest.add(e);
+                } else if (e.getValue().lastAccess < eldest.peek().getValue().lastAccess) {
+                    eldest.poll();
+                    eldest.add(e);
+                }
+            }
+
+            for (Map.Entry<String, CachedTemplates> e : eldest) {
+                if (cache.remove(e.getKey(), e.getValue())) {
+                    evictionCount.incrementAndGet();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Evicted the XSLT templates cached for : " + e.getKey());
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Remove all the cached Templates
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Compiled Templates of a stylesheet along with a pool of Transformers created from them
+     */
+    public static class CachedTemplates {
+
+        private final Object entry;
+        private final long version;
+        private final FutureTask<Templates> compilation;
+        private final Queue<Transformer> transformers = new ConcurrentLinkedQueue<Transformer>();
+        private final AtomicInteger pooledTransformers = new AtomicInteger(0);
+        private final int transformerPoolSize;
+        private volatile long lastAccess;
+
+        private CachedTemplates(Object entry, long version, Callable<Templates> compiler,
+                                int transformerPoolSize) {
+            this.entry = entry;
+            this.version = version;
+            this.compilation = new FutureTask<Templates>(compiler);
+            this.transformerPoolSize = transformerPoolSize;
+        }
+
+        private boolean isCompiledFrom(Object entry, long version) {
+            return this.entry == entry && this.version == version;
+        }
+
+        /**
+         * Wait for the compilation of the Templates, and drop them from the cache if it failed
+         */
+        private Templates awaitTemplates(String key, TemplatesCache owner)
+                throws TransformerConfigurationException {
+            try {
+                return compilation.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TransformerConfigurationException(
+                        "Interrupted while compiling the XSLT with key : " + key, e);
+            } catch (ExecutionException e) {
+                owner.cache.remove(key, this);
+                Throwable cause = e.getCause();
+                if (cause instanceof TransformerConfigurationException) {
+                    throw (TransformerConfigurationException) cause;
+                }
+                throw new TransformerConfigurationException(
+                        "Error compiling the XSLT with key : " + key, cause);
+            }
+        }
+
+        public Templates getTemplates() {
+            try {
+                return compilation.get();
+            } catch (InterruptedException e) {
+                // only handed out once the compilation has completed successfully
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("XSLT templates are not available", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("XSLT templates are not available", e);
+            }
+        }
+
+        /**
+         * Take a Transformer from the pool, or create a new one if the pool is empty
+         *
+         * @return a Transformer for the exclusive use of the caller
+         * @throws TransformerConfigurationException if a Transformer could not be created
+         */
+        public Transformer borrowTransformer() throws TransformerConfigurationException {
+            Transformer transformer = transformers.poll();
+            if (transformer != null) {
+                pooledTransformers.decrementAndGet();
+                return transformer;
+            }
+            return getTemplates().newTransformer();
+        }
+
+        /**
+         * Reset the given Transformer and return it to the pool, unless the pool is full
+         *
+         * @param transformer a Transformer obtained from borrowTransformer()
+         */
+        public void releaseTransformer(Transformer transformer) {
+            if (pooledTransformers.incrementAndGet() > transformerPoolSize) {
+                pooledTransformers.decrementAndGet();
+                return;
+            }
+            try {
+                transformer.reset();
+            } catch (UnsupportedOperationException e) {
+                pooledTransformers.decrementAndGet();
+                return;
+            }
+            transformers.offer(transformer);
+        }
+    }
+}
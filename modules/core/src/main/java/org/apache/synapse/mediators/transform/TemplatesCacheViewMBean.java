@@ -0,0 +1,67 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.transform;
+
+/**
+ * JMX MBean interface for monitoring the cache of compiled XSLT templates.
+ */
+public interface TemplatesCacheViewMBean {
+
+    /**
+     * Get the number of compiled templates in the cache
+     *
+     * @return An integer
+     */
+    public int getSize();
+
+    /**
+     * Get the maximum number of compiled templates held by the cache
+     *
+     * @return An integer
+     */
+    public int getMaxSize();
+
+    /**
+     * Get the number of lookups which found up-to-date templates in the cache
+     *
+     * @return A long
+     */
+    public long getHitCount();
+
+    /**
+     * Get the number of lookups which did not find up-to-date templates in the cache
+     *
+     * @return A long
+     */
+    public long getMissCount();
+
+    /**
+     * Get the number of templates evicted from the cache to keep it within its maximum size
+     *
+     * @return A long
+     */
+    public long getEvictionCount();
+
+    /**
+     * Remove all the templates from the cache
+     */
+    public void clear();
+
+}
@@ -19,28 +19,46 @@
 
 package org.apache.synapse.mediators.transform;
 
+import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMNode;
 import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axiom.util.blob.OverflowBlob;
 import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.SynapseLog;
 import org.apache.synapse.config.Entry;
 import org.apache.synapse.config.SynapseConfigUtils;
 import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.Value;
 import org.apache.synapse.mediators.MediatorProperty;
+import org.apache.synapse.mediators.eip.splitter.IterateMediator;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
+import org.apache.synapse.transport.passthru.Pipe;
+import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
+import org.apache.synapse.util.XMLOverflowBlobDataSource;
 import org.apache.synapse.util.jaxp.*;
 import org.apache.synapse.util.resolver.CustomJAXPURIResolver;
 import org.apache.synapse.util.resolver.ResourceMap;
 import org.apache.synapse.util.xpath.SourceXPathSupport;
 import org.apache.synapse.util.xpath.SynapseXPath;
 
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.*;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * The XSLT mediator performs an XSLT transformation requested, using
@@ -55,6 +73,13 @@ import java.util.*;
  * the transformation process. By default this is turned on as an optimization, but
  * should be set to false if issues are detected</p>
  *
+ * <p>The "http://ws.apache.org/ns/synapse/transform/feature/streaming" feature enables a
+ * streaming mode for pass-through messages with a plain XML payload, which have not been built
+ * yet. When the source and the key are not XPath expressions and no target property is set,
+ * the raw payload is read straight from the pass-through pipe into the transformation, and
+ * the result is spooled to an overflow buffer and attached to the message without building
+ * the object model for either of them. Other messages are transformed as usual.</p>
+ *
  * <p> Note: Set the TransformerFactory system property to generate and use translets
  *  -Djavax.xml.transform.TransformerFactory=org.apache.xalan.xsltc.trax.TransformerFactoryImpl
  * 
@@ -97,6 +122,13 @@ public class XSLTMediator extends AbstractMediator {
     public static final String USE_DOM_SOURCE_AND_RESULTS =
         "http://ws.apache.org/ns/synapse/transform/feature/dom";
     
+    /**
+     * The feature for enabling the streaming transformation of pass-through messages which
+     * have not been built
+     */
+    public static final String USE_STREAMING_PASS_THROUGH =
+        "http://ws.apache.org/ns/synapse/transform/feature/streaming";
+
     /**
      * The name of the attribute that allows to specify the {@link SourceBuilderFactory}.
      */
@@ -147,22 +179,24 @@ public class XSLTMediator extends AbstractMediator {
     private ResourceMap resourceMap;
 
     /**
-     * Cache multiple templates
-     * Unique string used as a key for each template
-     * The Template instance used to create a Transformer object. This is  thread-safe
+     * The shared cache of compiled templates. Templates are cached against the generated key
+     * of the stylesheet and the templates cache scope of the mediator
      */
-    private Map<String, Templates> cachedTemplatesMap = new Hashtable<String, Templates>();
+    private final TemplatesCache templatesCache = TemplatesCache.getInstance();
 
     /**
-     * The TransformerFactory instance which use to create Templates. This is not thread-safe.
-     * @see javax.xml.transform.TransformerFactory
+     * Identifies the configuration of the TransformerFactory of this mediator, so that templates
+     * are only shared between mediators which would compile them the same way. Computed lazily
+     * once the mediator has been configured
      */
-    private final TransformerFactory transFact = TransformerFactory.newInstance();
+    private volatile String templatesCacheScope;
 
     /**
-     * Lock used to ensure thread-safe creation and use of the above Transformer
+     * The TransformerFactory instance which use to create Templates. This is not thread-safe,
+     * and is only used while holding its own lock.
+     * @see javax.xml.transform.TransformerFactory
      */
-    private final Object transformerLock = new Object();
+    private final TransformerFactory transFact = TransformerFactory.newInstance();
 
     /**
      * The source builder factory to use.
@@ -174,6 +208,11 @@ public class XSLTMediator extends AbstractMediator {
      */
     private ResultBuilderFactory resultBuilderFactory = new StreamResultBuilderFactory();
 
+    /**
+     * Whether the streaming transformation of pass-through messages is enabled
+     */
+    private boolean streamingPassThrough = false;
+
     /**
      * Transforms this message (or its element specified as the source) using the
      * given XSLT transformation
@@ -212,6 +251,10 @@ public class XSLTMediator extends AbstractMediator {
      */
     private void performXSLT(MessageContext synCtx, SynapseLog synLog) {
 
+        if (streamingPassThrough && performStreamingXSLT(synCtx, synLog)) {
+            return;
+        }
+
         OMNode sourceNode = source.selectOMNode(synCtx, synLog);
         boolean isSoapEnvelope = (sourceNode == synCtx.getEnvelope());
         boolean isSoapBody = (sourceNode == synCtx.getEnvelope().getBody());
@@ -220,38 +263,20 @@ public class XSLTMediator extends AbstractMediator {
         // Derive actual key from message context
         String generatedXsltKey = xsltKey.evaluateValue(synCtx);
 
-        // get templates from generatedXsltKey
-        Templates cachedTemplates = null;
-
         if (synLog.isTraceTraceEnabled()) {
             synLog.traceTrace("Transformation source : " + sourceNode.toString());
         }
 
-        // determine if it is needed to create or create the template
-        if (isCreationOrRecreationRequired(synCtx)) {
-            // many threads can see this and come here for acquiring the lock
-            synchronized (transformerLock) {
-                // only first thread should create the template
-                if (isCreationOrRecreationRequired(synCtx)) {
-                    cachedTemplates = createTemplate(synCtx, synLog, generatedXsltKey);
-                } else {
-                    cachedTemplates = cachedTemplatesMap.get(generatedXsltKey);
-                }
-            }
-        }
-        else{
-            //If already cached template then load it from cachedTemplatesMap
-            synchronized (transformerLock){
-                cachedTemplates = cachedTemplatesMap.get(generatedXsltKey);
-            }
-        }
+        // get templates from generatedXsltKey
+        TemplatesCache.CachedTemplates cachedTemplates =
+                getTemplates(synCtx, synLog, generatedXsltKey);
 
+        Transformer transformer = null;
         try {
             // perform transformation
-            Transformer transformer = null;
             try {
-                transformer = cachedTemplates.newTransformer();
-            } catch (NullPointerException ex) {
+                transformer = cachedTemplates.borrowTransformer();
+            } catch (TransformerConfigurationException ex) {
                 handleException("Unable to create Transformer using cached template", ex, synCtx);
             }
             if (!properties.isEmpty()) {
@@ -359,66 +384,224 @@ public class XSLTMediator extends AbstractMediator {
 
         } catch (TransformerException e) {
             handleException("Error performing XSLT transformation using : " + xsltKey, e, synCtx);
+        } finally {
+            if (transformer != null) {
+                cachedTemplates.releaseTransformer(transformer);
+            }
         }
     }
 
     /**
-     * Create a XSLT template object and assign it to the cachedTemplates variable
+     * Transform the raw payload of a pass-through message, without building it. The payload is
+     * read from the pass-through pipe, and the result is written to an overflow blob which
+     * replaces the payload of the message
+     *
+     * @param synCtx current message
+     * @param synLog the logger to be used
+     * @return true if the message was transformed, false if it has to be transformed as usual
+     */
+    private boolean performStreamingXSLT(MessageContext synCtx, SynapseLog synLog) {
+
+        if (source.getXPath() != null || targetPropertyName != null ||
+                xsltKey.getExpression() != null || !(synCtx instanceof Axis2MessageContext)) {
+            return false;
+        }
+
+        org.apache.axis2.context.MessageContext axis2MC =
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+        Pipe pipe = (Pipe) axis2MC.getProperty(PassThroughConstants.PASS_THROUGH_PIPE);
+        Object contentType = axis2MC.getProperty(Constants.Configuration.CONTENT_TYPE);
+        if (pipe == null || PassThroughTransportUtils.builderInvoked(axis2MC) ||
+                axis2MC.getProperty(PassThroughConstants.BUFFERED_INPUT_STREAM) != null ||
+                !axis2MC.isDoingREST() || contentType == null ||
+                !IterateMediator.isXMLContentType(contentType.toString())) {
+            // only plain XML payloads which have not been read yet can be streamed
+            return false;
+        }
+
+        String generatedXsltKey = xsltKey.evaluateValue(synCtx);
+        TemplatesCache.CachedTemplates cachedTemplates =
+                getTemplates(synCtx, synLog, generatedXsltKey);
+
+        Transformer transformer = null;
+        try {
+            transformer = cachedTemplates.borrowTransformer();
+            if ("text".equals(transformer.getOutputProperty(OutputKeys.METHOD))) {
+                // the result has to be wrapped as a text payload
+                return false;
+            }
+
+            synLog.traceOrDebug("Performing a streaming transformation of the pass-through " +
+                    "message payload");
+
+            if (!properties.isEmpty()) {
+                // set the parameters which will pass to the Transformation
+                applyProperties(transformer, synCtx, synLog);
+            }
+            transformer.setErrorListener(new ErrorListenerImpl(synLog, "XSLT transformation"));
+
+            OverflowBlob result = synCtx.getEnvironment().createOverflowBlob();
+            boolean attached = false;
+            try {
+                InputStream in = pipe.getInputStream();
+                String charSetEncoding = IterateMediator.getCharSetEncoding(
+                        contentType.toString());
+                StreamSource streamSource = charSetEncoding != null ?
+                        new StreamSource(new InputStreamReader(in, charSetEncoding)) :
+                        new StreamSource(in);
+                OutputStream out = result.getOutputStream();
+                try {
+                    transformer.transform(streamSource, new StreamResult(out));
+                } finally {
+                    out.close();
+                }
+
+                // discard anything left in the pipe after the document, such as trailing
+                // whitespace
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    // drain
+                }
+
+                SOAPFactory factory = synCtx.isSOAP11() ? OMAbstractFactory.getSOAP11Factory() :
+                        OMAbstractFactory.getSOAP12Factory();
+                SOAPEnvelope envelope = factory.getDefaultEnvelope();
+                envelope.getBody().addChild(
+                        XMLOverflowBlobDataSource.createOMSourcedElement(result));
+                synCtx.setEnvelope(envelope);
+                // the payload has been consumed from the pipe, the new envelope has to be
+                // serialized
+                axis2MC.setProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED, Boolean.TRUE);
+                // the blob backs the payload until the message has been mediated
+                PassThroughTransportUtils.releaseAfterMediation(axis2MC, result);
+                attached = true;
+            } finally {
+                if (!attached) {
+                    result.release();
+                }
+            }
+
+            synLog.traceOrDebug("Streaming transformation completed");
+
+        } catch (TransformerException e) {
+            handleException("Error performing XSLT transformation using : " + xsltKey, e, synCtx);
+        } catch (IOException e) {
+            handleException("Error streaming the XSLT transformation using : " + xsltKey,
+                    e, synCtx);
+        } catch (XMLStreamException e) {
+            handleException("Error reading the XSLT transformation result using : " + xsltKey,
+                    e, synCtx);
+        } finally {
+            if (transformer != null) {
+                cachedTemplates.releaseTransformer(transformer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the compiled templates of the stylesheet from the templates cache, compiling the
+     * stylesheet if it is not cached yet, or if the registry entry it was compiled from has
+     * changed since
+     *
      * @param synCtx current message
      * @param synLog logger to use
-     * @param generatedXsltKey evaluated xslt key(real key value) for dynamic or static key 
+     * @param generatedXsltKey evaluated xslt key(real key value) for dynamic or static key
      * @return cached template
      */
-    private Templates createTemplate(MessageContext synCtx, SynapseLog synLog, String generatedXsltKey) {
-        // Assign created template
-        Templates cachedTemplates = null;
+    private TemplatesCache.CachedTemplates getTemplates(final MessageContext synCtx,
+                                                       final SynapseLog synLog,
+                                                       final String generatedXsltKey) {
+
+        Entry dp = synCtx.getConfiguration().getEntryDefinition(generatedXsltKey);
+        // if the xsltKey refers to a dynamic resource, and if it has been expired, fetch it
+        // again - the resource is only replaced if its version in the registry has changed
+        if (dp != null && dp.isDynamic() && (!dp.isCached() || dp.isExpired())) {
+            synCtx.getEntry(generatedXsltKey);
+        }
 
-        // Set an error listener (SYNAPSE-307).
-        transFact.setErrorListener(new ErrorListenerImpl(synLog, "stylesheet parsing"));
-        // Allow xsl:import and xsl:include resolution
-        transFact.setURIResolver(new CustomJAXPURIResolver(resourceMap,
-                synCtx.getConfiguration()));
+        // dynamic resources are identified by the currently cached value, as the registry
+        // replaces it whenever a new version is fetched. Resources which are not held in an
+        // entry are identified by themselves
+        final Object source = dp == null ? synCtx.getEntry(generatedXsltKey) :
+                (dp.isDynamic() ? dp.getValue() : dp);
+        final long version = dp == null ? 0 : dp.getVersion();
+        String cacheKey = generatedXsltKey + getTemplatesCacheScope();
 
+        TemplatesCache.CachedTemplates cachedTemplates = null;
         try {
-            cachedTemplates = transFact.newTemplates(
-                    SynapseConfigUtils.getStreamSource(synCtx.getEntry(generatedXsltKey)));
-            if (cachedTemplates == null) {
-                // if cached template creation failed
-                handleException("Error compiling the XSLT with key : " + xsltKey, synCtx);
-            } else {
-                // if cached template is created then put it in to cachedTemplatesMap
-                cachedTemplatesMap.put(generatedXsltKey, cachedTemplates);
+            cachedTemplates = templatesCache.get(cacheKey, source, version);
+            if (cachedTemplates != null) {
+                return cachedTemplates;
             }
-        } catch (Exception e) {
+            cachedTemplates = templatesCache.compile(cacheKey, source, version,
+                    new Callable<Templates>() {
+                        public Templates call() throws Exception {
+                            return createTemplate(synCtx, synLog, generatedXsltKey);
+                        }
+                    });
+        } catch (TransformerConfigurationException e) {
             handleException("Error creating XSLT transformer using : " + xsltKey, e, synCtx);
         }
         return cachedTemplates;
     }
 
     /**
-     * Utility method to determine weather it is needed to create a XSLT template
-     *
+     * Compile the stylesheet with the given key into a XSLT template object
      * @param synCtx current message
-     * @return true if it is needed to create a new XSLT template
+     * @param synLog logger to use
+     * @param generatedXsltKey evaluated xslt key(real key value) for dynamic or static key 
+     * @return compiled template
+     * @throws TransformerConfigurationException if the stylesheet could not be compiled
      */
-    private boolean isCreationOrRecreationRequired(MessageContext synCtx) {
+    private Templates createTemplate(MessageContext synCtx, SynapseLog synLog,
+                                     String generatedXsltKey)
+            throws TransformerConfigurationException {
+
+        Templates cachedTemplates;
+        synchronized (transFact) {
+            // Set an error listener (SYNAPSE-307).
+            transFact.setErrorListener(new ErrorListenerImpl(synLog, "stylesheet parsing"));
+            // Allow xsl:import and xsl:include resolution
+            transFact.setURIResolver(new CustomJAXPURIResolver(resourceMap,
+                    synCtx.getConfiguration()));
 
-        // Derive actual key from message context
-        String generatedXsltKey = xsltKey.evaluateValue(synCtx);
+            cachedTemplates = transFact.newTemplates(
+                    SynapseConfigUtils.getStreamSource(synCtx.getEntry(generatedXsltKey)));
+        }
+        if (cachedTemplates == null) {
+            // if cached template creation failed
+            throw new TransformerConfigurationException(
+                    "Error compiling the XSLT with key : " + xsltKey);
+        }
+        return cachedTemplates;
+    }
 
-        // if there are no cachedTemplates inside cachedTemplatesMap or
-        // if the template related to this generated key is not cached
-        // then it need to be cached
-        if (cachedTemplatesMap.isEmpty() || !cachedTemplatesMap.containsKey(generatedXsltKey)) {
-            // this is a creation case
-            return true;
-        } else {
-            // build transformer - if necessary
-            Entry dp = synCtx.getConfiguration().getEntryDefinition(generatedXsltKey);
-            // if the xsltKey refers to a dynamic resource, and if it has been expired
-            // it is a recreation case
-            return dp != null && dp.isDynamic() && (!dp.isCached() || dp.isExpired());
+    /**
+     * Get the scope of this mediator in the templates cache. Mediators which set the same
+     * features and attributes on their TransformerFactory and use the same resource map share
+     * their compiled templates
+     *
+     * @return the templates cache scope of the mediator
+     */
+    private String getTemplatesCacheScope() {
+        String scope = templatesCacheScope;
+        if (scope == null) {
+            StringBuilder sb = new StringBuilder();
+            for (MediatorProperty feature : transformerFactoryFeatures) {
+                sb.append("|f:").append(feature.getName()).append('=').append(feature.getValue());
+            }
+            for (MediatorProperty attribute : transformerFactoryAttributes) {
+                sb.append("|a:").append(attribute.getName()).append('=')
+                        .append(attribute.getValue());
+            }
+            if (resourceMap != null) {
+                sb.append("|r:").append(resourceMap.getResources());
+            }
+            scope = sb.toString();
+            templatesCacheScope = scope;
         }
+        return scope;
     }
 
     public SynapseXPath getSource() {
@@ -493,11 +676,14 @@ public class XSLTMediator extends AbstractMediator {
             mp.setValue("false");
         }
         transformerFactoryFeatures.add(mp);
+        templatesCacheScope = null;
         if (USE_DOM_SOURCE_AND_RESULTS.equals(featureName)) {
             if (isFeatureEnable) {
                 sourceBuilderFactory = new DOOMSourceBuilderFactory();
                 resultBuilderFactory = new DOOMResultBuilderFactory();
             }
+        } else if (USE_STREAMING_PASS_THROUGH.equals(featureName)) {
+            streamingPassThrough = isFeatureEnable;
         } else {
             try {
                 transFact.setFeature(featureName, isFeatureEnable);
@@ -525,6 +711,7 @@ public class XSLTMediator extends AbstractMediator {
         mp.setName(name);
         mp.setValue(value);
         transformerFactoryAttributes.add(mp);
+        templatesCacheScope = null;
         if (SOURCE_BUILDER_FACTORY.equals(name) || RESULT_BUILDER_FACTORY.equals(name)) {
             Object instance;
             try {
@@ -594,6 +781,7 @@ public class XSLTMediator extends AbstractMediator {
 
     public void setResourceMap(ResourceMap resourceMap) {
         this.resourceMap = resourceMap;
+        this.templatesCacheScope = null;
     }
 }
 
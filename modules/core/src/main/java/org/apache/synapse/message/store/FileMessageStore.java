@@ -0,0 +1,812 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.om.util.StAXUtils;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.Constants;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.description.TransportOutDescription;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.SynapseException;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A persistent message store, which keeps the messages in append-only segment files in a local
+ * directory, so that the stored messages survive a restart of Synapse.
+ *
+ * Storing a message appends it to the current segment, and removing a message appends an
+ * acknowledgement of it. Segments are memory mapped, and are flushed to the disk before a call
+ * to store a message returns. Concurrent calls share a single flush (group commit), so that the
+ * throughput is not limited by the number of flushes the disk can take. The stored messages are
+ * indexed in memory by their location, in the order they were stored, and by their message IDs.
+ *
+ * Segments which no longer hold unacknowledged messages are deleted. When the oldest segment
+ * only holds a few of them, they are copied to the current segment so that it can be deleted.
+ * When the store is initialized, the segments are read back to rebuild the index, up to the
+ * last complete record of each.
+ *
+ * Only the SOAP envelope, the addressing details and the String valued properties of a message
+ * are stored.
+ */
+public class FileMessageStore extends AbstractMessageStore {
+
+    private static final Log log = LogFactory.getLog(FileMessageStore.class);
+
+    /** Message store parameter for the directory of the segment files */
+    public static final String STORE_DIRECTORY = "store.directory";
+    /** Message store parameter for the size of the segment files in bytes */
+    public static final String SEGMENT_SIZE = "store.segment.size";
+    /** Message store parameter to disable flushing the messages to the disk as they are stored */
+    public static final String SYNC_ON_STORE = "store.sync";
+    /**
+     * Message store parameter for the ratio of the size of the oldest segment, under which the
+     * messages it still holds are copied to the current segment
+     */
+    public static final String COMPACTION_THRESHOLD = "store.compaction.threshold";
+
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final double DEFAULT_COMPACTION_THRESHOLD = 0.25;
+
+    /** Version of the format of the stored messages */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File directory = null;
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+    private boolean syncOnStore = true;
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /** The segments of the store, from the oldest to the current one */
+    private final List<StoreSegment> segments = new ArrayList<StoreSegment>();
+
+    /** The stored messages in the order they were stored, by their entry IDs */
+    private final LinkedHashMap<Long, Location> entries = new LinkedHashMap<Long, Location>();
+    /** The oldest stored message with each message ID */
+    private final Map<String, Location> index = new HashMap<String, Location>();
+
+    private long nextEntryId = 1;
+
+    /** Group commit state, guarded by the syncMonitor */
+    private final Object syncMonitor = new Object();
+    /** The number of ADD records appended, and the number of them flushed to the disk */
+    private long appendedCount = 0;
+    private long syncedCount = 0;
+    private boolean syncing = false;
+    /** Segments appended to since the last flush, guarded by the store lock */
+    private final Set<StoreSegment> dirtySegments = new LinkedHashSet<StoreSegment>();
+
+    @Override
+    public void setParameters(Map<String, Object> parameters) {
+        super.setParameters(parameters);
+        if (parameters == null) {
+            return;
+        }
+
+        Object value = parameters.get(STORE_DIRECTORY);
+        if (value != null) {
+            directory = new File(value.toString().trim());
+        }
+        value = parameters.get(SEGMENT_SIZE);
+        if (value != null) {
+            segmentSize = Integer.parseInt(value.toString().trim());
+        }
+        value = parameters.get(SYNC_ON_STORE);
+        if (value != null) {
+            syncOnStore = Boolean.parseBoolean(value.toString().trim());
+        }
+        value = parameters.get(COMPACTION_THRESHOLD);
+        if (value != null) {
+            compactionThreshold = Double.parseDouble(value.toString().trim());
+        }
+    }
+
+    @Override
+    public void init(SynapseEnvironment se) {
+        super.init(se);
+
+        if (directory == null) {
+            String synapseHome = System.getProperty(SynapseConstants.SYNAPSE_HOME, ".");
+            directory = new File(synapseHome, "repository" + File.separator + "data" +
+                    File.separator + "messagestores" + File.separator + name);
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new SynapseException("Unable to create the directory : " + directory +
+                    " of the message store : " + name);
+        }
+
+        lock.lock();
+        try {
+            recover();
+            log.info("Message store : " + name + " recovered " + entries.size() +
+                    " messages from " + segments.size() + " segments in : " + directory);
+        } catch (IOException e) {
+            throw new SynapseException("Error recovering the message store : " + name +
+                    " from : " + directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        lock.lock();
+        try {
+            for (StoreSegment segment : segments) {
+                segment.force();
+                segment.close();
+            }
+            segments.clear();
+            entries.clear();
+            index.clear();
+            dirtySegments.clear();
+        } catch (IOException e) {
+            log.error("Error closing the message store : " + name, e);
+        } finally {
+            lock.unlock();
+        }
+        super.destroy();
+    }
+
+    /**
+     * Read the segments in the store directory back, and rebuild the index of the messages
+     * which were not acknowledged. Must be called holding the lock
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        List<File> segmentFiles = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (StoreSegment.getSequence(file) >= 0) {
+                    segmentFiles.add(file);
+                }
+            }
+        }
+        File[] sorted = segmentFiles.toArray(new File[segmentFiles.size()]);
+        Arrays.sort(sorted);
+
+        // messages copied by a compaction may be read more than once, ordering them by their
+        // entry IDs keeps them in the order they were first stored
+        final TreeMap<Long, Location> recovered = new TreeMap<Long, Location>();
+        StoreSegment.RecordVisitor visitor = new StoreSegment.RecordVisitor() {
+            public void visit(StoreSegment segment, byte type, long entryId, int offset,
+                              byte[] payload) {
+                if (type == StoreSegment.ADD) {
+                    Location location = new Location(entryId, readMessageId(payload),
+                            segment, offset, payload.length);
+                    Location previous = recovered.put(entryId, location);
+                    if (previous != null) {
+                        previous.segment.liveCount--;
+                        previous.segment.liveBytes -= previous.length;
+                    }
+                    segment.liveCount++;
+                    segment.liveBytes += location.length;
+                } else {
+                    Location removed = recovered.remove(entryId);
+                    if (removed != null) {
+                        removed.segment.liveCount--;
+                        removed.segment.liveBytes -= removed.length;
+                    }
+                }
+                nextEntryId = Math.max(nextEntryId, entryId + 1);
+            }
+        };
+
+        for (File file : sorted) {
+            StoreSegment segment = StoreSegment.open(file);
+            while (segment.readNext(visitor)) {
+                // read all the valid records of the segment
+            }
+            segment.truncate();
+            segments.add(segment);
+        }
+
+        for (Location location : recovered.values()) {
+            addToIndex(location);
+        }
+
+        // keep appending to the last segment, and drop those which are not needed anymore
+        if (segments.isEmpty()) {
+            segments.add(StoreSegment.create(directory, 0, segmentSize));
+        }
+        compact();
+    }
+
+    @Override
+    public boolean offer(MessageContext messageContext) {
+        if (messageContext == null) {
+            return true;
+        }
+
+        byte[] payload = toPayload(messageContext);
+        long appended;
+
+        lock.lock();
+        try {
+            long entryId = nextEntryId++;
+            StoreSegment segment = getSegmentFor(payload.length);
+            int offset = segment.append(StoreSegment.ADD, entryId, payload);
+            dirtySegments.add(segment);
+
+            Location location = new Location(entryId, messageContext.getMessageID(),
+                    segment, offset, payload.length);
+            segment.liveCount++;
+            segment.liveBytes += payload.length;
+            addToIndex(location);
+
+            synchronized (syncMonitor) {
+                appended = ++appendedCount;
+            }
+        } catch (IOException e) {
+            throw new SynapseException("Error storing the message with id " +
+                    messageContext.getMessageID() + " in the message store : " + name, e);
+        } finally {
+            lock.unlock();
+        }
+
+        if (syncOnStore) {
+            awaitSync(appended);
+        }
+
+        notifyMessageAddition(messageContext.getMessageID());
+        if (log.isDebugEnabled()) {
+            log.debug("Message with id " + messageContext.getMessageID() + " stored");
+        }
+        return true;
+    }
+
+    /**
+     * Wait until the ADD record with the given count has been flushed to the disk. The first
+     * caller to find that no flush is in progress flushes all the records appended so far, on
+     * behalf of all the callers waiting for them.
+     *
+     * @param appended the count of the ADD record to wait for
+     */
+    private void awaitSync(long appended) {
+        synchronized (syncMonitor) {
+            while (syncedCount < appended && syncing) {
+                try {
+                    syncMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SynapseException("Interrupted while storing a message in the " +
+                            "message store : " + name, e);
+                }
+            }
+            if (syncedCount >= appended) {
+                return;
+            }
+            syncing = true;
+        }
+
+        long target;
+        List<StoreSegment> toSync;
+        lock.lock();
+        try {
+            synchronized (syncMonitor) {
+                target = appendedCount;
+            }
+            toSync = new ArrayList<StoreSegment>(dirtySegments);
+            dirtySegments.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        boolean synced = false;
+        try {
+            for (StoreSegment segment : toSync) {
+                segment.force();
+            }
+            synced = true;
+        } finally {
+            synchronized (syncMonitor) {
+                syncing = false;
+                if (synced) {
+                    syncedCount = Math.max(syncedCount, target);
+                }
+                syncMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Get the segment to append a record with the given payload length to, starting a new
+     * segment if the current one is full. Must be called holding the lock
+     */
+    private StoreSegment getSegmentFor(int payloadLength) throws IOException {
+        StoreSegment current = segments.get(segments.size() - 1);
+        if (current.hasSpace(payloadLength)) {
+            return current;
+        }
+
+        StoreSegment segment = roll(current, payloadLength);
+        compact();
+        if (!segment.hasSpace(payloadLength)) {
+            // the compaction relocated live records into the new segment, leaving no room
+            segment = roll(segment, payloadLength);
+        }
+        return segment;
+    }
+
+    /**
+     * Start a new segment following the given one, large enough for a record with the given
+     * payload length. Must be called holding the lock
+     */
+    private StoreSegment roll(StoreSegment current, int payloadLength) throws IOException {
+        // the previous segment is complete, make sure it reaches the disk in full
+        current.force();
+        dirtySegments.remove(current);
+
+        int size = Math.max(segmentSize, StoreSegment.HEADER_SIZE + payloadLength);
+        StoreSegment segment = StoreSegment.create(directory, current.getSequence() + 1, size);
+        segments.add(segment);
+        return segment;
+    }
+
+    @Override
+    public MessageContext poll() {
+        lock.lock();
+        try {
+            Location location = first();
+            if (location == null) {
+                return null;
+            }
+            MessageContext context = read(location);
+            acknowledge(location);
+            // notify observers
+            notifyMessageRemoval(context.getMessageID());
+            return context;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext peek() {
+        lock.lock();
+        try {
+            Location location = first();
+            return location != null ? read(location) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext remove() throws NoSuchElementException {
+        lock.lock();
+        try {
+            Location location = first();
+            if (location == null) {
+                throw new NoSuchElementException("Message store : " + name + " is empty");
+            }
+            MessageContext context = read(location);
+            acknowledge(location);
+            notifyMessageRemoval(context.getMessageID());
+            return context;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            Location location;
+            while ((location = first()) != null) {
+                acknowledge(location);
+                notifyMessageRemoval(location.messageId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext remove(String messageID) {
+        lock.lock();
+        try {
+            if (messageID != null) {
+                Location location = index.get(messageID);
+                if (location != null) {
+                    MessageContext context = read(location);
+                    acknowledge(location);
+                    notifyMessageRemoval(messageID);
+                    return context;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext get(int index) {
+        lock.lock();
+        try {
+            if (index >= 0 && index < entries.size()) {
+                Iterator<Location> locations = entries.values().iterator();
+                for (int i = 0; i < index; i++) {
+                    locations.next();
+                }
+                return read(locations.next());
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<MessageContext> getAll() {
+        lock.lock();
+        try {
+            List<MessageContext> returnList = new ArrayList<MessageContext>(entries.size());
+            for (Location location : entries.values()) {
+                returnList.add(read(location));
+            }
+            return returnList;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public MessageContext get(String messageId) {
+        lock.lock();
+        try {
+            if (messageId != null) {
+                Location location = index.get(messageId);
+                if (location != null) {
+                    return read(location);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return null;
+    }
+
+    private Location first() {
+        Iterator<Location> locations = entries.values().iterator();
+        return locations.hasNext() ? locations.next() : null;
+    }
+
+    private void addToIndex(Location location) {
+        entries.put(location.entryId, location);
+        Location sameId = index.get(location.messageId);
+        if (sameId == null) {
+            index.put(location.messageId, location);
+        } else {
+            // the same message may be stored more than once, chain it after the older ones
+            while (sameId.nextWithSameId != null) {
+                sameId = sameId.nextWithSameId;
+            }
+            sameId.nextWithSameId = location;
+        }
+    }
+
+    /**
+     * Append an acknowledgement of a stored message, and remove it from the index. Must be
+     * called holding the lock
+     */
+    private void acknowledge(Location location) {
+        try {
+            StoreSegment segment = getSegmentFor(0);
+            segment.append(StoreSegment.ACK, location.entryId, new byte[0]);
+            dirtySegments.add(segment);
+        } catch (IOException e) {
+            throw new SynapseException("Error removing the message with id " +
+                    location.messageId + " from the message store : " + name, e);
+        }
+
+        entries.remove(location.entryId);
+        // the messages removed are always the oldest of their message ID, as only the first
+        // message and the indexed messages are removed
+        if (location.nextWithSameId == null) {
+            index.remove(location.messageId);
+        } else {
+            index.put(location.messageId, location.nextWithSameId);
+        }
+        location.segment.liveCount--;
+        location.segment.liveBytes -= location.length;
+
+        if (location.segment.liveCount == 0 && location.segment == segments.get(0)) {
+            compact();
+        }
+    }
+
+    /**
+     * Delete the oldest segments which do not hold any unacknowledged messages, and copy the
+     * messages of the oldest segment to the current segment if only a few of them are left.
+     * Only the oldest segments are deleted, as the acknowledgements they hold may refer to
+     * messages in the segments before them. Must be called holding the lock
+     */
+    private void compact() {
+        try {
+            while (segments.size() > 1) {
+                StoreSegment oldest = segments.get(0);
+                if (oldest.liveCount > 0) {
+                    if (oldest.liveBytes > oldest.getCapacity() * compactionThreshold ||
+                            !relocate(oldest)) {
+                        return;
+                    }
+                }
+
+                segments.remove(0);
+                dirtySegments.remove(oldest);
+                if (!oldest.delete()) {
+                    log.warn("Unable to delete the segment file : " + oldest.getFile() +
+                            " of the message store : " + name);
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Deleted the segment file : " + oldest.getFile() +
+                            " of the message store : " + name);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error compacting the message store : " + name, e);
+        }
+    }
+
+    /**
+     * Copy the unacknowledged messages of a segment to the current segment, keeping their
+     * entry IDs and hence their order. Must be called holding the lock
+     *
+     * @return true if all the messages of the segment were copied
+     */
+    private boolean relocate(StoreSegment segment) throws IOException {
+        StoreSegment current = segments.get(segments.size() - 1);
+        for (Location location : entries.values()) {
+            if (location.segment != segment) {
+                continue;
+            }
+            byte[] payload = segment.readPayload(location.offset);
+            if (!current.hasSpace(payload.length)) {
+                // there is no room for the copies, try again once the current segment is full
+                current.force();
+                return false;
+            }
+            location.offset = current.append(StoreSegment.ADD, location.entryId, payload);
+            location.segment = current;
+            segment.liveCount--;
+            segment.liveBytes -= payload.length;
+            current.liveCount++;
+            current.liveBytes += payload.length;
+        }
+        // the copies must be on the disk before the originals are deleted
+        current.force();
+        return true;
+    }
+
+    private MessageContext read(Location location) {
+        return toMessageContext(location.segment.readPayload(location.offset));
+    }
+
+    /**
+     * Serialize the parts of a message kept by the store
+     */
+    private byte[] toPayload(MessageContext synCtx) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            writeString(out, synCtx.getMessageID());
+            out.writeInt(FORMAT_VERSION);
+            writeString(out, synCtx.getTo() != null ? synCtx.getTo().getAddress() : null);
+            writeString(out, synCtx.getReplyTo() != null ?
+                    synCtx.getReplyTo().getAddress() : null);
+            writeString(out, synCtx.getSoapAction());
+            writeString(out, synCtx.getWSAAction());
+            out.writeBoolean(synCtx.isResponse());
+
+            org.apache.axis2.context.MessageContext axis2MC =
+                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+            out.writeBoolean(axis2MC.isDoingREST());
+            writeString(out, (String) axis2MC.getProperty(
+                    Constants.Configuration.MESSAGE_TYPE));
+            writeString(out, (String) axis2MC.getProperty(
+                    Constants.Configuration.CONTENT_TYPE));
+            writeString(out, axis2MC.getTransportOut() != null ?
+                    axis2MC.getTransportOut().getName() : null);
+
+            List<String> keys = new ArrayList<String>();
+            for (Object key : synCtx.getPropertyKeySet()) {
+                if (synCtx.getProperty((String) key) instanceof String) {
+                    keys.add((String) key);
+                } else if (log.isDebugEnabled()) {
+                    log.debug("Property : " + key + " of the message with id " +
+                            synCtx.getMessageID() + " is not stored, as it is not a String");
+                }
+            }
+            out.writeInt(keys.size());
+            for (String key : keys) {
+                writeString(out, key);
+                writeString(out, (String) synCtx.getProperty(key));
+            }
+
+            synCtx.getEnvelope().serialize(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new SynapseException("Error serializing the message with id " +
+                    synCtx.getMessageID() + " for the message store : " + name, e);
+        } catch (XMLStreamException e) {
+            throw new SynapseException("Error serializing the message with id " +
+                    synCtx.getMessageID() + " for the message store : " + name, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Create a new message from the parts of a message kept by the store
+     */
+    private MessageContext toMessageContext(byte[] payload) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String messageId = null;
+        try {
+            messageId = readString(in);
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new SynapseException("Unsupported format version : " + version +
+                        " of the message with id " + messageId + " in the message store : " +
+                        name);
+            }
+
+            MessageContext synCtx = synapseEnvironment.createMessageContext();
+            synCtx.setMessageID(messageId);
+            String to = readString(in);
+            if (to != null) {
+                synCtx.setTo(new EndpointReference(to));
+            }
+            String replyTo = readString(in);
+            if (replyTo != null) {
+                synCtx.setReplyTo(new EndpointReference(replyTo));
+            }
+            synCtx.setSoapAction(readString(in));
+            synCtx.setWSAAction(readString(in));
+            synCtx.setResponse(in.readBoolean());
+
+            org.apache.axis2.context.MessageContext axis2MC =
+                    ((Axis2MessageContext) synCtx).getAxis2MessageContext();
+            axis2MC.setDoingREST(in.readBoolean());
+            String messageType = readString(in);
+            if (messageType != null) {
+                axis2MC.setProperty(Constants.Configuration.MESSAGE_TYPE, messageType);
+            }
+            String contentType = readString(in);
+            if (contentType != null) {
+                axis2MC.setProperty(Constants.Configuration.CONTENT_TYPE, contentType);
+            }
+            String transportOut = readString(in);
+            if (transportOut != null && axis2MC.getConfigurationContext() != null) {
+                TransportOutDescription transport = axis2MC.getConfigurationContext().
+                        getAxisConfiguration().getTransportOut(transportOut);
+                if (transport != null) {
+                    axis2MC.setTransportOut(transport);
+                }
+            }
+
+            int propertyCount = in.readInt();
+            for (int i = 0; i < propertyCount; i++) {
+                synCtx.setProperty(readString(in), readString(in));
+            }
+
+            SOAPEnvelope envelope = OMXMLBuilderFactory.createStAXSOAPModelBuilder(
+                    StAXUtils.createXMLStreamReader(in)).getSOAPEnvelope();
+            envelope.build();
+            synCtx.setEnvelope(envelope);
+            return synCtx;
+
+        } catch (IOException e) {
+            throw new SynapseException("Error reading the message with id " + messageId +
+                    " from the message store : " + name, e);
+        } catch (XMLStreamException e) {
+            throw new SynapseException("Error reading the message with id " + messageId +
+                    " from the message store : " + name, e);
+        }
+    }
+
+    private static String readMessageId(byte[] payload) {
+        try {
+            return readString(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException e) {
+            throw new SynapseException("Error reading a stored message ID", e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * The location of a stored message in the segment files
+     */
+    private static class Location {
+
+        private final long entryId;
+        private final String messageId;
+        private StoreSegment segment;
+        private int offset;
+        private final int length;
+        /** The next message stored with the same message ID, if any */
+        private Location nextWithSameId;
+
+        private Location(long entryId, String messageId, StoreSegment segment, int offset,
+                         int length) {
+            this.entryId = entryId;
+            this.messageId = messageId;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
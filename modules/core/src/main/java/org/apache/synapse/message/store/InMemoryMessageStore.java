@@ -22,53 +22,174 @@ package org.apache.synapse.message.store;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseException;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.OutputStream;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * InMemory Message store will store Failed Messages in the local memory
+ * InMemory Message store will store Failed Messages in the local memory.
+ *
+ * Messages are kept in insertion order in a linked list, indexed by their message IDs, so that
+ * messages can be looked up and removed by ID without going through the store. The store can
+ * be bounded by the number of messages it holds, and by the total size of the serialized
+ * envelopes of those messages. When the store is full, new messages are either rejected right
+ * away, or the callers are blocked for a while until there is space for them.
  */
 public class InMemoryMessageStore extends AbstractMessageStore {
 
     private static final Log log = LogFactory.getLog(InMemoryMessageStore.class);
 
-    /** The map that keeps the stored messages */
-    private Queue<MessageContext> messageList = new ConcurrentLinkedQueue<MessageContext>();
+    /** Message store parameter for the maximum number of messages to be stored */
+    public static final String MAX_STORE_SIZE = "max.store.size";
+    /** Message store parameter for the maximum total size in bytes of the stored messages */
+    public static final String MAX_STORE_MEMORY = "max.store.memory";
+    /** Message store parameter for the policy applied when the store is full */
+    public static final String STORE_FULL_POLICY = "store.full.policy";
+    /** Message store parameter for the time in milliseconds to block for, with the block policy */
+    public static final String STORE_BLOCK_TIMEOUT = "store.block.timeout";
+
+    /** Reject new messages when the store is full */
+    public static final String REJECT_POLICY = "reject";
+    /** Block the callers storing new messages until there is space in the store */
+    public static final String BLOCK_POLICY = "block";
+
+    private static final long DEFAULT_BLOCK_TIMEOUT = 30000;
+
+    /** The oldest and the newest of the stored messages */
+    private Node head = null;
+    private Node tail = null;
+
+    /** The oldest stored message with each message ID */
+    private final Map<String, Node> index = new HashMap<String, Node>();
+
+    private volatile int size = 0;
+    private long storedBytes = 0;
+
+    /** The maximum number of messages and bytes stored, or 0 if they are not limited */
+    private int maxSize = 0;
+    private long maxMemory = 0;
+    private boolean blockWhenFull = false;
+    private long blockTimeout = DEFAULT_BLOCK_TIMEOUT;
 
     private Lock lock = new ReentrantLock();
+    private Condition notFull = lock.newCondition();
+
+    @Override
+    public void setParameters(Map<String, Object> parameters) {
+        super.setParameters(parameters);
+        if (parameters == null) {
+            return;
+        }
+
+        Object value = parameters.get(MAX_STORE_SIZE);
+        if (value != null) {
+            maxSize = Integer.parseInt(value.toString().trim());
+        }
+        value = parameters.get(MAX_STORE_MEMORY);
+        if (value != null) {
+            maxMemory = Long.parseLong(value.toString().trim());
+        }
+        value = parameters.get(STORE_FULL_POLICY);
+        if (value != null) {
+            if (BLOCK_POLICY.equals(value.toString().trim())) {
+                blockWhenFull = true;
+            } else if (REJECT_POLICY.equals(value.toString().trim())) {
+                blockWhenFull = false;
+            } else {
+                throw new SynapseException("Invalid " + STORE_FULL_POLICY + " : " + value +
+                        " for the message store : " + name + ", expected " + REJECT_POLICY +
+                        " or " + BLOCK_POLICY);
+            }
+        }
+        value = parameters.get(STORE_BLOCK_TIMEOUT);
+        if (value != null) {
+            blockTimeout = Long.parseLong(value.toString().trim());
+        }
+    }
 
     @Override
     public boolean offer(MessageContext messageContext) {
+        if (messageContext == null) {
+            return true;
+        }
+
+        messageContext.getEnvelope().build();
+        long messageSize = maxMemory > 0 ? getSerializedSize(messageContext) : 0;
+
         lock.lock();
         try {
-            if (messageContext != null) {
-                messageContext.getEnvelope().build();
-                messageList.offer(messageContext);
-                // Notify observers
-                notifyMessageAddition(messageContext.getMessageID());
-                if (log.isDebugEnabled()) {
-                    log.debug("Message with id " + messageContext.getMessageID() + " stored");
-                }
+            if (!waitForSpace(messageSize)) {
+                log.warn("Message store : " + name + " is full, the message with id " +
+                        messageContext.getMessageID() + " was not stored");
+                return false;
             }
+
+            link(new Node(messageContext, messageSize));
+            // Notify observers
+            notifyMessageAddition(messageContext.getMessageID());
+            if (log.isDebugEnabled()) {
+                log.debug("Message with id " + messageContext.getMessageID() + " stored");
+            }
+            return true;
         } finally {
             lock.unlock();
         }
+    }
+
+    /**
+     * Wait until there is space in the store for a message of the given size, if the callers
+     * should be blocked when the store is full. Must be called holding the lock.
+     *
+     * @param messageSize serialized size of the message, or 0 if the memory is not limited
+     * @return true if there is space in the store for the message
+     */
+    private boolean waitForSpace(long messageSize) {
+        if (!isFull(messageSize)) {
+            return true;
+        }
+        if (!blockWhenFull) {
+            return false;
+        }
+
+        long remaining = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        try {
+            while (isFull(messageSize)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-        return true;
+    private boolean isFull(long messageSize) {
+        if (maxSize > 0 && size >= maxSize) {
+            return true;
+        }
+        // a message larger than the limit is still accepted into an empty store
+        return maxMemory > 0 && size > 0 && storedBytes + messageSize > maxMemory;
     }
 
     @Override
     public MessageContext poll() {
         lock.lock();
         try {
-            MessageContext context = messageList.poll();
-            if (context != null) {
-                // notify observers
-                notifyMessageRemoval(context.getMessageID());
+            if (head == null) {
+                return null;
             }
+            MessageContext context = unlink(head);
+            // notify observers
+            notifyMessageRemoval(context.getMessageID());
             return context;
         } finally {
             lock.unlock();
@@ -77,17 +198,23 @@ public class InMemoryMessageStore extends AbstractMessageStore {
 
     @Override
     public MessageContext peek() {
-        return messageList.peek();        
+        lock.lock();
+        try {
+            return head != null ? head.message : null;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
     public MessageContext remove() throws NoSuchElementException {
         lock.lock();
         try {
-            MessageContext msgCtx = messageList.remove();
-            if (msgCtx != null) {
-                notifyMessageRemoval(msgCtx.getMessageID());
+            if (head == null) {
+                throw new NoSuchElementException("Message store : " + name + " is empty");
             }
+            MessageContext msgCtx = unlink(head);
+            notifyMessageRemoval(msgCtx.getMessageID());
             return msgCtx;
         } finally {
             lock.unlock();
@@ -98,14 +225,21 @@ public class InMemoryMessageStore extends AbstractMessageStore {
     public MessageContext get(int index) {
         lock.lock();
         try {
-            if (index >= 0 && index < messageList.size()) {
-                int i = 0;
-                for (MessageContext msgCtx : messageList) {
-                    if (index == i) {
-                        return msgCtx;
+            if (index >= 0 && index < size) {
+                // walk from the nearest end of the list
+                Node node;
+                if (index < size / 2) {
+                    node = head;
+                    for (int i = 0; i < index; i++) {
+                        node = node.next;
+                    }
+                } else {
+                    node = tail;
+                    for (int i = size - 1; i > index; i--) {
+                        node = node.previous;
                     }
-                    i++;
                 }
+                return node.message;
             }
             return null;
         } finally {
@@ -118,16 +252,11 @@ public class InMemoryMessageStore extends AbstractMessageStore {
         lock.lock();
         try {
             if (messageID != null) {
-                MessageContext removable = null;
-                for (MessageContext msgCtx : messageList) {
-                    if (msgCtx.getMessageID().equals(messageID)) {
-                        removable = msgCtx;
-                        break;
-                    }
-                }
-
-                if (removable != null && messageList.remove(removable)) {
+                Node node = index.get(messageID);
+                if (node != null) {
+                    MessageContext removed = unlink(node);
                     notifyMessageRemoval(messageID);
+                    return removed;
                 }
             }
         } finally {
@@ -140,10 +269,10 @@ public class InMemoryMessageStore extends AbstractMessageStore {
     public void clear() {
         lock.lock();
         try {
-            while (!messageList.isEmpty()) {
-                // We need to call remove() here because we need the notifications
+            while (head != null) {
+                // We need to notify the removal of each message here, for the notifications
                 // to get fired properly for each removal
-                remove();
+                notifyMessageRemoval(unlink(head).getMessageID());
             }
         } finally {
             lock.unlock();
@@ -154,8 +283,10 @@ public class InMemoryMessageStore extends AbstractMessageStore {
     public List<MessageContext> getAll() {
         lock.lock();
         try {
-            List<MessageContext> returnList = new ArrayList<MessageContext>();
-            returnList.addAll(messageList);
+            List<MessageContext> returnList = new ArrayList<MessageContext>(size);
+            for (Node node = head; node != null; node = node.next) {
+                returnList.add(node.message);
+            }
             return returnList;
         } finally {
             lock.unlock();
@@ -167,10 +298,9 @@ public class InMemoryMessageStore extends AbstractMessageStore {
         lock.lock();
         try {
             if (messageId != null) {
-                for (MessageContext msgCtx : messageList) {
-                    if (msgCtx.getMessageID().equals(messageId)) {
-                        return msgCtx;
-                    }
+                Node node = index.get(messageId);
+                if (node != null) {
+                    return node.message;
                 }
             }
         } finally {
@@ -181,6 +311,128 @@ public class InMemoryMessageStore extends AbstractMessageStore {
 
     @Override
     public int size() {
-        return messageList.size();
+        return size;
+    }
+
+    /**
+     * Get the total size of the serialized envelopes of the stored messages. This is only
+     * accounted for when the memory used by the store is limited
+     *
+     * @return total size in bytes of the stored messages
+     */
+    public long getStoredBytes() {
+        lock.lock();
+        try {
+            return storedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Append a node at the end of the list and to the index. Must be called holding the lock
+     */
+    private void link(Node node) {
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+            node.previous = tail;
+        }
+        tail = node;
+
+        String messageId = node.message.getMessageID();
+        Node sameId = index.get(messageId);
+        if (sameId == null) {
+            index.put(messageId, node);
+        } else {
+            // the same message may be stored more than once, chain it after the older ones
+            while (sameId.nextWithSameId != null) {
+                sameId = sameId.nextWithSameId;
+            }
+            sameId.nextWithSameId = node;
+        }
+
+        size++;
+        storedBytes += node.messageSize;
+    }
+
+    /**
+     * Remove a node from the list and from the index. Must be called holding the lock
+     */
+    private MessageContext unlink(Node node) {
+        if (node.previous == null) {
+            head = node.next;
+        } else {
+            node.previous.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.previous;
+        } else {
+            node.next.previous = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+
+        // the nodes removed are always the oldest of their message ID, as only the first node
+        // and the indexed nodes are removed
+        String messageId = node.message.getMessageID();
+        if (node.nextWithSameId == null) {
+            index.remove(messageId);
+        } else {
+            index.put(messageId, node.nextWithSameId);
+        }
+
+        size--;
+        storedBytes -= node.messageSize;
+        notFull.signalAll();
+        return node.message;
+    }
+
+    private long getSerializedSize(MessageContext messageContext) {
+        ByteCountingOutputStream out = new ByteCountingOutputStream();
+        try {
+            messageContext.getEnvelope().serialize(out);
+        } catch (XMLStreamException e) {
+            throw new SynapseException("Error computing the size of the message with id " +
+                    messageContext.getMessageID() + " for the message store : " + name, e);
+        }
+        return out.count;
+    }
+
+    /**
+     * A stored message, linked to the messages stored before and after it
+     */
+    private static class Node {
+
+        private final MessageContext message;
+        private final long messageSize;
+        private Node previous;
+        private Node next;
+        /** The next message stored with the same message ID, if any */
+        private Node nextWithSameId;
+
+        private Node(MessageContext message, long messageSize) {
+            this.message = message;
+            this.messageSize = messageSize;
+        }
+    }
+
+    /**
+     * Counts the bytes written to it, without keeping them
+     */
+    private static class ByteCountingOutputStream extends OutputStream {
+
+        private long count = 0;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,298 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import org.apache.synapse.commons.util.MappedBufferUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only segment file of the FileMessageStore, memory mapped as a whole. Each record of
+ * a segment consists of a header made of the total length of the record, the CRC32 checksum of
+ * the rest of the record, the record type and the store entry ID, followed by the payload.
+ * Segment files are created at their full size and hence are zero filled beyond the last record,
+ * which is how the end of the records is recognized when a segment is read back.
+ */
+class StoreSegment {
+
+    /** Record types */
+    static final byte ADD = 1;
+    static final byte ACK = 2;
+
+    /** length, checksum, type and entry ID */
+    static final int HEADER_SIZE = 4 + 4 + 1 + 8;
+
+    /** The size of the chunks in which the tail of a segment is cleared */
+    private static final int TRUNCATE_CHUNK_SIZE = 8192;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+
+    private final long sequence;
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    /** The offset at which the next record is appended */
+    private int writePosition = 0;
+
+    /** Whether the segment has been closed, after which the buffer is no longer mapped */
+    private boolean closed;
+
+    /** The number and the total length of the ADD records which are not acknowledged yet */
+    int liveCount = 0;
+    long liveBytes = 0;
+
+    private StoreSegment(long sequence, File file, int size) throws IOException {
+        this.sequence = sequence;
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        int mappedSize = (int) Math.max(size, channel.size());
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+    }
+
+    /**
+     * Create a new segment file in the given directory
+     *
+     * @param directory the directory of the store
+     * @param sequence the sequence number of the segment, which orders the segments of a store
+     * @param size the size of the segment file
+     * @return the created segment
+     * @throws IOException if the segment file could not be created
+     */
+    static StoreSegment create(File directory, long sequence, int size) throws IOException {
+        File file = new File(directory, String.format(PREFIX + "%020d" + SUFFIX, sequence));
+        if (file.exists()) {
+            throw new IOException("Segment file : " + file + " already exists");
+        }
+        return new StoreSegment(sequence, file, size);
+    }
+
+    /**
+     * Open an existing segment file
+     *
+     * @param file the segment file
+     * @return the segment, positioned at the start
+     * @throws IOException if the segment file could not be opened
+     */
+    static StoreSegment open(File file) throws IOException {
+        return new StoreSegment(getSequence(file), file, 0);
+    }
+
+    /**
+     * Get the sequence number of a segment file
+     *
+     * @param file a file in the directory of the store
+     * @return the sequence number, or -1 if the file is not a segment file
+     */
+    static long getSequence(File file) {
+        String name = file.getName();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(),
+                    name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    boolean hasSpace(int payloadLength) {
+        return writePosition + HEADER_SIZE + payloadLength <= buffer.capacity();
+    }
+
+    /**
+     * Append a record to this segment
+     *
+     * @return the offset of the record
+     * @throws IOException if there is no space left in this segment for the record
+     */
+    int append(byte type, long entryId, byte[] payload) throws IOException {
+        if (!hasSpace(payload.length)) {
+            throw new IOException("No space left in the segment file : " + file + " for a " +
+                    "record with a payload of " + payload.length + " bytes");
+        }
+        int offset = writePosition;
+        int length = HEADER_SIZE + payload.length;
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (entryId >>> i));
+        }
+        crc.update(payload);
+
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.put(offset + 8, type);
+        buffer.putLong(offset + 9, entryId);
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + HEADER_SIZE);
+        target.put(payload);
+        // the length is written last, so that a partially written record is never considered
+        // as valid unless its checksum matches as well
+        buffer.putInt(offset, length);
+
+        writePosition += length;
+        return offset;
+    }
+
+    /**
+     * Read the payload of the record at the given offset
+     */
+    byte[] readPayload(int offset) {
+        int length = buffer.getInt(offset);
+        byte[] payload = new byte[length - HEADER_SIZE];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + HEADER_SIZE);
+        source.get(payload);
+        return payload;
+    }
+
+    /**
+     * Read the record at the current write position, and move the write position past it if
+     * it is valid. Used to read the records of a segment when the store is recovered
+     *
+     * @param visitor called with the record if it is valid
+     * @return false if there are no more valid records in this segment
+     */
+    boolean readNext(RecordVisitor visitor) {
+        int offset = writePosition;
+        if (offset + HEADER_SIZE > buffer.capacity()) {
+            return false;
+        }
+        int length = buffer.getInt(offset);
+        if (length < HEADER_SIZE || offset + length > buffer.capacity()) {
+            return false;
+        }
+
+        byte type = buffer.get(offset + 8);
+        long entryId = buffer.getLong(offset + 9);
+        byte[] payload = readPayload(offset);
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (entryId >>> i));
+        }
+        crc.update(payload);
+        if (buffer.getInt(offset + 4) != (int) crc.getValue() || (type != ADD && type != ACK)) {
+            // a torn write at the time the store was stopped
+            return false;
+        }
+
+        writePosition += length;
+        visitor.visit(this, type, entryId, offset, payload);
+        return true;
+    }
+
+    /**
+     * Clear everything beyond the last valid record, such as a torn write and any records
+     * following it, so that none of it is mistaken for a record once the segment is appended
+     * to again. Only the parts of the tail which are not zero filled already are written
+     */
+    void truncate() {
+        byte[] chunk = new byte[TRUNCATE_CHUNK_SIZE];
+        ByteBuffer tail = buffer.duplicate();
+        int position = writePosition;
+        while (position < buffer.capacity()) {
+            int length = Math.min(chunk.length, buffer.capacity() - position);
+            tail.position(position);
+            tail.get(chunk, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (chunk[i] != 0) {
+                    Arrays.fill(chunk, 0, length, (byte) 0);
+                    tail.position(position);
+                    tail.put(chunk, 0, length);
+                    break;
+                }
+            }
+            position += length;
+        }
+    }
+
+    /**
+     * Flush the appended records to the disk. Does nothing once the segment is closed, as the
+     * segments are flushed outside the lock of the store, possibly after they were deleted
+     */
+    synchronized void force() {
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Close this segment and unmap its buffer, after which the records can no longer be read
+     */
+    synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+            raf.close();
+        } finally {
+            MappedBufferUtil.unmap(buffer);
+        }
+    }
+
+    /**
+     * Close and delete this segment
+     *
+     * @return true if the segment file was deleted
+     */
+    boolean delete() throws IOException {
+        close();
+        return file.delete();
+    }
+
+    /**
+     * Receives the records read from a segment
+     */
+    interface RecordVisitor {
+        void visit(StoreSegment segment, byte type, long entryId, int offset, byte[] payload);
+    }
+}
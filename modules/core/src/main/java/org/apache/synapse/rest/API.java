@@ -24,6 +24,7 @@ import org.apache.http.protocol.HTTP;
 import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.Mediator;
 import org.apache.synapse.MessageContext;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 import org.apache.synapse.rest.dispatch.DispatcherHelper;
@@ -35,9 +36,12 @@ import org.apache.synapse.config.xml.rest.VersionStrategyFactory;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class API extends AbstractRESTProcessor implements ManagedLifecycle {
 
+    public static final String API_VIEW = "RESTAPI";
+
     private String host;
     private int port = -1;
     private String context;
@@ -50,6 +54,16 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
 
     private String fileName;
 
+    /** Index of the resources, created on first use after the resources are changed */
+    private volatile ResourceIndex resourceIndex;
+
+    private String mbeanName;
+
+    private final AtomicLong requestCount = new AtomicLong(0);
+    private final AtomicLong resourceMatchCount = new AtomicLong(0);
+    private final AtomicLong noMatchingResourceCount = new AtomicLong(0);
+    private final AtomicLong candidateCount = new AtomicLong(0);
+
     public API(String name, String context) {
         super(name);
         if (!context.startsWith("/")) {
@@ -134,6 +148,7 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
             }
         }
         resources.put(resource.getName(), resource);
+        resourceIndex = null;
     }
 
     private boolean resourceMatches(Resource r1, Resource r2) {
@@ -331,8 +346,15 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
                     msgCtx.getIncomingTransportName() + "://" + hostHeader);
         }
 
-        Set<Resource> acceptableResources = new HashSet<Resource>();
-        for (Resource r : resources.values()) {
+        String method = (String) msgCtx.getProperty(Constants.Configuration.HTTP_METHOD);
+        synCtx.setProperty(RESTConstants.REST_METHOD, method);
+
+        List<Resource> candidates = getResourceIndex().getCandidates(method, subPath);
+        requestCount.incrementAndGet();
+        candidateCount.addAndGet(candidates.size());
+
+        List<Resource> acceptableResources = new ArrayList<Resource>(candidates.size());
+        for (Resource r : candidates) {
             if (r.canProcess(synCtx)) {
                 acceptableResources.add(r);
             }
@@ -343,6 +365,7 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
             for (RESTDispatcher dispatcher : RESTUtils.getDispatchers()) {
                 Resource resource = dispatcher.findResource(synCtx, acceptableResources);
                 if (resource != null) {
+                    resourceMatchCount.incrementAndGet();
                     resource.process(synCtx);
                     processed = true;
                     break;
@@ -351,6 +374,7 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
         }
 
         if (!processed) {
+            noMatchingResourceCount.incrementAndGet();
             if (log.isDebugEnabled()) {
                 log.debug("No matching resource was found for the request: " + synCtx.getMessageID());
             }
@@ -362,6 +386,39 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
         }
     }
 
+    private ResourceIndex getResourceIndex() {
+        ResourceIndex index = resourceIndex;
+        if (index == null) {
+            index = new ResourceIndex(resources.values());
+            resourceIndex = index;
+        }
+        return index;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getResourceMatchCount() {
+        return resourceMatchCount.get();
+    }
+
+    public long getNoMatchingResourceCount() {
+        return noMatchingResourceCount.get();
+    }
+
+    public double getAverageCandidateCount() {
+        long requests = requestCount.get();
+        return requests == 0 ? 0 : (double) candidateCount.get() / requests;
+    }
+
+    public void resetStatistics() {
+        requestCount.set(0);
+        resourceMatchCount.set(0);
+        noMatchingResourceCount.set(0);
+        candidateCount.set(0);
+    }
+
     private String getHostHeader(org.apache.axis2.context.MessageContext msgCtx) {
         Map transportHeaders = (Map) msgCtx.getProperty(
                 org.apache.axis2.context.MessageContext.TRANSPORT_HEADERS);
@@ -413,6 +470,11 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
                 ((ManagedLifecycle) handler).init(se);
             }
         }
+
+        resourceIndex = new ResourceIndex(resources.values());
+        mbeanName = getName().replace(':', '-') + "-" +
+                Integer.toHexString(System.identityHashCode(this));
+        MBeanRegistrar.getInstance().registerMBean(new APIView(this), API_VIEW, mbeanName);
     }
 
     @Override
@@ -427,6 +489,11 @@ public class API extends AbstractRESTProcessor implements ManagedLifecycle {
                 ((ManagedLifecycle) handler).destroy();
             }
         }
+
+        if (mbeanName != null) {
+            MBeanRegistrar.getInstance().unRegisterMBean(API_VIEW, mbeanName);
+            mbeanName = null;
+        }
     }
 
     public VersionStrategy getVersionStrategy() {
@@ -0,0 +1,163 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.rest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of the APIs deployed in a SynapseConfiguration, used to locate the APIs
+ * which may process a request without going through all of them. The APIs are kept in a tree
+ * over the segments of their contexts, so that the APIs whose context is a prefix of a request
+ * path are found by walking down the segments of the path once. The APIs are also indexed by
+ * name, to dispatch responses.
+ *
+ * The index only narrows down the APIs which have to be checked. The version, host, port and
+ * transport of each candidate API are still checked by API#canProcess. A new index is created
+ * whenever an API is added, updated or removed, so an index in use is never modified.
+ */
+public class APIDispatchIndex {
+
+    public static final APIDispatchIndex EMPTY = new APIDispatchIndex(
+            Collections.<API>emptyList());
+
+    private final Node root = new Node();
+    private final List<API> defaultAPIs = new ArrayList<API>();
+    private final Map<String, List<API>> apisByName = new HashMap<String, List<API>>();
+
+    public APIDispatchIndex(Collection<API> apis) {
+        for (API api : apis) {
+            String context = api.getContext();
+            if ("/".equals(context) || "".equals(context)) {
+                defaultAPIs.add(api);
+            } else {
+                Node node = root;
+                for (String segment : getSegments(context)) {
+                    Node child = node.children.get(segment);
+                    if (child == null) {
+                        child = new Node();
+                        node.children.put(segment, child);
+                    }
+                    node = child;
+                }
+                node.apis.add(api);
+            }
+
+            List<API> named = apisByName.get(api.getAPIName());
+            if (named == null) {
+                named = new ArrayList<API>();
+                apisByName.put(api.getAPIName(), named);
+            }
+            named.add(api);
+        }
+    }
+
+    /**
+     * Get the APIs whose context matches the given request path, most specific context first.
+     * The APIs deployed on the root context are not included.
+     *
+     * @param path the full request path, which may carry a query string
+     * @return a list of APIs, which is empty if no API context matches the path
+     */
+    public List<API> getCandidates(String path) {
+        int end = path.indexOf('?');
+        if (end == -1) {
+            end = path.length();
+        }
+
+        List<List<API>> matches = null;
+        Node node = root;
+        int start = path.startsWith("/") ? 1 : 0;
+        while (start <= end) {
+            int next = path.indexOf('/', start);
+            if (next == -1 || next > end) {
+                next = end;
+            }
+            node = node.children.get(path.substring(start, next));
+            if (node == null) {
+                break;
+            }
+            if (!node.apis.isEmpty()) {
+                if (matches == null) {
+                    matches = new ArrayList<List<API>>(2);
+                }
+                matches.add(node.apis);
+            }
+            start = next + 1;
+        }
+
+        if (matches == null) {
+            return Collections.emptyList();
+        } else if (matches.size() == 1) {
+            return matches.get(0);
+        }
+        List<API> candidates = new ArrayList<API>();
+        for (int i = matches.size() - 1; i >= 0; i--) {
+            candidates.addAll(matches.get(i));
+        }
+        return candidates;
+    }
+
+    /**
+     * Get the APIs deployed on the root context
+     *
+     * @return a list of APIs
+     */
+    public List<API> getDefaultAPIs() {
+        return defaultAPIs;
+    }
+
+    /**
+     * Get the APIs deployed with the given name, in any version
+     *
+     * @param name the name of the API, without the version
+     * @return a list of APIs, which is empty if there are no APIs by the given name
+     */
+    public List<API> getAPIs(String name) {
+        List<API> apis = apisByName.get(name);
+        if (apis == null) {
+            return Collections.emptyList();
+        }
+        return apis;
+    }
+
+    private static List<String> getSegments(String context) {
+        List<String> segments = new ArrayList<String>();
+        int start = context.startsWith("/") ? 1 : 0;
+        while (start <= context.length()) {
+            int next = context.indexOf('/', start);
+            if (next == -1) {
+                next = context.length();
+            }
+            segments.add(context.substring(start, next));
+            start = next + 1;
+        }
+        return segments;
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<String, Node>();
+        private final List<API> apis = new ArrayList<API>(1);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.rest;
+
+public class APIView implements APIViewMBean {
+
+    private API api;
+
+    public APIView(API api) {
+        this.api = api;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return api.getRequestCount();
+    }
+
+    @Override
+    public long getResourceMatchCount() {
+        return api.getResourceMatchCount();
+    }
+
+    @Override
+    public long getNoMatchingResourceCount() {
+        return api.getNoMatchingResourceCount();
+    }
+
+    @Override
+    public double getAverageCandidateCount() {
+        return api.getAverageCandidateCount();
+    }
+
+    @Override
+    public int getResourceCount() {
+        return api.getResources().length;
+    }
+
+    @Override
+    public void resetStatistics() {
+        api.resetStatistics();
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.rest;
+
+/**
+ * JMX MBean interface for monitoring the routing of requests through a REST API.
+ */
+public interface APIViewMBean {
+
+    /**
+     * Get the number of requests dispatched to the API
+     *
+     * @return A long
+     */
+    public long getRequestCount();
+
+    /**
+     * Get the number of requests dispatched to a resource of the API
+     *
+     * @return A long
+     */
+    public long getResourceMatchCount();
+
+    /**
+     * Get the number of requests which did not match any resource of the API
+     *
+     * @return A long
+     */
+    public long getNoMatchingResourceCount();
+
+    /**
+     * Get the average number of resources checked to dispatch a request, after narrowing them
+     * down by the request path and the HTTP method
+     *
+     * @return A double
+     */
+    public double getAverageCandidateCount();
+
+    /**
+     * Get the number of resources defined in the API
+     *
+     * @return An integer
+     */
+    public int getResourceCount();
+
+    /**
+     * Reset the routing statistics
+     */
+    public void resetStatistics();
+
+}
@@ -25,8 +25,6 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.core.axis2.Axis2MessageContext;
 
-import java.util.*;
-
 /**
  * This class is responsible for receiving requests from various sources and dispatching
  * them to a suitable REST API for further processing. This is the main entry point for
@@ -65,12 +63,24 @@ public class RESTRequestHandler {
     }
 
     private boolean dispatchToAPI(MessageContext synCtx) {
-        Collection<API> apiSet = synCtx.getEnvironment().getSynapseConfiguration().getAPIs();
-        API defaultAPI = null;
-        for (API api : apiSet) {
-            if ("/".equals(api.getContext())) {
-                defaultAPI = api;
-            } else if (api.canProcess(synCtx)) {
+        APIDispatchIndex index = synCtx.getEnvironment().getSynapseConfiguration().
+                getAPIDispatchIndex();
+
+        if (synCtx.isResponse()) {
+            String apiName = (String) synCtx.getProperty(RESTConstants.SYNAPSE_REST_API);
+            if (apiName != null) {
+                for (API api : index.getAPIs(apiName)) {
+                    if (api.canProcess(synCtx)) {
+                        api.process(synCtx);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        for (API api : index.getCandidates(RESTUtils.getFullRequestPath(synCtx))) {
+            if (api.canProcess(synCtx)) {
                 if (log.isDebugEnabled()) {
                     log.debug("Located specific API: " + api.getName() + " for processing message");
                 }
@@ -79,9 +89,11 @@ public class RESTRequestHandler {
             }
         }
 
-        if (defaultAPI != null && defaultAPI.canProcess(synCtx)) {
-            defaultAPI.process(synCtx);
-            return true;
+        for (API defaultAPI : index.getDefaultAPIs()) {
+            if (defaultAPI.canProcess(synCtx)) {
+                defaultAPI.process(synCtx);
+                return true;
+            }
         }
 
         return false;
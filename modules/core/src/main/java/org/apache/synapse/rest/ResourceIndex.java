@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.rest;
+
+import org.apache.synapse.rest.dispatch.DispatcherHelper;
+import org.apache.synapse.rest.dispatch.URITemplateHelper;
+import org.apache.synapse.rest.dispatch.URLMappingHelper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of the resources of an API, used to find the resources which may
+ * process a request without checking all of them. Resources whose URL mapping or URI template
+ * starts with a literal path segment are bucketed by that segment, and each bucket is split
+ * further by the HTTP methods of its resources. Resources which may match any path (default
+ * resources, extension and wildcard mappings, templates starting with a variable) are kept
+ * aside and are a candidate for every request.
+ *
+ * The candidates still have to be checked through Resource#canProcess and the REST
+ * dispatchers, which make the final decision exactly as if all the resources were checked.
+ */
+class ResourceIndex {
+
+    private final Map<String, MethodBuckets> segments = new HashMap<String, MethodBuckets>();
+    private final MethodBuckets anySegment = new MethodBuckets();
+    private final List<Resource> all;
+
+    ResourceIndex(Collection<Resource> resources) {
+        this.all = new ArrayList<Resource>(resources);
+        for (Resource resource : resources) {
+            String segment = getLiteralSegment(resource.getDispatcherHelper());
+            if (segment == null) {
+                anySegment.add(resource);
+                for (MethodBuckets buckets : segments.values()) {
+                    buckets.add(resource);
+                }
+            } else {
+                MethodBuckets buckets = segments.get(segment);
+                if (buckets == null) {
+                    buckets = new MethodBuckets();
+                    for (Resource r : anySegment.all) {
+                        buckets.add(r);
+                    }
+                    segments.put(segment, buckets);
+                }
+                buckets.add(resource);
+            }
+        }
+    }
+
+    /**
+     * Get the resources which may process a request with the given HTTP method and sub path
+     *
+     * @param method the HTTP method of the request
+     * @param subPath the request path, relative to the API context and version
+     * @return a list of resources
+     */
+    List<Resource> getCandidates(String method, String subPath) {
+        if (!subPath.startsWith("/") || subPath.startsWith("//")) {
+            return all;
+        }
+        int end = 1;
+        while (end < subPath.length()) {
+            char c = subPath.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            } else if (!isUnreserved(c)) {
+                // encoded and reserved characters are left to the dispatchers to interpret
+                return all;
+            }
+            end++;
+        }
+
+        MethodBuckets buckets = segments.get(subPath.substring(1, end));
+        if (buckets == null) {
+            buckets = anySegment;
+        }
+        return buckets.get(method);
+    }
+
+    /**
+     * Get the first path segment a request must start with to be dispatched to a resource
+     * with the given dispatcher helper
+     *
+     * @param helper the dispatcher helper of a resource
+     * @return the literal first segment, or null if the resource may match any path
+     */
+    private static String getLiteralSegment(DispatcherHelper helper) {
+        String pattern;
+        if (helper instanceof URLMappingHelper || helper instanceof URITemplateHelper) {
+            pattern = helper.getString();
+        } else {
+            return null;
+        }
+
+        if (pattern == null || !pattern.startsWith("/") || pattern.startsWith("//")) {
+            return null;
+        }
+        int end = 1;
+        while (end < pattern.length()) {
+            char c = pattern.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            } else if (!isUnreserved(c)) {
+                return null;
+            }
+            end++;
+        }
+        return pattern.substring(1, end);
+    }
+
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    /**
+     * The resources of a bucket, split by the HTTP methods they accept
+     */
+    private static class MethodBuckets {
+
+        private final List<Resource> all = new ArrayList<Resource>();
+        private final List<Resource> anyMethod = new ArrayList<Resource>();
+        private final Map<String, List<Resource>> byMethod = new HashMap<String, List<Resource>>();
+
+        private void add(Resource resource) {
+            all.add(resource);
+            String[] methods = resource.getMethods();
+            if (methods.length == 0) {
+                anyMethod.add(resource);
+                for (List<Resource> list : byMethod.values()) {
+                    list.add(resource);
+                }
+            } else {
+                for (String method : methods) {
+                    List<Resource> list = byMethod.get(method);
+                    if (list == null) {
+                        list = new ArrayList<Resource>(anyMethod);
+                        byMethod.put(method, list);
+                    }
+                    list.add(resource);
+                }
+            }
+        }
+
+        private List<Resource> get(String method) {
+            if (method == null || RESTConstants.METHOD_OPTIONS.equals(method)) {
+                // OPTIONS requests are accepted by all the resources
+                return all;
+            }
+            List<Resource> list = byMethod.get(method);
+            return list != null ? list : anyMethod;
+        }
+    }
+}
@@ -23,7 +23,6 @@ import org.apache.synapse.MessageContext;
 import org.apache.synapse.rest.*;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 
 public class URITemplateBasedDispatcher implements RESTDispatcher {
@@ -34,9 +33,8 @@ public class URITemplateBasedDispatcher implements RESTDispatcher {
         for (Resource r : resources) {
             DispatcherHelper helper = r.getDispatcherHelper();
             if (helper instanceof URITemplateHelper) {
-                URITemplateHelper templateHelper = (URITemplateHelper) helper;
-                Map<String,String> variables = new HashMap<String,String>();
-                if (templateHelper.getUriTemplate().matches(url, variables)) {
+                Map<String,String> variables = ((URITemplateHelper) helper).match(url);
+                if (variables != null) {
                     for (Map.Entry<String,String> entry : variables.entrySet()) {
                         synCtx.setProperty(RESTConstants.REST_URI_VARIABLE_PREFIX + entry.getKey(),
                                 entry.getValue());
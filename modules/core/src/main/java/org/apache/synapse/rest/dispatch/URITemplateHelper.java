@@ -20,15 +20,47 @@
 package org.apache.synapse.rest.dispatch;
 
 import org.apache.synapse.SynapseException;
+import org.apache.synapse.config.SynapsePropertiesLoader;
 import org.wso2.uri.template.URITemplate;
 import org.wso2.uri.template.URITemplateException;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dispatcher helper of a resource mapped to a URI template. The template is parsed once, when
+ * the resource is created. Request paths which cannot match the template, because they do not
+ * start with the literal text the template starts with, are rejected without going through the
+ * template matcher. The outcome of matching the most recent request paths, along with the
+ * variables extracted from them, is cached so that hot paths are not matched over and over.
+ */
 public class URITemplateHelper implements DispatcherHelper {
 
+    /** synapse.properties entry for the number of request paths cached per URI template */
+    public static final String MATCH_CACHE_SIZE = "synapse.rest.uri.template.cache.size";
+
+    private static final int DEFAULT_MATCH_CACHE_SIZE = 100;
+
+    private static final int matchCacheSize = Integer.parseInt(
+            SynapsePropertiesLoader.getPropertyValue(MATCH_CACHE_SIZE,
+                    String.valueOf(DEFAULT_MATCH_CACHE_SIZE)));
+
+    /** Cached outcome of a request path which does not match the template */
+    private static final Map<String, String> NO_MATCH =
+            Collections.unmodifiableMap(new HashMap<String, String>());
+
     private String templateString;
 
     private URITemplate uriTemplate;
 
+    /** Literal text every request path matching the template starts with */
+    private String literalPrefix;
+
+    private final ConcurrentHashMap<String, Map<String, String>> matchCache =
+            new ConcurrentHashMap<String, Map<String, String>>();
+
     public URITemplateHelper(String templateString) {
         this.templateString = templateString;
         try {
@@ -36,12 +68,70 @@ public class URITemplateHelper implements DispatcherHelper {
         } catch (URITemplateException e) {
             throw new SynapseException("Error while parsing the URI template", e);
         }
+        this.literalPrefix = getLiteralPrefix(templateString);
     }
 
     public URITemplate getUriTemplate() {
         return uriTemplate;
     }
 
+    /**
+     * Match the given request path against the URI template
+     *
+     * @param url the request path, relative to the API context
+     * @return the values of the template variables, or null if the path does not match the
+     * template. The returned map must not be modified.
+     */
+    public Map<String, String> match(String url) {
+        if (!url.startsWith(literalPrefix) && url.indexOf('%') == -1) {
+            return null;
+        }
+
+        Map<String, String> variables = matchCache.get(url);
+        if (variables == null) {
+            Map<String, String> extracted = new HashMap<String, String>();
+            if (uriTemplate.matches(url, extracted)) {
+                variables = Collections.unmodifiableMap(extracted);
+            } else {
+                variables = NO_MATCH;
+            }
+            if (matchCacheSize > 0) {
+                if (matchCache.size() >= matchCacheSize) {
+                    matchCache.clear();
+                }
+                matchCache.put(url, variables);
+            }
+        }
+        return variables == NO_MATCH ? null : variables;
+    }
+
+    /**
+     * Get the leading literal text of the given template, up to the first expression or
+     * reserved character. Trailing slashes are left out, since they are not significant when
+     * matching request paths.
+     *
+     * @param template a URI template
+     * @return a prefix of the template, which may be empty
+     */
+    private static String getLiteralPrefix(String template) {
+        if (!template.startsWith("/")) {
+            return "";
+        }
+        int end = 0;
+        while (end < template.length()) {
+            char c = template.charAt(end);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ||
+                    c == '-' || c == '.' || c == '_' || c == '~' || c == '/')) {
+                break;
+            }
+            end++;
+        }
+        while (end > 0 && template.charAt(end - 1) == '/') {
+            end--;
+        }
+        return template.substring(0, end);
+    }
+
     @Override
     public String getString() {
         return templateString;
@@ -80,13 +80,30 @@ public class MessageHelper {
      * @see MessageHelper#cloneAxis2MessageContext 
      */
     public static MessageContext cloneMessageContext(MessageContext synCtx) throws AxisFault {
+        return cloneMessageContext(synCtx, true);
+    }
+
+    /**
+     * Clone the message context as {@link #cloneMessageContext(MessageContext)} does,
+     * optionally without a pass-through pipe. A message which carries its payload in its
+     * envelope does not need one, and a pipe which is cloned but never used holds on to a
+     * pooled buffer
+     *
+     * @param synCtx - this will be cloned
+     * @param clonePipe - whether a new pass-through pipe is created for the cloned message
+     * @return cloned Synapse MessageContext
+     * @throws AxisFault if there is a failure in creating the new Synapse MC or in a failure in
+     *          cloning the underlying axis2 MessageContext
+     */
+    public static MessageContext cloneMessageContext(MessageContext synCtx, boolean clonePipe)
+            throws AxisFault {
 
         // creates the new MessageContext and clone the internal axis2 MessageContext
         // inside the synapse message context and place that in the new one
         MessageContext newCtx = synCtx.getEnvironment().createMessageContext();
         Axis2MessageContext axis2MC = (Axis2MessageContext) newCtx;
-        axis2MC.setAxis2MessageContext(
-            cloneAxis2MessageContext(((Axis2MessageContext) synCtx).getAxis2MessageContext()));
+        axis2MC.setAxis2MessageContext(cloneAxis2MessageContext(
+                ((Axis2MessageContext) synCtx).getAxis2MessageContext(), clonePipe));
 
         newCtx.setConfiguration(synCtx.getConfiguration());
         newCtx.setEnvironment(synCtx.getEnvironment());
@@ -167,6 +184,21 @@ public class MessageHelper {
      */
     public static org.apache.axis2.context.MessageContext cloneAxis2MessageContext(
         org.apache.axis2.context.MessageContext mc) throws AxisFault {
+        return cloneAxis2MessageContext(mc, true);
+    }
+
+    /**
+     * Clone the axis2 message context as {@link #cloneAxis2MessageContext(
+     * org.apache.axis2.context.MessageContext)} does, optionally without a pass-through pipe
+     *
+     * @param mc - this will be cloned for getting an exact copy
+     * @param clonePipe - whether a new pass-through pipe is created for the cloned message
+     * @return cloned MessageContext from the given mc
+     * @throws AxisFault if there is a failure in copying the certain attributes of the
+     *          provided message context
+     */
+    public static org.apache.axis2.context.MessageContext cloneAxis2MessageContext(
+        org.apache.axis2.context.MessageContext mc, boolean clonePipe) throws AxisFault {
 
         org.apache.axis2.context.MessageContext newMC = clonePartially(mc);
         newMC.setEnvelope(cloneSOAPEnvelope(mc.getEnvelope()));
@@ -190,13 +222,16 @@ public class MessageHelper {
             getClonedTransportHeaders(mc));
         
         
-        if(newMC.getProperty(PassThroughConstants.PASS_THROUGH_PIPE) != null){
+        if (!clonePipe) {
+            // the pipe of the original message has been copied along with its properties
+            newMC.removeProperty(PassThroughConstants.PASS_THROUGH_PIPE);
+        } else if(newMC.getProperty(PassThroughConstants.PASS_THROUGH_PIPE) != null){
         	//clone passthrough pipe here..writer...
         	 NHttpServerConnection conn = (NHttpServerConnection) newMC.getProperty("pass-through.Source-Connection");
         	 if(conn != null){
         		  SourceConfiguration sourceConfiguration = (SourceConfiguration) newMC.getProperty(
                           "PASS_THROUGH_SOURCE_CONFIGURATION");
-        		  Pipe pipe = new Pipe(conn, sourceConfiguration.getBufferFactory().getBuffer(), "source", sourceConfiguration);
+        		  Pipe pipe = sourceConfiguration.newPipe(conn, "source");
         		  newMC.setProperty(PassThroughConstants.PASS_THROUGH_PIPE,pipe);
         	 }
         }
@@ -0,0 +1,152 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMDataSourceExt;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.OMSourcedElement;
+import org.apache.axiom.om.ds.AbstractPullOMDataSource;
+import org.apache.axiom.om.util.StAXUtils;
+import org.apache.axiom.util.blob.OverflowBlob;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An OMDataSource backed by a serialized XML document held in an {@link OverflowBlob}. This
+ * allows a large XML payload to be attached to a message and written out again without
+ * building an object model for it.
+ * <p/>
+ * Closing a reader returned by {@link #getReader()} also closes the stream it reads the blob
+ * from, as an XMLStreamReader does not close its underlying stream by itself.
+ */
+public class XMLOverflowBlobDataSource extends AbstractPullOMDataSource {
+    private final OverflowBlob overflowBlob;
+
+    public XMLOverflowBlobDataSource(OverflowBlob overflowBlob) {
+        this.overflowBlob = overflowBlob;
+    }
+
+    /**
+     * Create an unexpanded element for the document held in the given blob. Only the start of
+     * the document is parsed, to find the name of the document element.
+     *
+     * @param overflowBlob the blob holding the serialized XML document
+     * @return the element representing the document element
+     * @throws XMLStreamException if the document could not be parsed
+     */
+    public static OMSourcedElement createOMSourcedElement(OverflowBlob overflowBlob)
+            throws XMLStreamException {
+        XMLOverflowBlobDataSource ds = new XMLOverflowBlobDataSource(overflowBlob);
+        QName name = null;
+        XMLStreamReader reader = ds.getReader();
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamReader.START_ELEMENT) {
+                    name = reader.getName();
+                    break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        if (name == null) {
+            throw new XMLStreamException("The document does not have a document element");
+        }
+
+        OMFactory fac = OMAbstractFactory.getOMFactory();
+        OMNamespace ns = name.getNamespaceURI().length() == 0 ? null :
+                fac.createOMNamespace(name.getNamespaceURI(), name.getPrefix());
+        return fac.createOMElement(ds, name.getLocalPart(), ns);
+    }
+
+    @Override
+    public XMLStreamReader getReader() throws XMLStreamException {
+        InputStream in;
+        try {
+            in = overflowBlob.getInputStream();
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        }
+        boolean created = false;
+        try {
+            XMLStreamReader reader = new StreamClosingReader(
+                    StAXUtils.createXMLStreamReader(in), in);
+            created = true;
+            return reader;
+        } finally {
+            if (!created) {
+                closeQuietly(in);
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignore) {
+            // nothing more can be done about it
+        }
+    }
+
+    @Override
+    public Object getObject() {
+        return overflowBlob;
+    }
+
+    @Override
+    public boolean isDestructiveRead() {
+        return false;
+    }
+
+    @Override
+    public OMDataSourceExt copy() {
+        return new XMLOverflowBlobDataSource(overflowBlob);
+    }
+
+    /**
+     * Closes the stream the blob is read from when the reader is closed
+     */
+    private static class StreamClosingReader extends StreamReaderDelegate {
+
+        private final InputStream in;
+
+        private StreamClosingReader(XMLStreamReader reader, InputStream in) {
+            super(reader);
+            this.in = in;
+        }
+
+        @Override
+        public void close() throws XMLStreamException {
+            try {
+                super.close();
+            } finally {
+                closeQuietly(in);
+            }
+        }
+    }
+}
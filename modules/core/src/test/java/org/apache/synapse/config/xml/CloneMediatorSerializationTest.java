@@ -69,4 +69,12 @@ public class CloneMediatorSerializationTest extends AbstractTestCase {
         assertTrue(serialization(inputXml, cloneMediatorFactory, cloneMediatorSerializer));
         assertTrue(serialization(inputXml, cloneMediatorSerializer));
     }
+
+    public void testCloneMediatorSerializationScenarioFive() throws Exception {
+        String inputXml = "<clone xmlns=\"http://ws.apache.org/ns/synapse\" " +
+            "maxInFlight=\"10\"><target sequence=\"sequenceRef1\"/>" +
+            "<target sequence=\"sequenceRef2\"/></clone> ";
+        assertTrue(serialization(inputXml, cloneMediatorFactory, cloneMediatorSerializer));
+        assertTrue(serialization(inputXml, cloneMediatorSerializer));
+    }
 }
@@ -95,4 +95,13 @@ public class IterateMediatorSerializationTest extends AbstractTestCase {
         }
     }
 
+    public void testIterateMediatorSerializationScenarioSeven() throws Exception {
+        String inputXml = "<iterate xmlns=\"http://ws.apache.org/ns/synapse\" " +
+            "xmlns:m=\"http://services.samples\" expression=\"//m:orders/m:order\" " +
+            "streaming=\"true\" maxInFlight=\"20\"><target sequence=\"sequenceRef1\"/>" +
+            "</iterate>";
+        assertTrue(serialization(inputXml, iterateMediatorFactory, iterateMediatorSerializer));
+        assertTrue(serialization(inputXml, iterateMediatorSerializer));
+    }
+
 }
@@ -0,0 +1,124 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import junit.framework.TestCase;
+import org.apache.axis2.client.async.AxisCallback;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+import org.apache.synapse.endpoints.LoadbalanceEndpoint;
+import org.apache.synapse.endpoints.algorithms.PowerOfTwoChoicesAlgorithm;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TimeoutHandlerTest extends TestCase {
+
+    private static final long INTERVAL = 10;
+
+    public void testDiscardedTimeoutReleasesChildEndpoint() throws Exception {
+        SynapseConfiguration synCfg = new SynapseConfiguration();
+        MessageContext synCtx = TestUtils.createSynapseMessageContext("<test/>", synCfg);
+
+        TestAlgorithm algorithm = new TestAlgorithm();
+        List<Endpoint> children = new ArrayList<Endpoint>();
+        LoadbalanceEndpoint endpoint = new LoadbalanceEndpoint();
+        endpoint.setEnableMBeanStats(false);
+        endpoint.setName("lb");
+        TestChild child = new TestChild();
+        child.setEnableMBeanStats(false);
+        child.setName("ep");
+        child.setParentEndpoint(endpoint);
+        children.add(child);
+        algorithm.setEndpoints(children);
+        endpoint.setAlgorithm(algorithm);
+        endpoint.setChildren(children);
+        endpoint.init(synCtx.getEnvironment());
+
+        endpoint.send(synCtx);
+        assertEquals(1, algorithm.getTotalInFlight());
+
+        Map<String, AxisCallback> callbackStore = new ConcurrentHashMap<String, AxisCallback>();
+        TimeoutHandler handler = new TimeoutHandler(callbackStore, null, INTERVAL);
+        AsyncCallback callback = new AsyncCallback(synCtx);
+        callback.setTimeOutAction(SynapseConstants.DISCARD);
+        callback.setTimeOutOn(System.currentTimeMillis());
+        callbackStore.put("msg", callback);
+        handler.register("msg", callback);
+
+        Thread.sleep(INTERVAL * 5);
+        handler.run();
+
+        assertTrue(callbackStore.isEmpty());
+        assertEquals(1, handler.getTotalExpiredCount());
+        assertEquals(0, algorithm.getTotalInFlight());
+    }
+
+    public void testCallbacksAddedBeforeHandlerExpire() throws Exception {
+        MessageContext synCtx = TestUtils.createSynapseMessageContext("<test/>",
+                new SynapseConfiguration());
+        Map<String, AxisCallback> callbackStore = new ConcurrentHashMap<String, AxisCallback>();
+        AsyncCallback callback = new AsyncCallback(synCtx);
+        callback.setTimeOutAction(SynapseConstants.DISCARD);
+        callback.setTimeOutOn(System.currentTimeMillis());
+        callbackStore.put("msg", callback);
+
+        TimeoutHandler handler = new TimeoutHandler(callbackStore, null, INTERVAL);
+        handler.registerAll();
+
+        Thread.sleep(INTERVAL * 5);
+        handler.run();
+
+        assertTrue(callbackStore.isEmpty());
+        assertEquals(1, handler.getTotalExpiredCount());
+    }
+
+    private static class TestAlgorithm extends PowerOfTwoChoicesAlgorithm {
+
+        int getTotalInFlight() {
+            int total = 0;
+            for (Endpoint endpoint : endpoints) {
+                total += getLoad(endpoint).getInFlight();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * A child endpoint which leaves the messages sent to it in flight
+     */
+    private static class TestChild extends AddressEndpoint {
+
+        @Override
+        public boolean readyToSend() {
+            return true;
+        }
+
+        @Override
+        public void send(MessageContext synCtx) {
+        }
+    }
+}
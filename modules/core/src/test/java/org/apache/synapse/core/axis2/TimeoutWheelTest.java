@@ -0,0 +1,68 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.core.axis2;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Set;
+
+public class TimeoutWheelTest extends TestCase {
+
+    public void testKeyIsReturnedAtItsTick() {
+        TimeoutWheel wheel = new TimeoutWheel(100, 8, 0);
+        wheel.add("a", 250);
+        assertEquals(1, wheel.size());
+
+        assertFalse(contains(wheel.advance(200), "a"));
+        assertTrue(contains(wheel.advance(300), "a"));
+    }
+
+    public void testRemove() {
+        TimeoutWheel wheel = new TimeoutWheel(100, 8, 0);
+        wheel.add("a", 250);
+        wheel.remove("a", 250);
+        assertEquals(0, wheel.size());
+        assertFalse(contains(wheel.advance(1000), "a"));
+    }
+
+    public void testExpiredKeyIsPlacedInNextTick() {
+        TimeoutWheel wheel = new TimeoutWheel(100, 8, 0);
+        wheel.advance(500);
+        wheel.add("a", 100);
+        assertTrue(contains(wheel.advance(600), "a"));
+    }
+
+    public void testAllBucketsReturnedWhenBehind() {
+        TimeoutWheel wheel = new TimeoutWheel(100, 8, 0);
+        List<Set<String>> buckets = wheel.advance(10000);
+        assertEquals(8, buckets.size());
+        assertTrue(wheel.advance(10000).isEmpty());
+    }
+
+    private boolean contains(List<Set<String>> buckets, String key) {
+        for (Set<String> bucket : buckets) {
+            if (bucket.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+public class EndpointViewTest extends TestCase {
+
+    public void testConcurrentUpdatesAreNotLost() throws Exception {
+        final EndpointView view = new EndpointView("test", new AddressEndpoint());
+        final int threads = 8;
+        final int messages = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                new Thread() {
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int j = 0; j < messages; j++) {
+                                view.incrementMessagesSent();
+                                view.incrementBytesSent(10);
+                                view.notifySentMessageSize(j + 1);
+                                view.incrementFaultsSending(101503);
+                                view.reportResponseCode(200);
+                            }
+                        } catch (InterruptedException ignored) {
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            start.countDown();
+            done.await();
+
+            assertEquals(threads * messages, view.getMessagesSent());
+            assertEquals(threads * messages * 10L, view.getBytesSent());
+            assertEquals(threads * messages, view.getFaultsSending());
+            assertEquals(1, view.getMinSizeSent());
+            assertEquals(messages, view.getMaxSizeSent());
+            assertEquals((messages + 1) / 2.0, view.getAvgSizeSent(), 0.001);
+            assertEquals(Long.valueOf(threads * messages),
+                    view.getSendingFaultTable().get(101503));
+            assertEquals(Long.valueOf(threads * messages), view.getResponseCodeTable().get(200));
+        } finally {
+            view.destroy();
+        }
+    }
+
+    public void testGroupMetrics() {
+        AddressEndpoint first = new AddressEndpoint();
+        AddressEndpoint second = new AddressEndpoint();
+        first.metricsMBean = new EndpointView("first", first);
+        second.metricsMBean = new EndpointView("second", second);
+        List<Endpoint> children = new ArrayList<Endpoint>();
+        children.add(first);
+        children.add(second);
+        LoadbalanceEndpoint group = new LoadbalanceEndpoint();
+        group.setChildren(children);
+        EndpointView groupView = new EndpointView("group", group);
+
+        try {
+            first.metricsMBean.incrementMessagesReceived();
+            first.metricsMBean.reportResponseCode(200);
+            second.metricsMBean.incrementMessagesReceived();
+            second.metricsMBean.reportResponseCode(200);
+            second.metricsMBean.reportResponseCode(503);
+            groupView.reportSendingFault(303001);
+
+            assertEquals(2, groupView.getMessagesReceived());
+            Map<Integer, Long> codes = groupView.getResponseCodeTable();
+            assertEquals(Long.valueOf(2), codes.get(200));
+            assertEquals(Long.valueOf(1), codes.get(503));
+            assertEquals(Long.valueOf(1), groupView.getSendingFaultTable().get(303001));
+
+            EndpointView.Snapshot snapshot = groupView.getSnapshot();
+            assertEquals("group", snapshot.getEndpointName());
+            assertEquals(2, snapshot.getMessagesReceived());
+            assertEquals(Long.valueOf(1), snapshot.getResponseCodeTable().get(503));
+
+            groupView.resetStatistics();
+            assertEquals(0, groupView.getMessagesReceived());
+            assertTrue(groupView.getResponseCodeTable().isEmpty());
+            assertEquals(2, snapshot.getMessagesReceived());
+        } finally {
+            groupView.destroy();
+            first.metricsMBean.destroy();
+            second.metricsMBean.destroy();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints;
+
+import junit.framework.TestCase;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.SynapseConstants;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.endpoints.algorithms.PowerOfTwoChoicesAlgorithm;
+import org.apache.synapse.endpoints.dispatch.HttpSessionDispatcher;
+import org.apache.synapse.endpoints.dispatch.SessionInformation;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the messages counted in flight by a feedback load balance algorithm are released
+ * on every path a message sent through a load balance endpoint may take
+ */
+public class SALoadbalanceEndpointTest extends TestCase {
+
+    private SynapseConfiguration synCfg;
+    private SynapseEnvironment synEnv;
+    private TestAlgorithm algorithm;
+    private List<Endpoint> children;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        synCfg = new SynapseConfiguration();
+        synEnv = createMessage().getEnvironment();
+        algorithm = new TestAlgorithm();
+        children = new ArrayList<Endpoint>();
+    }
+
+    public void testReleasedOnResponse() throws Exception {
+        SALoadbalanceEndpoint endpoint = createSALoadbalanceEndpoint(1);
+        MessageContext synCtx = createMessage();
+
+        endpoint.send(synCtx);
+        assertEquals(1, ((TestChild) children.get(0)).sent);
+        assertEquals(1, algorithm.getTotalInFlight());
+
+        LoadbalanceEndpoint.onChildEndpointResponse(synCtx, 10);
+        assertEquals(0, algorithm.getTotalInFlight());
+    }
+
+    public void testOutOnlyReleasedOnSend() throws Exception {
+        SALoadbalanceEndpoint endpoint = createSALoadbalanceEndpoint(2);
+        for (int i = 0; i < 10; i++) {
+            MessageContext synCtx = createMessage();
+            synCtx.setProperty(SynapseConstants.OUT_ONLY, "true");
+            endpoint.send(synCtx);
+        }
+        assertEquals(10, ((TestChild) children.get(0)).sent + ((TestChild) children.get(1)).sent);
+        assertEquals(0, algorithm.getTotalInFlight());
+    }
+
+    public void testReleasedWhenSendFails() throws Exception {
+        SALoadbalanceEndpoint endpoint = createSALoadbalanceEndpoint(1);
+        ((TestChild) children.get(0)).failure = new RuntimeException("Send failure");
+
+        try {
+            endpoint.send(createMessage());
+            fail("The failure of the child endpoint must be propagated");
+        } catch (RuntimeException expected) {
+            assertEquals("Send failure", expected.getMessage());
+        }
+        assertEquals(0, algorithm.getTotalInFlight());
+    }
+
+    public void testReleasedOnFailover() throws Exception {
+        final SALoadbalanceEndpoint endpoint = createSALoadbalanceEndpoint(2);
+        for (Endpoint child : children) {
+            // the first message sent to each child fails over to a new session
+            ((TestChild) child).failover = endpoint;
+        }
+        MessageContext synCtx = createMessage();
+
+        endpoint.send(synCtx);
+        // only the child which got the message in the end still has it in flight
+        assertEquals(1, algorithm.getTotalInFlight());
+
+        LoadbalanceEndpoint.onChildEndpointResponse(synCtx, 10);
+        assertEquals(0, algorithm.getTotalInFlight());
+    }
+
+    public void testLoadbalanceEndpointReleasedWhenSendFails() throws Exception {
+        LoadbalanceEndpoint endpoint = new LoadbalanceEndpoint();
+        endpoint.setEnableMBeanStats(false);
+        endpoint.setName("lb");
+        initLoadbalanceEndpoint(endpoint, 1);
+        ((TestChild) children.get(0)).failure = new RuntimeException("Send failure");
+
+        try {
+            endpoint.send(createMessage());
+            fail("The failure of the child endpoint must be propagated");
+        } catch (RuntimeException expected) {
+            assertEquals("Send failure", expected.getMessage());
+        }
+        assertEquals(0, algorithm.getTotalInFlight());
+
+        ((TestChild) children.get(0)).failure = null;
+        MessageContext synCtx = createMessage();
+        endpoint.send(synCtx);
+        assertEquals(1, algorithm.getTotalInFlight());
+        LoadbalanceEndpoint.onChildEndpointResponse(synCtx, 10);
+        assertEquals(0, algorithm.getTotalInFlight());
+    }
+
+    private SALoadbalanceEndpoint createSALoadbalanceEndpoint(int childCount) {
+        SALoadbalanceEndpoint endpoint = new SALoadbalanceEndpoint();
+        endpoint.setEnableMBeanStats(false);
+        endpoint.setName("sal");
+        endpoint.setDispatcher(new TestDispatcher());
+        initLoadbalanceEndpoint(endpoint, childCount);
+        return endpoint;
+    }
+
+    private void initLoadbalanceEndpoint(LoadbalanceEndpoint endpoint, int childCount) {
+        for (int i = 0; i < childCount; i++) {
+            TestChild child = new TestChild();
+            child.setEnableMBeanStats(false);
+            child.setName("ep" + i);
+            child.setParentEndpoint(endpoint);
+            children.add(child);
+        }
+        algorithm.setEndpoints(children);
+        endpoint.setAlgorithm(algorithm);
+        endpoint.setChildren(children);
+        endpoint.init(synEnv);
+    }
+
+    private MessageContext createMessage() throws Exception {
+        return TestUtils.createSynapseMessageContext("<test/>", synCfg);
+    }
+
+    private static class TestAlgorithm extends PowerOfTwoChoicesAlgorithm {
+
+        int getTotalInFlight() {
+            int total = 0;
+            for (Endpoint endpoint : endpoints) {
+                total += getLoad(endpoint).getInFlight();
+            }
+            return total;
+        }
+    }
+
+    /**
+     * A child endpoint which records the messages sent to it instead of sending them
+     */
+    private static class TestChild extends AddressEndpoint {
+
+        private int sent = 0;
+        private RuntimeException failure = null;
+        private LoadbalanceEndpoint failover = null;
+
+        @Override
+        public boolean readyToSend() {
+            return true;
+        }
+
+        @Override
+        public void send(MessageContext synCtx) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (failover != null) {
+                LoadbalanceEndpoint parent = failover;
+                failover = null;
+                parent.onChildEndpointFail(this, synCtx);
+                return;
+            }
+            sent++;
+        }
+    }
+
+    /**
+     * A session dispatcher which never finds an existing session
+     */
+    private static class TestDispatcher extends HttpSessionDispatcher {
+
+        @Override
+        public SessionInformation getSession(MessageContext synCtx) {
+            return null;
+        }
+
+        @Override
+        public void unbind(MessageContext synCtx) {
+        }
+
+        @Override
+        public void removeSessionID(MessageContext syCtx) {
+        }
+    }
+}
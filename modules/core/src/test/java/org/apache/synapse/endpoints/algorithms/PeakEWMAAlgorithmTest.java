@@ -0,0 +1,99 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PeakEWMAAlgorithmTest extends TestCase {
+
+    private List<Endpoint> endpoints;
+    private PeakEWMAAlgorithm algorithm;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SynapseEnvironment env = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), new SynapseConfiguration());
+        endpoints = new ArrayList<Endpoint>();
+        endpoints.add(getEndpoint("ep0", env));
+        endpoints.add(getEndpoint("ep1", env));
+        algorithm = new PeakEWMAAlgorithm();
+        algorithm.setEndpoints(endpoints);
+        algorithm.init(env);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.destroy();
+        }
+    }
+
+    public void testFasterEndpointIsChosen() {
+        respond(endpoints.get(0), 100);
+        respond(endpoints.get(1), 10);
+        Endpoint endpoint = algorithm.getNextEndpoint(null, null);
+        assertEquals("ep1", endpoint.getName());
+        algorithm.onResponse(endpoint, 10);
+    }
+
+    public void testSlowEndpointIsAvoidedAtOnce() {
+        respond(endpoints.get(0), 100);
+        for (int i = 0; i < 10; i++) {
+            respond(endpoints.get(1), 10);
+        }
+        // a single slow response is enough to move the load to the other endpoint
+        respond(endpoints.get(1), 500);
+        assertEquals("ep0", algorithm.getNextEndpoint(null, null).getName());
+    }
+
+    public void testMessagesInFlightAreTakenIntoAccount() {
+        respond(endpoints.get(0), 35);
+        respond(endpoints.get(1), 10);
+        // ep1 is expected to serve three messages before ep0 serves one
+        for (int i = 0; i < 3; i++) {
+            assertEquals("ep1", algorithm.getNextEndpoint(null, null).getName());
+        }
+        assertEquals("ep0", algorithm.getNextEndpoint(null, null).getName());
+    }
+
+    private void respond(Endpoint endpoint, long latency) {
+        algorithm.getLoad(endpoint);
+        algorithm.onResponse(endpoint, latency);
+    }
+
+    private Endpoint getEndpoint(String name, SynapseEnvironment env) {
+        AddressEndpoint endpoint = new AddressEndpoint();
+        endpoint.setEnableMBeanStats(false);
+        endpoint.setName(name);
+        endpoint.init(env);
+        return endpoint;
+    }
+}
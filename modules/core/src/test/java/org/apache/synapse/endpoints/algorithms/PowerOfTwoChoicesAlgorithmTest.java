@@ -0,0 +1,112 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.endpoints.algorithms;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.endpoints.AddressEndpoint;
+import org.apache.synapse.endpoints.Endpoint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PowerOfTwoChoicesAlgorithmTest extends TestCase {
+
+    private List<Endpoint> endpoints;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        endpoints = new ArrayList<Endpoint>();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.destroy();
+        }
+    }
+
+    public void testLeastLoadedOfTwo() {
+        PowerOfTwoChoicesAlgorithm algorithm = createAlgorithm(2);
+
+        // with two endpoints both are compared every time, so the messages in flight
+        // are shared evenly between them
+        for (int i = 0; i < 10; i++) {
+            algorithm.getNextEndpoint(null, null);
+        }
+        assertEquals(5, algorithm.getLoad(endpoints.get(0)).getInFlight());
+        assertEquals(5, algorithm.getLoad(endpoints.get(1)).getInFlight());
+
+        // once the messages of ep0 complete, it gets the next ones
+        for (int i = 0; i < 5; i++) {
+            algorithm.onResponse(endpoints.get(0), 10);
+        }
+        assertEquals(0, algorithm.getLoad(endpoints.get(0)).getInFlight());
+        assertEquals("ep0", algorithm.getNextEndpoint(null, null).getName());
+    }
+
+    public void testSlowEndpointGetsFewerMessages() {
+        PowerOfTwoChoicesAlgorithm algorithm = createAlgorithm(5);
+        Endpoint slow = endpoints.get(0);
+
+        int sentToSlow = 0;
+        for (int i = 0; i < 1000; i++) {
+            Endpoint endpoint = algorithm.getNextEndpoint(null, null);
+            if (endpoint == slow) {
+                // the slow endpoint never responds within this test
+                sentToSlow++;
+            } else {
+                algorithm.onResponse(endpoint, 10);
+            }
+        }
+        // messages pile up on the slow endpoint, so it is only chosen when it is compared
+        // with another endpoint with as many messages in flight, which never happens
+        assertTrue("Slow endpoint got " + sentToSlow + " messages", sentToSlow <= 1);
+    }
+
+    public void testReleaseWithoutResponse() {
+        PowerOfTwoChoicesAlgorithm algorithm = createAlgorithm(1);
+        Endpoint endpoint = algorithm.getNextEndpoint(null, null);
+        assertEquals(1, algorithm.getLoad(endpoint).getInFlight());
+        algorithm.onRelease(endpoint);
+        algorithm.onRelease(endpoint);
+        assertEquals(0, algorithm.getLoad(endpoint).getInFlight());
+    }
+
+    private PowerOfTwoChoicesAlgorithm createAlgorithm(int count) {
+        SynapseEnvironment env = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), new SynapseConfiguration());
+        for (int i = 0; i < count; i++) {
+            AddressEndpoint endpoint = new AddressEndpoint();
+            endpoint.setEnableMBeanStats(false);
+            endpoint.setName("ep" + i);
+            endpoint.init(env);
+            endpoints.add(endpoint);
+        }
+        PowerOfTwoChoicesAlgorithm algorithm = new PowerOfTwoChoicesAlgorithm();
+        algorithm.setEndpoints(endpoints);
+        return algorithm;
+    }
+}
@@ -132,6 +132,57 @@ public class RoundRobinAlgorithmTest extends TestCase {
         }
     }
 
+    public void testRoundRobinWithoutClustering() throws Exception {
+        // Without clustering the position is moved without a lock. Every endpoint should
+        // still get the same share of the requests sent by many concurrent threads.
+        int concurrency = 8;
+        final int requests = 1000;
+
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        ConfigurationContext configContext = new ConfigurationContext(axisConfig);
+        SynapseConfiguration synapseConfig = new SynapseConfiguration();
+        SynapseEnvironment env = new Axis2SynapseEnvironment(configContext, synapseConfig);
+
+        for (int i = 0; i < 10; i++) {
+            endpoints.add(getEndpoint("ep" + i, env));
+        }
+        final RoundRobin roundRobin = new RoundRobin(endpoints);
+        final AlgorithmContext context = new AlgorithmContext(false, configContext, "ep");
+        final MessageContext messageContext =
+                TestUtils.createLightweightSynapseMessageContext("<test/>");
+        final int[][] counts = new int[concurrency][10];
+
+        ExecutorService exec = Executors.newFixedThreadPool(concurrency);
+        try {
+            Future[] futures = new Future[concurrency];
+            for (int i = 0; i < concurrency; i++) {
+                final int[] threadCounts = counts[i];
+                futures[i] = exec.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int j = 0; j < requests; j++) {
+                            Endpoint ep = roundRobin.getNextEndpoint(messageContext, context);
+                            threadCounts[Integer.parseInt(ep.getName().substring(2))]++;
+                        }
+                    }
+                });
+            }
+            for (Future future : futures) {
+                future.get();
+            }
+        } finally {
+            exec.shutdownNow();
+        }
+
+        for (int i = 0; i < 10; i++) {
+            int total = 0;
+            for (int[] threadCounts : counts) {
+                total += threadCounts[i];
+            }
+            assertEquals(concurrency * requests / 10, total);
+        }
+    }
+
     private Endpoint getEndpoint(String name, SynapseEnvironment env) {
         AddressEndpoint endpoint = new AddressEndpoint();
         endpoint.setEnableMBeanStats(false);
@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.synapse.endpoints.Endpoint;
@@ -108,6 +109,44 @@ public class WeightedRRLCAlgorithmTest extends TestCase {
         }
     }
 
+    public void testConcurrentNextEndpoint() throws Exception {
+        final MessageContext messageContext = createMessageContext();
+        LoadbalanceEndpoint endpoint = createLoadBalanceEndpoint();
+        final LoadbalanceAlgorithm algo = endpoint.getAlgorithm();
+
+        // the weights are recalculated after two rounds, so the first two rounds
+        // must be shared in proportion to the fixed weights, however the threads interleave
+        final AtomicInteger remaining = new AtomicInteger(34);
+        final Map<String, AtomicInteger> counts = new HashMap<String, AtomicInteger>();
+        for (String weight : weights) {
+            counts.put(weight, new AtomicInteger(0));
+        }
+
+        int threads = 8;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        while (remaining.getAndDecrement() > 0) {
+                            Endpoint epr = algo.getNextEndpoint(messageContext, null);
+                            counts.get(((AddressEndpoint) epr).getProperty(
+                                    WeightedRRLCAlgorithm.LB_WEIGHTED_RRLC_WEIGHT).getValue())
+                                    .incrementAndGet();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+
+        for (String weight : weights) {
+            assertEquals(2 * Integer.parseInt(weight), counts.get(weight).get());
+        }
+    }
+
     private LoadbalanceEndpoint createLoadBalanceEndpoint() {
         LoadbalanceEndpoint loadbalanceEndpoint = new LoadbalanceEndpoint();
         List<Endpoint> endpoints = createEndpoints();
@@ -0,0 +1,194 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.TestMessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FanOutExecutorTest extends TestCase {
+
+    private SynapseEnvironment synEnv;
+    private BlockingMediator seq;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SynapseConfiguration synCfg = new SynapseConfiguration();
+        synEnv = new Axis2SynapseEnvironment(
+                new ConfigurationContext(new AxisConfiguration()), synCfg);
+        seq = new BlockingMediator();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        seq.release();
+        super.tearDown();
+    }
+
+    public void testInvalidMaxInFlight() {
+        try {
+            new FanOutExecutor(0);
+            fail("A non positive maxInFlight must be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testCreateOnlyWhenMaxInFlightIsSet() {
+        assertNull(FanOutExecutor.create(0, "iterate", this));
+        FanOutExecutor executor = FanOutExecutor.create(4, "iterate", this);
+        assertEquals(4, executor.getMaxInFlight());
+        executor.destroy();
+        // destroying the executor again has no effect
+        executor.destroy();
+    }
+
+    public void testMaxInFlightBoundsPoolDispatch() throws Exception {
+        final FanOutExecutor executor = new FanOutExecutor(2);
+
+        // the first two messages go to the worker pool and do not block the caller
+        executor.execute(seq, createMessage());
+        executor.execute(seq, createMessage());
+        assertTrue(seq.awaitEntered(2));
+        assertEquals(2, executor.getInFlightCount());
+        assertEquals(0, executor.getCallerRunsCount());
+        for (Thread t : seq.threads) {
+            assertNotSame(Thread.currentThread(), t);
+        }
+
+        // the limit is reached, the next message is mediated by the splitting thread
+        Thread splitter = new Thread(new Runnable() {
+            public void run() {
+                executor.execute(seq, createMessage());
+            }
+        });
+        splitter.start();
+        assertTrue(seq.awaitEntered(3));
+        assertSame(splitter, seq.threads.get(2));
+        assertEquals(1, executor.getCallerRunsCount());
+        assertEquals(2, executor.getInFlightCount());
+        assertEquals(3, seq.maxActive.get());
+
+        seq.release();
+        splitter.join(10000);
+        assertFalse(splitter.isAlive());
+        waitForCompletions(executor, 3);
+        assertEquals(0, executor.getInFlightCount());
+        assertEquals(3, executor.getDispatchedCount());
+
+        // the permits are back, so the pool is used again
+        executor.execute(seq, createMessage());
+        assertTrue(seq.awaitEntered(4));
+        assertNotSame(Thread.currentThread(), seq.threads.get(3));
+        waitForCompletions(executor, 4);
+        assertEquals(1, executor.getCallerRunsCount());
+    }
+
+    public void testPermitReleasedWhenMediationFails() throws Exception {
+        FanOutExecutor executor = new FanOutExecutor(1);
+        AbstractMediator failing = new AbstractMediator() {
+            public boolean mediate(MessageContext synCtx) {
+                throw new RuntimeException("Mediation failure");
+            }
+        };
+        for (int i = 0; i < 5; i++) {
+            executor.execute(failing, createMessage());
+        }
+        waitForCompletions(executor, 5);
+        assertEquals(0, executor.getInFlightCount());
+        assertEquals(5, executor.getDispatchedCount());
+    }
+
+    private MessageContext createMessage() {
+        MessageContext synCtx = new TestMessageContext();
+        synCtx.setEnvironment(synEnv);
+        return synCtx;
+    }
+
+    private static void waitForCompletions(FanOutExecutor executor, long count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getCompletedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, executor.getCompletedCount());
+    }
+
+    /**
+     * Records the threads mediating the messages, and holds them until released
+     */
+    private static class BlockingMediator extends AbstractMediator {
+
+        private final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicInteger active = new AtomicInteger(0);
+        private final AtomicInteger maxActive = new AtomicInteger(0);
+        private final Object entered = new Object();
+
+        public boolean mediate(MessageContext synCtx) {
+            int now = active.incrementAndGet();
+            int max;
+            while (now > (max = maxActive.get()) && !maxActive.compareAndSet(max, now)) {
+                // retry
+            }
+            synchronized (entered) {
+                threads.add(Thread.currentThread());
+                entered.notifyAll();
+            }
+            try {
+                released.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+            } finally {
+                active.decrementAndGet();
+            }
+            return true;
+        }
+
+        boolean awaitEntered(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10000;
+            synchronized (entered) {
+                while (threads.size() < count) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        return false;
+                    }
+                    entered.wait(wait);
+                }
+            }
+            return true;
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+}
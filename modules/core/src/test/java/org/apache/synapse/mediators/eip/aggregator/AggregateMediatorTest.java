@@ -0,0 +1,223 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip.aggregator;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.core.axis2.Axis2MessageContext;
+import org.apache.synapse.core.axis2.Axis2SynapseEnvironment;
+import org.apache.synapse.mediators.AbstractMediator;
+import org.apache.synapse.mediators.AbstractMediatorTestCase;
+import org.apache.synapse.mediators.base.SequenceMediator;
+import org.apache.synapse.mediators.eip.EIPConstants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class AggregateMediatorTest extends AbstractMediatorTestCase {
+
+    private SynapseConfiguration synCfg;
+    private SynapseEnvironment synEnv;
+    private ConfigurationContext cfgCtx;
+    private AggregateMediator aggregate;
+    private final List<MessageContext> aggregated =
+            Collections.synchronizedList(new ArrayList<MessageContext>());
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        synCfg = new SynapseConfiguration();
+        cfgCtx = new ConfigurationContext(new AxisConfiguration());
+        synEnv = new Axis2SynapseEnvironment(cfgCtx, synCfg);
+
+        SequenceMediator onComplete = new SequenceMediator();
+        onComplete.addChild(new AbstractMediator() {
+            public boolean mediate(MessageContext synCtx) {
+                aggregated.add(synCtx);
+                return false;
+            }
+        });
+        aggregate = new AggregateMediator();
+        aggregate.setOnCompleteSequence(onComplete);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        aggregate.destroy();
+        aggregated.clear();
+        super.tearDown();
+    }
+
+    public void testConcurrentAggregation() throws Exception {
+        final int groups = 20;
+        final int messagesPerGroup = 10;
+        aggregate.setMaxMessagesToComplete(messagesPerGroup);
+        aggregate.setCompletionTimeoutMillis(60000);
+        aggregate.init(synEnv);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < messagesPerGroup; i++) {
+                for (int g = 0; g < groups; g++) {
+                    final MessageContext synCtx = createMessage("group-" + g, i);
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                start.await();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                            aggregate.mediate(synCtx);
+                        }
+                    });
+                }
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(groups, aggregated.size());
+        Set<Object> correlations = new HashSet<Object>();
+        for (MessageContext synCtx : aggregated) {
+            correlations.add(synCtx.getProperty(EIPConstants.AGGREGATE_CORRELATION));
+            assertEquals(messagesPerGroup, countItems(synCtx));
+        }
+        assertEquals(groups, correlations.size());
+        assertEquals(groups, aggregate.getCompletedAggregateCount());
+        assertEquals(0, aggregate.getTimedOutAggregateCount());
+        assertEquals(0, aggregate.getActiveAggregateCount());
+    }
+
+    public void testCompletionTimeout() throws Exception {
+        aggregate.setMaxMessagesToComplete(5);
+        aggregate.setCompletionTimeoutMillis(200);
+        aggregate.init(synEnv);
+
+        assertTrue(aggregate.mediate(createMessage("group", 0)));
+        assertTrue(aggregate.mediate(createMessage("group", 1)));
+        assertEquals(1, aggregate.getActiveAggregateCount());
+        assertTrue(aggregated.isEmpty());
+
+        waitForAggregates(1);
+        assertEquals(2, countItems(aggregated.get(0)));
+        assertEquals(1, aggregate.getCompletedAggregateCount());
+        assertEquals(1, aggregate.getTimedOutAggregateCount());
+        assertEquals(0, aggregate.getActiveAggregateCount());
+    }
+
+    public void testCompletedAggregateDoesNotTimeOut() throws Exception {
+        aggregate.setMaxMessagesToComplete(2);
+        aggregate.setCompletionTimeoutMillis(100);
+        aggregate.init(synEnv);
+
+        aggregate.mediate(createMessage("group", 0));
+        aggregate.mediate(createMessage("group", 1));
+        assertEquals(1, aggregated.size());
+
+        Thread.sleep(400);
+        assertEquals(1, aggregated.size());
+        assertEquals(1, aggregate.getCompletedAggregateCount());
+        assertEquals(0, aggregate.getTimedOutAggregateCount());
+    }
+
+    public void testTimeoutsAfterIdlePeriod() throws Exception {
+        aggregate.setMaxMessagesToComplete(5);
+        aggregate.setCompletionTimeoutMillis(100);
+        aggregate.init(synEnv);
+
+        aggregate.mediate(createMessage("first", 0));
+        waitForAggregates(1);
+
+        // nothing is pending now, a later aggregate must still be expired on time
+        Thread.sleep(300);
+        aggregate.mediate(createMessage("second", 0));
+        aggregate.mediate(createMessage("third", 0));
+        waitForAggregates(3);
+        assertEquals(3, aggregate.getTimedOutAggregateCount());
+        assertEquals(0, aggregate.getActiveAggregateCount());
+    }
+
+    public void testIncrementalAggregation() throws Exception {
+        aggregate.setIncrementalAggregation(true);
+        aggregate.setMaxMessagesToComplete(3);
+        aggregate.init(synEnv);
+
+        aggregate.mediate(createMessage("group", 0));
+        aggregate.mediate(createMessage("group", 1));
+        Aggregate active = (Aggregate) aggregate.getActiveAggregates().get("group");
+        assertEquals(2, active.getMessageCount());
+        // only the message merged into is retained, the others are merged on arrival
+        assertEquals(1, active.getMessages().size());
+        assertEquals(2, countItems(active.getMessages().get(0)));
+
+        aggregate.mediate(createMessage("group", 2));
+        assertEquals(1, aggregated.size());
+        assertEquals(3, countItems(aggregated.get(0)));
+        assertEquals(0, aggregate.getActiveAggregateCount());
+    }
+
+    private void waitForAggregates(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (aggregated.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, aggregated.size());
+    }
+
+    private MessageContext createMessage(String correlation, int index) throws Exception {
+        org.apache.axis2.context.MessageContext axis2Ctx =
+                new org.apache.axis2.context.MessageContext();
+        axis2Ctx.setConfigurationContext(cfgCtx);
+        MessageContext synCtx = new Axis2MessageContext(axis2Ctx, synCfg, synEnv);
+        SOAPEnvelope envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+        envelope.getBody().addChild(createOMElement("<item>" + index + "</item>"));
+        synCtx.setEnvelope(envelope);
+        synCtx.setProperty(EIPConstants.AGGREGATE_CORRELATION, correlation);
+        return synCtx;
+    }
+
+    private static int countItems(MessageContext synCtx) {
+        int count = 0;
+        Iterator it = synCtx.getEnvelope().getBody().getChildElements();
+        while (it.hasNext()) {
+            if ("item".equals(((OMElement) it.next()).getLocalName())) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
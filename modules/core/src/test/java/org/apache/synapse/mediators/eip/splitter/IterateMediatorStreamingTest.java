@@ -0,0 +1,53 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip.splitter;
+
+import junit.framework.TestCase;
+
+public class IterateMediatorStreamingTest extends TestCase {
+
+    public void testXMLContentTypes() {
+        assertTrue(IterateMediator.isXMLContentType("text/xml"));
+        assertTrue(IterateMediator.isXMLContentType("text/xml; charset=UTF-8"));
+        assertTrue(IterateMediator.isXMLContentType("application/xml"));
+        assertTrue(IterateMediator.isXMLContentType(
+                "application/soap+xml; charset=UTF-8; action=\"urn:getQuote\""));
+        assertTrue(IterateMediator.isXMLContentType("Application/Atom+XML"));
+    }
+
+    public void testNonXMLContentTypes() {
+        // MTOM and SwA payloads are multipart, whatever their parameters say
+        assertFalse(IterateMediator.isXMLContentType("multipart/related; " +
+                "type=\"application/xop+xml\"; start-info=\"text/xml\"; boundary=abc"));
+        assertFalse(IterateMediator.isXMLContentType(
+                "multipart/related; type=\"text/xml\"; boundary=abc"));
+        assertFalse(IterateMediator.isXMLContentType("application/json"));
+        assertFalse(IterateMediator.isXMLContentType("text/plain; format=xml"));
+        assertFalse(IterateMediator.isXMLContentType("application/xml-dtd"));
+    }
+
+    public void testCharSetEncoding() {
+        assertEquals("UTF-16", IterateMediator.getCharSetEncoding("text/xml; charset=UTF-16"));
+        assertEquals("ISO-8859-1", IterateMediator.getCharSetEncoding(
+                "application/soap+xml; Charset=\"ISO-8859-1\"; action=urn:test"));
+        assertNull(IterateMediator.getCharSetEncoding("text/xml"));
+        assertNull(IterateMediator.getCharSetEncoding("application/xml; charset="));
+    }
+}
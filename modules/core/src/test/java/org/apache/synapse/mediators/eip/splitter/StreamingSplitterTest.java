@@ -0,0 +1,98 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.eip.splitter;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.StAXUtils;
+import org.apache.synapse.util.xpath.SynapseXPath;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+
+public class StreamingSplitterTest extends TestCase {
+
+    private static final String ORDERS =
+            "<m:orders xmlns:m=\"http://services.samples\">" +
+            "<m:order id=\"1\"><m:symbol>IBM</m:symbol></m:order>" +
+            "<m:note/>" +
+            "<m:order id=\"2\"><m:symbol>MSFT</m:symbol></m:order>" +
+            "</m:orders>";
+
+    private static final String ENVELOPE =
+            "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">" +
+            "<soapenv:Header><h:id xmlns:h=\"http://header\">123</h:id></soapenv:Header>" +
+            "<soapenv:Body>" + ORDERS + "</soapenv:Body></soapenv:Envelope>";
+
+    public void testSplitPlainPayload() throws Exception {
+        StreamingSplitter.Split split = newSplit("//m:orders/m:order", ORDERS);
+        assertOrder(split.next(), "1");
+        assertOrder(split.next(), "2");
+        assertNull(split.next());
+    }
+
+    public void testSplitEnvelopeWithRelativePath() throws Exception {
+        StreamingSplitter.Split split =
+                newSplit("soapenv:Body/m:orders/m:order", ENVELOPE);
+        assertOrder(split.next(), "1");
+        assertNotNull(split.getHeader());
+        assertEquals("id", split.getHeader().getFirstElement().getLocalName());
+        assertOrder(split.next(), "2");
+        assertNull(split.next());
+    }
+
+    public void testSplitPlainPayloadWithRelativePath() throws Exception {
+        StreamingSplitter.Split split =
+                newSplit("soapenv:Body/m:orders/m:order", ORDERS);
+        assertOrder(split.next(), "1");
+        assertOrder(split.next(), "2");
+        assertNull(split.next());
+    }
+
+    public void testUnsupportedExpressions() throws Exception {
+        assertNull(StreamingSplitter.newInstance(newXPath("//m:order[@id='1']")));
+        assertNull(StreamingSplitter.newInstance(newXPath("//m:orders//m:order")));
+        assertNull(StreamingSplitter.newInstance(newXPath("//x:order")));
+        assertNull(StreamingSplitter.newInstance(newXPath("count(//m:order)")));
+    }
+
+    private StreamingSplitter.Split newSplit(String expression, String xml) throws Exception {
+        StreamingSplitter splitter = StreamingSplitter.newInstance(newXPath(expression));
+        assertNotNull(splitter);
+        XMLStreamReader reader = StAXUtils.createXMLStreamReader(new StringReader(xml));
+        return splitter.split(reader, true);
+    }
+
+    private SynapseXPath newXPath(String expression) throws Exception {
+        SynapseXPath xpath = new SynapseXPath(expression);
+        xpath.addNamespace("m", "http://services.samples");
+        xpath.addNamespace("soapenv", "http://schemas.xmlsoap.org/soap/envelope/");
+        return xpath;
+    }
+
+    private void assertOrder(OMElement element, String id) {
+        assertNotNull(element);
+        assertEquals("order", element.getLocalName());
+        assertEquals(id, element.getAttributeValue(new QName("id")));
+        assertNull(element.getParent());
+        assertEquals("symbol", element.getFirstElement().getLocalName());
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.transform;
+
+import junit.framework.TestCase;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TemplatesCacheTest extends TestCase {
+
+    private static final String XSLT =
+            "<xsl:stylesheet version=\"1.0\" " +
+            "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">" +
+            "<xsl:template match=\"/\"><out/></xsl:template></xsl:stylesheet>";
+
+    public void testConcurrentMissesCompileOnce() throws Exception {
+        final TemplatesCache cache = new TemplatesCache(10, 2);
+        final AtomicInteger compilations = new AtomicInteger(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger(0);
+        final Object entry = new Object();
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        TemplatesCache.CachedTemplates cached = cache.get("key", entry, 1);
+                        if (cached == null) {
+                            cached = cache.compile("key", entry, 1,
+                                    new CountingCompiler(compilations, 50));
+                        }
+                        if (cached.getTemplates() == null) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertEquals(1, compilations.get());
+        assertEquals(1, cache.getSize());
+    }
+
+    public void testFailedCompilationIsReportedAndRemoved() throws Exception {
+        TemplatesCache cache = new TemplatesCache(10, 2);
+        final TransformerConfigurationException failure =
+                new TransformerConfigurationException("broken stylesheet");
+        try {
+            cache.compile("key", null, 0, new Callable<Templates>() {
+                public Templates call() throws Exception {
+                    throw failure;
+                }
+            });
+            fail("The compilation failure must be reported");
+        } catch (TransformerConfigurationException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get("key", null, 0));
+
+        AtomicInteger compilations = new AtomicInteger(0);
+        cache.compile("key", null, 0, new CountingCompiler(compilations, 0));
+        assertEquals(1, compilations.get());
+        assertNotNull(cache.get("key", null, 0));
+    }
+
+    public void testLookupOfFailingCompilationThrowsConfigurationException() throws Exception {
+        final TemplatesCache cache = new TemplatesCache(10, 2);
+        final CountDownLatch compiling = new CountDownLatch(1);
+        final CountDownLatch fail = new CountDownLatch(1);
+
+        Thread compiler = new Thread() {
+            public void run() {
+                try {
+                    cache.compile("key", null, 0, new Callable<Templates>() {
+                        public Templates call() throws Exception {
+                            compiling.countDown();
+                            fail.await();
+                            throw new TransformerConfigurationException("broken stylesheet");
+                        }
+                    });
+                } catch (TransformerConfigurationException expected) {
+                    // reported to the compiling thread as well
+                }
+            }
+        };
+        compiler.start();
+        compiling.await();
+
+        final Exception[] lookupFailure = new Exception[1];
+        Thread lookup = new Thread() {
+            public void run() {
+                try {
+                    cache.get("key", null, 0);
+                } catch (Exception e) {
+                    lookupFailure[0] = e;
+                }
+            }
+        };
+        lookup.start();
+        Thread.sleep(50);
+        fail.countDown();
+        lookup.join(5000);
+        compiler.join(5000);
+
+        assertTrue(lookupFailure[0] instanceof TransformerConfigurationException);
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testStaleEntryIsCompiledAgain() throws Exception {
+        TemplatesCache cache = new TemplatesCache(10, 2);
+        AtomicInteger compilations = new AtomicInteger(0);
+        cache.compile("key", null, 1, new CountingCompiler(compilations, 0));
+        assertNull(cache.get("key", null, 2));
+        cache.compile("key", null, 2, new CountingCompiler(compilations, 0));
+        assertEquals(2, compilations.get());
+        assertEquals(1, cache.getSize());
+    }
+
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        TemplatesCache cache = new TemplatesCache(10, 2);
+        AtomicInteger compilations = new AtomicInteger(0);
+        for (int i = 0; i < 10; i++) {
+            cache.compile("key" + i, null, 0, new CountingCompiler(compilations, 0));
+        }
+        // key0 is used again, so key1 is now the least recently used
+        assertNotNull(cache.get("key0", null, 0));
+
+        cache.compile("key10", null, 0, new CountingCompiler(compilations, 0));
+        assertEquals(9, cache.getSize());
+        assertEquals(2, cache.getEvictionCount());
+        assertNotNull(cache.get("key0", null, 0));
+        assertNull(cache.get("key1", null, 0));
+        assertNull(cache.get("key2", null, 0));
+        assertNotNull(cache.get("key10", null, 0));
+    }
+
+    public void testTransformersArePooled() throws Exception {
+        TemplatesCache cache = new TemplatesCache(10, 1);
+        TemplatesCache.CachedTemplates cached = cache.compile("key", null, 0,
+                new CountingCompiler(new AtomicInteger(0), 0));
+        javax.xml.transform.Transformer first = cached.borrowTransformer();
+        javax.xml.transform.Transformer second = cached.borrowTransformer();
+        assertNotSame(first, second);
+        cached.releaseTransformer(first);
+        cached.releaseTransformer(second);
+        assertSame(first, cached.borrowTransformer());
+        assertNotSame(second, cached.borrowTransformer());
+    }
+
+    private static class CountingCompiler implements Callable<Templates> {
+
+        private final AtomicInteger compilations;
+        private final long delay;
+
+        private CountingCompiler(AtomicInteger compilations, long delay) {
+            this.compilations = compilations;
+            this.delay = delay;
+        }
+
+        public Templates call() throws Exception {
+            compilations.incrementAndGet();
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            return TransformerFactory.newInstance().newTemplates(
+                    new StreamSource(new StringReader(XSLT)));
+        }
+    }
+}
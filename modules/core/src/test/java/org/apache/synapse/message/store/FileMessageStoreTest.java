@@ -0,0 +1,194 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import junit.framework.TestCase;
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.synapse.MessageContext;
+import org.apache.synapse.config.SynapseConfiguration;
+import org.apache.synapse.core.SynapseEnvironment;
+import org.apache.synapse.mediators.TestUtils;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+public class FileMessageStoreTest extends TestCase {
+
+    private File directory;
+    private SynapseEnvironment environment;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("message-store", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+        environment = TestUtils.createSynapseMessageContext("<test/>",
+                new SynapseConfiguration()).getEnvironment();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testBasics() throws Exception {
+        FileMessageStore store = createStore(1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            store.offer(createMessageContext("ID" + i));
+        }
+        assertEquals(10, store.size());
+
+        MessageContext msg = store.get("ID3");
+        assertEquals("ID3", msg.getMessageID());
+        assertEquals("value3", msg.getProperty("prop"));
+        assertEquals("http://localhost:9000/services/Test", msg.getTo().getAddress());
+        assertEquals("urn:test", msg.getSoapAction());
+        assertEquals("order", msg.getEnvelope().getBody().getFirstElement().getLocalName());
+
+        assertEquals("ID5", store.get(5).getMessageID());
+        assertEquals("ID5", store.remove("ID5").getMessageID());
+        assertNull(store.get("ID5"));
+        assertEquals(9, store.getAll().size());
+
+        assertEquals("ID0", store.peek().getMessageID());
+        assertEquals("ID0", store.poll().getMessageID());
+        assertEquals("ID1", store.remove().getMessageID());
+        assertEquals(7, store.size());
+
+        store.clear();
+        assertEquals(0, store.size());
+        assertNull(store.poll());
+        store.destroy();
+    }
+
+    public void testRecovery() throws Exception {
+        FileMessageStore store = createStore(1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            store.offer(createMessageContext("ID" + i));
+        }
+        store.poll();
+        store.remove("ID4");
+        store.destroy();
+
+        store = createStore(1024 * 1024);
+        assertEquals(8, store.size());
+        assertNull(store.get("ID4"));
+        assertEquals("ID1", store.poll().getMessageID());
+        assertEquals("ID2", store.poll().getMessageID());
+
+        store.offer(createMessageContext("ID10"));
+        store.destroy();
+
+        store = createStore(1024 * 1024);
+        assertEquals(7, store.size());
+        assertEquals("ID3", store.get(0).getMessageID());
+        assertEquals("ID10", store.get(6).getMessageID());
+        store.destroy();
+    }
+
+    public void testCompaction() throws Exception {
+        // small segments, so that each holds a few messages only
+        FileMessageStore store = createStore(2048);
+        for (int i = 0; i < 50; i++) {
+            store.offer(createMessageContext("ID" + i));
+        }
+        assertTrue(segmentCount() > 5);
+
+        for (int i = 0; i < 49; i++) {
+            assertEquals("ID" + i, store.poll().getMessageID());
+        }
+        // the segments holding acknowledged messages only are deleted
+        assertTrue(segmentCount() <= 3);
+        store.destroy();
+
+        store = createStore(2048);
+        assertEquals(1, store.size());
+        assertEquals("ID49", store.poll().getMessageID());
+        store.destroy();
+    }
+
+    public void testCompactionIntoSegmentOfLargeMessage() throws Exception {
+        FileMessageStore store = createStore(8192);
+        store.offer(createMessageContext("ID0"));
+
+        // the new segment is sized for this message only, while the compaction relocates the
+        // first message into it
+        MessageContext large = createMessageContext("ID1");
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append('x');
+        }
+        large.setProperty("large", value.toString());
+        store.offer(large);
+
+        assertEquals(2, store.size());
+        assertEquals("ID0", store.get(0).getMessageID());
+        assertEquals(value.toString(), store.get("ID1").getProperty("large"));
+        store.destroy();
+
+        store = createStore(8192);
+        assertEquals(2, store.size());
+        assertEquals("ID0", store.poll().getMessageID());
+        assertEquals(value.toString(), store.poll().getProperty("large"));
+        store.destroy();
+    }
+
+    private int segmentCount() {
+        int count = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (StoreSegment.getSequence(file) >= 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private FileMessageStore createStore(int segmentSize) {
+        FileMessageStore store = new FileMessageStore();
+        store.setName("FileMessageStoreTest");
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(FileMessageStore.STORE_DIRECTORY, directory.getAbsolutePath());
+        parameters.put(FileMessageStore.SEGMENT_SIZE, String.valueOf(segmentSize));
+        store.setParameters(parameters);
+        store.init(environment);
+        return store;
+    }
+
+    private MessageContext createMessageContext(String identifier) throws Exception {
+        MessageContext msg = TestUtils.createSynapseMessageContext(
+                "<order><symbol>IBM</symbol></order>", new SynapseConfiguration());
+        msg.setMessageID(identifier);
+        msg.setTo(new EndpointReference(
+                "http://localhost:9000/services/Test"));
+        msg.setSoapAction("urn:test");
+        msg.setProperty("prop", "value" + identifier.substring(2));
+        return msg;
+    }
+}
@@ -23,7 +23,10 @@ import junit.framework.TestCase;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.mediators.TestUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 public class InMemoryMessageStoreTest extends TestCase {
@@ -124,6 +127,93 @@ public class InMemoryMessageStoreTest extends TestCase {
         assertEquals(0, observer.getCount());
     }
     
+    public void testRemoveById() throws Exception {
+        MessageStore store = new InMemoryMessageStore();
+        populateStore(store, 10);
+
+        assertEquals("ID5", store.remove("ID5").getMessageID());
+        assertNull(store.get("ID5"));
+        assertNull(store.remove("ID5"));
+        assertEquals(9, store.size());
+        assertEquals("ID6", store.get(5).getMessageID());
+        assertEquals("ID9", store.get(8).getMessageID());
+
+        // a message stored twice is kept twice
+        store.offer(createMessageContext("ID0"));
+        assertEquals(10, store.size());
+        assertEquals("ID0", store.poll().getMessageID());
+        assertEquals("ID0", store.get("ID0").getMessageID());
+        assertEquals("ID0", store.remove("ID0").getMessageID());
+        assertNull(store.get("ID0"));
+        assertEquals(8, store.size());
+    }
+
+    public void testBoundedStore() throws Exception {
+        MessageStore store = new InMemoryMessageStore();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(InMemoryMessageStore.MAX_STORE_SIZE, "5");
+        store.setParameters(parameters);
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(store.offer(createMessageContext("ID" + i)));
+        }
+        assertFalse(store.offer(createMessageContext("ID5")));
+        assertEquals(5, store.size());
+
+        store.poll();
+        assertTrue(store.offer(createMessageContext("ID5")));
+    }
+
+    public void testBlockingStore() throws Exception {
+        final MessageStore store = new InMemoryMessageStore();
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(InMemoryMessageStore.MAX_STORE_SIZE, "1");
+        parameters.put(InMemoryMessageStore.STORE_FULL_POLICY, InMemoryMessageStore.BLOCK_POLICY);
+        parameters.put(InMemoryMessageStore.STORE_BLOCK_TIMEOUT, "100");
+        store.setParameters(parameters);
+
+        assertTrue(store.offer(createMessageContext("ID0")));
+        // times out while the store is full
+        assertFalse(store.offer(createMessageContext("ID1")));
+
+        parameters.put(InMemoryMessageStore.STORE_BLOCK_TIMEOUT, "10000");
+        store.setParameters(parameters);
+        Thread consumer = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignore) {
+                }
+                store.poll();
+            }
+        };
+        consumer.start();
+        assertTrue(store.offer(createMessageContext("ID1")));
+        consumer.join();
+        assertEquals("ID1", store.peek().getMessageID());
+    }
+
+    public void testMemoryBoundedStore() throws Exception {
+        InMemoryMessageStore store = new InMemoryMessageStore();
+        MessageContext msg = createMessageContext("ID0");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        msg.getEnvelope().serialize(out);
+        int messageSize = out.size();
+
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put(InMemoryMessageStore.MAX_STORE_MEMORY,
+                String.valueOf(messageSize * 2 + messageSize / 2));
+        store.setParameters(parameters);
+
+        assertTrue(store.offer(msg));
+        assertTrue(store.offer(createMessageContext("ID1")));
+        assertFalse(store.offer(createMessageContext("ID2")));
+        assertTrue(store.getStoredBytes() > 0);
+
+        store.clear();
+        assertEquals(0, store.getStoredBytes());
+    }
+
     private MessageContext createMessageContext(String identifier) throws Exception {
         MessageContext msg = TestUtils.createLightweightSynapseMessageContext("<test/>");
         msg.setMessageID(identifier);
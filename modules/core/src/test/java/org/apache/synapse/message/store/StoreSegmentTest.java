@@ -0,0 +1,156 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.message.store;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StoreSegmentTest extends TestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("store-segment", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testRecordsAfterTornWriteAreNotResurrected() throws Exception {
+        StoreSegment segment = StoreSegment.create(directory, 0, 4096);
+        segment.append(StoreSegment.ADD, 1, "first".getBytes());
+        int torn = segment.append(StoreSegment.ADD, 2, "second".getBytes());
+        segment.append(StoreSegment.ADD, 3, "third".getBytes());
+        segment.force();
+        File file = segment.getFile();
+        segment.close();
+
+        // corrupt the payload of the second record, as a torn write would
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(torn + StoreSegment.HEADER_SIZE);
+        raf.write('X');
+        raf.close();
+
+        segment = StoreSegment.open(file);
+        assertEquals(1, readAll(segment).size());
+        segment.truncate();
+        // a record of the same length as the torn one ends right where the third one started
+        segment.append(StoreSegment.ADD, 4, "fourth".getBytes());
+        segment.force();
+        segment.close();
+
+        segment = StoreSegment.open(file);
+        List<Long> entries = readAll(segment);
+        segment.close();
+        assertEquals(2, entries.size());
+        assertEquals(Long.valueOf(1), entries.get(0));
+        assertEquals(Long.valueOf(4), entries.get(1));
+    }
+
+    public void testTruncateClearsTheWholeTail() throws Exception {
+        StoreSegment segment = StoreSegment.create(directory, 0, 3 * 8192 + 100);
+        segment.append(StoreSegment.ADD, 1, "first".getBytes());
+        int end = segment.getWritePosition();
+        segment.close();
+
+        RandomAccessFile raf = new RandomAccessFile(segment.getFile(), "rw");
+        long length = raf.length();
+        raf.seek(end + 1);
+        raf.write(1);
+        raf.seek(2 * 8192 + 10);
+        raf.write(2);
+        raf.seek(length - 1);
+        raf.write(3);
+        raf.close();
+
+        segment = StoreSegment.open(segment.getFile());
+        assertEquals(1, readAll(segment).size());
+        segment.truncate();
+        segment.force();
+        segment.close();
+
+        raf = new RandomAccessFile(segment.getFile(), "r");
+        assertEquals(length, raf.length());
+        byte[] content = new byte[(int) length];
+        raf.readFully(content);
+        raf.close();
+        for (int i = end; i < content.length; i++) {
+            assertEquals("Byte at : " + i, 0, content[i]);
+        }
+        // the length of the first record is left in place
+        assertEquals(end, content[3]);
+    }
+
+    public void testAppendRejectsRecordsThatDoNotFit() throws Exception {
+        StoreSegment segment = StoreSegment.create(directory, 0, StoreSegment.HEADER_SIZE + 10);
+        assertFalse(segment.hasSpace(11));
+        try {
+            segment.append(StoreSegment.ADD, 1, new byte[11]);
+            fail("The record does not fit in the segment");
+        } catch (IOException expected) {
+            // the segment is left as it was
+        }
+        assertEquals(0, segment.getWritePosition());
+
+        segment.append(StoreSegment.ADD, 1, new byte[10]);
+        assertFalse(segment.hasSpace(0));
+        segment.close();
+    }
+
+    public void testDeleteUnmapsTheSegment() throws Exception {
+        StoreSegment segment = StoreSegment.create(directory, 0, 4096);
+        segment.append(StoreSegment.ADD, 1, "first".getBytes());
+        assertTrue(segment.delete());
+        assertFalse(segment.getFile().exists());
+        // flushing a deleted segment, as the store may do concurrently, is harmless
+        segment.force();
+        segment.close();
+    }
+
+    private static List<Long> readAll(StoreSegment segment) {
+        final List<Long> entries = new ArrayList<Long>();
+        StoreSegment.RecordVisitor visitor = new StoreSegment.RecordVisitor() {
+            public void visit(StoreSegment segment, byte type, long entryId, int offset,
+                              byte[] payload) {
+                entries.add(entryId);
+            }
+        };
+        while (segment.readNext(visitor)) {
+            // read all the valid records
+        }
+        return entries;
+    }
+}
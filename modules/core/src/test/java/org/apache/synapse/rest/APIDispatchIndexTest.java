@@ -0,0 +1,82 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.rest;
+
+import junit.framework.TestCase;
+import org.apache.synapse.rest.dispatch.URITemplateHelper;
+import org.apache.synapse.rest.dispatch.URLMappingHelper;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class APIDispatchIndexTest extends TestCase {
+
+    public void testContextLookup() {
+        API root = new API("Root", "/");
+        API foo = new API("Foo", "/foo");
+        API fooBar = new API("FooBar", "/foo/bar");
+        APIDispatchIndex index = new APIDispatchIndex(Arrays.asList(root, foo, fooBar));
+
+        assertEquals(Arrays.asList(foo), index.getCandidates("/foo"));
+        assertEquals(Arrays.asList(foo), index.getCandidates("/foo/"));
+        assertEquals(Arrays.asList(foo), index.getCandidates("/foo?a=b"));
+        assertEquals(Arrays.asList(foo), index.getCandidates("/foo/baz"));
+        assertEquals(Arrays.asList(fooBar, foo), index.getCandidates("/foo/bar"));
+        assertEquals(Arrays.asList(fooBar, foo), index.getCandidates("/foo/bar/baz?a=/b"));
+        assertTrue(index.getCandidates("/foobar").isEmpty());
+        assertTrue(index.getCandidates("/bar/foo").isEmpty());
+        assertTrue(index.getCandidates("/").isEmpty());
+
+        assertEquals(Arrays.asList(root), index.getDefaultAPIs());
+        assertEquals(Arrays.asList(fooBar), index.getAPIs("FooBar"));
+        assertTrue(index.getAPIs("Bar").isEmpty());
+    }
+
+    public void testResourceLookup() {
+        Resource getFoo = new Resource();
+        getFoo.addMethod("GET");
+        getFoo.setDispatcherHelper(new URITemplateHelper("/foo/{id}"));
+        Resource postFoo = new Resource();
+        postFoo.addMethod("POST");
+        postFoo.setDispatcherHelper(new URLMappingHelper("/foo/*"));
+        Resource bar = new Resource();
+        bar.setDispatcherHelper(new URLMappingHelper("/bar"));
+        Resource any = new Resource();
+        any.addMethod("GET");
+        any.setDispatcherHelper(new URITemplateHelper("/{type}/{id}"));
+        Resource jsp = new Resource();
+        jsp.setDispatcherHelper(new URLMappingHelper("*.jsp"));
+
+        ResourceIndex index = new ResourceIndex(Arrays.asList(getFoo, postFoo, bar, any, jsp));
+
+        assertCandidates(index.getCandidates("GET", "/foo/1"), getFoo, any, jsp);
+        assertCandidates(index.getCandidates("POST", "/foo/1?a=b"), postFoo, jsp);
+        assertCandidates(index.getCandidates("PUT", "/bar"), bar, jsp);
+        assertCandidates(index.getCandidates("GET", "/baz/1"), any, jsp);
+        assertCandidates(index.getCandidates("OPTIONS", "/foo"), getFoo, postFoo, any, jsp);
+        assertCandidates(index.getCandidates("GET", "/f%6Fo/1"),
+                getFoo, postFoo, bar, any, jsp);
+    }
+
+    private void assertCandidates(List<Resource> candidates, Resource... expected) {
+        assertEquals(expected.length, candidates.size());
+        assertTrue(candidates.containsAll(Arrays.asList(expected)));
+    }
+}
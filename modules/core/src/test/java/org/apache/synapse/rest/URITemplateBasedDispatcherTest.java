@@ -23,6 +23,8 @@ import org.apache.synapse.MessageContext;
 import org.apache.synapse.config.SynapseConfiguration;
 import org.apache.synapse.rest.dispatch.URITemplateHelper;
 
+import java.util.Map;
+
 public class URITemplateBasedDispatcherTest extends RESTMediationTestCase {
 
     private static final String PROP_NAME = "prop.name";
@@ -162,4 +164,23 @@ public class URITemplateBasedDispatcherTest extends RESTMediationTestCase {
         handler.process(synCtx);
         assertNull(synCtx.getProperty(PROP_NAME));
     }
+
+    public void testTemplateMatching() throws Exception {
+        URITemplateHelper helper = new URITemplateHelper("/dictionary/{char}/{word}");
+
+        assertNull(helper.match("/thesaurus/c/cat"));
+        assertNull(helper.match("/dictionary/c"));
+
+        Map<String,String> variables = helper.match("/dictionary/c/cat");
+        assertNotNull(variables);
+        assertEquals("c", variables.get("char"));
+        assertEquals("cat", variables.get("word"));
+
+        // a cached match should give the same variables
+        variables = helper.match("/dictionary/c/cat");
+        assertNotNull(variables);
+        assertEquals("c", variables.get("char"));
+        assertEquals("cat", variables.get("word"));
+        assertNull(helper.match("/dictionary/c"));
+    }
 }
@@ -22,8 +22,10 @@ package org.apache.synapse.util;
 import javax.activation.DataHandler;
 
 import junit.framework.TestCase;
+import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axis2.addressing.EndpointReference;
 import org.apache.axis2.context.MessageContext;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
 
 /**
  * 
@@ -59,4 +61,14 @@ public class MessageHelperTest extends TestCase {
         assertEquals(fromValue, result.getAddress());
     }
 
+    public void testCloneWithoutPipe() throws Exception {
+        MessageContext origMc = new MessageContext();
+        origMc.setEnvelope(OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope());
+        Object pipe = new Object();
+        origMc.setProperty(PassThroughConstants.PASS_THROUGH_PIPE, pipe);
+        MessageContext newMc = MessageHelper.cloneAxis2MessageContext(origMc, false);
+        assertNull(newMc.getProperty(PassThroughConstants.PASS_THROUGH_PIPE));
+        assertSame(pipe, origMc.getProperty(PassThroughConstants.PASS_THROUGH_PIPE));
+    }
+
 }
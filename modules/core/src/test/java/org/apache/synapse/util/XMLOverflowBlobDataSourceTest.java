@@ -0,0 +1,122 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.util;
+
+import junit.framework.TestCase;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMSourcedElement;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.util.blob.OverflowBlob;
+
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class XMLOverflowBlobDataSourceTest extends TestCase {
+
+    private String createPayload() {
+        StringBuilder payload = new StringBuilder("<p:orders xmlns:p=\"urn:test\">");
+        for (int i = 0; i < 500; i++) {
+            payload.append("<p:order id=\"").append(i).append("\">item &amp; ").append(i)
+                    .append("</p:order>");
+        }
+        return payload.append("</p:orders>").toString();
+    }
+
+    private void write(OverflowBlob blob, String content) throws IOException {
+        OutputStream out = blob.getOutputStream();
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    public void testRoundTripOfOverflowedPayload() throws Exception {
+        String payload = createPayload();
+        // two chunks of 1KB are not enough for the payload, so it overflows to a file
+        OverflowBlob blob = new OverflowBlob(2, 1024, "tmp_", ".dat");
+        try {
+            write(blob, payload);
+            assertTrue(payload.length() > 2 * 1024);
+
+            OMSourcedElement element = XMLOverflowBlobDataSource.createOMSourcedElement(blob);
+            assertEquals("orders", element.getLocalName());
+            assertEquals("urn:test", element.getNamespace().getNamespaceURI());
+
+            StringWriter serialized = new StringWriter();
+            element.serialize(serialized);
+            assertFalse(element.isExpanded());
+
+            // compare both documents after building them the same way
+            OMElement reparsed = AXIOMUtil.stringToOM(serialized.toString());
+            assertEquals(AXIOMUtil.stringToOM(payload).toString(), reparsed.toString());
+            assertEquals(500, countChildren(reparsed));
+
+            // the content can be read again, as the blob is not consumed by a read
+            StringWriter again = new StringWriter();
+            element.serialize(again);
+            assertEquals(serialized.toString(), again.toString());
+        } finally {
+            blob.release();
+        }
+    }
+
+    public void testClosingReaderClosesBlobStream() throws Exception {
+        final AtomicInteger opened = new AtomicInteger(0);
+        final AtomicInteger closed = new AtomicInteger(0);
+        OverflowBlob blob = new OverflowBlob(2, 1024, "tmp_", ".dat") {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                opened.incrementAndGet();
+                return new FilterInputStream(super.getInputStream()) {
+                    @Override
+                    public void close() throws IOException {
+                        closed.incrementAndGet();
+                        super.close();
+                    }
+                };
+            }
+        };
+        try {
+            write(blob, createPayload());
+            XMLOverflowBlobDataSource ds = new XMLOverflowBlobDataSource(blob);
+            for (int i = 0; i < 3; i++) {
+                XMLStreamReader reader = ds.getReader();
+                reader.next();
+                reader.close();
+            }
+            XMLOverflowBlobDataSource.createOMSourcedElement(blob);
+            assertEquals(4, opened.get());
+            assertEquals(4, closed.get());
+        } finally {
+            blob.release();
+        }
+    }
+
+    private int countChildren(OMElement element) {
+        int count = 0;
+        for (java.util.Iterator it = element.getChildElements(); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+}
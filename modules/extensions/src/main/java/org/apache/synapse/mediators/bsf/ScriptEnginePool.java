@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of script engines, used for the engines which do not support multi-threading.
+ * Engines are created lazily when no idle engine is available, until the pool reaches its
+ * maximum size. After that, borrowers wait for an engine to be released.
+ *
+ * @param <T> the type of the pooled engines
+ */
+abstract class ScriptEnginePool<T> {
+
+    private final BlockingQueue<T> idleEngines = new LinkedBlockingQueue<T>();
+    private final AtomicInteger createdEngines = new AtomicInteger(0);
+    private final int maxSize;
+    private final long borrowTimeout;
+
+    private final AtomicLong borrowWaitCount = new AtomicLong(0);
+    private final AtomicLong borrowTimeoutCount = new AtomicLong(0);
+
+    /**
+     * @param maxSize the maximum number of engines in the pool
+     * @param borrowTimeout the time in milliseconds to wait for an engine when the pool is
+     *                      exhausted
+     */
+    ScriptEnginePool(int maxSize, long borrowTimeout) {
+        this.maxSize = maxSize > 0 ? maxSize : 1;
+        this.borrowTimeout = borrowTimeout;
+    }
+
+    /**
+     * Create a new engine for the pool
+     *
+     * @return the new engine
+     */
+    protected abstract T createEngine();
+
+    /**
+     * Add an engine created outside the pool, as an idle engine
+     *
+     * @param engine the engine to add
+     */
+    void add(T engine) {
+        createdEngines.incrementAndGet();
+        idleEngines.offer(engine);
+    }
+
+    /**
+     * Create engines until the pool holds the given number of engines, or reaches its
+     * maximum size
+     *
+     * @param size the number of engines to hold
+     */
+    void warmUp(int size) {
+        while (createdEngines.get() < size) {
+            T engine = create();
+            if (engine == null) {
+                return;
+            }
+            idleEngines.offer(engine);
+        }
+    }
+
+    /**
+     * Take an idle engine from the pool. A new engine is created if there is no idle engine and
+     * the pool has not reached its maximum size, otherwise this waits until an engine is
+     * released.
+     *
+     * @return an engine for the exclusive use of the caller, or null if no engine was released
+     * within the borrow timeout
+     */
+    T borrow() {
+        T engine = idleEngines.poll();
+        if (engine != null) {
+            return engine;
+        }
+
+        engine = create();
+        if (engine != null) {
+            return engine;
+        }
+
+        borrowWaitCount.incrementAndGet();
+        try {
+            engine = idleEngines.poll(borrowTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (engine == null) {
+            borrowTimeoutCount.incrementAndGet();
+        }
+        return engine;
+    }
+
+    /**
+     * Return an engine obtained from borrow() to the pool
+     *
+     * @param engine the engine to return
+     */
+    void release(T engine) {
+        idleEngines.offer(engine);
+    }
+
+    /**
+     * Drop all the idle engines
+     */
+    void clear() {
+        idleEngines.clear();
+    }
+
+    /**
+     * Create a new engine, unless the pool has already reached its maximum size
+     *
+     * @return the new engine, or null if the pool is full
+     */
+    private T create() {
+        if (createdEngines.incrementAndGet() > maxSize) {
+            createdEngines.decrementAndGet();
+            return null;
+        }
+        try {
+            return createEngine();
+        } catch (RuntimeException e) {
+            createdEngines.decrementAndGet();
+            throw e;
+        }
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    long getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    int getCreatedEngineCount() {
+        return createdEngines.get();
+    }
+
+    int getIdleEngineCount() {
+        return idleEngines.size();
+    }
+
+    long getBorrowWaitCount() {
+        return borrowWaitCount.get();
+    }
+
+    long getBorrowTimeoutCount() {
+        return borrowTimeoutCount.get();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+/**
+ * JMX MBean interface for monitoring the script engine pool of a script mediator.
+ */
+public interface ScriptEnginePoolViewMBean {
+
+    /**
+     * Get the maximum number of script engines in the pool
+     *
+     * @return An integer
+     */
+    public int getPoolSize();
+
+    /**
+     * Get the number of script engines created for the pool
+     *
+     * @return An integer
+     */
+    public int getCreatedEngineCount();
+
+    /**
+     * Get the number of script engines currently executing a script
+     *
+     * @return An integer
+     */
+    public int getActiveEngineCount();
+
+    /**
+     * Get the number of idle script engines in the pool
+     *
+     * @return An integer
+     */
+    public int getIdleEngineCount();
+
+    /**
+     * Get the number of times a message had to wait for a script engine to be released
+     *
+     * @return A long
+     */
+    public long getBorrowWaitCount();
+
+    /**
+     * Get the number of times a message timed out waiting for a script engine
+     *
+     * @return A long
+     */
+    public long getBorrowTimeoutCount();
+
+}
@@ -25,10 +25,14 @@ import com.sun.script.jruby.JRubyScriptEngineFactory;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMText;
 import org.apache.bsf.xml.XMLHelper;
+import org.apache.synapse.ManagedLifecycle;
 import org.apache.synapse.MessageContext;
 import org.apache.synapse.SynapseException;
 import org.apache.synapse.SynapseLog;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 import org.apache.synapse.config.Entry;
+import org.apache.synapse.config.SynapsePropertiesLoader;
+import org.apache.synapse.core.SynapseEnvironment;
 import org.apache.synapse.mediators.AbstractMediator;
 import org.apache.synapse.mediators.Value;
 import org.mozilla.javascript.Context;
@@ -38,8 +42,12 @@ import javax.script.*;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A Synapse mediator that calls a function in any scripting language supported by the BSF.
@@ -57,8 +65,13 @@ import java.util.TreeMap;
  * if not specified it defaults to a function named 'mediate'. The function takes a single
  * parameter which is the Synapse MessageContext. The function may return a boolean, if it
  * does not then true is assumed.
+ * <p/>
+ * Script engines which do not support multi-threading are kept in a bounded pool, so that
+ * concurrent messages are processed by different engine instances. The size of the pool and the
+ * time to wait for an engine when all of them are in use can be set in synapse.properties.
+ * Engines are created as they are needed, unless an initial pool size is configured.
  */
-public class ScriptMediator extends AbstractMediator {
+public class ScriptMediator extends AbstractMediator implements ManagedLifecycle {
 
     /**
      * The name of the variable made available to the scripting language to access the message
@@ -70,6 +83,30 @@ public class ScriptMediator extends AbstractMediator {
      */
     private static final String JAVA_SCRIPT = "js";
 
+    /**
+     * synapse.properties entries for the maximum number of engines in the pool, the number of
+     * engines created when the mediator is initialized, and the time in milliseconds to wait
+     * for an engine when the pool is exhausted
+     */
+    private static final String SCRIPT_ENGINE_POOL_SIZE = "synapse.script.engine.pool.size";
+    private static final String SCRIPT_ENGINE_POOL_INITIAL_SIZE =
+            "synapse.script.engine.pool.initial.size";
+    private static final String SCRIPT_ENGINE_BORROW_TIMEOUT = "synapse.script.engine.borrow.timeout";
+    private static final int DEFAULT_SCRIPT_ENGINE_POOL_SIZE = 10;
+    private static final int DEFAULT_SCRIPT_ENGINE_POOL_INITIAL_SIZE = 1;
+    private static final long DEFAULT_SCRIPT_ENGINE_BORROW_TIMEOUT = 30000;
+
+    /**
+     * JMX category of the engine pool statistics
+     */
+    private static final String SCRIPT_ENGINE_POOL_VIEW = "ScriptEnginePool";
+
+    /**
+     * Makes the JMX names of the engine pools unique, as several mediators may use the same
+     * script key
+     */
+    private static final AtomicInteger poolViewCounter = new AtomicInteger(0);
+
     /**
      * The registry entry key for a script loaded from the registry
      * Handle both static and dynamic(Xpath) Keys
@@ -92,7 +129,8 @@ public class ScriptMediator extends AbstractMediator {
      */
     private String scriptSourceCode;
     /**
-     * The BSF engine created to process each message through the script
+     * The BSF engine created to process each message through the script. This is the first
+     * engine of the pool, and the only one used if the engine supports multi-threading
      */
     protected ScriptEngine scriptEngine;
     /**
@@ -100,19 +138,18 @@ public class ScriptMediator extends AbstractMediator {
      */
     private boolean multiThreadedEngine;
     /**
-     * The compiled script. Only used for inline scripts
+     * The engine shared by all threads when the engine supports multi-threading
      */
-    private CompiledScript compiledScript;
+    private ScriptEngineWrapper sharedEngine;
     /**
-     * The Invokable script. Only used for external scripts
+     * The pool of engines used when the engine does not support multi-threading
      */
-    private Invocable invocableScript;
+    private ScriptEnginePool<ScriptEngineWrapper> enginePool;
     /**
-     * The BSF helper to convert between the XML representations used by Java
-     * and the scripting language
+     * The source code of the external script followed by the sources of the included scripts,
+     * as last loaded from the registry. Only used for external scripts
      */
-    private XMLHelper xmlHelper;
-
+    private volatile List<String> externalScripts;
     /**
      * Lock used to ensure thread-safe lookup of the object from the registry
      */
@@ -123,6 +160,11 @@ public class ScriptMediator extends AbstractMediator {
      */
     private ClassLoader loader;
 
+    /**
+     * The name under which the pool statistics are registered in JMX
+     */
+    private String mbeanName;
+
     /**
      * Create a script mediator for the given language and given script source
      *
@@ -159,7 +201,36 @@ public class ScriptMediator extends AbstractMediator {
             throw new SynapseException("Script engine is not an Invocable" +
                     " engine for language: " + language);
         }
-        invocableScript = (Invocable) scriptEngine;
+        initEnginePool(newEngineWrapper(scriptEngine, null));
+    }
+
+    public void init(SynapseEnvironment se) {
+        if (!multiThreadedEngine) {
+            // creating an engine is expensive, so only the configured number of engines is
+            // created upfront and the rest as the load requires them
+            enginePool.warmUp(Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(
+                    SCRIPT_ENGINE_POOL_INITIAL_SIZE,
+                    String.valueOf(DEFAULT_SCRIPT_ENGINE_POOL_INITIAL_SIZE))));
+            if (log.isDebugEnabled()) {
+                log.debug("Initialized a pool of " + enginePool.getCreatedEngineCount() +
+                        " script engines for language : " + language);
+            }
+        }
+
+        mbeanName = language + "-" + (key != null ? key.getKeyValue() : "inline") + "-" +
+                poolViewCounter.incrementAndGet();
+        MBeanRegistrar.getInstance().registerMBean(
+                new ScriptEnginePoolView(this), SCRIPT_ENGINE_POOL_VIEW, mbeanName);
+    }
+
+    public void destroy() {
+        if (mbeanName != null) {
+            MBeanRegistrar.getInstance().unRegisterMBean(SCRIPT_ENGINE_POOL_VIEW, mbeanName);
+            mbeanName = null;
+        }
+        if (enginePool != null) {
+            enginePool.clear();
+        }
     }
 
     /**
@@ -189,11 +260,13 @@ public class ScriptMediator extends AbstractMediator {
 
         boolean returnValue;
         if (multiThreadedEngine) {
-            returnValue = invokeScript(synCtx);
+            returnValue = invokeScript(synCtx, sharedEngine);
         } else {
-            // TODO: change to use a pool of script engines (requires an update to BSF)
-            synchronized (scriptEngine.getClass()) {
-                returnValue = invokeScript(synCtx);
+            ScriptEngineWrapper wrapper = borrowEngine(synCtx);
+            try {
+                returnValue = invokeScript(synCtx, wrapper);
+            } finally {
+                enginePool.release(wrapper);
             }
         }
 
@@ -208,7 +281,7 @@ public class ScriptMediator extends AbstractMediator {
         return returnValue;
     }
 
-    private boolean invokeScript(MessageContext synCtx) {
+    private boolean invokeScript(MessageContext synCtx, ScriptEngineWrapper wrapper) {
         boolean returnValue;
         try {
 
@@ -220,9 +293,9 @@ public class ScriptMediator extends AbstractMediator {
 
             Object returnObject;
             if (key != null) {
-                returnObject = mediateWithExternalScript(synCtx);
+                returnObject = mediateWithExternalScript(synCtx, wrapper);
             } else {
-                returnObject = mediateForInlineScript(synCtx);
+                returnObject = mediateForInlineScript(synCtx, wrapper);
             }
             returnValue = !(returnObject != null && returnObject instanceof Boolean)
                     || (Boolean) returnObject;
@@ -251,36 +324,49 @@ public class ScriptMediator extends AbstractMediator {
      * Mediation implementation when the script to be executed should be loaded from the registry
      *
      * @param synCtx the message context
+     * @param wrapper the engine to execute the script on
      * @return script result
      * @throws ScriptException       For any errors , when compile, run the script
      * @throws NoSuchMethodException If the function is not defined in the script
      */
-    private Object mediateWithExternalScript(MessageContext synCtx)
+    private Object mediateWithExternalScript(MessageContext synCtx, ScriptEngineWrapper wrapper)
             throws ScriptException, NoSuchMethodException {
         prepareExternalScript(synCtx);
-        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, xmlHelper);
-        return invocableScript.invokeFunction(function, new Object[]{scriptMC});        
+        List<String> scripts = externalScripts;
+        synchronized (wrapper) {
+            // (re-)evaluate the scripts on this engine, if it has not seen the latest version
+            if (wrapper.loadedScripts != scripts) {
+                for (String script : scripts) {
+                    wrapper.engine.eval(script);
+                }
+                wrapper.loadedScripts = scripts;
+            }
+        }
+        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, wrapper.xmlHelper);
+        return ((Invocable) wrapper.engine).invokeFunction(function, new Object[]{scriptMC});
     }
 
     /**
      * Perform mediation with static inline script of the given scripting language
      *
      * @param synCtx message context
+     * @param wrapper the engine to execute the script on
      * @return true, or the script return value
      * @throws ScriptException For any errors , when compile , run the script
      */
-    private Object mediateForInlineScript(MessageContext synCtx) throws ScriptException {
+    private Object mediateForInlineScript(MessageContext synCtx, ScriptEngineWrapper wrapper)
+            throws ScriptException {
 
-        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, xmlHelper);
+        ScriptMessageContext scriptMC = new ScriptMessageContext(synCtx, wrapper.xmlHelper);
 
-        Bindings bindings = scriptEngine.createBindings();
+        Bindings bindings = wrapper.engine.createBindings();
         bindings.put(MC_VAR_NAME, scriptMC);
 
         Object response;
-        if (compiledScript != null) {
-            response = compiledScript.eval(bindings);
+        if (wrapper.compiledScript != null) {
+            response = wrapper.compiledScript.eval(bindings);
         } else {
-            response = scriptEngine.eval(scriptSourceCode, bindings);
+            response = wrapper.engine.eval(scriptSourceCode, bindings);
         }
 
         return response;
@@ -291,15 +377,24 @@ public class ScriptMediator extends AbstractMediator {
      * Initialise the Mediator for the inline script
      */
     protected void initInlineScript() {
-        try {
-            initScriptEngine();
+        initScriptEngine();
+        initEnginePool(newEngineWrapper(scriptEngine, compileInlineScript(scriptEngine)));
+    }
 
-            if (scriptEngine instanceof Compilable) {
+    /**
+     * Compile the inline script on the given engine
+     *
+     * @param engine the script engine
+     * @return the compiled script, or null if the engine does not support compilation
+     */
+    private CompiledScript compileInlineScript(ScriptEngine engine) {
+        try {
+            if (engine instanceof Compilable) {
                 if (log.isDebugEnabled()) {
                     log.debug("Script engine supports Compilable interface, " +
                             "compiling script code..");
                 }
-                compiledScript = ((Compilable) scriptEngine).compile(scriptSourceCode);
+                return ((Compilable) engine).compile(scriptSourceCode);
             } else {
                 // do nothing. If the script engine doesn't support Compilable then
                 // the inline script will be evaluated on each invocation
@@ -307,6 +402,7 @@ public class ScriptMediator extends AbstractMediator {
                     log.debug("Script engine does not support the Compilable interface, " +
                             "in-lined script would be evaluated on each invocation..");
                 }
+                return null;
             }
 
         } catch (ScriptException e) {
@@ -315,109 +411,175 @@ public class ScriptMediator extends AbstractMediator {
     }
 
     /**
-     * Prepares the mediator for the invocation of an external script
+     * Reset the engine pool with the given engine as its only member. If the engine supports
+     * multi-threading it is shared by all threads instead.
+     *
+     * @param wrapper the first engine of the pool
+     */
+    private void initEnginePool(ScriptEngineWrapper wrapper) {
+        int poolSize = Integer.parseInt(SynapsePropertiesLoader.getPropertyValue(
+                SCRIPT_ENGINE_POOL_SIZE, String.valueOf(DEFAULT_SCRIPT_ENGINE_POOL_SIZE)));
+        long borrowTimeout = Long.parseLong(SynapsePropertiesLoader.getPropertyValue(
+                SCRIPT_ENGINE_BORROW_TIMEOUT, String.valueOf(DEFAULT_SCRIPT_ENGINE_BORROW_TIMEOUT)));
+
+        this.sharedEngine = wrapper;
+        this.enginePool = new ScriptEnginePool<ScriptEngineWrapper>(poolSize, borrowTimeout) {
+            @Override
+            protected ScriptEngineWrapper createEngine() {
+                ScriptEngine engine = createScriptEngine();
+                return newEngineWrapper(engine, key == null ? compileInlineScript(engine) : null);
+            }
+        };
+        if (!multiThreadedEngine) {
+            enginePool.add(wrapper);
+        }
+    }
+
+    /**
+     * Take an engine from the pool, waiting for one to be released if all of them are in use
+     *
+     * @param synCtx the message context
+     * @return an engine for the exclusive use of the caller
+     */
+    private ScriptEngineWrapper borrowEngine(MessageContext synCtx) {
+        ScriptEngineWrapper wrapper = enginePool.borrow();
+        if (wrapper == null) {
+            handleException("Timed out after " + enginePool.getBorrowTimeout() + "ms waiting " +
+                    "for a " + language + " script engine. All " + enginePool.getMaxSize() +
+                    " engines of the pool are in use", synCtx);
+        }
+        return wrapper;
+    }
+
+    /**
+     * Wrap an engine along with its compiled script and a BSF helper of its own, as the
+     * helpers are not meant to be shared between engines
+     *
+     * @param engine the script engine
+     * @param compiledScript the compiled inline script, or null
+     * @return the engine wrapper
+     */
+    private ScriptEngineWrapper newEngineWrapper(ScriptEngine engine,
+                                                 CompiledScript compiledScript) {
+        //Invoking a custom Helper class since there is an api change in rhino17 for js
+        XMLHelper helper;
+        if (language.equalsIgnoreCase(JAVA_SCRIPT)) {
+            helper = new JavaScriptXmlHelper();
+        } else {
+            helper = XMLHelper.getArgHelper(engine);
+        }
+        return new ScriptEngineWrapper(engine, compiledScript, helper);
+    }
+
+    /**
+     * Prepares the mediator for the invocation of an external script, by (re-)loading the
+     * script and the included scripts from the registry if required. The loaded scripts are
+     * evaluated on each engine of the pool when it is next used.
      *
      * @param synCtx MessageContext script
      * @throws ScriptException For any errors , when compile the script
      */
-    protected synchronized void prepareExternalScript(MessageContext synCtx)
+    protected void prepareExternalScript(MessageContext synCtx)
             throws ScriptException {
 
-        // TODO: only need this synchronized method for dynamic registry entries. If there was a way
+        // TODO: only need this synchronized block for dynamic registry entries. If there was a way
         // to access the registry entry during mediator initialization then for non-dynamic entries
         // this could be done just the once during mediator initialization.
 
-        // Derive actual key from xpath expression or get static key
-        String generatedScriptKey = key.evaluateValue(synCtx);
-        Entry entry = synCtx.getConfiguration().getEntryDefinition(generatedScriptKey);
-        boolean needsReload = (entry != null) && entry.isDynamic() &&
-                (!entry.isCached() || entry.isExpired());
         synchronized (resourceLock) {
+            boolean changed = false;
+
+            // Derive actual key from xpath expression or get static key
+            String generatedScriptKey = key.evaluateValue(synCtx);
+            Entry entry = synCtx.getConfiguration().getEntryDefinition(generatedScriptKey);
+            boolean needsReload = (entry != null) && entry.isDynamic() &&
+                    (!entry.isCached() || entry.isExpired());
             if (scriptSourceCode == null || needsReload) {
-                Object o = synCtx.getEntry(generatedScriptKey);
-                if (o instanceof OMElement) {
-                    scriptSourceCode = ((OMElement) (o)).getText();
-                    scriptEngine.eval(scriptSourceCode);
-                } else if (o instanceof String) {
-                    scriptSourceCode = (String) o;
-                    scriptEngine.eval(scriptSourceCode);
-                } else if (o instanceof OMText) {
-
-                    DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
-                    if (dataHandler != null) {
-                        BufferedReader reader = null;
-                        try {
-                            reader = new BufferedReader(
-                                    new InputStreamReader(dataHandler.getInputStream()));
-                            scriptEngine.eval(reader);
+                String source = loadScriptSource(synCtx.getEntry(generatedScriptKey), synCtx);
+                if (source != null) {
+                    scriptSourceCode = source;
+                    changed = true;
+                }
+            }
 
-                        } catch (IOException e) {
-                            handleException("Error in reading script as a stream ", e, synCtx);
-                        } finally {
+            // load <include /> scripts; reload each script if needed
+            for (Map.Entry<Value, Object> include : includes.entrySet()) {
 
-                            if (reader != null) {
-                                try {
-                                    reader.close();
-                                } catch (IOException e) {
-                                    handleException("Error in closing input stream ", e, synCtx);
-                                }
-                            }
+                Value includeKey = include.getKey();
+                String generatedKey = includeKey.evaluateValue(synCtx);
 
-                        }
+                Entry includeEntry = synCtx.getConfiguration().getEntryDefinition(generatedKey);
+                boolean includeEntryNeedsReload = (includeEntry != null) && includeEntry.isDynamic()
+                        && (!includeEntry.isCached() || includeEntry.isExpired());
+                if (include.getValue() == null || includeEntryNeedsReload) {
+                    log.debug("Re-/Loading the include script with key " + includeKey);
+                    String source = loadScriptSource(synCtx.getEntry(generatedKey), synCtx);
+                    if (source != null) {
+                        include.setValue(source);
+                        changed = true;
                     }
                 }
+            }
 
+            if (changed || externalScripts == null) {
+                List<String> scripts = new ArrayList<String>();
+                if (scriptSourceCode != null) {
+                    scripts.add(scriptSourceCode);
+                }
+                for (Object includeSource : includes.values()) {
+                    if (includeSource != null) {
+                        scripts.add((String) includeSource);
+                    }
+                }
+                externalScripts = Collections.unmodifiableList(scripts);
             }
         }
+    }
 
-        // load <include /> scripts; reload each script if needed
-        for (Value includeKey : includes.keySet()) {
-
-            String includeSourceCode = (String) includes.get(includeKey);
+    /**
+     * Read the source code of a script from a registry resource
+     *
+     * @param o the registry resource
+     * @param synCtx the message context
+     * @return the script source code, or null if the resource does not hold a script
+     */
+    private String loadScriptSource(Object o, MessageContext synCtx) {
+        if (o instanceof OMElement) {
+            return ((OMElement) (o)).getText();
+        } else if (o instanceof String) {
+            return (String) o;
+        } else if (o instanceof OMText) {
+
+            DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
+            if (dataHandler != null) {
+                BufferedReader reader = null;
+                try {
+                    reader = new BufferedReader(
+                            new InputStreamReader(dataHandler.getInputStream()));
+                    StringBuilder source = new StringBuilder();
+                    char[] buffer = new char[4096];
+                    int read;
+                    while ((read = reader.read(buffer)) != -1) {
+                        source.append(buffer, 0, read);
+                    }
+                    return source.toString();
 
-            String generatedKey = includeKey.evaluateValue(synCtx);
+                } catch (IOException e) {
+                    handleException("Error in reading script as a stream ", e, synCtx);
+                } finally {
 
-            Entry includeEntry = synCtx.getConfiguration().getEntryDefinition(generatedKey);
-            boolean includeEntryNeedsReload = (includeEntry != null) && includeEntry.isDynamic()
-                    && (!includeEntry.isCached() || includeEntry.isExpired());
-            synchronized (resourceLock) {
-                if (includeSourceCode == null || includeEntryNeedsReload) {
-                    log.debug("Re-/Loading the include script with key " + includeKey);
-                    Object o = synCtx.getEntry(generatedKey);
-                    if (o instanceof OMElement) {
-                        includeSourceCode = ((OMElement) (o)).getText();
-                        scriptEngine.eval(includeSourceCode);
-                    } else if (o instanceof String) {
-                        includeSourceCode = (String) o;
-                        scriptEngine.eval(includeSourceCode);
-                    } else if (o instanceof OMText) {
-
-                        DataHandler dataHandler = (DataHandler) ((OMText) o).getDataHandler();
-                        if (dataHandler != null) {
-                            BufferedReader reader = null;
-                            try {
-                                reader = new BufferedReader(
-                                        new InputStreamReader(dataHandler.getInputStream()));
-                                scriptEngine.eval(reader);
-
-                            } catch (IOException e) {
-                                handleException("Error in reading script as a stream ", e, synCtx);
-                            } finally {
-
-                                if (reader != null) {
-                                    try {
-                                        reader.close();
-                                    } catch (IOException e) {
-                                        handleException("Error in closing input" +
-                                                " stream ", e, synCtx);
-                                    }
-                                }
-                            }
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            handleException("Error in closing input stream ", e, synCtx);
                         }
                     }
+
                 }
             }
         }
+        return null;
     }
 
     protected void initScriptEngine() {
@@ -425,25 +587,44 @@ public class ScriptMediator extends AbstractMediator {
             log.debug("Initializing script mediator for language : " + language);
         }
 
+        this.scriptEngine = createScriptEngine();
+
+        this.multiThreadedEngine = scriptEngine.getFactory().getParameter("THREADING") != null;
+        log.debug("Script mediator for language : " + language +
+                " supports multithreading? : " + multiThreadedEngine);
+    }
+
+    private ScriptEngine createScriptEngine() {
         ScriptEngineManager manager = new ScriptEngineManager();
         manager.registerEngineExtension("js", new RhinoScriptEngineFactory());
         manager.registerEngineExtension("groovy", new GroovyScriptEngineFactory());
         manager.registerEngineExtension("rb", new JRubyScriptEngineFactory());
 
-        this.scriptEngine = manager.getEngineByExtension(language);
-        if (scriptEngine == null) {
+        ScriptEngine engine = manager.getEngineByExtension(language);
+        if (engine == null) {
             handleException("No script engine found for language: " + language);
         }
-        //Invoking a custom Helper class since there is an api change in rhino17 for js
-        if (language.equalsIgnoreCase(JAVA_SCRIPT)) {
-            xmlHelper = new JavaScriptXmlHelper();
-        } else {
-            xmlHelper = XMLHelper.getArgHelper(scriptEngine);
-        }
+        return engine;
+    }
 
-        this.multiThreadedEngine = scriptEngine.getFactory().getParameter("THREADING") != null;
-        log.debug("Script mediator for language : " + language +
-                " supports multithreading? : " + multiThreadedEngine);
+    public int getPoolSize() {
+        return multiThreadedEngine ? 1 : enginePool.getMaxSize();
+    }
+
+    public int getCreatedEngineCount() {
+        return multiThreadedEngine ? 1 : enginePool.getCreatedEngineCount();
+    }
+
+    public int getIdleEngineCount() {
+        return multiThreadedEngine ? 1 : enginePool.getIdleEngineCount();
+    }
+
+    public long getBorrowWaitCount() {
+        return enginePool.getBorrowWaitCount();
+    }
+
+    public long getBorrowTimeoutCount() {
+        return enginePool.getBorrowTimeoutCount();
     }
 
     public String getLanguage() {
@@ -479,4 +660,25 @@ public class ScriptMediator extends AbstractMediator {
         this.loader = loader;
     }
 
+    /**
+     * A script engine of the pool, along with the script compiled or evaluated on it
+     */
+    private static class ScriptEngineWrapper {
+
+        private final ScriptEngine engine;
+        /** The compiled inline script, if the engine supports compilation */
+        private final CompiledScript compiledScript;
+        /** The BSF helper to convert between the XML representations of Java and the engine */
+        private final XMLHelper xmlHelper;
+        /** The external scripts last evaluated on the engine */
+        private List<String> loadedScripts;
+
+        private ScriptEngineWrapper(ScriptEngine engine, CompiledScript compiledScript,
+                                    XMLHelper xmlHelper) {
+            this.engine = engine;
+            this.compiledScript = compiledScript;
+            this.xmlHelper = xmlHelper;
+        }
+    }
+
 }
@@ -0,0 +1,135 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.mediators.bsf;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ScriptEnginePoolTest extends TestCase {
+
+    public void testEnginesAreCreatedLazily() {
+        TestPool pool = new TestPool(3, 1000);
+        pool.add("first");
+        assertEquals(1, pool.getCreatedEngineCount());
+
+        assertEquals("first", pool.borrow());
+        String second = pool.borrow();
+        assertEquals("engine-1", second);
+        assertEquals(2, pool.getCreatedEngineCount());
+
+        pool.release(second);
+        assertEquals(second, pool.borrow());
+        assertEquals(2, pool.getCreatedEngineCount());
+    }
+
+    public void testWarmUpIsBoundedByMaxSize() {
+        TestPool pool = new TestPool(2, 1000);
+        pool.warmUp(5);
+        assertEquals(2, pool.getCreatedEngineCount());
+        assertEquals(2, pool.getIdleEngineCount());
+    }
+
+    public void testBorrowTimesOutWhenExhausted() {
+        TestPool pool = new TestPool(1, 50);
+        assertNotNull(pool.borrow());
+        assertNull(pool.borrow());
+        assertEquals(1, pool.getBorrowWaitCount());
+        assertEquals(1, pool.getBorrowTimeoutCount());
+    }
+
+    public void testWaitingBorrowerGetsReleasedEngine() throws Exception {
+        final TestPool pool = new TestPool(1, 5000);
+        final String engine = pool.borrow();
+        final CountDownLatch waiting = new CountDownLatch(1);
+        final String[] borrowed = new String[1];
+        Thread borrower = new Thread() {
+            public void run() {
+                waiting.countDown();
+                borrowed[0] = pool.borrow();
+            }
+        };
+        borrower.start();
+        waiting.await();
+        Thread.sleep(50);
+        pool.release(engine);
+        borrower.join(5000);
+        assertEquals(engine, borrowed[0]);
+        assertEquals(1, pool.getCreatedEngineCount());
+    }
+
+    public void testConcurrentBorrowersNeverExceedMaxSize() throws Exception {
+        final TestPool pool = new TestPool(4, 5000);
+        final AtomicInteger inUse = new AtomicInteger(0);
+        final AtomicInteger maxInUse = new AtomicInteger(0);
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        String engine = pool.borrow();
+                        int current = inUse.incrementAndGet();
+                        if (current > maxInUse.get()) {
+                            maxInUse.set(current);
+                        }
+                        inUse.decrementAndGet();
+                        pool.release(engine);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(pool.getCreatedEngineCount() <= 4);
+        assertTrue(maxInUse.get() <= 4);
+        assertEquals(pool.getCreatedEngineCount(), pool.getIdleEngineCount());
+        assertEquals(0, pool.getBorrowTimeoutCount());
+    }
+
+    public void testFailedCreationIsNotCounted() {
+        ScriptEnginePool<String> pool = new ScriptEnginePool<String>(2, 100) {
+            protected String createEngine() {
+                throw new IllegalStateException("no engine");
+            }
+        };
+        try {
+            pool.borrow();
+            fail("The creation failure must be reported");
+        } catch (IllegalStateException expected) {
+            assertEquals(0, pool.getCreatedEngineCount());
+        }
+    }
+
+    private static class TestPool extends ScriptEnginePool<String> {
+
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        private TestPool(int maxSize, long borrowTimeout) {
+            super(maxSize, borrowTimeout);
+        }
+
+        protected String createEngine() {
+            return "engine-" + counter.incrementAndGet();
+        }
+    }
+}
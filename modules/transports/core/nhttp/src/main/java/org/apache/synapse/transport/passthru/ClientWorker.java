@@ -37,6 +37,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.synapse.transport.nhttp.NhttpConstants;
 import org.apache.synapse.transport.passthru.config.TargetConfiguration;
+import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -261,6 +262,7 @@ public class ClientWorker implements Runnable {
      * Perform cleanup of ClientWorker
      */
     private void cleanup () {
+        PassThroughTransportUtils.releaseTemporaryBlobs(responseMsgCtx);
         //clean threadLocal variables
         responseMsgCtx.destroyCurrentMessageContext();
     }
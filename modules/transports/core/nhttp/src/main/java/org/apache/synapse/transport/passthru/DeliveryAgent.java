@@ -32,7 +32,7 @@ import java.io.OutputStream;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -50,7 +50,7 @@ public class DeliveryAgent {
     /**
      * This Map holds the messages that need to be delivered. But at the moment maximum
      * number of connections to the host:pair is being used. So these messages has to wait
-     * until a new connection is available.
+     * until a new connection is available, and are served in the order they arrived.
      */
     private Map<String, Queue<MessageContext>> waitingMessages =
             new ConcurrentHashMap<String, Queue<MessageContext>>();
@@ -102,23 +102,21 @@ public class DeliveryAgent {
             try {
                 queue = waitingMessages.get(key);
                 if (queue == null) {
-                    queue = new ConcurrentLinkedQueue<MessageContext>();
+                    queue = new LinkedBlockingQueue<MessageContext>(
+                            targetConfiguration.getMaxWaitingMessages());
                     waitingMessages.put(key, queue);
                 }
-                if (queue.size() == Integer.MAX_VALUE) {
-                    MessageContext msgCtx = queue.poll();
-                    targetErrorHandler.handleError(msgCtx,
-                            ErrorCodes.CONNECTION_TIMEOUT,
-                            "Error connecting to the back end",
-                            null,
-                            ProtocolState.REQUEST_READY);
-                }
-
-                queue.add(msgContext);
             } finally {
                 lock.unlock();
             }
 
+            // the messages already waiting are not pushed out by a new one
+            if (!queue.offer(msgContext)) {
+                failMessage(msgContext, ErrorCodes.CONNECTION_TIMEOUT,
+                        "Too many messages are waiting for a connection to " + key);
+                return;
+            }
+
             NHttpClientConnection conn = targetConnections.getConnection(host, port);
             if (conn != null) {
             	conn.resetInput();
@@ -127,6 +125,9 @@ public class DeliveryAgent {
 
                 if (messageContext != null) {
                     tryNextMessage(messageContext, conn);
+                } else {
+                    // the message has already been sent over a connection released meanwhile
+                    targetConnections.releaseConnection(conn);
                 }
             }
     }
@@ -143,37 +144,38 @@ public class DeliveryAgent {
                 if (message != null) {
                     errorMessage += " (" + message + ")";
                 }
-                targetErrorHandler.handleError(msgCtx, errorCode, errorMessage,
-                        null, ProtocolState.REQUEST_READY);
-                synchronized (msgCtx) {
-                    msgCtx.setProperty(PassThroughConstants.WAIT_BUILDER_IN_STREAM_COMPLETE,
-                                       Boolean.TRUE);
-                    msgCtx.notifyAll();
-                }
+                failMessage(msgCtx, errorCode, errorMessage);
             }
-        } else {
-            throw new IllegalStateException("Queue cannot be null for: " + key);
+        } else if (log.isDebugEnabled()) {
+            // a pre-warmed connection, which no message was waiting for
+            log.debug("No messages are waiting for the failed connection to " + key);
+        }
+    }
+
+    private void failMessage(MessageContext msgCtx, int errorCode, String errorMessage) {
+        targetErrorHandler.handleError(msgCtx, errorCode, errorMessage,
+                null, ProtocolState.REQUEST_READY);
+        synchronized (msgCtx) {
+            msgCtx.setProperty(PassThroughConstants.WAIT_BUILDER_IN_STREAM_COMPLETE,
+                               Boolean.TRUE);
+            msgCtx.notifyAll();
         }
     }
 
     /**
      * Notification for a connection availability. When this occurs a message in the
-     * queue for delivery will be tried.
+     * queue for delivery will be tried. A new connection which is not needed by any of the
+     * waiting messages is released to the pool.
      *
      * @param host name of the remote host
      * @param port remote port number
-     * @param conn connection made available to process the request
+     * @param conn connection made available to process the request, or null to serve the
+     *             waiting messages with the free connections in the pool
      */
     public void connected(String host, int port, NHttpClientConnection conn) {
-        Queue<MessageContext> queue = null;
-        lock.lock();
-        try {
-            queue = waitingMessages.get(host + ":" + port);
-        } finally {
-            lock.unlock();
-        }
+        Queue<MessageContext> queue = waitingMessages.get(host + ":" + port);
 
-        while (queue.size() > 0) {
+        while (queue != null && !queue.isEmpty()) {
             if (conn == null) {
                 // Try to get an existing connection from pool. Here we should not ask to create
                 // new connections as it may ended up with extra connections. New connections are
@@ -185,12 +187,17 @@ public class DeliveryAgent {
 
                 if (messageContext != null) {
                     tryNextMessage(messageContext, conn);
+                    conn = null;
                 }
-                conn = null;
             } else {
                 break;
             }
         }
+
+        if (conn != null) {
+            // a pre-warmed connection, or one the waiting messages were served without
+            targetConnections.releaseConnection(conn);
+        }
     }
 
     private void tryNextMessage(MessageContext messageContext, NHttpClientConnection conn) {
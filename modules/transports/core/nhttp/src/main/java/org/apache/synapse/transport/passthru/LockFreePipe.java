@@ -0,0 +1,501 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru;
+
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.synapse.transport.passthru.config.BaseConfiguration;
+import org.apache.synapse.transport.passthru.util.BufferFactory;
+import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A Pipe which hands data from a single producer to a single consumer without taking a lock.
+ * The buffer of the pipe is used as a ring: the producer only moves the tail and the consumer
+ * only moves the head of the ring, and each of them publishes its progress through a volatile
+ * index. A thread reading from the input stream or writing to the output stream of the pipe is
+ * parked only when the ring is empty or full, and is unparked by the other side as soon as it
+ * makes progress.
+ *
+ * The I/O reactor side follows the same protocol as Pipe: a producer connection suspends its
+ * input while the ring is full, and a consumer connection suspends its output while the ring
+ * is empty. Both check the ring again after suspending, so that a wake up is never lost.
+ */
+public class LockFreePipe extends Pipe {
+
+    private volatile IOControl producerIoControl;
+
+    private volatile IOControl consumerIoControl;
+
+    private final Ring ring;
+
+    /** Ring the output stream writes to, used by the consumer instead of the input ring */
+    private volatile Ring outputRing;
+
+    private final boolean hasHttpProducer;
+
+    private final BaseConfiguration baseConfig;
+
+    private volatile boolean producerCompleted = false;
+    private volatile boolean producerError = false;
+    private volatile boolean consumerError = false;
+    private volatile boolean consumerSuspended = false;
+
+    private volatile boolean serializationComplete = false;
+    private volatile boolean rawSerializationComplete = false;
+
+    /** Threads parked on the input and output streams of the pipe */
+    private volatile Thread reader;
+    private volatile Thread writer;
+
+    private final AtomicBoolean buffersReleased = new AtomicBoolean(false);
+
+    private InputStream inputStream;
+    private OutputStream outputStream;
+
+    public LockFreePipe(IOControl producerIoControl, ControlledByteBuffer buffer,
+                        String name, BaseConfiguration baseConfig) {
+        super(producerIoControl, buffer, name, baseConfig);
+        this.producerIoControl = producerIoControl;
+        this.ring = new Ring(buffer);
+        this.baseConfig = baseConfig;
+        this.hasHttpProducer = true;
+    }
+
+    public LockFreePipe(ControlledByteBuffer buffer, String name, BaseConfiguration baseConfig) {
+        super(buffer, name, baseConfig);
+        this.ring = new Ring(buffer);
+        this.baseConfig = baseConfig;
+        this.hasHttpProducer = false;
+    }
+
+    @Override
+    public void attachConsumer(IOControl consumerIoControl) {
+        this.consumerIoControl = consumerIoControl;
+        // a writer may be waiting for a consumer to drain the output ring
+        unpark(writer);
+    }
+
+    @Override
+    public int consume(final ContentEncoder encoder) throws IOException {
+        IOControl consumer = consumerIoControl;
+        if (consumer == null) {
+            throw new IllegalStateException("Consumer cannot be null when calling consume");
+        }
+
+        if (hasHttpProducer && producerIoControl == null) {
+            throw new IllegalStateException("Producer cannot be null when calling consume");
+        }
+
+        // if producer at error we have to stop the encoding and return immediately
+        if (producerError) {
+            encoder.complete();
+            return -1;
+        }
+
+        Ring source = outputRing != null ? outputRing : ring;
+        int bytesWritten = 0;
+        // at most two writes, the second one for the data wrapped around the end of the ring
+        for (int i = 0; i < 2 && source.available() > 0; i++) {
+            ByteBuffer region = source.readRegion();
+            int written = encoder.write(region);
+            if (written <= 0) {
+                break;
+            }
+            source.commitRead(written);
+            bytesWritten += written;
+            if (region.hasRemaining()) {
+                break;
+            }
+        }
+
+        if (source.available() == 0) {
+            if (source == ring) {
+                if (producerCompleted) {
+                    encoder.complete();
+                } else {
+                    // ring is empty. Wait until the producer fills it up
+                    suspendConsumer(consumer, source);
+                }
+            } else if (serializationComplete || rawSerializationComplete) {
+                encoder.complete();
+            } else {
+                suspendConsumer(consumer, source);
+            }
+        }
+
+        if (bytesWritten > 0) {
+            if (source == ring) {
+                if (!encoder.isCompleted() && !producerCompleted && hasHttpProducer) {
+                    producerIoControl.requestInput();
+                }
+            } else {
+                unpark(writer);
+            }
+        }
+        return bytesWritten;
+    }
+
+    private void suspendConsumer(IOControl consumer, Ring source) {
+        consumerSuspended = true;
+        consumer.suspendOutput();
+        if (source.available() > 0 || producerCompleted || producerError ||
+                (source != ring && (serializationComplete || rawSerializationComplete))) {
+            consumerSuspended = false;
+            consumer.requestOutput();
+        }
+    }
+
+    private void resumeConsumer() {
+        IOControl consumer = consumerIoControl;
+        if (consumerSuspended && consumer != null) {
+            consumerSuspended = false;
+            consumer.requestOutput();
+        }
+    }
+
+    @Override
+    public int produce(final ContentDecoder decoder) throws IOException {
+        IOControl producer = producerIoControl;
+        if (producer == null) {
+            throw new IllegalStateException("Producer cannot be null when calling produce");
+        }
+
+        int bytesRead = 0;
+        // at most two reads, the second one for the space wrapped around the end of the ring
+        for (int i = 0; i < 2 && ring.free() > 0; i++) {
+            ByteBuffer region = ring.writeRegion();
+            int read = decoder.read(region);
+            if (read <= 0) {
+                if (bytesRead == 0) {
+                    bytesRead = read;
+                }
+                break;
+            }
+            // if consumer is at error we have to let the producer complete
+            if (!consumerError) {
+                ring.commitWrite(read);
+            }
+            bytesRead += read;
+            if (region.hasRemaining()) {
+                break;
+            }
+        }
+
+        if (decoder.isCompleted()) {
+            producerCompleted = true;
+        } else if (ring.free() == 0) {
+            // ring is full. Suspend client input until the consumer frees up some space
+            producer.suspendInput();
+            if (ring.free() > 0) {
+                producer.requestInput();
+            }
+        }
+
+        // If there is some content in the ring make sure consumer output is active
+        if (ring.available() > 0 || producerCompleted) {
+            IOControl consumer = consumerIoControl;
+            if (consumer != null) {
+                consumerSuspended = false;
+                consumer.requestOutput();
+            }
+            unpark(reader);
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public void consumerError() {
+        this.consumerError = true;
+        unpark(writer);
+    }
+
+    @Override
+    public void producerError() {
+        this.producerError = true;
+        unpark(reader);
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() {
+        if (inputStream == null) {
+            inputStream = new RingInputStream();
+        }
+        return inputStream;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() {
+        if (outputStream == null) {
+            ControlledByteBuffer outputBuffer = baseConfig.getBufferFactory().getBuffer(
+                    baseConfig.getOutputBufferSize());
+            outputBuffer.setOwner(toString());
+            outputRing = new Ring(outputBuffer);
+            outputStream = new RingOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public synchronized void setSerializationComplete(boolean serializationComplete) {
+        if (!this.serializationComplete) {
+            this.serializationComplete = serializationComplete;
+            Ring output = outputRing;
+            if (output != null && output.available() > 0 && consumerIoControl != null) {
+                consumerIoControl.requestOutput();
+            } else {
+                resumeConsumer();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void setSerializationCompleteWithoutData(boolean serializationComplete) {
+        if (!this.serializationComplete) {
+            this.serializationComplete = serializationComplete;
+            consumerIoControl.requestOutput();
+        }
+    }
+
+    @Override
+    public void setRawSerializationComplete(boolean rawSerializationComplete) {
+        this.rawSerializationComplete = rawSerializationComplete;
+        resumeConsumer();
+    }
+
+    @Override
+    public boolean isSerializationComplete() {
+        return serializationComplete;
+    }
+
+    /**
+     * The data of the pipe has to be consumed only if the producer may still read more of it
+     * from the connection.
+     *
+     * @return whether buffer consumption is required or not
+     */
+    @Override
+    public boolean isConsumeRequired() {
+        return hasHttpProducer && !producerCompleted && !producerError;
+    }
+
+    @Override
+    public void releaseBuffers(BufferFactory bufferFactory) {
+        if (buffersReleased.compareAndSet(false, true)) {
+            bufferFactory.release(ring.buffer);
+            Ring output = outputRing;
+            if (output != null) {
+                bufferFactory.release(output.buffer);
+            }
+        }
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * A ring over a buffer, written by one thread and read by another. Each side works on its
+     * own view of the buffer, so that neither modifies the position of the other.
+     */
+    private static class Ring {
+
+        private final ControlledByteBuffer buffer;
+        private final int capacity;
+        private final ByteBuffer writeView;
+        private final ByteBuffer readView;
+
+        /** Total number of bytes read from and written to the ring */
+        private final AtomicLong head = new AtomicLong(0);
+        private final AtomicLong tail = new AtomicLong(0);
+
+        private Ring(ControlledByteBuffer buffer) {
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+            this.writeView = buffer.getByteBuffer().duplicate();
+            this.readView = buffer.getByteBuffer().duplicate();
+        }
+
+        private int available() {
+            return (int) (tail.get() - head.get());
+        }
+
+        private int free() {
+            return capacity - available();
+        }
+
+        /**
+         * Get the largest contiguous free region of the ring, to be called by the writer only
+         */
+        private ByteBuffer writeRegion() {
+            long t = tail.get();
+            int index = (int) (t % capacity);
+            int length = Math.min(capacity - (int) (t - head.get()), capacity - index);
+            writeView.clear();
+            writeView.position(index);
+            writeView.limit(index + length);
+            return writeView;
+        }
+
+        private void commitWrite(int length) {
+            tail.set(tail.get() + length);
+        }
+
+        /**
+         * Get the largest contiguous region of the ring holding data, to be called by the
+         * reader only
+         */
+        private ByteBuffer readRegion() {
+            long h = head.get();
+            int index = (int) (h % capacity);
+            int length = Math.min((int) (tail.get() - h), capacity - index);
+            readView.clear();
+            readView.position(index);
+            readView.limit(index + length);
+            return readView;
+        }
+
+        private void commitRead(int length) {
+            head.set(head.get() + length);
+        }
+    }
+
+    private class RingInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            if (!waitForData()) {
+                return -1;
+            }
+            int b = ring.readRegion().get() & 0xff;
+            ring.commitRead(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (b == null) {
+                return 0;
+            }
+            if (!waitForData()) {
+                return -1;
+            }
+            ByteBuffer region = ring.readRegion();
+            int chunk = Math.min(len, region.remaining());
+            region.get(b, off, chunk);
+            ring.commitRead(chunk);
+            return chunk;
+        }
+
+        /**
+         * Park until there is data in the ring, or the producer is done
+         *
+         * @return true if there is data to be read, false at the end of the stream
+         * @throws IOException if interrupted while waiting for data
+         */
+        private boolean waitForData() throws IOException {
+            if (ring.available() > 0) {
+                return true;
+            }
+            reader = Thread.currentThread();
+            try {
+                while (ring.available() == 0) {
+                    if (producerCompleted || producerError) {
+                        // the producer publishes its data before it completes
+                        return ring.available() > 0;
+                    }
+                    producerIoControl.requestInput();
+                    LockSupport.park(LockFreePipe.this);
+                    if (Thread.interrupted()) {
+                        throw new IOException("Interrupted while waiting for data");
+                    }
+                }
+                return true;
+            } finally {
+                reader = null;
+            }
+        }
+    }
+
+    private class RingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, int off, int len) throws IOException {
+            if (b == null) {
+                return;
+            }
+            Ring output = outputRing;
+            int remaining = len;
+            while (remaining > 0) {
+                if (output.free() == 0) {
+                    flushContent(output);
+                    if (consumerError || rawSerializationComplete) {
+                        break;
+                    }
+                    continue;
+                }
+                ByteBuffer region = output.writeRegion();
+                int chunk = Math.min(remaining, region.remaining());
+                region.put(b, off, chunk);
+                output.commitWrite(chunk);
+                remaining -= chunk;
+                off += chunk;
+                resumeConsumer();
+            }
+        }
+
+        /**
+         * Park until the consumer frees up some space in the ring
+         */
+        private void flushContent(Ring output) throws IOException {
+            writer = Thread.currentThread();
+            try {
+                while (output.free() == 0 && !consumerError && !rawSerializationComplete) {
+                    IOControl consumer = consumerIoControl;
+                    if (consumer != null) {
+                        consumerSuspended = false;
+                        consumer.requestOutput();
+                    }
+                    LockSupport.park(LockFreePipe.this);
+                    if (Thread.interrupted()) {
+                        throw new IOException("Interrupted while flushing the content buffer");
+                    }
+                }
+            } finally {
+                writer = null;
+            }
+        }
+    }
+}
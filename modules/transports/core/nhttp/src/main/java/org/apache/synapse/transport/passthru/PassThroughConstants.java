@@ -55,6 +55,15 @@ public class PassThroughConstants {
 
     public static final String HIDDEN_SERVICE_PARAM_NAME = "hiddenService";
 
+    /**
+     * Service parameter which marks a service as routing on the request line and headers only.
+     * The body of the requests of such a service is never built, and is relayed to the target
+     * straight from the source pipe
+     */
+    public static final String HEADER_ONLY_ROUTING_PARAM_NAME = "headerOnlyRouting";
+    /** Message context property set on the requests accepted in the header only routing mode */
+    public static final String HEADER_ONLY_ROUTING = "HEADER_ONLY_ROUTING";
+
     /** An Axis2 message context property indicating a transport send failure */
     public static final String SENDING_FAULT = "SENDING_FAULT";
     /** The message context property name which holds the error code for the last encountered exception */
@@ -93,6 +102,9 @@ public class PassThroughConstants {
     public static final String REST_REQUEST_CONTENT_TYPE = "synapse.internal.rest.contentType";
 
     public static final String MESSAGE_BUILDER_INVOKED = "message.builder.invoked";
+
+    /** The temporary blobs holding the payload of a message, released once it is mediated */
+    public static final String TEMPORARY_BLOBS = "pass-through.temporary.blobs";
     
     public static final String CLONE_PASS_THROUGH_PIPE_REQUEST = "clone_pass-through.pipe_connected";
     
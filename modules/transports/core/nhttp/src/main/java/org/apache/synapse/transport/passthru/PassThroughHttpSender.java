@@ -211,6 +211,8 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         deliveryAgent = new DeliveryAgent(targetConfiguration, targetConnections);
         // we need to set the delivery agent
         connectCallback.setDeliveryAgent(deliveryAgent);        
+        targetConnections.setDeliveryAgent(deliveryAgent);
+        metrics.setTargetConnections(targetConnections);
 
         TargetHandler handler = new TargetHandler(deliveryAgent, targetConfiguration);
         final IOEventDispatch ioEventDispatch =
@@ -234,6 +236,8 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
 
         state = BaseConstants.STARTED;
 
+        targetConnections.prewarmConnections();
+
         log.info("Pass-through " + namePrefix + " sender started...");
     }
 
@@ -244,6 +248,7 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
 
     @Override
     public void stop() {
+        targetConfiguration.getConnections().shutdown();
         try {
             ioReactor.shutdown();
         } catch (IOException e) {
@@ -266,8 +271,7 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         if (epr != null) {
             if (!epr.hasNoneAddress()) {
                 if (msgContext.getProperty(PassThroughConstants.PASS_THROUGH_PIPE) == null) {
-                    Pipe pipe = new Pipe(targetConfiguration.getBufferFactory().getBuffer(),
-                            "Test", targetConfiguration);
+                    Pipe pipe = targetConfiguration.newPipe("Test");
                     msgContext.setProperty(PassThroughConstants.PASS_THROUGH_PIPE, pipe);
                     msgContext.setProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED,
                             Boolean.TRUE);
@@ -530,8 +534,7 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
         Pipe pipe = (Pipe) msgContext.getProperty(PassThroughConstants.PASS_THROUGH_PIPE);
         if ((noEntityBody == null || !noEntityBody) || pipe != null) {
             if (pipe == null) {
-                pipe = new Pipe(sourceConfiguration.getBufferFactory().getBuffer(),
-                        "Test", sourceConfiguration);
+                pipe = sourceConfiguration.newPipe("Test");
                 msgContext.setProperty(PassThroughConstants.PASS_THROUGH_PIPE, pipe);
                 msgContext.setProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED, Boolean.TRUE);
             }
@@ -600,6 +603,8 @@ public class PassThroughHttpSender extends AbstractHandler implements TransportS
             return;
         }
         state = BaseConstants.STARTED;
+
+        targetConnections.prewarmConnections();
         log.info(namePrefix + " Sender Resumed");
     }
 
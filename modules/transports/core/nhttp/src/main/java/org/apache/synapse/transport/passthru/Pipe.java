@@ -23,6 +23,7 @@ import org.apache.http.nio.IOControl;
 import org.apache.http.nio.ContentDecoder;
 import org.apache.http.nio.ContentEncoder;
 import org.apache.synapse.transport.passthru.config.BaseConfiguration;
+import org.apache.synapse.transport.passthru.util.BufferFactory;
 import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
 
 import java.io.*;
@@ -72,12 +73,15 @@ public class Pipe {
     private ByteBufferInputStream inputStream;
     private ByteBufferOutputStream outputStream;
 
+    private boolean buffersReleased = false;
+
     public Pipe(IOControl producerIoControl, ControlledByteBuffer buffer,
                 String name, BaseConfiguration baseConfig) {
         this.producerIoControl = producerIoControl;
         this.buffer = buffer;
         this.name += "_" + name;
         this.baseConfig = baseConfig;
+        buffer.setOwner(this.name);
     }
 
     public Pipe(ControlledByteBuffer buffer, String name, BaseConfiguration baseConfig) {
@@ -85,6 +89,7 @@ public class Pipe {
         this.name += "_" + name;
         this.baseConfig = baseConfig;
         this.hasHttpProducer = false;
+        buffer.setOwner(this.name);
     }
 
     /**
@@ -250,7 +255,9 @@ public class Pipe {
      */
     public synchronized OutputStream getOutputStream() {
         if (outputStream == null) {
-            outputBuffer = baseConfig.getBufferFactory().getBuffer();
+            outputBuffer = baseConfig.getBufferFactory().getBuffer(
+                    baseConfig.getOutputBufferSize());
+            outputBuffer.setOwner(name);
             outputStream = new ByteBufferOutputStream();
         }
         return outputStream;
@@ -280,6 +287,28 @@ public class Pipe {
         return buffer;
     }
 
+    /**
+     * Return the buffers of this pipe to the given buffer factory. The pipe must not be used
+     * once its buffers are released. Releasing the buffers more than once has no effect.
+     *
+     * @param bufferFactory the factory to release the buffers to
+     */
+    public void releaseBuffers(BufferFactory bufferFactory) {
+        lock.lock();
+        try {
+            if (buffersReleased) {
+                return;
+            }
+            buffersReleased = true;
+            bufferFactory.release(buffer);
+            if (outputBuffer != null) {
+                bufferFactory.release(outputBuffer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public synchronized boolean isSerializationComplete(){
         return serializationComplete;
     }
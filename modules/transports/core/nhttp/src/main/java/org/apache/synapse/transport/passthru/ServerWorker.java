@@ -47,6 +47,7 @@ import org.apache.axis2.transport.RequestResponseTransport;
 import org.apache.axis2.transport.TransportUtils;
 import org.apache.axis2.transport.http.HTTPConstants;
 import org.apache.axis2.transport.http.HTTPTransportUtils;
+import org.apache.axis2.util.JavaUtils;
 import org.apache.axis2.util.MessageContextBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -64,6 +65,7 @@ import org.apache.synapse.transport.nhttp.util.NhttpUtil;
 import org.apache.synapse.transport.nhttp.util.RESTUtil;
 import org.apache.synapse.transport.passthru.config.PassThroughConfiguration;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
+import org.apache.synapse.transport.passthru.util.PassThroughTransportUtils;
 import org.apache.synapse.transport.passthru.util.SourceResponseFactory;
 
 /**
@@ -180,9 +182,13 @@ public class ServerWorker implements Runnable {
                         request.getConnection(), true);
             }
 
+            // services routing on headers only skip the REST and SOAP body handling below
+            AxisService headerOnlyService = getHeaderOnlyRoutingService(cfgCtx, oriUri);
+
             //need special case to handle REST
             boolean restHandle = false;
-            if (msgContext.getProperty(PassThroughConstants.REST_GET_DELETE_INVOKE) != null &&
+            if (headerOnlyService == null &&
+                    msgContext.getProperty(PassThroughConstants.REST_GET_DELETE_INVOKE) != null &&
                     (Boolean) msgContext.getProperty(PassThroughConstants.REST_GET_DELETE_INVOKE)) {
                 msgContext.setProperty(HTTPConstants.HTTP_METHOD, method);
                 msgContext.setServerSide(true);
@@ -203,8 +209,10 @@ public class ServerWorker implements Runnable {
                 return;
             }
 
-            //should be process normally
-            if (!restHandle) {
+            if (headerOnlyService != null) {
+                processHeaderOnlyRequest(headerOnlyService, method);
+            } else if (!restHandle) {
+                //should be process normally
                 if (request.isEntityEnclosing()) {
                     processEntityEnclosingRequest();
                 } else {
@@ -330,12 +338,7 @@ public class ServerWorker implements Runnable {
     }
 
     private void processNonEntityEnclosingRESTHandler(SOAPEnvelope soapEnvelope) {
-        String soapAction = request.getHeaders().get(SOAP_ACTION_HEADER);
-        if ((soapAction != null) && soapAction.startsWith("\"") && soapAction.endsWith("\"")) {
-            soapAction = soapAction.substring(1, soapAction.length() - 1);
-        }
-
-        msgContext.setSoapAction(soapAction);
+        msgContext.setSoapAction(getSoapAction());
         msgContext.setTo(new EndpointReference(request.getUri()));
         msgContext.setServerSide(true);
         msgContext.setDoingREST(true);
@@ -359,60 +362,20 @@ public class ServerWorker implements Runnable {
 
     private void processEntityEnclosingRequest() {
         try {
-            String contentTypeHeader = request.getHeaders().get(HTTP.CONTENT_TYPE);
-            contentTypeHeader = contentTypeHeader != null ? contentTypeHeader : inferContentType();
-
-            String charSetEncoding = null;
-            String contentType = null;
-
-			if (contentTypeHeader != null) {
-				charSetEncoding = BuilderUtil.getCharSetEncoding(contentTypeHeader);
-				contentType = TransportUtils.getContentType(contentTypeHeader, msgContext);
-			}
-            // get the contentType of char encoding
-            if (charSetEncoding == null) {
-                charSetEncoding = MessageContext.DEFAULT_CHAR_SET_ENCODING;
-            }
             String method = request.getRequest() != null ? request.getRequest().getRequestLine().getMethod().toUpperCase():"";
-            
-
-  
+            String contentTypeHeader = initializeRequestContent(method);
 
-            msgContext.setTo(new EndpointReference(request.getUri()));
-            msgContext.setProperty(HTTPConstants.HTTP_METHOD, method);
-            msgContext.setProperty(Constants.Configuration.CHARACTER_SET_ENCODING, charSetEncoding);
-            msgContext.setServerSide(true);
-            
-            msgContext.setProperty(Constants.Configuration.CONTENT_TYPE, contentTypeHeader);
-            msgContext.setProperty(Constants.Configuration.MESSAGE_TYPE, contentType);
-
-            if (contentTypeHeader ==null || HTTPTransportUtils.isRESTRequest(contentTypeHeader) || isRest(contentTypeHeader)) {
-                msgContext.setProperty(PassThroughConstants.REST_REQUEST_CONTENT_TYPE, contentType);
+            if (isRestRequest(contentTypeHeader)) {
+                msgContext.setProperty(PassThroughConstants.REST_REQUEST_CONTENT_TYPE,
+                        msgContext.getProperty(Constants.Configuration.MESSAGE_TYPE));
                 msgContext.setDoingREST(true);
                 SOAPEnvelope soapEnvelope = this.handleRESTUrlPost(contentTypeHeader);
                 msgContext.setProperty(PassThroughConstants.PASS_THROUGH_PIPE, request.getPipe());
                 processNonEntityEnclosingRESTHandler(soapEnvelope);
     			return;
-            } else {
-                String soapAction = request.getHeaders().get(SOAP_ACTION_HEADER);
-
-                int soapVersion = HTTPTransportUtils.
-                        initializeMessageContext(msgContext, soapAction,
-                                request.getUri(), contentTypeHeader);
-                SOAPEnvelope envelope;
-
-                if (soapVersion == 1) {
-                    SOAPFactory fac = OMAbstractFactory.getSOAP11Factory();
-                    envelope = fac.getDefaultEnvelope();
-                } else {
-                    SOAPFactory fac = OMAbstractFactory.getSOAP12Factory();
-                    envelope = fac.getDefaultEnvelope();
-                }
-
-                msgContext.setEnvelope(envelope);
             }
-            
-           
+
+            msgContext.setEnvelope(createSOAPEnvelope(contentTypeHeader));
             msgContext.setProperty(PassThroughConstants.PASS_THROUGH_PIPE, request.getPipe());
             AxisEngine.receive(msgContext);
         } catch (AxisFault axisFault) {
@@ -421,6 +384,190 @@ public class ServerWorker implements Runnable {
         } 
     }
 
+    /**
+     * Process a request of a service which routes on the request line and the headers only.
+     * The message is handed over to the service without being dispatched, and the body is
+     * left in the source pipe to be relayed to the target as it is.
+     *
+     * @param service the service the request is addressed to
+     * @param method the HTTP method of the request
+     */
+    private void processHeaderOnlyRequest(AxisService service, String method) {
+        try {
+            String contentTypeHeader = initializeRequestContent(method);
+            msgContext.setAxisService(service);
+            msgContext.setSoapAction(getSoapAction());
+            msgContext.setProperty(PassThroughConstants.HEADER_ONLY_ROUTING, Boolean.TRUE);
+
+            // the handlers expect an envelope, but its body is never filled in this mode
+            SOAPEnvelope envelope;
+            if (!request.isEntityEnclosing()) {
+                msgContext.setDoingREST(true);
+                msgContext.setProperty(PassThroughConstants.NO_ENTITY_BODY, Boolean.TRUE);
+                envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+            } else if (isRestRequest(contentTypeHeader)) {
+                msgContext.setDoingREST(true);
+                msgContext.setProperty(PassThroughConstants.REST_REQUEST_CONTENT_TYPE,
+                        msgContext.getProperty(Constants.Configuration.MESSAGE_TYPE));
+                msgContext.setProperty(PassThroughConstants.PASS_THROUGH_PIPE, request.getPipe());
+                envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+            } else {
+                envelope = createSOAPEnvelope(contentTypeHeader);
+                msgContext.setProperty(PassThroughConstants.PASS_THROUGH_PIPE, request.getPipe());
+            }
+
+            msgContext.setEnvelope(envelope);
+            AxisEngine.receive(msgContext);
+        } catch (AxisFault axisFault) {
+            handleException("Error processing " + request.getMethod() +
+                " request for : " + request.getUri(), axisFault);
+        }
+    }
+
+    /**
+     * Set the content type, the character set encoding and the method of the request on the
+     * message context, as needed by the builders and the handlers whether or not the payload
+     * is ever built
+     *
+     * @param method the HTTP method of the request
+     * @return the content type header of the request, or the inferred content type if the
+     * request does not have one
+     */
+    private String initializeRequestContent(String method) {
+        String contentTypeHeader = request.getHeaders().get(HTTP.CONTENT_TYPE);
+        contentTypeHeader = contentTypeHeader != null ? contentTypeHeader : inferContentType();
+
+        String charSetEncoding = null;
+        String contentType = null;
+
+        if (contentTypeHeader != null) {
+            charSetEncoding = BuilderUtil.getCharSetEncoding(contentTypeHeader);
+            contentType = TransportUtils.getContentType(contentTypeHeader, msgContext);
+        }
+        // get the contentType of char encoding
+        if (charSetEncoding == null) {
+            charSetEncoding = MessageContext.DEFAULT_CHAR_SET_ENCODING;
+        }
+
+        msgContext.setTo(new EndpointReference(request.getUri()));
+        msgContext.setProperty(HTTPConstants.HTTP_METHOD, method);
+        msgContext.setProperty(Constants.Configuration.CHARACTER_SET_ENCODING, charSetEncoding);
+        msgContext.setServerSide(true);
+
+        msgContext.setProperty(Constants.Configuration.CONTENT_TYPE, contentTypeHeader);
+        msgContext.setProperty(Constants.Configuration.MESSAGE_TYPE, contentType);
+        return contentTypeHeader;
+    }
+
+    /**
+     * Initialize the message context for a SOAP request, and create the empty envelope of its
+     * SOAP version. The payload itself is read from the source pipe when the message is built
+     *
+     * @param contentTypeHeader the content type of the request
+     * @return an empty envelope of the SOAP version of the request
+     * @throws AxisFault if the SOAP version can not be determined
+     */
+    private SOAPEnvelope createSOAPEnvelope(String contentTypeHeader) throws AxisFault {
+        String soapAction = request.getHeaders().get(SOAP_ACTION_HEADER);
+        int soapVersion = HTTPTransportUtils.initializeMessageContext(msgContext, soapAction,
+                request.getUri(), contentTypeHeader);
+
+        SOAPFactory fac = soapVersion == 1 ? OMAbstractFactory.getSOAP11Factory() :
+                OMAbstractFactory.getSOAP12Factory();
+        return fac.getDefaultEnvelope();
+    }
+
+    /**
+     * Get the SOAP action of the request, without the quotes around it
+     *
+     * @return the SOAP action header value, or null if the request does not have one
+     */
+    private String getSoapAction() {
+        String soapAction = request.getHeaders().get(SOAP_ACTION_HEADER);
+        if ((soapAction != null) && soapAction.startsWith("\"") && soapAction.endsWith("\"")) {
+            soapAction = soapAction.substring(1, soapAction.length() - 1);
+        }
+        return soapAction;
+    }
+
+    private boolean isRestRequest(String contentTypeHeader) {
+        return contentTypeHeader == null || HTTPTransportUtils.isRESTRequest(contentTypeHeader) ||
+                isRest(contentTypeHeader);
+    }
+
+    /**
+     * Find the service a request is addressed to, if that service routes on headers only
+     *
+     * @param cfgCtx the Axis2 configuration context
+     * @param uri the request URI
+     * @return the service or null if the request is not addressed to a header only service
+     */
+    static AxisService getHeaderOnlyRoutingService(ConfigurationContext cfgCtx, String uri) {
+        String serviceName = getServiceName(uri, cfgCtx.getServicePath());
+        if (serviceName == null) {
+            return null;
+        }
+
+        try {
+            AxisService service = cfgCtx.getAxisConfiguration().getService(serviceName);
+            if (service != null && JavaUtils.isTrueExplicitly(service.getParameterValue(
+                    PassThroughConstants.HEADER_ONLY_ROUTING_PARAM_NAME))) {
+                return service;
+            }
+        } catch (AxisFault ignore) {
+            // an inactive service, which is left to the regular dispatching
+        }
+        return null;
+    }
+
+    /**
+     * Get the name of the service a request URI is addressed to. As with the Axis2 request URI
+     * dispatching, the path of the URI must start with the service path, so that a path which
+     * only contains it further down, such as /api/services/Foo, is not taken for a service
+     *
+     * @param uri the request URI, either absolute or just the path and the query
+     * @param servicePath the service path of the Axis2 configuration, such as "services"
+     * @return the service name, or null if the URI is not addressed to a service
+     */
+    static String getServiceName(String uri, String servicePath) {
+        if (uri == null || servicePath == null) {
+            return null;
+        }
+        int start = uri.indexOf("://");
+        if (start != -1) {
+            // skip the scheme and the authority of an absolute URI
+            start = uri.indexOf('/', start + 3);
+            if (start == -1) {
+                return null;
+            }
+        } else {
+            start = 0;
+        }
+
+        String prefix = "/" + trimSlashes(servicePath) + "/";
+        if (!uri.startsWith(prefix, start)) {
+            return null;
+        }
+        start += prefix.length();
+        int end = start;
+        while (end < uri.length() && uri.charAt(end) != '/' && uri.charAt(end) != '?') {
+            end++;
+        }
+        return end > start ? uri.substring(start, end) : null;
+    }
+
+    private static String trimSlashes(String path) {
+        int start = 0;
+        int end = path.length();
+        while (start < end && path.charAt(start) == '/') {
+            start++;
+        }
+        while (end > start && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(start, end);
+    }
+
     private boolean isRest(String contentType) {
         return contentType != null &&
                 !contentType.contains(SOAP11Constants.SOAP_11_CONTENT_TYPE) &&
@@ -548,6 +695,7 @@ public class ServerWorker implements Runnable {
      * Perform cleanup of ServerWorker
      */
     private void cleanup () {
+        PassThroughTransportUtils.releaseTemporaryBlobs(msgContext);
         //clean threadLocal variables
         msgContext.destroyCurrentMessageContext();
     }
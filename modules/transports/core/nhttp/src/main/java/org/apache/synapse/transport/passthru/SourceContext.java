@@ -21,7 +21,6 @@ package org.apache.synapse.transport.passthru;
 
 import org.apache.http.nio.NHttpConnection;
 import org.apache.synapse.transport.passthru.config.SourceConfiguration;
-import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
 
 /**
  * This class represents the information about a TCP Connection at a given point in time.
@@ -101,9 +100,7 @@ public class SourceContext {
         }
 
         if (writer != null && !isError) {    // If there is an error we do not release the buffer to the factory
-            ControlledByteBuffer buffer = writer.getBuffer();
-            buffer.clear();
-            sourceConfiguration.getBufferFactory().release(buffer);
+            writer.releaseBuffers(sourceConfiguration.getBufferFactory());
         }
 
         this.reader = null;
@@ -142,6 +142,11 @@ public class SourceHandler implements NHttpServerEventHandler {
                 metrics.incrementBytesReceived(readBytes);
             }
 
+            if (sourceConfiguration.getBufferFactory().isExhausted()) {
+                // read further only as the data is consumed, until buffers are released
+                sourceConfiguration.getBufferFactory().throttle(conn);
+            }
+
         } catch (IOException e) {
             logIOException(e);
             informReaderError(conn);
@@ -249,6 +254,11 @@ public class SourceHandler implements NHttpServerEventHandler {
 					}
 				}
 
+				Object arrivalTime = context.getAttribute(PassThroughConstants.REQ_ARRIVAL_TIME);
+				if (arrivalTime != null) {
+					metrics.notifyResponseTime(System.currentTimeMillis() - (Long) arrivalTime);
+				}
+
 				context.removeAttribute(PassThroughConstants.REQ_ARRIVAL_TIME);
 				context.removeAttribute(PassThroughConstants.REQ_DEPARTURE_TIME);
 				context.removeAttribute(PassThroughConstants.RES_HEADER_ARRIVAL_TIME);
@@ -109,8 +109,7 @@ public class SourceRequest {
      */
     public void start(NHttpServerConnection conn) throws IOException, HttpException {
         if (entityEnclosing) {
-            pipe = new Pipe(conn, sourceConfiguration.getBufferFactory().getBuffer(),
-                    "source", sourceConfiguration);
+            pipe = sourceConfiguration.newPipe(conn, "source");
 
             SourceContext.get(conn).setReader(pipe);
 
@@ -22,7 +22,6 @@ package org.apache.synapse.transport.passthru;
 import org.apache.axis2.context.MessageContext;
 import org.apache.http.nio.NHttpConnection;
 import org.apache.synapse.transport.passthru.config.TargetConfiguration;
-import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
 
 import java.nio.ByteBuffer;
 
@@ -132,9 +131,7 @@ public class TargetContext {
         }
 
         if (writer != null && !isError) { // If there is an error we do not release the buffer to the factory
-            ControlledByteBuffer buffer = writer.getBuffer();
-            buffer.clear();
-            targetConfiguration.getBufferFactory().release(buffer);
+            writer.releaseBuffers(targetConfiguration.getBufferFactory());
         }
 
         reader = null;
@@ -193,7 +193,13 @@ public class TargetHandler implements NHttpClientEventHandler {
     public void responseReceived(NHttpClientConnection conn) {
         ProtocolState connState;
         try {
-        	conn.getContext().setAttribute(PassThroughConstants.RES_HEADER_ARRIVAL_TIME, System.currentTimeMillis());
+        	long arrivalTime = System.currentTimeMillis();
+        	conn.getContext().setAttribute(PassThroughConstants.RES_HEADER_ARRIVAL_TIME, arrivalTime);
+            Object departureTime = conn.getContext().getAttribute(
+                    PassThroughConstants.REQ_DEPARTURE_TIME);
+            if (departureTime != null) {
+                metrics.notifyResponseTime(arrivalTime - (Long) departureTime);
+            }
             connState = TargetContext.getState(conn);
             if (connState != ProtocolState.REQUEST_DONE) {
                 handleInvalidState(conn, "Receiving response");
@@ -290,6 +296,11 @@ public class TargetHandler implements NHttpClientEventHandler {
 				int responseRead = response.read(conn, decoder);
 				metrics.incrementBytesReceived(responseRead);
 			}
+
+            if (targetConfiguration.getBufferFactory().isExhausted()) {
+                // read further only as the data is consumed, until buffers are released
+                targetConfiguration.getBufferFactory().throttle(conn);
+            }
         } catch (IOException e) {
             logIOException(conn, e);
             informReaderError(conn);
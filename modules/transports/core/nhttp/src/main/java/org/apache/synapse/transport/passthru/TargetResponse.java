@@ -100,8 +100,7 @@ public class TargetResponse {
         TargetContext.updateState(conn, ProtocolState.RESPONSE_HEAD);
         
         if (expectResponseBody) {
-            pipe = new Pipe(conn, targetConfiguration.getBufferFactory().getBuffer(),
-                    "target", targetConfiguration);
+            pipe = targetConfiguration.newPipe(conn, "target");
             TargetContext.get(conn).setReader(pipe);
             BasicHttpEntity entity = new BasicHttpEntity();
             if (response.getStatusLine().getProtocolVersion().greaterEquals(HttpVersion.HTTP_1_1)) {
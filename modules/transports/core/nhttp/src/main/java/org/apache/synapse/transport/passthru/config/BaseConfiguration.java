@@ -25,10 +25,16 @@ import org.apache.axis2.transport.base.threads.WorkerPool;
 import org.apache.axis2.transport.base.threads.WorkerPoolFactory;
 import org.apache.http.config.ConnectionConfig;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.util.ByteBufferAllocator;
+import org.apache.http.nio.util.DirectByteBufferAllocator;
 import org.apache.http.nio.util.HeapByteBufferAllocator;
 import org.apache.http.protocol.HttpProcessor;
+import org.apache.synapse.transport.passthru.LockFreePipe;
+import org.apache.synapse.transport.passthru.Pipe;
 import org.apache.synapse.transport.passthru.jmx.PassThroughTransportMetricsCollector;
 import org.apache.synapse.transport.passthru.util.BufferFactory;
+import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
 
 /**
  * This class has common configurations for both sender and receiver.
@@ -46,8 +52,15 @@ public abstract class BaseConfiguration {
     /** The Axis2 ConfigurationContext */
     private ConfigurationContext configurationContext = null;
 
+    /** The buffer pool shared by the senders and the listeners */
+    private static BufferFactory sharedBufferFactory = null;
+
     private BufferFactory bufferFactory = null;
 
+    private int outputBufferSize;
+
+    private boolean lockFreePipe;
+
     private PassThroughTransportMetricsCollector metrics = null;
 
     private HttpProcessor httpProcessor;
@@ -72,12 +85,32 @@ public abstract class BaseConfiguration {
         }
 
         int bufferSize = conf.getIntProperty(PassThroughConfigPNames.IO_BUFFER_SIZE, 1024 * 8);
-        bufferFactory = new BufferFactory(bufferSize, HeapByteBufferAllocator.INSTANCE, 512);
+        outputBufferSize = conf.getIntProperty(PassThroughConfigPNames.IO_OUTPUT_BUFFER_SIZE,
+                bufferSize);
+        bufferFactory = getSharedBufferFactory(bufferSize, conf);
+        lockFreePipe = conf.isLockFreePipeEnabled();
         httpProcessor = initHttpProcessor();
     }
 
     abstract protected HttpProcessor initHttpProcessor();
 
+    private static synchronized BufferFactory getSharedBufferFactory(
+            int bufferSize, PassThroughConfiguration conf) {
+        if (sharedBufferFactory == null) {
+            int sizeClasses = conf.getIntProperty(PassThroughConfigPNames.IO_BUFFER_SIZE_CLASSES, 8);
+            ByteBufferAllocator allocator = conf.getBooleanProperty(
+                    PassThroughConfigPNames.IO_BUFFER_DIRECT, false) ?
+                    DirectByteBufferAllocator.INSTANCE : HeapByteBufferAllocator.INSTANCE;
+            long memoryCeiling = conf.getIntProperty(
+                    PassThroughConfigPNames.IO_BUFFER_MEMORY_MAX, 0) * 1024L * 1024L;
+            sharedBufferFactory = new BufferFactory(bufferSize, allocator, 512,
+                    Math.min(sizeClasses, 16), memoryCeiling,
+                    conf.getBooleanProperty(PassThroughConfigPNames.IO_BUFFER_LEAK_DETECTION, false));
+            sharedBufferFactory.registerMBeans();
+        }
+        return sharedBufferFactory;
+    }
+
     public IOReactorConfig getReactorConfig(boolean listener) {
         if (listener) {
             return conf.getListeningReactorConfig();
@@ -102,6 +135,41 @@ public abstract class BaseConfiguration {
         return bufferFactory;
     }
 
+    public int getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    /**
+     * Create a pipe, with a buffer from the buffer factory, to carry the data read from the
+     * given connection
+     *
+     * @param producerIoControl IOControl of the connection producing the data
+     * @param name name to identify the pipe
+     * @return a new Pipe
+     */
+    public Pipe newPipe(IOControl producerIoControl, String name) {
+        ControlledByteBuffer buffer = bufferFactory.getBuffer();
+        if (lockFreePipe) {
+            return new LockFreePipe(producerIoControl, buffer, name, this);
+        }
+        return new Pipe(producerIoControl, buffer, name, this);
+    }
+
+    /**
+     * Create a pipe, with a buffer from the buffer factory, to carry the data serialized by
+     * the mediation
+     *
+     * @param name name to identify the pipe
+     * @return a new Pipe
+     */
+    public Pipe newPipe(String name) {
+        ControlledByteBuffer buffer = bufferFactory.getBuffer();
+        if (lockFreePipe) {
+            return new LockFreePipe(buffer, name, this);
+        }
+        return new Pipe(buffer, name, this);
+    }
+
     public HttpProcessor getHttpProcessor() {
         return httpProcessor;
     }
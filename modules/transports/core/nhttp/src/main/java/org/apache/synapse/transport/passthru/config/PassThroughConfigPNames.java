@@ -55,6 +55,39 @@ public interface PassThroughConfigPNames {
      */
     public String IO_BUFFER_SIZE = "io_buffer_size";
 
+    /**
+     * Defines the size of the buffers used to serialize messages in to the pass-through pipes
+     */
+    public String IO_OUTPUT_BUFFER_SIZE = "io_output_buffer_size";
+
+    /**
+     * Defines the number of size classes of the IO buffer pool, each twice as large as the
+     * previous one
+     */
+    public String IO_BUFFER_SIZE_CLASSES = "io_buffer_size_classes";
+
+    /**
+     * Defines whether the IO buffers are allocated outside the Java heap
+     */
+    public String IO_BUFFER_DIRECT = "io_buffer_direct";
+
+    /**
+     * Defines the maximum amount of memory (in megabytes) in the IO buffers in use, before
+     * the connections are throttled. 0 means that there is no limit.
+     */
+    public String IO_BUFFER_MEMORY_MAX = "io_buffer_memory_max";
+
+    /**
+     * Defines whether IO buffers which are not returned to the pool should be reported
+     */
+    public String IO_BUFFER_LEAK_DETECTION = "io_buffer_leak_detection";
+
+    /**
+     * Defines whether the pipes between the connections and the worker threads hand over the
+     * data without taking a lock
+     */
+    public String IO_PIPE_LOCK_FREE = "io_pipe_lock_free";
+
     /**
      * Defines whether ESB needs to preserve the original User-Agent header.
      */
@@ -80,6 +113,35 @@ public interface PassThroughConfigPNames {
      */
     public String MAX_CONNECTION_PER_TARGET = "http.max.connection.per.target";
 
+    /**
+     * Defines the maximum number of messages waiting for a connection to a target (host:port
+     * pair). Messages submitted beyond this limit are failed.
+     */
+    public String MAX_WAITING_MESSAGES_PER_TARGET = "http.max.waiting.messages.per.target";
+
+    /**
+     * Defines the time in milliseconds a connection to a target may stay idle in the pool
+     * before it is closed. 0 means that idle connections are not evicted.
+     */
+    public String CONNECTION_IDLE_TIMEOUT = "http.connection.idle.timeout";
+
+    /**
+     * Defines the time in milliseconds a connection to a target may be used for, before it
+     * is closed. 0 means that there is no limit.
+     */
+    public String CONNECTION_MAX_LIFETIME = "http.connection.max.lifetime";
+
+    /**
+     * Defines a comma separated list of targets (host:port pairs) to which connections are
+     * made when the sender starts
+     */
+    public String CONNECTION_PREWARM_TARGETS = "http.connection.prewarm.targets";
+
+    /**
+     * Defines the number of connections made to each of the pre-warmed targets
+     */
+    public String CONNECTION_PREWARM_COUNT = "http.connection.prewarm.count";
+
     /**
      * Determines the value of the User-Agent header sent by the transport, when sending
      * requests to a backend endpoint.
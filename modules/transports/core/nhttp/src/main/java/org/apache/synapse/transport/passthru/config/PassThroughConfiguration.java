@@ -72,6 +72,10 @@ public class PassThroughConfiguration extends HttpTransportConfiguration {
                 DEFAULT_IO_THREADS_PER_REACTOR);
     }
 
+    public boolean isLockFreePipeEnabled() {
+        return getBooleanProperty(PassThroughConfigPNames.IO_PIPE_LOCK_FREE, false);
+    }
+
     public String getPreserveHttpHeaders() {
         return getStringProperty(PassThroughConfigPNames.HTTP_HEADERS_PRESERVE, "");
     }
@@ -47,6 +47,16 @@ public class TargetConfiguration extends BaseConfiguration {
 
     private TargetConnections connections = null;
 
+    private int maxWaitingMessages = Integer.MAX_VALUE;
+
+    private long connectionIdleTimeout = 0;
+
+    private long connectionMaxLifetime = 0;
+
+    private List<String> prewarmTargets;
+
+    private int prewarmCount = 1;
+
     public TargetConfiguration(ConfigurationContext configurationContext,
                                ParameterInclude parameters,
                                WorkerPool pool) {
@@ -59,6 +69,16 @@ public class TargetConfiguration extends BaseConfiguration {
         preserveServerHeader = conf.getBooleanProperty(
                 PassThroughConfigPNames.SERVER_HEADER_PRESERVE, true);
         populatePreserveHttpHeaders(conf.getPreserveHttpHeaders());
+        maxWaitingMessages = conf.getIntProperty(
+                PassThroughConfigPNames.MAX_WAITING_MESSAGES_PER_TARGET,
+                Integer.MAX_VALUE);
+        connectionIdleTimeout = conf.getIntProperty(
+                PassThroughConfigPNames.CONNECTION_IDLE_TIMEOUT, 0);
+        connectionMaxLifetime = conf.getIntProperty(
+                PassThroughConfigPNames.CONNECTION_MAX_LIFETIME, 0);
+        prewarmCount = conf.getIntProperty(PassThroughConfigPNames.CONNECTION_PREWARM_COUNT, 1);
+        populatePrewarmTargets(conf.getStringProperty(
+                PassThroughConfigPNames.CONNECTION_PREWARM_TARGETS, null));
     }
 
     @Override
@@ -92,6 +112,31 @@ public class TargetConfiguration extends BaseConfiguration {
         return preserveHttpHeaders.contains(headerName.toUpperCase());
     }
 
+    public int getMaxWaitingMessages() {
+        return maxWaitingMessages;
+    }
+
+    public long getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    public long getConnectionMaxLifetime() {
+        return connectionMaxLifetime;
+    }
+
+    /**
+     * Get the targets to which connections are made when the sender starts
+     *
+     * @return a list of host:port pairs
+     */
+    public List<String> getPrewarmTargets() {
+        return prewarmTargets;
+    }
+
+    public int getPrewarmCount() {
+        return prewarmCount;
+    }
+
     public TargetConnections getConnections() {
         return connections;
     }
@@ -100,6 +145,23 @@ public class TargetConfiguration extends BaseConfiguration {
         this.connections = connections;
     }
 
+    /**
+     * Populate the pre-warmed targets from a comma separated string
+     *
+     * @param targets comma separated host:port pairs
+     */
+    private void populatePrewarmTargets(String targets) {
+        prewarmTargets = new ArrayList<String>();
+        if (targets != null) {
+            for (String target : targets.split(",")) {
+                target = target.trim();
+                if (!target.isEmpty()) {
+                    prewarmTargets.add(target);
+                }
+            }
+        }
+    }
+
     /**
      * Populate preserve http headers from comma separate string
      *
@@ -25,90 +25,118 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpCoreContext;
 
-import java.util.List;
 import java.util.ArrayList;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This stores connections for a particular host + port.
+ * This stores connections for a particular host + port. Connections are acquired and released
+ * without taking a lock. Free connections are kept on a stack, so that the most recently used
+ * connections are handed out first, and the connections which are not needed stay idle until
+ * they are evicted.
  */
 public class HostConnections {
 
     private static final Log log = LogFactory.getLog(HostConnections.class);
     // host
-    private String host;
+    private final String host;
     // port
-    private int port;
+    private final int port;
     // maximum number of connections allowed for this host + port
-    private int maxSize;
+    private final int maxSize;
+    // time in milliseconds a free connection may stay idle, 0 if there is no limit
+    private final long idleTimeout;
+    // time in milliseconds a connection may be used for, 0 if there is no limit
+    private final long maxLifetime;
     // number of awaiting connections
-    private int pendingConnections;
-    // list of free connections available
-    private List<NHttpClientConnection> freeConnections = new ArrayList<NHttpClientConnection>();
-    // list of connections in use
-    private List<NHttpClientConnection> busyConnections = new ArrayList<NHttpClientConnection>();
-
-    private Lock lock = new ReentrantLock();
+    private final AtomicInteger pendingConnections = new AtomicInteger(0);
+    // all the established connections, free or in use
+    private final Map<NHttpClientConnection, PooledConnection> connections =
+            new ConcurrentHashMap<NHttpClientConnection, PooledConnection>();
+    // stack of free connections, most recently released first
+    private final Deque<PooledConnection> freeConnections =
+            new ConcurrentLinkedDeque<PooledConnection>();
+    // size of the free connections stack, which is not a constant time operation on the stack
+    private final AtomicInteger freeCount = new AtomicInteger(0);
 
     public HostConnections(String host, int port, int maxSize) {
+        this(host, port, maxSize, 0, 0);
+    }
+
+    public HostConnections(String host, int port, int maxSize,
+                           long idleTimeout, long maxLifetime) {
         if (log.isDebugEnabled()) {
             log.debug("Creating new connection pool to the host: " + host + ", port: " + port);
         }
         this.host = host;
         this.port = port;
         this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+        this.maxLifetime = maxLifetime;
     }
 
     /**
      * Get a connection for the host:port
      *
-     * @return a connection
+     * @return a connection or null if there are no free connections
      */
     public NHttpClientConnection getConnection() {
-        lock.lock();
-        try {
-            if (freeConnections.size() > 0) {
+        PooledConnection pooled;
+        while ((pooled = freeConnections.pollFirst()) != null) {
+            freeCount.decrementAndGet();
+            if (pooled.connection.isOpen()) {
                 if (log.isDebugEnabled()) {
                     log.debug("Returning an existing free connection to " + host + ":" + port);
                 }
-                NHttpClientConnection conn = freeConnections.get(0);
-                freeConnections.remove(conn);
-                busyConnections.add(conn);
-                return conn;
+                pooled.free.set(false);
+                return pooled.connection;
             }
-        } finally {
-            lock.unlock();
+            // closed by the remote end, it will be forgotten once the close is processed
+            pooled.free.set(false);
         }
         return null;
     }
 
-    public void release(NHttpClientConnection conn) {
+    /**
+     * Release a connection in use back to the pool
+     *
+     * @param conn the connection to be released
+     * @return false if the connection has outlived the maximum lifetime and must be closed
+     * instead of being reused
+     */
+    public boolean release(NHttpClientConnection conn) {
         conn.getMetrics().reset();
         HttpContext ctx = conn.getContext();
         ctx.removeAttribute(HttpCoreContext.HTTP_REQUEST);
         ctx.removeAttribute(HttpCoreContext.HTTP_RESPONSE);
 
-        lock.lock();
-        try {
-            if (busyConnections.remove(conn)) {
-                freeConnections.add(conn);
-            } else {
-                log.error("Attempted to releaseConnection connection not in the busy list");
-            }
-        } finally {
-            lock.unlock();
+        PooledConnection pooled = connections.get(conn);
+        if (pooled == null || !pooled.free.compareAndSet(false, true)) {
+            log.error("Attempted to releaseConnection connection not in the busy list");
+            return true;
         }
+
+        long now = System.currentTimeMillis();
+        if (maxLifetime > 0 && now - pooled.createdTime >= maxLifetime) {
+            pooled.free.set(false);
+            return false;
+        }
+        pooled.releasedTime = now;
+        freeConnections.offerFirst(pooled);
+        freeCount.incrementAndGet();
+        return true;
     }
 
     public void forget(NHttpClientConnection conn) {
-        lock.lock();
-        try {
-            if (!freeConnections.remove(conn)) {
-                busyConnections.remove(conn);
-            }
-        } finally {
-            lock.unlock();
+        PooledConnection pooled = connections.remove(conn);
+        if (pooled != null && pooled.free.get() && freeConnections.remove(pooled)) {
+            freeCount.decrementAndGet();
         }
     }
 
@@ -116,13 +144,58 @@ public class HostConnections {
         if (log.isDebugEnabled()) {
             log.debug("New connection to " + host + ":" + port + " is added to the free list");
         }
-        lock.lock();
-        try {
-            // Adding to busyConnections to make sure the first requester get it.
-            // Otherwise someone else might acquire it.
-            busyConnections.add(conn);
-        } finally {
-            lock.unlock();
+        // The connection starts as busy to make sure the first requester get it.
+        // Otherwise someone else might acquire it.
+        connections.put(conn, new PooledConnection(conn, System.currentTimeMillis()));
+    }
+
+    /**
+     * Take the free connections which have been idle for longer than the idle timeout, or have
+     * outlived the maximum lifetime, out of the pool. The caller is responsible for closing them.
+     *
+     * @param now the current time in milliseconds
+     * @return the connections taken out of the pool
+     */
+    public List<NHttpClientConnection> evictConnections(long now) {
+        List<NHttpClientConnection> evicted = new ArrayList<NHttpClientConnection>();
+        if (idleTimeout <= 0 && maxLifetime <= 0) {
+            return evicted;
+        }
+
+        // oldest first, as the least recently released connections are at the bottom
+        Iterator<PooledConnection> itr = freeConnections.descendingIterator();
+        while (itr.hasNext()) {
+            PooledConnection pooled = itr.next();
+            boolean idle = idleTimeout > 0 && now - pooled.releasedTime >= idleTimeout;
+            boolean expired = maxLifetime > 0 && now - pooled.createdTime >= maxLifetime;
+            // only one of the evictor and an acquirer manages to remove a free connection
+            if ((idle || expired) && freeConnections.remove(pooled)) {
+                freeCount.decrementAndGet();
+                pooled.free.set(false);
+                evicted.add(pooled.connection);
+            }
+        }
+
+        if (log.isDebugEnabled() && !evicted.isEmpty()) {
+            log.debug("Evicting " + evicted.size() + " connections to " + host + ":" + port);
+        }
+        return evicted;
+    }
+
+    /**
+     * Reserve a slot for a new connection, if the maximum number of connections is not reached
+     *
+     * @return true if a new connection can be made to this host:port
+     */
+    public boolean reservePendingConnection() {
+        while (true) {
+            int pending = pendingConnections.get();
+            if (getBusyConnectionCount() + pending >= maxSize) {
+                return false;
+            }
+            if (pendingConnections.compareAndSet(pending, pending + 1)) {
+                return true;
+            }
         }
     }
 
@@ -130,13 +203,8 @@ public class HostConnections {
      * Indicates that a connection has been successfully established with a remote server
      * as notified by the session request call back.
      */
-    public synchronized void pendingConnectionSucceeded() {
-        lock.lock();
-        try {
-            pendingConnections--;
-        } finally {
-            lock.unlock();
-        }
+    public void pendingConnectionSucceeded() {
+        releasePendingConnection();
     }
 
     /**
@@ -144,13 +212,17 @@ public class HostConnections {
      * consecutively
      */
     public void pendingConnectionFailed() {
-        lock.lock();
-        try {
-            pendingConnections--;
-        } finally {
-            lock.unlock();
+        releasePendingConnection();
+    }
+
+    private void releasePendingConnection() {
+        while (true) {
+            int pending = pendingConnections.get();
+            if (pending == 0 || pendingConnections.compareAndSet(pending, pending - 1)) {
+                return;
+            }
         }
-    }    
+    }
 
     public String getHost() {
         return host;
@@ -161,6 +233,35 @@ public class HostConnections {
     }
 
     public boolean canHaveMoreConnections() {
-        return busyConnections.size() + pendingConnections < maxSize;
+        return getBusyConnectionCount() + pendingConnections.get() < maxSize;
+    }
+
+    public int getBusyConnectionCount() {
+        return Math.max(0, connections.size() - freeCount.get());
+    }
+
+    public int getFreeConnectionCount() {
+        return freeCount.get();
+    }
+
+    public int getPendingConnectionCount() {
+        return pendingConnections.get();
+    }
+
+    /**
+     * An established connection along with the times used to decide on its eviction
+     */
+    private static final class PooledConnection {
+
+        private final NHttpClientConnection connection;
+        private final long createdTime;
+        private volatile long releasedTime;
+        private final AtomicBoolean free = new AtomicBoolean(false);
+
+        private PooledConnection(NHttpClientConnection connection, long createdTime) {
+            this.connection = connection;
+            this.createdTime = createdTime;
+            this.releasedTime = createdTime;
+        }
     }
 }
@@ -24,25 +24,35 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.http.nio.NHttpClientConnection;
 import org.apache.http.nio.reactor.ConnectingIOReactor;
 import org.apache.synapse.transport.passthru.ConnectCallback;
+import org.apache.synapse.transport.passthru.DeliveryAgent;
 import org.apache.synapse.transport.passthru.PassThroughConstants;
 import org.apache.synapse.transport.passthru.TargetContext;
 import org.apache.synapse.transport.passthru.config.TargetConfiguration;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.net.InetSocketAddress;
 
 /**
  * Manages the connection from transport to the back end servers. It keeps track of the
- * connections for host:port pair. 
+ * connections for host:port pair. Free connections which stay idle for too long, or which
+ * have outlived their maximum lifetime, are closed by a background task.
  */
 public class TargetConnections {
 
     private static final Log log = LogFactory.getLog(TargetConnections.class);
 
     /** map to hold the ConnectionPools. The key is host:port */
-    private final Map<String, HostConnections> poolMap =
+    private final ConcurrentMap<String, HostConnections> poolMap =
             new ConcurrentHashMap<String, HostConnections>();
 
     /** max connections per host:port pair. At the moment all the host:ports can
@@ -55,6 +65,20 @@ public class TargetConnections {
     /** callback invoked when a connection is made */
     private ConnectCallback callback = null;
 
+    /** the agent which gets the released connections, to serve the waiting messages */
+    private DeliveryAgent deliveryAgent = null;
+
+    /** idle timeout and maximum lifetime of the connections in milliseconds */
+    private long idleTimeout;
+    private long maxLifetime;
+
+    /** targets to connect to and the number of connections made to each of them on start */
+    private List<String> prewarmTargets;
+    private int prewarmCount;
+
+    /** closes the idle and expired connections, if there is a limit on either */
+    private ScheduledExecutorService evictor = null;
+
     /**
      * Create a TargetConnections with the given IO-Reactor
      *
@@ -69,6 +93,79 @@ public class TargetConnections {
         this.maxConnections = targetConfiguration.getMaxConnections();
         this.ioReactor = ioReactor;
         this.callback = callback;
+        this.idleTimeout = targetConfiguration.getConnectionIdleTimeout();
+        this.maxLifetime = targetConfiguration.getConnectionMaxLifetime();
+        this.prewarmTargets = targetConfiguration.getPrewarmTargets();
+        this.prewarmCount = targetConfiguration.getPrewarmCount();
+
+        if (idleTimeout > 0 || maxLifetime > 0) {
+            long period = Math.max(1000, Math.min(idleTimeout > 0 ? idleTimeout : Long.MAX_VALUE,
+                    maxLifetime > 0 ? maxLifetime : Long.MAX_VALUE) / 2);
+            evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "PassThroughTargetConnectionEvictor");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            evictor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    evictConnections();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void setDeliveryAgent(DeliveryAgent deliveryAgent) {
+        this.deliveryAgent = deliveryAgent;
+    }
+
+    /**
+     * Make the configured number of connections to each of the pre-warmed targets. The
+     * connections are added to the pool as they get established.
+     */
+    public void prewarmConnections() {
+        if (prewarmTargets == null) {
+            return;
+        }
+        for (String target : prewarmTargets) {
+            int index = target.lastIndexOf(':');
+            if (index <= 0) {
+                log.warn("Ignoring the invalid pre-warm target : " + target +
+                        ". The target must be a host:port pair");
+                continue;
+            }
+            String host = target.substring(0, index);
+            int port;
+            try {
+                port = Integer.parseInt(target.substring(index + 1));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring the invalid pre-warm target : " + target +
+                        ". The target must be a host:port pair");
+                continue;
+            }
+
+            HostConnections pool = getConnectionPool(host, port);
+            int count = 0;
+            while (count < prewarmCount && pool.reservePendingConnection()) {
+                ioReactor.connect(new InetSocketAddress(host, port), null, pool, callback);
+                count++;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Pre-warming " + count + " connections to " + host + ":" + port);
+            }
+        }
+    }
+
+    /**
+     * Stop closing the idle connections
+     */
+    public void shutdown() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
     }
 
     /**
@@ -92,7 +189,7 @@ public class TargetConnections {
         // trying to get an existing connection
         NHttpClientConnection connection = pool.getConnection();
         if (connection == null) {
-            if (pool.canHaveMoreConnections()) {
+            if (pool.reservePendingConnection()) {
                 ioReactor.connect(new InetSocketAddress(host, port), null, pool, callback);
             } else {
                 log.warn("Connection pool reached maximum allowed connections for: "
@@ -195,7 +292,18 @@ public class TargetConnections {
         TargetContext.get(conn).reset();
 
         if (pool != null) {
-            pool.release(conn);
+            if (pool.release(conn)) {
+                // hand the connection over to the messages waiting for this host:port, if any
+                if (deliveryAgent != null) {
+                    deliveryAgent.connected(pool.getHost(), pool.getPort(), null);
+                }
+            } else {
+                if (log.isDebugEnabled()) {
+                    log.debug("Closing the connection " + conn + " which has outlived " +
+                            "its maximum lifetime");
+                }
+                closeConnection(conn);
+            }
         } else {
             // we shouldn't get here
             log.fatal("Connection without a pool. Something wrong. Need to fix.");
@@ -218,18 +326,44 @@ public class TargetConnections {
         }
     }
 
+    /**
+     * Get the connection pools of all the host:port pairs
+     *
+     * @return the connection pools
+     */
+    public Collection<HostConnections> getConnectionPools() {
+        return Collections.unmodifiableCollection(poolMap.values());
+    }
+
+    /**
+     * Close the free connections which have been idle for too long or have outlived their
+     * maximum lifetime
+     */
+    private void evictConnections() {
+        long now = System.currentTimeMillis();
+        for (HostConnections pool : poolMap.values()) {
+            for (NHttpClientConnection conn : pool.evictConnections(now)) {
+                try {
+                    closeConnection(conn);
+                } catch (Exception e) {
+                    log.warn("Error closing the evicted connection " + conn, e);
+                }
+            }
+        }
+    }
+
     private HostConnections getConnectionPool(String host, int port) {
         String key = host + ":" + port;
-        if (!poolMap.containsKey(key)) {
-            synchronized (poolMap) {
-                // see weather a pool already exists for this host:port
-                if (!poolMap.containsKey(key)) {
-                    HostConnections pool = new HostConnections(host, port, maxConnections);
-                    poolMap.put(key, pool);
-                }
+        HostConnections pool = poolMap.get(key);
+        if (pool == null) {
+            HostConnections newPool = new HostConnections(host, port, maxConnections,
+                    idleTimeout, maxLifetime);
+            pool = poolMap.putIfAbsent(key, newPool);
+            if (pool == null) {
+                pool = newPool;
             }
         }
-        return poolMap.get(key);
+        return pool;
     }
 
 }
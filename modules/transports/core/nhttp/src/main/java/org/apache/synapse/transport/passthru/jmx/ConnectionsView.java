@@ -20,7 +20,10 @@
 package org.apache.synapse.transport.passthru.jmx;
 
 import org.apache.axis2.AxisFault;
+import org.apache.synapse.commons.jmx.LatencyRecorder;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
+import org.apache.synapse.transport.passthru.connections.HostConnections;
+import org.apache.synapse.transport.passthru.connections.TargetConnections;
 
 import java.util.*;
 import java.util.concurrent.Executors;
@@ -36,7 +39,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  * the last 24 hours of execution and they get updated every 5 minutes.  In addition to the
  * connection statistics this MBean also provides information on the request and response
  * sizes received over the HTTP connections. All messages are divided into six categories
- * based on their sizes and the resulting counts are made available as a table.
+ * based on their sizes and the resulting counts are made available as a table. For a sender,
+ * the numbers of busy, free and pending connections of each host:port pair are made available
+ * as tables as well. Finally, the percentiles of the response times over the last hour are
+ * available, as recorded by a {@link LatencyRecorder}.
  */
 public class ConnectionsView implements ConnectionsViewMBean {
 
@@ -72,6 +78,10 @@ public class ConnectionsView implements ConnectionsViewMBean {
 
     private String name;
 
+    private volatile TargetConnections targetConnections;
+
+    private final LatencyRecorder responseTimes = new LatencyRecorder();
+
     public ConnectionsView(String name) throws AxisFault {
         this.name = name;
 
@@ -145,6 +155,14 @@ public class ConnectionsView implements ConnectionsViewMBean {
         activeConnections.decrementAndGet();
     }
 
+    protected void notifyResponseTime(long responseTime) {
+        responseTimes.record(responseTime);
+    }
+
+    protected void setTargetConnections(TargetConnections targetConnections) {
+        this.targetConnections = targetConnections;
+    }
+
     protected void notifyMessageSize(long size, boolean isRequest) {
         // This logic gets executed for each and every transaction. For a typical
         // mediation scenario this method will be called 4 times. Therefore I'm using
@@ -219,6 +237,62 @@ public class ConnectionsView implements ConnectionsViewMBean {
         return resetTime;
     }
 
+    @Override
+    public Map getBusyConnectionsMap() {
+        Map<String,Integer> map = new TreeMap<String,Integer>();
+        for (HostConnections pool : getConnectionPools()) {
+            map.put(pool.getHost() + ":" + pool.getPort(), pool.getBusyConnectionCount());
+        }
+        return map;
+    }
+
+    @Override
+    public Map getFreeConnectionsMap() {
+        Map<String,Integer> map = new TreeMap<String,Integer>();
+        for (HostConnections pool : getConnectionPools()) {
+            map.put(pool.getHost() + ":" + pool.getPort(), pool.getFreeConnectionCount());
+        }
+        return map;
+    }
+
+    @Override
+    public Map getPendingConnectionsMap() {
+        Map<String,Integer> map = new TreeMap<String,Integer>();
+        for (HostConnections pool : getConnectionPools()) {
+            map.put(pool.getHost() + ":" + pool.getPort(), pool.getPendingConnectionCount());
+        }
+        return map;
+    }
+
+    @Override
+    public Map getLastMinuteResponseTimePercentiles() {
+        return responseTimes.getPercentiles(1);
+    }
+
+    @Override
+    public Map getLast5MinuteResponseTimePercentiles() {
+        return responseTimes.getPercentiles(5);
+    }
+
+    @Override
+    public Map getLast15MinuteResponseTimePercentiles() {
+        return responseTimes.getPercentiles(15);
+    }
+
+    @Override
+    public Map getLastHourResponseTimePercentiles() {
+        return responseTimes.getPercentiles(60);
+    }
+
+    private Collection<HostConnections> getConnectionPools() {
+        TargetConnections connections = targetConnections;
+        if (connections == null) {
+            // a listener, or a sender which has not been initialized yet
+            return Collections.emptyList();
+        }
+        return connections.getConnectionPools();
+    }
+
     private Map<String,Integer> getCountersMap(AtomicInteger[] counters) {
         // This ensures that keys are returned in the same order we insert them
         // Provides better readability in the JMX consoles
@@ -238,6 +312,7 @@ public class ConnectionsView implements ConnectionsViewMBean {
         initCounters(responseSizeCounters);
         shortTermDataQueue.clear();
         longTermDataQueue.clear();
+        responseTimes.reset();
         resetTime = Calendar.getInstance().getTime();
     }
 
@@ -34,6 +34,13 @@ public interface ConnectionsViewMBean {
     public Map getRequestSizesMap();
     public Map getResponseSizesMap();
     public Date getLastResetTime();
+    public Map getBusyConnectionsMap();
+    public Map getFreeConnectionsMap();
+    public Map getPendingConnectionsMap();
+    public Map getLastMinuteResponseTimePercentiles();
+    public Map getLast5MinuteResponseTimePercentiles();
+    public Map getLast15MinuteResponseTimePercentiles();
+    public Map getLastHourResponseTimePercentiles();
 
     public void reset();
 
@@ -20,26 +20,26 @@
 package org.apache.synapse.transport.passthru.jmx;
 
 import org.apache.axis2.AxisFault;
+import org.apache.synapse.commons.jmx.LatencyRecorder;
 import org.apache.synapse.commons.jmx.MBeanRegistrar;
 
 import java.util.Calendar;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>LatencyView provides statistical information related to the latency (overhead) incurred by
  * the Synapse NHTTP transport, when mediating messages back and forth. Statistics are available
  * under two main categories, namely short term data and long term data. Short term data is
- * statistical information related to the last 15 minutes of execution and these metrics are
- * updated every 5 seconds. Long term data is related to the last 24 hours of execution and
- * they are updated every 5 minutes. Two timer tasks and a single threaded scheduled executor
- * is used to perform these periodic calculations.</p>
+ * statistical information related to the last hour of execution, which is recorded in rolling
+ * histograms, so that percentiles as well as averages are available. Long term data is related
+ * to the last 24 hours of execution and it is updated every 5 minutes by a single threaded
+ * scheduled executor.</p>
  *
  * <p>Latency calculation for a single invocation is carried out by taking timestamps on
  * following events:</p>
@@ -60,45 +60,27 @@ public class LatencyView implements LatencyViewMBean {
 
     private static final String NHTTP_LATENCY_VIEW = "PassThroughTransportLatency";
 
-    private static final int SMALL_DATA_COLLECTION_PERIOD = 5;
     private static final int LARGE_DATA_COLLECTION_PERIOD = 5 * 60;
-    private static final int SAMPLES_PER_MINUTE = 60/ SMALL_DATA_COLLECTION_PERIOD;
     private static final int SAMPLES_PER_HOUR = (60 * 60)/LARGE_DATA_COLLECTION_PERIOD;
 
-    /** Keeps track of th last reported latency value */
-    private AtomicLong lastLatency = new AtomicLong(0);
-
-    /**
-     * Queue of all latency values reported. The short term data collector clears this queue up
-     * time to time thus ensuring it doesn't grow indefinitely.
-     */
-    private Queue<Long> latencyDataQueue = new ConcurrentLinkedQueue<Long>();
-
-    /**
-     * Queue of samples collected by the short term data collector. This is maintained
-     * as a fixed length queue
-     */
-    private Queue<Long> shortTermLatencyDataQueue = new LinkedList<Long>();
+    /** Records the latency values reported during the last hour */
+    private final LatencyRecorder recorder = new LatencyRecorder();
 
     /**
      * Queue of samples collected by the long term data collector. This is maintained
      * as a fixed length queue
      */
-    private Queue<Long> longTermLatencyDataQueue = new LinkedList<Long>();
+    private Queue<Double> longTermLatencyDataQueue = new LinkedList<Double>();
 
     /** Scheduled executor on which data collectors are executed */
     private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
-    private double allTimeAvgLatency = 0.0;
-    private int count = 0;
     private Date resetTime = Calendar.getInstance().getTime();
 
     private String name;
 
     public LatencyView(boolean isHttps) throws AxisFault {
         name = "nio-http" + (isHttps ? "s" : "");
-        scheduler.scheduleAtFixedRate(new ShortTermDataCollector(), SMALL_DATA_COLLECTION_PERIOD,
-                SMALL_DATA_COLLECTION_PERIOD, TimeUnit.SECONDS);
         scheduler.scheduleAtFixedRate(new LongTermDataCollector(), LARGE_DATA_COLLECTION_PERIOD,
                 LARGE_DATA_COLLECTION_PERIOD, TimeUnit.SECONDS);
 
@@ -131,33 +113,32 @@ public class LatencyView implements LatencyViewMBean {
                             long resArrival, long resDeparture) {
 
         long latency = (resDeparture - reqArrival) - (resArrival - reqDeparture);
-        lastLatency.set(latency);
-        latencyDataQueue.offer(latency);
+        recorder.record(latency);
     }
 
     @Override
     public double getAllTimeAvgLatency() {
-        return allTimeAvgLatency;
+        return recorder.getAllTimeMean();
     }
 
     @Override
     public double getLastMinuteAvgLatency() {
-        return getAverageLatencyByMinute(1);
+        return recorder.getMean(1);
     }
 
     @Override
     public double getLast5MinuteAvgLatency() {
-        return getAverageLatencyByMinute(5);
+        return recorder.getMean(5);
     }
 
     @Override
     public double getLast15MinuteAvgLatency() {
-        return getAverageLatencyByMinute(15);
+        return recorder.getMean(15);
     }
 
     @Override
     public double getLastHourAvgLatency() {
-        return getAverageLatencyByHour(1);
+        return recorder.getMean(60);
     }
 
     @Override
@@ -170,14 +151,30 @@ public class LatencyView implements LatencyViewMBean {
         return getAverageLatencyByHour(24);
     }
 
+    @Override
+    public Map getLastMinuteLatencyPercentiles() {
+        return recorder.getPercentiles(1);
+    }
+
+    @Override
+    public Map getLast5MinuteLatencyPercentiles() {
+        return recorder.getPercentiles(5);
+    }
+
+    @Override
+    public Map getLast15MinuteLatencyPercentiles() {
+        return recorder.getPercentiles(15);
+    }
+
+    @Override
+    public Map getLastHourLatencyPercentiles() {
+        return recorder.getPercentiles(60);
+    }
+
     @Override
     public void reset() {
-        lastLatency.set(0);
-        allTimeAvgLatency = 0.0;
-        latencyDataQueue.clear();
-        shortTermLatencyDataQueue.clear();
+        recorder.reset();
         longTermLatencyDataQueue.clear();
-        count = 0;
         resetTime = Calendar.getInstance().getTime();
     }
 
@@ -186,40 +183,15 @@ public class LatencyView implements LatencyViewMBean {
         return resetTime;
     }
 
-    private double getAverageLatencyByMinute(int n) {
-        int samples = n * SAMPLES_PER_MINUTE;
-        double sum = 0.0;
-        Long[] array = shortTermLatencyDataQueue.toArray(new Long[shortTermLatencyDataQueue.size()]);
-
-        if (samples > array.length) {
-            // If we don't have enough samples collected yet
-            // add up everything we have
-            samples = array.length;
-            for (Long anArray : array) {
-                sum += anArray;
-            }
-        } else {
-            // We have enough samples to make the right calculation
-            // Add up starting from the end of the queue (to give the most recent values)
-            for (int i = 0; i < samples; i++) {
-                sum += array[array.length - 1 - i];
-            }
-        }
-
-        if (samples == 0) {
-            return 0.0;
-        }
-        return sum/samples;
-    }
-
     private double getAverageLatencyByHour(int n) {
         int samples = n * SAMPLES_PER_HOUR;
         double sum = 0.0;
-        Long[] array = longTermLatencyDataQueue.toArray(new Long[longTermLatencyDataQueue.size()]);
+        Double[] array = longTermLatencyDataQueue.toArray(
+                new Double[longTermLatencyDataQueue.size()]);
 
         if (samples > array.length) {
             samples = array.length;
-            for (Long anArray : array) {
+            for (Double anArray : array) {
                 sum += anArray;
             }
         } else {
@@ -234,39 +206,10 @@ public class LatencyView implements LatencyViewMBean {
         return sum/samples;
     }
 
-    private class ShortTermDataCollector implements Runnable {
-        @Override
-        public void run() {
-            long latency = lastLatency.get();
-
-            // calculate all time average latency
-            int size = latencyDataQueue.size();
-            if (size > 0) {
-                long sum = 0;
-                for (int i = 0; i < size; i++) {
-                    sum += latencyDataQueue.poll();
-                }
-                allTimeAvgLatency = (allTimeAvgLatency * count + sum)/(count + size);
-                count = count + size;
-            }
-
-            if (shortTermLatencyDataQueue.size() == 0 && latency == 0) {
-                // we haven't started collecting data yet - skip ahead...
-                return;
-            }
-
-            // take a sample for the short term latency calculation
-            if (shortTermLatencyDataQueue.size() == SAMPLES_PER_MINUTE * 15) {
-                shortTermLatencyDataQueue.remove();
-            }
-            shortTermLatencyDataQueue.offer(latency);
-        }
-    }
-
     private class LongTermDataCollector implements Runnable {
         @Override
         public void run() {
-            long latency = lastLatency.get();
+            double latency = recorder.getMean(LARGE_DATA_COLLECTION_PERIOD / 60);
             if (longTermLatencyDataQueue.size() == 0 && latency == 0) {
                 return;
             }
@@ -277,4 +220,4 @@ public class LatencyView implements LatencyViewMBean {
             longTermLatencyDataQueue.offer(latency);
         }
     }
-}
\ No newline at end of file
+}
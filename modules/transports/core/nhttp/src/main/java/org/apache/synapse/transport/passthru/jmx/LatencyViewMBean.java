@@ -20,6 +20,7 @@
 package org.apache.synapse.transport.passthru.jmx;
 
 import java.util.Date;
+import java.util.Map;
 
 public interface LatencyViewMBean {
 
@@ -30,6 +31,10 @@ public interface LatencyViewMBean {
     public double getLastHourAvgLatency();
     public double getLast8HourAvgLatency();
     public double getLast24HourAvgLatency();
+    public Map getLastMinuteLatencyPercentiles();
+    public Map getLast5MinuteLatencyPercentiles();
+    public Map getLast15MinuteLatencyPercentiles();
+    public Map getLastHourLatencyPercentiles();
     public void reset();
     public Date getLastResetTime();
 
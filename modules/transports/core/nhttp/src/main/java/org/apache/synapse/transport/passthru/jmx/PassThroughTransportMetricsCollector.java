@@ -21,6 +21,7 @@ package org.apache.synapse.transport.passthru.jmx;
 
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.transport.base.MetricsCollector;
+import org.apache.synapse.transport.passthru.connections.TargetConnections;
 
 /**
  * <p>This simple extension of the Axis2 transport MetricsCollector implementation,
@@ -57,6 +58,21 @@ public class PassThroughTransportMetricsCollector extends MetricsCollector {
         view.disconnected();
     }
 
+    /**
+     * Report the time taken to respond to a request. For a listener this is the time from
+     * receiving a request to writing the response, and for a sender the time from sending a
+     * request to receiving the response.
+     *
+     * @param responseTime the response time in milliseconds
+     */
+    public void notifyResponseTime(long responseTime) {
+        view.notifyResponseTime(responseTime);
+    }
+
+    public void setTargetConnections(TargetConnections targetConnections) {
+        view.setTargetConnections(targetConnections);
+    }
+
     @Override
     public void notifyReceivedMessageSize(long l) {
         super.notifyReceivedMessageSize(l);
@@ -18,66 +18,430 @@
  */
 package org.apache.synapse.transport.passthru.util;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.nio.IOControl;
 import org.apache.http.nio.util.ByteBufferAllocator;
 import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.synapse.commons.jmx.MBeanRegistrar;
 
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * A pool of the buffers used by the pass-through transport. Buffers are handed out in a number
+ * of size classes, each twice as large as the previous one, starting from the configured IO
+ * buffer size. Each size class keeps a pool of released buffers, and each thread keeps a small
+ * cache of released buffers in front of the pools, so that most buffers are taken and released
+ * without any contention.
+ *
+ * The number of bytes in the buffers handed out is tracked against an optional memory ceiling.
+ * Connections may be throttled while the ceiling is exceeded, and resume reading as soon as
+ * enough buffers are released. Buffers which are garbage collected without being released are
+ * detected and dropped from the accounting, and are reported if leak detection is enabled.
+ */
 public class BufferFactory {
 
-    private volatile ControlledByteBuffer [] buffers;
+    private static final Log log = LogFactory.getLog(BufferFactory.class);
 
-    private volatile int marker = -1;
+    public static final String BUFFER_POOL_VIEW = "PassThroughBufferPool";
 
-    private ByteBufferAllocator allocator = null;
+    private static final int THREAD_CACHE_SIZE = 8;
+
+    private final SizeClass[] sizeClasses;
 
-    private Lock lock = new ReentrantLock();
+    private ByteBufferAllocator allocator = null;
 
     private int bufferSize = 1024 * 8;
 
+    /** The maximum number of bytes in the buffers handed out, or 0 if there is no limit */
+    private final long memoryCeiling;
+
+    private final boolean leakDetection;
+
+    private final AtomicLong bytesInUse = new AtomicLong(0);
+    private final AtomicLong throttleCount = new AtomicLong(0);
+
+    /** Trackers of all the buffers created, which have to stay reachable to be enqueued */
+    private final Set<BufferTracker> trackers = Collections.newSetFromMap(
+            new ConcurrentHashMap<BufferTracker, Boolean>());
+    private final ReferenceQueue<ControlledByteBuffer> collected =
+            new ReferenceQueue<ControlledByteBuffer>();
+
+    /** The connections throttled, each only once however often it is throttled */
+    private final Set<IOControl> throttled = Collections.newSetFromMap(
+            new ConcurrentHashMap<IOControl, Boolean>());
+
+    private final ThreadLocal<ThreadCache> threadCache = new ThreadLocal<ThreadCache>() {
+        @Override
+        protected ThreadCache initialValue() {
+            return new ThreadCache(sizeClasses.length);
+        }
+    };
+
     public BufferFactory(int bufferSize, ByteBufferAllocator allocator, int size) {
+        this(bufferSize, allocator, size, 1, 0, false);
+    }
+
+    /**
+     * Create a buffer factory
+     *
+     * @param bufferSize size of the buffers in the smallest size class
+     * @param allocator allocator of the buffers, heap buffers are allocated if this is null
+     * @param size number of buffers pooled in the smallest size class, each larger size class
+     *             pools half as many buffers as the previous one
+     * @param sizeClassCount number of size classes
+     * @param memoryCeiling maximum number of bytes in the buffers handed out, before
+     *                      connections are throttled, or 0 if there is no limit
+     * @param leakDetection whether to report buffers which are not released
+     */
+    public BufferFactory(int bufferSize, ByteBufferAllocator allocator, int size,
+                         int sizeClassCount, long memoryCeiling, boolean leakDetection) {
         this.bufferSize = bufferSize;
         if (allocator != null) {
             this.allocator = allocator;
         } else {
             this.allocator = HeapByteBufferAllocator.INSTANCE;
         }
+        this.memoryCeiling = memoryCeiling;
+        this.leakDetection = leakDetection;
 
-        buffers = new ControlledByteBuffer[size];
+        sizeClasses = new SizeClass[Math.max(1, sizeClassCount)];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass(i, bufferSize << i, Math.max(4, size >> i));
+        }
     }
 
+    /**
+     * Register a JMX MBean for each size class of this factory
+     */
+    public void registerMBeans() {
+        for (SizeClass sizeClass : sizeClasses) {
+            MBeanRegistrar.getInstance().registerMBean(new BufferPoolView(this, sizeClass),
+                    BUFFER_POOL_VIEW, String.valueOf(sizeClass.bufferSize));
+        }
+    }
+
+    /**
+     * Get a buffer of the smallest size class
+     *
+     * @return a cleared buffer in input mode
+     */
     public ControlledByteBuffer getBuffer() {
-        if (marker == -1) {
-            return new ControlledByteBuffer(allocator.allocate(bufferSize));
+        return getBuffer(bufferSize);
+    }
+
+    /**
+     * Get a buffer of the smallest size class with at least the given capacity. A buffer larger
+     * than the largest size class is allocated as requested, and is not pooled.
+     *
+     * @param minCapacity the minimum capacity of the buffer
+     * @return a cleared buffer in input mode
+     */
+    public ControlledByteBuffer getBuffer(int minCapacity) {
+        expungeCollectedBuffers();
+
+        SizeClass sizeClass = null;
+        for (SizeClass candidate : sizeClasses) {
+            if (candidate.bufferSize >= minCapacity) {
+                sizeClass = candidate;
+                break;
+            }
+        }
+
+        ControlledByteBuffer buffer = null;
+        if (sizeClass != null) {
+            buffer = threadCache.get().poll(sizeClass.index);
+            if (buffer == null) {
+                buffer = sizeClass.poll();
+            }
+        }
+
+        if (buffer != null) {
+            buffer.clear();
+            buffer.forceSetInputMode();
+            sizeClass.reusedCount.incrementAndGet();
         } else {
+            int capacity = sizeClass != null ? sizeClass.bufferSize : minCapacity;
+            buffer = new ControlledByteBuffer(allocator.allocate(capacity));
+            BufferTracker tracker = new BufferTracker(buffer, sizeClass, capacity, collected);
+            trackers.add(tracker);
+            buffer.setTracker(tracker);
+            if (sizeClass != null) {
+                sizeClass.allocatedCount.incrementAndGet();
+            }
+        }
+
+        BufferTracker tracker = buffer.getTracker();
+        tracker.inUse.set(true);
+        tracker.owner = null;
+        if (leakDetection) {
+            tracker.allocationTrace = new Throwable("Buffer taken by thread: " +
+                    Thread.currentThread().getName());
+        }
+        bytesInUse.addAndGet(tracker.capacity);
+        return buffer;
+    }
+
+    /**
+     * Return the given buffer to the pool. A buffer must not be used by the caller once it is
+     * released, and releasing a buffer more than once has no effect.
+     *
+     * @param buffer a buffer taken from this factory
+     */
+    public void release(ControlledByteBuffer buffer) {
+        BufferTracker tracker = buffer.getTracker();
+        if (tracker == null) {
+            return;
+        }
+        if (!tracker.inUse.compareAndSet(true, false)) {
+            log.warn("Ignoring an attempt to release a buffer which is already released" +
+                    (tracker.owner != null ? ", owned by : " + tracker.owner : ""));
+            return;
+        }
+        bytesInUse.addAndGet(-tracker.capacity);
+
+        SizeClass sizeClass = tracker.sizeClass;
+        if (sizeClass != null) {
+            sizeClass.releasedCount.incrementAndGet();
+            buffer.clear();
+            buffer.forceSetInputMode();
+            if (!threadCache.get().offer(sizeClass.index, buffer) && !sizeClass.offer(buffer)) {
+                discard(tracker);
+            }
+        } else {
+            discard(tracker);
+        }
+
+        resumeThrottledConnections();
+    }
+
+    /**
+     * Whether the buffers handed out exceed the memory ceiling of this factory
+     *
+     * @return true if the connections should be throttled
+     */
+    public boolean isExhausted() {
+        return memoryCeiling > 0 && bytesInUse.get() >= memoryCeiling;
+    }
+
+    /**
+     * Suspend the input of the given connection, until the buffers handed out are back within
+     * the memory ceiling. Reads requested by the consumers of the data still go ahead.
+     * Throttling a connection which is throttled already has no further effect.
+     *
+     * @param conn the connection to be throttled
+     */
+    public void throttle(IOControl conn) {
+        conn.suspendInput();
+        if (throttled.add(conn)) {
+            throttleCount.incrementAndGet();
+        }
+        // a buffer may have been released before the connection was queued
+        resumeThrottledConnections();
+    }
+
+    private void resumeThrottledConnections() {
+        if (throttled.isEmpty() || isExhausted()) {
+            return;
+        }
+        Iterator<IOControl> connections = throttled.iterator();
+        while (connections.hasNext()) {
+            IOControl conn = connections.next();
+            connections.remove();
+            conn.requestInput();
+        }
+    }
+
+    /**
+     * Drop the buffers garbage collected without being released from the accounting
+     */
+    private void expungeCollectedBuffers() {
+        BufferTracker tracker;
+        boolean expunged = false;
+        while ((tracker = (BufferTracker) collected.poll()) != null) {
+            trackers.remove(tracker);
+            if (tracker.inUse.get()) {
+                bytesInUse.addAndGet(-tracker.capacity);
+                expunged = true;
+                if (tracker.sizeClass != null) {
+                    tracker.sizeClass.leakedCount.incrementAndGet();
+                }
+                if (leakDetection) {
+                    log.warn("A buffer of " + tracker.capacity + " bytes" +
+                            (tracker.owner != null ? " owned by : " + tracker.owner : "") +
+                            " was garbage collected without being released",
+                            tracker.allocationTrace);
+                }
+            }
+        }
+        if (expunged) {
+            resumeThrottledConnections();
+        }
+    }
+
+    private void discard(BufferTracker tracker) {
+        trackers.remove(tracker);
+        tracker.clear();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getMemoryCeiling() {
+        return memoryCeiling;
+    }
+
+    public long getBytesInUse() {
+        return bytesInUse.get();
+    }
+
+    public long getThrottleCount() {
+        return throttleCount.get();
+    }
+
+    /**
+     * The pool of the released buffers of a size
+     */
+    static class SizeClass {
+
+        private final int index;
+        private final int bufferSize;
+
+        private final ControlledByteBuffer[] buffers;
+        private volatile int marker = -1;
+        private final Lock lock = new ReentrantLock();
+
+        private final AtomicLong allocatedCount = new AtomicLong(0);
+        private final AtomicLong reusedCount = new AtomicLong(0);
+        private final AtomicLong releasedCount = new AtomicLong(0);
+        private final AtomicLong leakedCount = new AtomicLong(0);
+
+        private SizeClass(int index, int bufferSize, int size) {
+            this.index = index;
+            this.bufferSize = bufferSize;
+            this.buffers = new ControlledByteBuffer[size];
+        }
+
+        private ControlledByteBuffer poll() {
+            if (marker == -1) {
+                return null;
+            }
+            lock.lock();
             try {
-                lock.lock();
                 if (marker >= 0) {
-                    ControlledByteBuffer controlledByteBuffer = buffers[marker];
-                    controlledByteBuffer.clear();
-                    controlledByteBuffer.forceSetInputMode();
-                    buffers[marker] = null;
-                    marker--;
-                    return controlledByteBuffer;
+                    ControlledByteBuffer buffer = buffers[marker];
+                    buffers[marker--] = null;
+                    return buffer;
                 }
             } finally {
                 lock.unlock();
             }
+            return null;
         }
-        return new ControlledByteBuffer(allocator.allocate(bufferSize));
-    }
 
-    public void release(ControlledByteBuffer buffer) {
-        try {
+        private boolean offer(ControlledByteBuffer buffer) {
             lock.lock();
-            if (marker < buffers.length - 1) {
-                buffer.clear();
-                buffer.forceSetInputMode();
-                buffers[++marker] = buffer;
+            try {
+                if (marker < buffers.length - 1) {
+                    buffers[++marker] = buffer;
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            return false;
+        }
+
+        int getBufferSize() {
+            return bufferSize;
+        }
+
+        int getPooledCount() {
+            return marker + 1;
+        }
+
+        long getAllocatedCount() {
+            return allocatedCount.get();
+        }
+
+        long getReusedCount() {
+            return reusedCount.get();
+        }
+
+        long getReleasedCount() {
+            return releasedCount.get();
+        }
+
+        long getLeakedCount() {
+            return leakedCount.get();
+        }
+    }
+
+    /**
+     * Tracks a buffer created by the factory, and is enqueued once the buffer is garbage
+     * collected
+     */
+    static class BufferTracker extends PhantomReference<ControlledByteBuffer> {
+
+        private final SizeClass sizeClass;
+        private final int capacity;
+        private final AtomicBoolean inUse = new AtomicBoolean(false);
+        private volatile String owner;
+        private volatile Throwable allocationTrace;
+
+        private BufferTracker(ControlledByteBuffer buffer, SizeClass sizeClass, int capacity,
+                              ReferenceQueue<ControlledByteBuffer> queue) {
+            super(buffer, queue);
+            this.sizeClass = sizeClass;
+            this.capacity = capacity;
+        }
+
+        void setOwner(String owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Buffers released by a thread, kept for the next buffers taken by the same thread
+     */
+    private static class ThreadCache {
+
+        private final ControlledByteBuffer[][] buffers;
+        private final int[] counts;
+
+        private ThreadCache(int sizeClassCount) {
+            buffers = new ControlledByteBuffer[sizeClassCount][];
+            counts = new int[sizeClassCount];
+            for (int i = 0; i < sizeClassCount; i++) {
+                buffers[i] = new ControlledByteBuffer[Math.max(1, THREAD_CACHE_SIZE >> i)];
+            }
+        }
+
+        private ControlledByteBuffer poll(int index) {
+            if (counts[index] == 0) {
+                return null;
+            }
+            ControlledByteBuffer buffer = buffers[index][--counts[index]];
+            buffers[index][counts[index]] = null;
+            return buffer;
+        }
+
+        private boolean offer(int index, ControlledByteBuffer buffer) {
+            if (counts[index] == buffers[index].length) {
+                return false;
             }
-        } finally {
-            lock.unlock();
+            buffers[index][counts[index]++] = buffer;
+            return true;
         }
     }
 }
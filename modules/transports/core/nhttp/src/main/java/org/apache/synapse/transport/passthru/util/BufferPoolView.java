@@ -0,0 +1,77 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru.util;
+
+public class BufferPoolView implements BufferPoolViewMBean {
+
+    private BufferFactory factory;
+
+    private BufferFactory.SizeClass sizeClass;
+
+    BufferPoolView(BufferFactory factory, BufferFactory.SizeClass sizeClass) {
+        this.factory = factory;
+        this.sizeClass = sizeClass;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return sizeClass.getBufferSize();
+    }
+
+    @Override
+    public int getPooledCount() {
+        return sizeClass.getPooledCount();
+    }
+
+    @Override
+    public long getAllocatedCount() {
+        return sizeClass.getAllocatedCount();
+    }
+
+    @Override
+    public long getReusedCount() {
+        return sizeClass.getReusedCount();
+    }
+
+    @Override
+    public long getReleasedCount() {
+        return sizeClass.getReleasedCount();
+    }
+
+    @Override
+    public long getLeakedCount() {
+        return sizeClass.getLeakedCount();
+    }
+
+    @Override
+    public long getBytesInUse() {
+        return factory.getBytesInUse();
+    }
+
+    @Override
+    public long getMemoryCeiling() {
+        return factory.getMemoryCeiling();
+    }
+
+    @Override
+    public long getThrottleCount() {
+        return factory.getThrottleCount();
+    }
+}
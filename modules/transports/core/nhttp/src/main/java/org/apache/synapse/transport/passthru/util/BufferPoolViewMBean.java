@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru.util;
+
+/**
+ * JMX MBean interface for monitoring a size class of the pass-through transport buffer pool.
+ */
+public interface BufferPoolViewMBean {
+
+    /**
+     * Get the size of the buffers in this size class
+     *
+     * @return An integer
+     */
+    public int getBufferSize();
+
+    /**
+     * Get the number of released buffers kept in the pool of this size class, excluding the
+     * buffers cached by the individual threads
+     *
+     * @return An integer
+     */
+    public int getPooledCount();
+
+    /**
+     * Get the number of buffers of this size class allocated, since they could not be reused
+     *
+     * @return A long
+     */
+    public long getAllocatedCount();
+
+    /**
+     * Get the number of buffers of this size class handed out by reusing a released buffer
+     *
+     * @return A long
+     */
+    public long getReusedCount();
+
+    /**
+     * Get the number of buffers of this size class released
+     *
+     * @return A long
+     */
+    public long getReleasedCount();
+
+    /**
+     * Get the number of buffers of this size class garbage collected without being released
+     *
+     * @return A long
+     */
+    public long getLeakedCount();
+
+    /**
+     * Get the number of bytes in the buffers handed out, across all the size classes
+     *
+     * @return A long
+     */
+    public long getBytesInUse();
+
+    /**
+     * Get the maximum number of bytes in the buffers handed out before the connections are
+     * throttled, or 0 if there is no limit
+     *
+     * @return A long
+     */
+    public long getMemoryCeiling();
+
+    /**
+     * Get the number of times a connection was throttled, since the memory ceiling was reached
+     *
+     * @return A long
+     */
+    public long getThrottleCount();
+
+}
@@ -31,10 +31,32 @@ public class ControlledByteBuffer {
 
     private AtomicBoolean inputMode = new AtomicBoolean(true);
 
+    /** Tracker of the buffer, if it was created by a BufferFactory */
+    private BufferFactory.BufferTracker tracker;
+
     public ControlledByteBuffer(ByteBuffer byteBuffer) {
         this.byteBuffer = byteBuffer;
     }
 
+    BufferFactory.BufferTracker getTracker() {
+        return tracker;
+    }
+
+    void setTracker(BufferFactory.BufferTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Record the owner of this buffer, to be reported if the buffer is not released
+     *
+     * @param owner name of the owner of the buffer
+     */
+    public void setOwner(String owner) {
+        if (tracker != null) {
+            tracker.setOwner(owner);
+        }
+    }
+
     public ByteBuffer getByteBuffer() {
         return this.byteBuffer;
     }
@@ -20,6 +20,7 @@
 package org.apache.synapse.transport.passthru.util;
 
 import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axiom.util.blob.OverflowBlob;
 import org.apache.axis2.addressing.EndpointReference;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.Constants;
@@ -44,6 +45,8 @@ import org.apache.synapse.transport.passthru.connections.TargetConnections;
 import org.apache.synapse.transport.utils.conn.SynapseNHttpClientConnection;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Iterator;
 
@@ -240,6 +243,42 @@ public class PassThroughTransportUtils {
                 PassThroughConstants.MESSAGE_BUILDER_INVOKED));
     }
 
+    /**
+     * Release the given blob once the message has been mediated by the worker which received
+     * it. By then the message has been sent out, so that the payload held in the blob has
+     * been serialized
+     *
+     * @param messageContext the message whose payload is held in the blob
+     * @param blob the blob to be released
+     */
+    @SuppressWarnings("unchecked")
+    public static void releaseAfterMediation(MessageContext messageContext, OverflowBlob blob) {
+        List<OverflowBlob> blobs = (List<OverflowBlob>) messageContext.getProperty(
+                PassThroughConstants.TEMPORARY_BLOBS);
+        if (blobs == null) {
+            blobs = new ArrayList<OverflowBlob>();
+            messageContext.setProperty(PassThroughConstants.TEMPORARY_BLOBS, blobs);
+        }
+        blobs.add(blob);
+    }
+
+    /**
+     * Release the blobs registered through {@link #releaseAfterMediation}
+     *
+     * @param messageContext the message which has been mediated
+     */
+    @SuppressWarnings("unchecked")
+    public static void releaseTemporaryBlobs(MessageContext messageContext) {
+        List<OverflowBlob> blobs = (List<OverflowBlob>) messageContext.getProperty(
+                PassThroughConstants.TEMPORARY_BLOBS);
+        if (blobs != null) {
+            messageContext.removeProperty(PassThroughConstants.TEMPORARY_BLOBS);
+            for (OverflowBlob blob : blobs) {
+                blob.release();
+            }
+        }
+    }
+
     public static void finishUsingSourceConnection(HttpResponse response,
                                                    NHttpServerConnection conn,
                                                    SourceConnections connections) {
@@ -85,6 +85,18 @@ public class RelayUtils {
 
         final Pipe pipe = (Pipe) messageContext.getProperty(PassThroughConstants.PASS_THROUGH_PIPE);
 		if (pipe != null && forcePTBuild && !PassThroughTransportUtils.builderInvoked(messageContext)) {
+            if (messageContext.isPropertyTrue(PassThroughConstants.HEADER_ONLY_ROUTING)) {
+                // the body is relayed as it is, so content aware mediation cannot be allowed
+                String msg = "The body of a message routed in the header only mode cannot be " +
+                        "built. Remove the content aware mediators from the service : " +
+                        (messageContext.getAxisService() != null ?
+                                messageContext.getAxisService().getName() : "");
+                log.error(msg);
+                consumeAndDiscardMessage(messageContext);
+                messageContext.setProperty(PassThroughConstants.MESSAGE_BUILDER_INVOKED,
+                        Boolean.TRUE);
+                throw new AxisFault(msg);
+            }
 			InputStream in = pipe.getInputStream();
         	buildMessage(messageContext, earlyBuild, in);
             return;
@@ -0,0 +1,333 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru;
+
+import junit.framework.TestCase;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.synapse.transport.passthru.config.BaseConfiguration;
+import org.apache.synapse.transport.passthru.util.ControlledByteBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LockFreePipeTest extends TestCase {
+
+    public void testStreamThroughRing() throws Exception {
+        final byte[] data = new byte[256 * 1024];
+        new Random(42).nextBytes(data);
+
+        final TestIOControl producer = new TestIOControl();
+        final LockFreePipe pipe = new LockFreePipe(producer, new ControlledByteBuffer(
+                HeapByteBufferAllocator.INSTANCE.allocate(1000)), "test", null);
+        final TestDecoder decoder = new TestDecoder(data);
+
+        Thread reactor = new Thread() {
+            public void run() {
+                try {
+                    while (!decoder.isCompleted()) {
+                        if (producer.inputRequested) {
+                            pipe.produce(decoder);
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                } catch (Exception e) {
+                    pipe.producerError();
+                }
+            }
+        };
+        reactor.start();
+
+        InputStream in = pipe.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[777];
+        int read;
+        while ((read = in.read(chunk, 0, chunk.length)) != -1) {
+            out.write(chunk, 0, read);
+        }
+        reactor.join(10000);
+
+        assertEquals(data.length, out.size());
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        assertFalse(pipe.isConsumeRequired());
+    }
+
+    public void testOutputStreamToConsumer() throws Exception {
+        final byte[] data = new byte[256 * 1024];
+        new Random(42).nextBytes(data);
+
+        final LockFreePipe pipe = new LockFreePipe(new ControlledByteBuffer(
+                HeapByteBufferAllocator.INSTANCE.allocate(1000)), "test", new TestConfiguration());
+        TestIOControl consumer = new TestIOControl();
+        pipe.attachConsumer(consumer);
+        final OutputStream out = pipe.getOutputStream();
+
+        Thread serializer = new Thread() {
+            public void run() {
+                try {
+                    Random random = new Random(3);
+                    int position = 0;
+                    while (position < data.length) {
+                        int length = Math.min(data.length - position, 1 + random.nextInt(5000));
+                        out.write(data, position, length);
+                        position += length;
+                    }
+                    pipe.setSerializationComplete(true);
+                } catch (Exception e) {
+                    pipe.producerError();
+                }
+            }
+        };
+        serializer.start();
+
+        TestEncoder encoder = new TestEncoder();
+        consumeAll(pipe, consumer, encoder);
+        serializer.join(10000);
+
+        assertTrue(Arrays.equals(data, encoder.toByteArray()));
+    }
+
+    public void testWrapAroundWithConcurrentProducerAndConsumer() throws Exception {
+        final byte[] data = new byte[512 * 1024];
+        new Random(11).nextBytes(data);
+
+        // a ring size which is not a divisor of the reads and the writes, so that the data
+        // wraps around the end of the ring at changing offsets
+        final TestIOControl producer = new TestIOControl();
+        final LockFreePipe pipe = new LockFreePipe(producer, new ControlledByteBuffer(
+                HeapByteBufferAllocator.INSTANCE.allocate(997)), "test", null);
+        TestIOControl consumer = new TestIOControl();
+        pipe.attachConsumer(consumer);
+        final TestDecoder decoder = new TestDecoder(data);
+
+        Thread reactor = new Thread() {
+            public void run() {
+                try {
+                    while (!decoder.isCompleted()) {
+                        if (producer.inputRequested) {
+                            pipe.produce(decoder);
+                        } else {
+                            Thread.yield();
+                        }
+                    }
+                } catch (Exception e) {
+                    pipe.producerError();
+                }
+            }
+        };
+        reactor.start();
+
+        TestEncoder encoder = new TestEncoder();
+        consumeAll(pipe, consumer, encoder);
+        reactor.join(10000);
+
+        assertTrue(Arrays.equals(data, encoder.toByteArray()));
+        assertFalse(pipe.isConsumeRequired());
+    }
+
+    public void testProducerErrorEndsInputStream() throws Exception {
+        final TestIOControl producer = new TestIOControl();
+        final LockFreePipe pipe = new LockFreePipe(producer, new ControlledByteBuffer(
+                HeapByteBufferAllocator.INSTANCE.allocate(1000)), "test", null);
+
+        Thread reactor = new Thread() {
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignore) {
+                }
+                pipe.producerError();
+            }
+        };
+        reactor.start();
+
+        // the reader is parked until the producer fails
+        assertEquals(-1, pipe.getInputStream().read());
+        reactor.join(10000);
+        assertFalse(pipe.isConsumeRequired());
+
+        // and the consumer completes the message right away
+        pipe.attachConsumer(new TestIOControl());
+        TestEncoder encoder = new TestEncoder();
+        assertEquals(-1, pipe.consume(encoder));
+        assertTrue(encoder.isCompleted());
+    }
+
+    public void testConsumerErrorReleasesWriterAndProducer() throws Exception {
+        final LockFreePipe pipe = new LockFreePipe(new ControlledByteBuffer(
+                HeapByteBufferAllocator.INSTANCE.allocate(1000)), "test", new TestConfiguration());
+        pipe.attachConsumer(new TestIOControl());
+        final OutputStream out = pipe.getOutputStream();
+
+        // nothing consumes the output, so the writer is parked once the output ring is full
+        final boolean[] written = new boolean[1];
+        Thread serializer = new Thread() {
+            public void run() {
+                try {
+                    out.write(new byte[1024 * 1024]);
+                    written[0] = true;
+                } catch (Exception ignore) {
+                }
+            }
+        };
+        serializer.start();
+        Thread.sleep(100);
+        assertTrue(serializer.isAlive());
+
+        pipe.consumerError();
+        serializer.join(10000);
+        assertFalse(serializer.isAlive());
+        assertTrue(written[0]);
+
+        // the data read from a connection is discarded, so that the producer can complete
+        TestIOControl producer = new TestIOControl();
+        LockFreePipe input = new LockFreePipe(producer, new ControlledByteBuffer(
+                HeapByteBufferAllocator.INSTANCE.allocate(1000)), "test", null);
+        input.consumerError();
+        TestDecoder decoder = new TestDecoder(new byte[10000]);
+        while (!decoder.isCompleted()) {
+            assertTrue(producer.inputRequested);
+            input.produce(decoder);
+        }
+        assertFalse(input.isConsumeRequired());
+        assertEquals(-1, input.getInputStream().read());
+    }
+
+    /**
+     * Consume the data of the pipe as the I/O reactor would, whenever the consumer output
+     * is requested, until the encoder is completed
+     */
+    private static void consumeAll(LockFreePipe pipe, TestIOControl consumer,
+                                   TestEncoder encoder) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!encoder.isCompleted()) {
+            assertTrue("Timed out consuming the pipe", System.currentTimeMillis() < deadline);
+            if (consumer.outputRequested) {
+                pipe.consume(encoder);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private static class TestDecoder implements ContentDecoder {
+
+        private final byte[] data;
+        private int position = 0;
+        private final Random random = new Random(7);
+
+        private TestDecoder(byte[] data) {
+            this.data = data;
+        }
+
+        public synchronized int read(ByteBuffer dst) {
+            if (position == data.length) {
+                return -1;
+            }
+            int length = Math.min(dst.remaining(),
+                    Math.min(data.length - position, 1 + random.nextInt(3000)));
+            dst.put(data, position, length);
+            position += length;
+            return length;
+        }
+
+        public synchronized boolean isCompleted() {
+            return position == data.length;
+        }
+    }
+
+    /**
+     * Writes out a random number of bytes at a time
+     */
+    private static class TestEncoder implements ContentEncoder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Random random = new Random(5);
+        private boolean completed = false;
+
+        public int write(ByteBuffer src) {
+            int length = Math.min(src.remaining(), random.nextInt(3000));
+            byte[] chunk = new byte[length];
+            src.get(chunk);
+            out.write(chunk, 0, length);
+            return length;
+        }
+
+        public void complete() {
+            completed = true;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        private byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    private static class TestIOControl implements IOControl {
+
+        private volatile boolean inputRequested = true;
+        private volatile boolean outputRequested = true;
+
+        public void requestInput() {
+            inputRequested = true;
+        }
+
+        public void suspendInput() {
+            inputRequested = false;
+        }
+
+        public void requestOutput() {
+            outputRequested = true;
+        }
+
+        public void suspendOutput() {
+            outputRequested = false;
+        }
+
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * Provides the buffer of the output stream of a pipe
+     */
+    private static class TestConfiguration extends BaseConfiguration {
+
+        private TestConfiguration() {
+            super(null, null, null);
+        }
+
+        @Override
+        protected HttpProcessor initHttpProcessor() {
+            return null;
+        }
+    }
+}
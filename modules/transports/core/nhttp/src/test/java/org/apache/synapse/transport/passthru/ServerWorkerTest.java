@@ -0,0 +1,76 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru;
+
+import junit.framework.TestCase;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.description.Parameter;
+import org.apache.axis2.engine.AxisConfiguration;
+
+public class ServerWorkerTest extends TestCase {
+
+    public void testServiceName() {
+        assertEquals("Foo", ServerWorker.getServiceName("/services/Foo", "services"));
+        assertEquals("Foo", ServerWorker.getServiceName("/services/Foo/", "services"));
+        assertEquals("Foo", ServerWorker.getServiceName("/services/Foo/op/1", "services"));
+        assertEquals("Foo", ServerWorker.getServiceName("/services/Foo?wsdl", "services"));
+        assertEquals("Foo.Endpoint", ServerWorker.getServiceName(
+                "http://localhost:8280/services/Foo.Endpoint/op", "services"));
+        assertEquals("Foo", ServerWorker.getServiceName("/services/Foo", "/services/"));
+        assertEquals("Foo", ServerWorker.getServiceName("/soap/services/Foo", "soap/services"));
+    }
+
+    public void testNotAServiceName() {
+        // the service path must start the path of the request
+        assertNull(ServerWorker.getServiceName("/api/services/Foo", "services"));
+        assertNull(ServerWorker.getServiceName("/foo?next=/services/Foo", "services"));
+        assertNull(ServerWorker.getServiceName("http://localhost:8280/api/services/Foo",
+                "services"));
+        // and be a complete path segment
+        assertNull(ServerWorker.getServiceName("/servicesFoo", "services"));
+        assertNull(ServerWorker.getServiceName("/myservices/Foo", "services"));
+        assertNull(ServerWorker.getServiceName("/services", "services"));
+        assertNull(ServerWorker.getServiceName("/services/", "services"));
+        assertNull(ServerWorker.getServiceName("/services/?wsdl", "services"));
+        assertNull(ServerWorker.getServiceName("http://localhost:8280", "services"));
+    }
+
+    public void testHeaderOnlyRoutingService() throws Exception {
+        AxisConfiguration axisCfg = new AxisConfiguration();
+        ConfigurationContext cfgCtx = new ConfigurationContext(axisCfg);
+        cfgCtx.setServicePath("services");
+
+        AxisService headerOnly = new AxisService("HeaderOnly");
+        headerOnly.addParameter(new Parameter(
+                PassThroughConstants.HEADER_ONLY_ROUTING_PARAM_NAME, "true"));
+        axisCfg.addService(headerOnly);
+        axisCfg.addService(new AxisService("Regular"));
+
+        assertSame(headerOnly, ServerWorker.getHeaderOnlyRoutingService(
+                cfgCtx, "/services/HeaderOnly/op?x=1"));
+        assertSame(headerOnly, ServerWorker.getHeaderOnlyRoutingService(
+                cfgCtx, "http://localhost:8280/services/HeaderOnly"));
+        assertNull(ServerWorker.getHeaderOnlyRoutingService(cfgCtx, "/services/Regular"));
+        assertNull(ServerWorker.getHeaderOnlyRoutingService(cfgCtx, "/services/Unknown"));
+        assertNull(ServerWorker.getHeaderOnlyRoutingService(
+                cfgCtx, "/api/services/HeaderOnly"));
+    }
+}
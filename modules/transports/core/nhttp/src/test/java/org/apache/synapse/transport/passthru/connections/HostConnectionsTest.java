@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru.connections;
+
+import junit.framework.TestCase;
+import org.apache.http.HttpConnectionMetrics;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+public class HostConnectionsTest extends TestCase {
+
+    public void testMostRecentlyReleasedConnectionIsReused() {
+        HostConnections pool = new HostConnections("localhost", 8280, 10);
+        NHttpClientConnection first = newConnection();
+        NHttpClientConnection second = newConnection();
+        pool.addConnection(first);
+        pool.addConnection(second);
+        assertEquals(2, pool.getBusyConnectionCount());
+
+        assertTrue(pool.release(first));
+        assertTrue(pool.release(second));
+        assertEquals(2, pool.getFreeConnectionCount());
+        assertEquals(0, pool.getBusyConnectionCount());
+
+        assertSame(second, pool.getConnection());
+        assertSame(first, pool.getConnection());
+        assertNull(pool.getConnection());
+    }
+
+    public void testForget() {
+        HostConnections pool = new HostConnections("localhost", 8280, 10);
+        NHttpClientConnection conn = newConnection();
+        pool.addConnection(conn);
+        pool.release(conn);
+        pool.forget(conn);
+        assertEquals(0, pool.getFreeConnectionCount());
+        assertEquals(0, pool.getBusyConnectionCount());
+        assertNull(pool.getConnection());
+    }
+
+    public void testPendingConnectionsAreBounded() {
+        HostConnections pool = new HostConnections("localhost", 8280, 2);
+        assertTrue(pool.reservePendingConnection());
+        assertTrue(pool.reservePendingConnection());
+        assertFalse(pool.reservePendingConnection());
+
+        pool.pendingConnectionSucceeded();
+        pool.addConnection(newConnection());
+        assertFalse(pool.reservePendingConnection());
+
+        pool.pendingConnectionFailed();
+        assertTrue(pool.reservePendingConnection());
+    }
+
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        HostConnections pool = new HostConnections("localhost", 8280, 10, 1000, 0);
+        NHttpClientConnection conn = newConnection();
+        pool.addConnection(conn);
+        pool.release(conn);
+
+        long now = System.currentTimeMillis();
+        assertTrue(pool.evictConnections(now).isEmpty());
+        List<NHttpClientConnection> evicted = pool.evictConnections(now + 5000);
+        assertEquals(1, evicted.size());
+        assertSame(conn, evicted.get(0));
+        assertNull(pool.getConnection());
+    }
+
+    public void testExpiredConnectionIsNotReleased() throws Exception {
+        HostConnections pool = new HostConnections("localhost", 8280, 10, 0, 1);
+        NHttpClientConnection conn = newConnection();
+        pool.addConnection(conn);
+        Thread.sleep(10);
+        assertFalse(pool.release(conn));
+        assertEquals(0, pool.getFreeConnectionCount());
+    }
+
+    private NHttpClientConnection newConnection() {
+        final HttpContext context = new BasicHttpContext();
+        final HttpConnectionMetrics metrics = (HttpConnectionMetrics) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] { HttpConnectionMetrics.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return method.getReturnType() == long.class ? 0L : null;
+                    }
+                });
+        return (NHttpClientConnection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { NHttpClientConnection.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if ("getContext".equals(name)) {
+                            return context;
+                        } else if ("getMetrics".equals(name)) {
+                            return metrics;
+                        } else if ("isOpen".equals(name)) {
+                            return Boolean.TRUE;
+                        } else if ("hashCode".equals(name)) {
+                            return System.identityHashCode(proxy);
+                        } else if ("equals".equals(name)) {
+                            return proxy == args[0];
+                        }
+                        return null;
+                    }
+                });
+    }
+}
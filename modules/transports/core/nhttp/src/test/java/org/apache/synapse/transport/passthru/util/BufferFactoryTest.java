@@ -0,0 +1,133 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru.util;
+
+import junit.framework.TestCase;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+
+public class BufferFactoryTest extends TestCase {
+
+    public void testBufferReuse() {
+        BufferFactory factory = new BufferFactory(1024, HeapByteBufferAllocator.INSTANCE, 4);
+        ControlledByteBuffer buffer = factory.getBuffer();
+        assertEquals(1024, buffer.capacity());
+        assertEquals(1024, factory.getBytesInUse());
+
+        buffer.put((byte) 1);
+        factory.release(buffer);
+        assertEquals(0, factory.getBytesInUse());
+
+        ControlledByteBuffer reused = factory.getBuffer();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertTrue(reused.isInputMode());
+    }
+
+    public void testSizeClasses() {
+        BufferFactory factory = new BufferFactory(1024, HeapByteBufferAllocator.INSTANCE, 4,
+                3, 0, false);
+        assertEquals(1024, factory.getBuffer(100).capacity());
+        assertEquals(2048, factory.getBuffer(1025).capacity());
+        assertEquals(4096, factory.getBuffer(4096).capacity());
+        // larger than the largest size class
+        assertEquals(5000, factory.getBuffer(5000).capacity());
+        assertEquals(1024 + 2048 + 4096 + 5000, factory.getBytesInUse());
+    }
+
+    public void testDuplicateRelease() {
+        BufferFactory factory = new BufferFactory(1024, HeapByteBufferAllocator.INSTANCE, 4);
+        ControlledByteBuffer buffer = factory.getBuffer();
+        factory.release(buffer);
+        factory.release(buffer);
+
+        ControlledByteBuffer first = factory.getBuffer();
+        ControlledByteBuffer second = factory.getBuffer();
+        assertNotSame(first, second);
+        assertEquals(2048, factory.getBytesInUse());
+    }
+
+    public void testThrottling() {
+        BufferFactory factory = new BufferFactory(1024, HeapByteBufferAllocator.INSTANCE, 4,
+                1, 2048, false);
+        ControlledByteBuffer first = factory.getBuffer();
+        assertFalse(factory.isExhausted());
+        ControlledByteBuffer second = factory.getBuffer();
+        assertTrue(factory.isExhausted());
+
+        TestIOControl conn = new TestIOControl();
+        factory.throttle(conn);
+        assertTrue(conn.inputSuspended);
+        assertEquals(1, factory.getThrottleCount());
+
+        factory.release(first);
+        assertFalse(factory.isExhausted());
+        assertFalse(conn.inputSuspended);
+        factory.release(second);
+    }
+
+    public void testRepeatedThrottling() {
+        BufferFactory factory = new BufferFactory(1024, HeapByteBufferAllocator.INSTANCE, 4,
+                1, 1024, false);
+        ControlledByteBuffer buffer = factory.getBuffer();
+        assertTrue(factory.isExhausted());
+
+        // a connection is throttled on every read while the buffers are exhausted
+        TestIOControl conn = new TestIOControl();
+        for (int i = 0; i < 10; i++) {
+            factory.throttle(conn);
+        }
+        assertEquals(1, factory.getThrottleCount());
+
+        factory.release(buffer);
+        assertFalse(conn.inputSuspended);
+        assertEquals(1, conn.inputRequests);
+
+        buffer = factory.getBuffer();
+        factory.throttle(conn);
+        assertEquals(2, factory.getThrottleCount());
+        factory.release(buffer);
+        assertEquals(2, conn.inputRequests);
+    }
+
+    private static class TestIOControl implements IOControl {
+
+        private boolean inputSuspended = false;
+        private int inputRequests = 0;
+
+        public void requestInput() {
+            inputSuspended = false;
+            inputRequests++;
+        }
+
+        public void suspendInput() {
+            inputSuspended = true;
+        }
+
+        public void requestOutput() {
+        }
+
+        public void suspendOutput() {
+        }
+
+        public void shutdown() {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.passthru.util;
+
+import junit.framework.TestCase;
+import org.apache.axiom.util.blob.OverflowBlob;
+import org.apache.axis2.context.MessageContext;
+import org.apache.synapse.transport.passthru.PassThroughConstants;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PassThroughTransportUtilsTest extends TestCase {
+
+    public void testTemporaryBlobsAreReleasedOnce() {
+        final AtomicInteger released = new AtomicInteger(0);
+        MessageContext msgContext = new MessageContext();
+        for (int i = 0; i < 2; i++) {
+            PassThroughTransportUtils.releaseAfterMediation(msgContext,
+                    new OverflowBlob(1, 16, "tmp_", ".dat") {
+                        @Override
+                        public void release() {
+                            released.incrementAndGet();
+                            super.release();
+                        }
+                    });
+        }
+        assertEquals(0, released.get());
+
+        PassThroughTransportUtils.releaseTemporaryBlobs(msgContext);
+        assertEquals(2, released.get());
+        assertNull(msgContext.getProperty(PassThroughConstants.TEMPORARY_BLOBS));
+
+        PassThroughTransportUtils.releaseTemporaryBlobs(msgContext);
+        assertEquals(2, released.get());
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.vfs;
+
+import org.apache.axiom.ext.activation.SizeAwareDataSource;
+import org.apache.synapse.commons.util.MappedBufferUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Data source that reads data from a local file mapped into memory. The whole file is mapped
+ * when the data source is created, but its content is only paged in as it is read, so that
+ * large files are never buffered on the heap. As the mapping outlives the file handle, the
+ * content remains readable after the file has been moved or deleted, until the data source is
+ * released.
+ * <p>
+ * The listener releases the data source once the message has been processed, so that the file
+ * is unmapped without waiting for the garbage collector. The mapping is only released once the
+ * streams and transfers reading it have been closed, and the content can no longer be read
+ * after that.
+ */
+public class MappedFileDataSource implements SizeAwareDataSource {
+
+    /** the largest region of the file that can be mapped by a single buffer */
+    private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final File file;
+    private final String contentType;
+    private final long size;
+    private final long lastModified;
+    private MappedByteBuffer[] regions;
+
+    /** number of streams and transfers reading the mapped regions */
+    private int readers;
+    private boolean released;
+
+    public MappedFileDataSource(File file, String contentType) throws IOException {
+        this(file, contentType, MAX_REGION_SIZE);
+    }
+
+    MappedFileDataSource(File file, String contentType, long regionSize) throws IOException {
+        this.file = file;
+        this.contentType = contentType;
+        this.lastModified = file.lastModified();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            size = channel.size();
+            regions = new MappedByteBuffer[(int) ((size + regionSize - 1) / regionSize)];
+            for (int i = 0; i < regions.length; i++) {
+                long position = i * regionSize;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(regionSize, size - position));
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return file.getPath();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return new MappedInputStream(acquire());
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        throw new IOException("Mapped file : " + file + " is read only");
+    }
+
+    /**
+     * Write the content of the file to the given channel. If the file is still in place it is
+     * transferred by the operating system without copying it through user space, otherwise it
+     * is written out from the mapped regions.
+     *
+     * @param target the channel to write to
+     * @return the number of bytes written
+     * @throws IOException on error, or if the data source has been released
+     */
+    public long writeTo(FileChannel target) throws IOException {
+        MappedByteBuffer[] mapped = acquire();
+        try {
+            if (file.lastModified() == lastModified && file.length() == size) {
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    FileChannel source = in.getChannel();
+                    long position = 0;
+                    while (position < size) {
+                        position += source.transferTo(position, size - position, target);
+                    }
+                    return size;
+                } finally {
+                    in.close();
+                }
+            }
+
+            for (MappedByteBuffer region : mapped) {
+                ByteBuffer buffer = region.duplicate();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+            return size;
+        } finally {
+            releaseReader();
+        }
+    }
+
+    /**
+     * Release the mapping of the file, as soon as it is no longer being read. The content of
+     * the data source cannot be read once it has been released.
+     */
+    public synchronized void release() {
+        if (!released) {
+            released = true;
+            if (readers == 0) {
+                unmap();
+            }
+        }
+    }
+
+    private synchronized MappedByteBuffer[] acquire() throws IOException {
+        if (released) {
+            throw new IOException("Mapped file : " + file + " has been released");
+        }
+        readers++;
+        return regions;
+    }
+
+    private synchronized void releaseReader() {
+        if (--readers == 0 && released) {
+            unmap();
+        }
+    }
+
+    private void unmap() {
+        for (MappedByteBuffer region : regions) {
+            MappedBufferUtil.unmap(region);
+        }
+        regions = null;
+    }
+
+    /**
+     * Input stream reading the mapped regions one after the other. The stream stops reading the
+     * regions when it is closed or reaches the end of the file, whichever comes first.
+     */
+    private class MappedInputStream extends InputStream {
+
+        private final MappedByteBuffer[] mapped;
+        private int index = 0;
+        private ByteBuffer current;
+        private boolean closed;
+        /** whether this stream is still counted as a reader of the data source */
+        private boolean reading = true;
+
+        MappedInputStream(MappedByteBuffer[] mapped) {
+            this.mapped = mapped;
+            this.current = mapped.length > 0 ? mapped[0].duplicate() : null;
+        }
+
+        /**
+         * @return the region to be read from, or null at the end of the file
+         */
+        private ByteBuffer region() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            while (current != null && !current.hasRemaining()) {
+                current = ++index < mapped.length ? mapped[index].duplicate() : null;
+            }
+            if (current == null) {
+                stopReading();
+            }
+            return current;
+        }
+
+        @Override
+        public int read() throws IOException {
+            ByteBuffer buffer = region();
+            return buffer == null ? -1 : buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer buffer = region();
+            if (buffer == null) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = 0;
+            ByteBuffer buffer;
+            while (skipped < n && (buffer = region()) != null) {
+                int count = (int) Math.min(n - skipped, buffer.remaining());
+                buffer.position(buffer.position() + count);
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            ByteBuffer buffer = region();
+            return buffer == null ? 0 : buffer.remaining();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            current = null;
+            stopReading();
+        }
+
+        private void stopReading() {
+            if (reading) {
+                reading = false;
+                releaseReader();
+            }
+        }
+    }
+}
@@ -24,11 +24,18 @@ import org.apache.axis2.description.AxisService;
 import org.apache.axis2.description.ParameterInclude;
 import org.apache.axis2.transport.base.AbstractPollTableEntry;
 import org.apache.axis2.transport.base.ParamUtils;
+import org.apache.axis2.transport.base.threads.WorkerPool;
+import org.apache.axis2.transport.base.threads.WorkerPoolFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Holds information about an entry in the VFS transport poll table used by the
@@ -64,10 +71,11 @@ public class PollTableEntry extends AbstractPollTableEntry {
     private String moveAfterErrors;
     /** where to move the file after total failure */
     private String moveAfterFailure;
-    /** moved file will have this formatted timestamp prefix */    
-    private DateFormat moveTimestampFormat;
+    /** moved file will have a timestamp prefix formatted with this pattern */
+    private String moveTimestampFormat;
 
     private boolean streaming;
+    private boolean memoryMapped;
 
     private int maxRetryCount;
     private long reconnectTimeout;
@@ -83,6 +91,33 @@ public class PollTableEntry extends AbstractPollTableEntry {
 
     private String failedRecordTimestampFormat;
 
+    /** number of files of a directory processed concurrently */
+    private int parallelism = VFSConstants.DEFAULT_PARALLELISM;
+    /** maximum number of files processed in a single poll, or zero for no limit */
+    private int maxFilesPerPoll = VFSConstants.DEFAULT_MAX_FILES_PER_POLL;
+    /** attribute by which the files are ordered, or null if the order does not matter */
+    private String fileSortAttribute;
+
+    /** the workers processing the files of this entry, created on the first parallel poll */
+    private WorkerPool fileProcessingPool;
+
+    private final AtomicLong processedFileCount = new AtomicLong(0);
+    private final AtomicLong failedFileCount = new AtomicLong(0);
+    /** files selected by the current poll, which are yet to be processed */
+    private final AtomicInteger backlog = new AtomicInteger(0);
+    private volatile int lastPollFileCount;
+    private volatile long lastPollDuration;
+
+    /** whether a local directory should be watched for changes in between the polls */
+    private boolean watch;
+    private long watchQuietPeriod = VFSConstants.DEFAULT_WATCH_QUIET_PERIOD;
+    /** set while the directory of this entry is registered with the directory watcher */
+    private volatile boolean watching;
+    /** set when a scan triggered by a change of the directory is waiting to be run */
+    private final AtomicBoolean changeScanPending = new AtomicBoolean(false);
+    /** held while scanning, so that polls and scans triggered by changes do not overlap */
+    private final Lock scanLock = new ReentrantLock();
+
     public PollTableEntry(boolean fileLocking) {
         this.fileLocking = fileLocking;
     }
@@ -188,6 +223,10 @@ public class PollTableEntry extends AbstractPollTableEntry {
         return streaming;
     }
 
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     public int getMaxRetryCount() {
         return maxRetryCount;
     }
@@ -200,8 +239,168 @@ public class PollTableEntry extends AbstractPollTableEntry {
         return reconnectTimeout;
     }
 
+    /**
+     * Get the format of the timestamp prefix of moved files. A new format is returned by each
+     * call, as the files of the entry may be moved concurrently and a DateFormat is not thread
+     * safe.
+     *
+     * @return a new format of the timestamp prefix, or null if moved files are not prefixed
+     */
     public DateFormat getMoveTimestampFormat() {
-        return moveTimestampFormat;
+        return moveTimestampFormat != null ? new SimpleDateFormat(moveTimestampFormat) : null;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getMaxFilesPerPoll() {
+        return maxFilesPerPoll;
+    }
+
+    public String getFileSortAttribute() {
+        return fileSortAttribute;
+    }
+
+    /**
+     * Files are processed one at a time, in the configured order, if a sort attribute is given
+     *
+     * @return true if the files must be processed in order
+     */
+    public boolean isOrderedProcessing() {
+        return fileSortAttribute != null;
+    }
+
+    public boolean isWatchEnabled() {
+        return watch;
+    }
+
+    public long getWatchQuietPeriod() {
+        return watchQuietPeriod;
+    }
+
+    boolean isWatching() {
+        return watching;
+    }
+
+    void setWatching(boolean watching) {
+        this.watching = watching;
+    }
+
+    /**
+     * Request a scan of this entry due to a change of the watched directory
+     *
+     * @return false if such a scan is already waiting to be run
+     */
+    boolean requestChangeScan() {
+        return changeScanPending.compareAndSet(false, true);
+    }
+
+    /**
+     * Mark the start of a scan requested due to a change, so that changes from here onwards
+     * request another scan
+     */
+    void changeScanStarted() {
+        changeScanPending.set(false);
+    }
+
+    Lock getScanLock() {
+        return scanLock;
+    }
+
+    /**
+     * Get the bounded pool of workers which process the files of this entry in parallel
+     *
+     * @return the worker pool of this entry
+     */
+    synchronized WorkerPool getFileProcessingPool() {
+        if (fileProcessingPool == null) {
+            fileProcessingPool = WorkerPoolFactory.getWorkerPool(parallelism, parallelism, 5, -1,
+                    "VFS file processor thread group", "VFS-File-Processor");
+        }
+        return fileProcessingPool;
+    }
+
+    synchronized void shutdownFileProcessingPool() {
+        if (fileProcessingPool != null) {
+            try {
+                fileProcessingPool.shutdown(10000);
+            } catch (InterruptedException e) {
+                log.warn("Thread interrupted while waiting for the VFS file processors of : " +
+                        VFSUtils.maskURLPassword(fileURI) + " to shut down");
+            }
+            fileProcessingPool = null;
+        }
+    }
+
+    /**
+     * Record the start of a poll which selected the given number of files to be processed
+     *
+     * @param fileCount number of files to be processed by the poll
+     */
+    void pollStarted(int fileCount) {
+        backlog.set(fileCount);
+    }
+
+    /**
+     * Record the outcome of processing a single file
+     *
+     * @param successful whether the file was processed successfully
+     */
+    void fileProcessed(boolean successful) {
+        if (successful) {
+            processedFileCount.incrementAndGet();
+        } else {
+            failedFileCount.incrementAndGet();
+        }
+        backlog.decrementAndGet();
+    }
+
+    /**
+     * Record that a file was not processed, as it is locked by another poll or process, or the
+     * entry is being stopped
+     */
+    void fileSkipped() {
+        backlog.decrementAndGet();
+    }
+
+    /**
+     * Record the completion of a poll
+     *
+     * @param fileCount number of files processed by the poll
+     * @param duration time taken by the poll in milliseconds
+     */
+    void pollCompleted(int fileCount, long duration) {
+        lastPollFileCount = fileCount;
+        lastPollDuration = duration;
+    }
+
+    public long getProcessedFileCount() {
+        return processedFileCount.get();
+    }
+
+    public long getFailedFileCount() {
+        return failedFileCount.get();
+    }
+
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    public int getLastPollFileCount() {
+        return lastPollFileCount;
+    }
+
+    public long getLastPollDuration() {
+        return lastPollDuration;
+    }
+
+    /**
+     * @return the number of files processed per second by the last poll
+     */
+    public double getLastPollThroughput() {
+        long duration = lastPollDuration;
+        return duration > 0 ? lastPollFileCount * 1000.0 / duration : lastPollFileCount;
     }
 
     @Override
@@ -251,16 +450,23 @@ public class PollTableEntry extends AbstractPollTableEntry {
                     params, VFSConstants.TRANSPORT_FILE_MOVE_AFTER_FAILURE);
             setMoveAfterFailure(moveDirectoryAfterFailure);
 
-            String moveFileTimestampFormat = ParamUtils.getOptionalParam(
+            moveTimestampFormat = ParamUtils.getOptionalParam(
                     params, VFSConstants.TRANSPORT_FILE_MOVE_TIMESTAMP_FORMAT);
-            if(moveFileTimestampFormat != null) {
-                moveTimestampFormat = new SimpleDateFormat(moveFileTimestampFormat);
+            if (moveTimestampFormat != null) {
+                // fail on an invalid pattern when the entry is configured
+                new SimpleDateFormat(moveTimestampFormat);
             }
 
             String strStreaming = ParamUtils.getOptionalParam(params, VFSConstants.STREAMING);
             if (strStreaming != null) {
                 streaming = Boolean.parseBoolean(strStreaming);
             }
+
+            String strMemoryMapped = ParamUtils.getOptionalParam(
+                    params, VFSConstants.MEMORY_MAPPED);
+            if (strMemoryMapped != null) {
+                memoryMapped = Boolean.parseBoolean(strMemoryMapped);
+            }
             
             String strMaxRetryCount = ParamUtils.getOptionalParam(
                     params, VFSConstants.MAX_RETRY_COUNT);
@@ -308,6 +514,44 @@ public class PollTableEntry extends AbstractPollTableEntry {
                 failedRecordTimestampFormat =
                         VFSConstants.DEFAULT_TRANSPORT_FAILED_RECORD_TIMESTAMP_FORMAT;
             }
+
+            String strParallelism = ParamUtils.getOptionalParam(
+                    params, VFSConstants.TRANSPORT_FILE_PARALLELISM);
+            if (strParallelism != null) {
+                parallelism = Math.max(1, Integer.parseInt(strParallelism));
+            }
+
+            String strMaxFilesPerPoll = ParamUtils.getOptionalParam(
+                    params, VFSConstants.TRANSPORT_FILE_MAX_FILES_PER_POLL);
+            if (strMaxFilesPerPoll != null) {
+                maxFilesPerPoll = Integer.parseInt(strMaxFilesPerPoll);
+            }
+
+            fileSortAttribute = ParamUtils.getOptionalParam(
+                    params, VFSConstants.TRANSPORT_FILE_SORT_ATTRIBUTE);
+            if (fileSortAttribute != null &&
+                    !VFSConstants.FILE_SORT_BY_NAME.equals(fileSortAttribute) &&
+                    !VFSConstants.FILE_SORT_BY_LAST_MODIFIED.equals(fileSortAttribute)) {
+                log.warn("Unknown " + VFSConstants.TRANSPORT_FILE_SORT_ATTRIBUTE + " : " +
+                        fileSortAttribute + ", files will be ordered by name");
+                fileSortAttribute = VFSConstants.FILE_SORT_BY_NAME;
+            }
+            String strWatch = ParamUtils.getOptionalParam(
+                    params, VFSConstants.TRANSPORT_FILE_WATCH);
+            if (strWatch != null) {
+                watch = Boolean.parseBoolean(strWatch);
+            }
+
+            String strWatchQuietPeriod = ParamUtils.getOptionalParam(
+                    params, VFSConstants.TRANSPORT_FILE_WATCH_QUIET_PERIOD);
+            if (strWatchQuietPeriod != null) {
+                watchQuietPeriod = Long.parseLong(strWatchQuietPeriod);
+            }
+
+            if (fileSortAttribute != null && parallelism > 1) {
+                log.warn("Files of " + VFSUtils.maskURLPassword(fileURI) + " are processed in " +
+                        "order, one at a time, ignoring the configured parallelism");
+            }
             
             return super.loadConfiguration(params);
         }
@@ -55,6 +55,11 @@ public final class VFSConstants {
     public static final String DEFAULT_NON_XML_RESPONSE_FILE = "response.dat";
 
     public static final String STREAMING = "transport.vfs.Streaming";
+    /**
+     * In streaming mode, map local files into memory instead of reading them through VFS, so
+     * that large files are neither buffered on the heap nor copied when written to a local file
+     */
+    public static final String MEMORY_MAPPED = "transport.vfs.MemoryMapped";
 
     public static final String MAX_RETRY_COUNT = "transport.vfs.MaxRetryCount";
     public static final String RECONNECT_TIMEOUT = "transport.vfs.ReconnectTimeout";
@@ -120,4 +125,44 @@ public final class VFSConstants {
               "dd/MM/yyyy/ HH:mm:ss";
 
       public static final String FAILED_RECORD_DELIMITER = " ";
+
+      /**
+       * The number of files of a directory that are processed concurrently in a single poll
+       */
+      public static final String TRANSPORT_FILE_PARALLELISM = "transport.vfs.Parallelism";
+
+      public static final int DEFAULT_PARALLELISM = 1;
+
+      /**
+       * The maximum number of files processed in a single poll, the rest are left for the
+       * next poll. A value less than or equal to zero does not limit the number of files
+       */
+      public static final String TRANSPORT_FILE_MAX_FILES_PER_POLL =
+              "transport.vfs.MaxFilesPerPoll";
+
+      public static final int DEFAULT_MAX_FILES_PER_POLL = 0;
+
+      /**
+       * The attribute by which the files of a directory are ordered. When specified, the files
+       * are processed one at a time in that order, regardless of the configured parallelism
+       */
+      public static final String TRANSPORT_FILE_SORT_ATTRIBUTE = "transport.vfs.FileSortAttribute";
+
+      public static final String FILE_SORT_BY_NAME = "name";
+      public static final String FILE_SORT_BY_LAST_MODIFIED = "lastModified";
+
+      /**
+       * Watch a local directory for changes, and process the new files as soon as they are
+       * written, instead of waiting for the next poll. Remote directories are always polled
+       */
+      public static final String TRANSPORT_FILE_WATCH = "transport.vfs.Watch";
+
+      /**
+       * Time in milliseconds that a watched directory should be left without changes before it
+       * is scanned, so that files being written are not picked up half way through
+       */
+      public static final String TRANSPORT_FILE_WATCH_QUIET_PERIOD =
+              "transport.vfs.WatchQuietPeriod";
+
+      public static final long DEFAULT_WATCH_QUIET_PERIOD = 500;
 }
@@ -0,0 +1,214 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.vfs;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the local directories of poll table entries for new and modified files, using a
+ * java.nio WatchService, and asks the VFS transport listener to scan a directory once it has
+ * been left without changes for the quiet period of its entry. The regular polls of the entries
+ * continue as usual, so any change missed by the watcher is still picked up by the next poll.
+ */
+class VFSDirectoryWatcher implements Runnable {
+
+    private static final Log log = LogFactory.getLog(VFSDirectoryWatcher.class);
+
+    /** how long the watcher thread waits for a change, when there is no scan to be triggered */
+    private static final long IDLE_WAIT = 1000;
+
+    private final VFSTransportListener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, PollTableEntry> entries =
+            new ConcurrentHashMap<WatchKey, PollTableEntry>();
+
+    /** entries with changes yet to be scanned, against the time of their last change */
+    private final Map<PollTableEntry, Long> changed = new HashMap<PollTableEntry, Long>();
+
+    private volatile boolean running = true;
+
+    VFSDirectoryWatcher(VFSTransportListener listener) throws IOException {
+        this(listener, FileSystems.getDefault().newWatchService());
+    }
+
+    VFSDirectoryWatcher(VFSTransportListener listener, WatchService watchService) {
+        this.listener = listener;
+        this.watchService = watchService;
+        Thread thread = new Thread(this, "VFS-Directory-Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Start watching the given directory on behalf of the given poll table entry
+     *
+     * @param entry the poll table entry of the directory
+     * @param directory the local directory to be watched
+     * @throws IOException if the directory cannot be watched
+     */
+    void register(PollTableEntry entry, File directory) throws IOException {
+        WatchKey key = directory.toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        register(entry, key);
+        if (log.isDebugEnabled()) {
+            log.debug("Watching directory : " + directory + " for changes");
+        }
+    }
+
+    /**
+     * Deliver the changes signalled by the given key, registered with the watch service of this
+     * watcher, to the given poll table entry
+     *
+     * @param entry the poll table entry of the watched directory
+     * @param key the key of the watched directory
+     */
+    void register(PollTableEntry entry, WatchKey key) {
+        entries.put(key, entry);
+        entry.setWatching(true);
+    }
+
+    /**
+     * Stop watching the directory of the given poll table entry
+     *
+     * @param entry the poll table entry of the directory
+     */
+    void unregister(PollTableEntry entry) {
+        entry.setWatching(false);
+        Iterator<Map.Entry<WatchKey, PollTableEntry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<WatchKey, PollTableEntry> e = it.next();
+            if (e.getValue() == entry) {
+                e.getKey().cancel();
+                it.remove();
+            }
+        }
+    }
+
+    void close() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("Error closing the VFS directory watch service", e);
+        }
+    }
+
+    public void run() {
+        while (running) {
+            WatchKey key;
+            try {
+                key = watchService.poll(changed.isEmpty() ? IDLE_WAIT : nextScanDelay(),
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+
+            if (key != null) {
+                keyChanged(key);
+            }
+            triggerScans();
+        }
+    }
+
+    private void keyChanged(WatchKey key) {
+        PollTableEntry entry = entries.get(key);
+        boolean overflow = false;
+        boolean matched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (entry != null && matches(entry, (Path) event.context())) {
+                matched = true;
+            }
+        }
+
+        if (!key.reset()) {
+            // the directory is no longer accessible, leave it to the regular polls
+            entries.remove(key);
+            if (entry != null) {
+                entry.setWatching(false);
+                log.warn("Directory : " + VFSUtils.maskURLPassword(entry.getFileURI()) +
+                        " can no longer be watched, falling back to polling");
+            }
+        }
+
+        if (entry == null) {
+            return;
+        }
+        if (overflow) {
+            // some of the changes were lost, scan the whole directory right away
+            changed.remove(entry);
+            listener.scanOnChange(entry);
+        } else if (matched) {
+            changed.put(entry, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Only the files matching the file name pattern of the entry trigger a scan, so that the
+     * lock files and moved files of the listener itself are not considered as changes
+     */
+    private boolean matches(PollTableEntry entry, Path name) {
+        return name != null && entry.getFileNamePattern() != null &&
+                name.toString().matches(entry.getFileNamePattern());
+    }
+
+    private long nextScanDelay() {
+        long now = System.currentTimeMillis();
+        long delay = IDLE_WAIT;
+        for (Map.Entry<PollTableEntry, Long> e : changed.entrySet()) {
+            long remaining = e.getValue() + e.getKey().getWatchQuietPeriod() - now;
+            delay = Math.min(delay, Math.max(remaining, 1));
+        }
+        return delay;
+    }
+
+    private void triggerScans() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<PollTableEntry, Long>> it = changed.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<PollTableEntry, Long> e = it.next();
+            if (now - e.getValue() >= e.getKey().getWatchQuietPeriod()) {
+                it.remove();
+                if (e.getKey().isWatching()) {
+                    listener.scanOnChange(e.getKey());
+                }
+            }
+        }
+    }
+}
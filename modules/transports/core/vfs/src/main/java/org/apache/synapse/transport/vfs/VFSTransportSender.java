@@ -19,16 +19,21 @@
 
 package org.apache.synapse.transport.vfs;
 
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMNode;
 import org.apache.axiom.om.OMOutputFormat;
+import org.apache.axiom.om.OMText;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.description.TransportOutDescription;
 import org.apache.axis2.description.Parameter;
+import org.apache.axis2.format.BinaryFormatter;
 import org.apache.axis2.transport.MessageFormatter;
 import org.apache.axis2.transport.OutTransportInfo;
 import org.apache.axis2.util.MessageProcessorSelector;
 import org.apache.axis2.transport.base.AbstractTransportSender;
+import org.apache.axis2.transport.base.BaseConstants;
 import org.apache.axis2.transport.base.BaseUtils;
 import org.apache.axis2.transport.base.ManagementSupport;
 import org.apache.commons.io.output.CountingOutputStream;
@@ -39,6 +44,10 @@ import org.apache.commons.vfs2.FileSystemManager;
 import org.apache.commons.vfs2.FileType;
 import org.apache.commons.vfs2.impl.StandardFileSystemManager;
 
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 
 /**
@@ -261,19 +270,34 @@ public class VFSTransportSender extends AbstractTransportSender implements Manag
         
         MessageFormatter messageFormatter = MessageProcessorSelector.getMessageFormatter(msgContext);
         OMOutputFormat format = BaseUtils.getOMOutputFormat(msgContext);
-        
+
+        // a memory mapped file written to a local file is transferred without copying it
+        MappedFileDataSource mappedPayload = getMappedPayload(msgContext, messageFormatter);
+        File localFile = mappedPayload != null ? VFSUtils.getLocalFile(responseFile) : null;
+
         try {
-            CountingOutputStream os = new CountingOutputStream(
-                    responseFile.getContent().getOutputStream(append));
-            try {
-                messageFormatter.writeTo(msgContext, format, os, false);
-            } finally {
-                os.close();
+            long byteCount;
+            if (localFile != null) {
+                FileOutputStream os = new FileOutputStream(localFile, append);
+                try {
+                    byteCount = mappedPayload.writeTo(os.getChannel());
+                } finally {
+                    os.close();
+                }
+            } else {
+                CountingOutputStream os = new CountingOutputStream(
+                        responseFile.getContent().getOutputStream(append));
+                try {
+                    messageFormatter.writeTo(msgContext, format, os, false);
+                } finally {
+                    os.close();
+                }
+                byteCount = os.getByteCount();
             }
             
             // update metrics
             metrics.incrementMessagesSent(msgContext);
-            metrics.incrementBytesSent(msgContext, os.getByteCount());
+            metrics.incrementBytesSent(msgContext, byteCount);
             
         } catch (FileSystemException e) {
             if (lockingEnabled) {
@@ -292,6 +316,37 @@ public class VFSTransportSender extends AbstractTransportSender implements Manag
         }
     }
 
+    /**
+     * Get the memory mapped file carried by the given message, if it is to be written out as is
+     * by the binary formatter
+     *
+     * @param msgContext the message to be written
+     * @param messageFormatter the formatter selected for the message
+     * @return the mapped file data source of the payload, or null if there is none
+     */
+    private MappedFileDataSource getMappedPayload(MessageContext msgContext,
+                                                  MessageFormatter messageFormatter) {
+
+        if (!(messageFormatter instanceof BinaryFormatter)) {
+            return null;
+        }
+        OMElement wrapper = msgContext.getEnvelope().getBody().getFirstElement();
+        if (wrapper == null || !BaseConstants.DEFAULT_BINARY_WRAPPER.equals(wrapper.getQName())) {
+            return null;
+        }
+        OMNode node = wrapper.getFirstOMChild();
+        if (node instanceof OMText && ((OMText) node).isBinary()) {
+            Object dataHandler = ((OMText) node).getDataHandler();
+            if (dataHandler instanceof DataHandler) {
+                DataSource dataSource = ((DataHandler) dataHandler).getDataSource();
+                if (dataSource instanceof MappedFileDataSource) {
+                    return (MappedFileDataSource) dataSource;
+                }
+            }
+        }
+        return null;
+    }
+
     private void acquireLockForSending(FileObject responseFile, VFSOutTransportInfo vfsOutInfo)
             throws AxisFault {
         
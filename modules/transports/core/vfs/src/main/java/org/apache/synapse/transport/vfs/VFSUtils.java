@@ -28,7 +28,10 @@ import org.apache.commons.vfs2.FileContent;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileSystemManager;
+import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.Selectors;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -211,6 +214,41 @@ public class VFSUtils extends BaseUtils {
         return url;
     }
 
+    /**
+     * Get the file or directory of the local file system represented by the given file object
+     * @param fo the file object
+     * @return the local file, or null if the file object is not on the local file system
+     */
+    public static File getLocalFile(FileObject fo) {
+        try {
+            if ("file".equals(fo.getName().getScheme()) && fo.exists()) {
+                return fo.getFileSystem().replicateFile(fo, Selectors.SELECT_SELF);
+            }
+        } catch (FileSystemException e) {
+            log.warn("Error resolving the local file of : " +
+                    maskURLPassword(fo.getName().getURI()), e);
+        }
+        return null;
+    }
+
+    /**
+     * Get the directory of the local file system represented by the given file object, which
+     * may be watched for changes
+     * @param fo the file object
+     * @return the local directory, or null if the file object is not a directory on the local
+     * file system
+     */
+    public static File getLocalDirectory(FileObject fo) {
+        try {
+            if (fo.getType() == FileType.FOLDER) {
+                return getLocalFile(fo);
+            }
+        } catch (FileSystemException e) {
+            log.warn("Error resolving the type of : " + maskURLPassword(fo.getName().getURI()), e);
+        }
+        return null;
+    }
+
     /**
      * Generate a unique file name to be used as a temp file
      * @return the temp file name
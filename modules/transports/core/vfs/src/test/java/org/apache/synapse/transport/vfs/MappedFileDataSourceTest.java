@@ -0,0 +1,198 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.vfs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+public class MappedFileDataSourceTest extends TestCase {
+
+    private File file;
+    private File target;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("mapped", ".bin");
+        target = File.createTempFile("mapped", ".out");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        target.delete();
+    }
+
+    public void testReadAcrossRegions() throws Exception {
+        byte[] content = createContent(95);
+        FileUtils.writeByteArrayToFile(file, content);
+        MappedFileDataSource source = new MappedFileDataSource(file, "text/plain", 10);
+        assertEquals(95, source.getSize());
+
+        InputStream in = source.getInputStream();
+        assertEquals(content[0] & 0xFF, in.read());
+        byte[] buffer = new byte[30];
+        // a single read does not go beyond the current region
+        assertEquals(9, in.read(buffer, 0, buffer.length));
+        assertEquals(content[9], buffer[8]);
+        assertEquals(10, in.available());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(content, 0, 10);
+        int count;
+        while ((count = in.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        assertEqualContent(content, out.toByteArray());
+        assertEquals(-1, in.read());
+        assertEquals(0, in.available());
+        in.close();
+    }
+
+    public void testSkipAcrossRegions() throws Exception {
+        byte[] content = createContent(95);
+        FileUtils.writeByteArrayToFile(file, content);
+        MappedFileDataSource source = new MappedFileDataSource(file, "text/plain", 10);
+
+        InputStream in = source.getInputStream();
+        assertEquals(5, in.skip(5));
+        assertEquals(content[5] & 0xFF, in.read());
+        assertEquals(27, in.skip(27));
+        assertEquals(content[33] & 0xFF, in.read());
+        // skipping beyond the end stops at the end of the file
+        assertEquals(61, in.skip(100));
+        assertEquals(-1, in.read());
+        assertEquals(0, in.skip(1));
+        in.close();
+    }
+
+    public void testEmptyFile() throws Exception {
+        MappedFileDataSource source = new MappedFileDataSource(file, "text/plain");
+        assertEquals(0, source.getSize());
+
+        InputStream in = source.getInputStream();
+        assertEquals(-1, in.read());
+        assertEquals(-1, in.read(new byte[10], 0, 10));
+        assertEquals(0, in.skip(10));
+        assertEquals(0, in.available());
+        in.close();
+
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            assertEquals(0, source.writeTo(out.getChannel()));
+        } finally {
+            out.close();
+        }
+        assertEquals(0, target.length());
+    }
+
+    public void testWriteToTransfersFile() throws Exception {
+        byte[] content = createContent(95);
+        FileUtils.writeByteArrayToFile(file, content);
+        FileUtils.writeStringToFile(target, "head");
+        MappedFileDataSource source = new MappedFileDataSource(file, "text/plain", 10);
+
+        FileOutputStream out = new FileOutputStream(target, true);
+        try {
+            assertEquals(95, source.writeTo(out.getChannel()));
+        } finally {
+            out.close();
+        }
+
+        byte[] written = FileUtils.readFileToByteArray(target);
+        assertEquals(99, written.length);
+        assertEquals("head", new String(written, 0, 4, "US-ASCII"));
+        for (int i = 0; i < content.length; i++) {
+            assertEquals(content[i], written[i + 4]);
+        }
+    }
+
+    public void testWriteToFallsBackToMappedRegions() throws Exception {
+        byte[] content = createContent(95);
+        FileUtils.writeByteArrayToFile(file, content);
+        MappedFileDataSource source = new MappedFileDataSource(file, "text/plain", 10);
+
+        // replace the file, the mapping still refers to the original content
+        assertTrue(file.delete());
+        FileUtils.writeStringToFile(file, "replaced");
+
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            assertEquals(95, source.writeTo(out.getChannel()));
+        } finally {
+            out.close();
+        }
+        assertEqualContent(content, FileUtils.readFileToByteArray(target));
+    }
+
+    public void testRelease() throws Exception {
+        byte[] content = createContent(95);
+        FileUtils.writeByteArrayToFile(file, content);
+        MappedFileDataSource source = new MappedFileDataSource(file, "text/plain", 10);
+
+        // an open stream keeps the file mapped until it is closed
+        InputStream in = source.getInputStream();
+        source.release();
+        assertEquals(content[0] & 0xFF, in.read());
+        assertEquals(9, in.skip(9));
+        assertEquals(content[10] & 0xFF, in.read());
+        in.close();
+
+        try {
+            in.read();
+            fail("A closed stream must not read the released file");
+        } catch (IOException expected) {
+        }
+        try {
+            source.getInputStream();
+            fail("A released data source must not be read");
+        } catch (IOException expected) {
+        }
+        FileOutputStream out = new FileOutputStream(target);
+        try {
+            source.writeTo(out.getChannel());
+            fail("A released data source must not be written");
+        } catch (IOException expected) {
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] createContent(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 7 + 1);
+        }
+        return content;
+    }
+
+    private static void assertEqualContent(byte[] expected, byte[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i]);
+        }
+    }
+}
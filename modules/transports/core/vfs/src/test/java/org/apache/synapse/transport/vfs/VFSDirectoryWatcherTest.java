@@ -0,0 +1,296 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.vfs;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.Watchable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.description.Parameter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+
+public class VFSDirectoryWatcherTest extends TestCase {
+
+    private File dir;
+    private RecordingListener listener;
+    private VFSDirectoryWatcher watcher;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("vfs", "watch");
+        dir.delete();
+        dir.mkdirs();
+        listener = new RecordingListener();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (watcher != null) {
+            watcher.close();
+        }
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testScanAfterQuietPeriod() throws Exception {
+        PollTableEntry entry = createEntry(500);
+        watcher = new VFSDirectoryWatcher(listener);
+        watcher.register(entry, dir);
+        assertTrue(entry.isWatching());
+
+        FileUtils.writeStringToFile(new File(dir, "a.xml"), "<a/>");
+        Thread.sleep(200);
+        long lastChange = System.currentTimeMillis();
+        FileUtils.writeStringToFile(new File(dir, "b.xml"), "<b/>");
+
+        assertTrue(listener.waitForScans(1, 15000));
+        assertTrue(listener.scanTimes.get(0) - lastChange >= 500);
+
+        // both changes are handled by the same scan
+        Thread.sleep(1000);
+        assertEquals(1, listener.scanCount());
+    }
+
+    public void testNonMatchingFilesIgnored() throws Exception {
+        PollTableEntry entry = createEntry(100);
+        watcher = new VFSDirectoryWatcher(listener);
+        watcher.register(entry, dir);
+
+        FileUtils.writeStringToFile(new File(dir, "a.xml.lock"), "lock");
+        Thread.sleep(1500);
+        assertEquals(0, listener.scanCount());
+
+        FileUtils.writeStringToFile(new File(dir, "a.xml"), "<a/>");
+        assertTrue(listener.waitForScans(1, 15000));
+    }
+
+    public void testUnregister() throws Exception {
+        PollTableEntry entry = createEntry(100);
+        watcher = new VFSDirectoryWatcher(listener);
+        watcher.register(entry, dir);
+        watcher.unregister(entry);
+        assertFalse(entry.isWatching());
+
+        FileUtils.writeStringToFile(new File(dir, "a.xml"), "<a/>");
+        Thread.sleep(1500);
+        assertEquals(0, listener.scanCount());
+    }
+
+    public void testOverflowScansImmediately() throws Exception {
+        // a quiet period far longer than the test
+        PollTableEntry entry = createEntry(60000);
+        TestWatchService watchService = new TestWatchService();
+        watcher = new VFSDirectoryWatcher(listener, watchService);
+        TestWatchKey key = new TestWatchKey(true);
+        watcher.register(entry, key);
+
+        key.events.add(new TestWatchEvent<Object>(StandardWatchEventKinds.OVERFLOW, null));
+        watchService.signal(key);
+
+        assertTrue(listener.waitForScans(1, 5000));
+    }
+
+    public void testInvalidKeyFallsBackToPolling() throws Exception {
+        PollTableEntry entry = createEntry(100);
+        TestWatchService watchService = new TestWatchService();
+        watcher = new VFSDirectoryWatcher(listener, watchService);
+        TestWatchKey key = new TestWatchKey(false);
+        watcher.register(entry, key);
+        assertTrue(entry.isWatching());
+
+        key.events.add(new TestWatchEvent<Path>(
+                StandardWatchEventKinds.ENTRY_CREATE, Paths.get("a.xml")));
+        watchService.signal(key);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (entry.isWatching() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(entry.isWatching());
+        // the directory is left to the regular polls
+        Thread.sleep(500);
+        assertEquals(0, listener.scanCount());
+    }
+
+    public void testOnlyLocalDirectoriesAreWatched() throws Exception {
+        File file = new File(dir, "a.xml");
+        FileUtils.writeStringToFile(file, "<a/>");
+
+        FileObject localDir = VFS.getManager().resolveFile(dir.toURI().toString());
+        assertEquals(dir.getCanonicalFile(),
+                VFSUtils.getLocalDirectory(localDir).getCanonicalFile());
+
+        FileObject localFile = VFS.getManager().resolveFile(file.toURI().toString());
+        assertNull(VFSUtils.getLocalDirectory(localFile));
+
+        FileObject ramDir = VFS.getManager().resolveFile("ram:///vfs-watch-test");
+        ramDir.createFolder();
+        try {
+            assertNull(VFSUtils.getLocalDirectory(ramDir));
+        } finally {
+            ramDir.delete();
+        }
+    }
+
+    private PollTableEntry createEntry(long quietPeriod) throws Exception {
+        AxisService service = new AxisService("VFSTestService");
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_FILE_URI, dir.toURI().toString()));
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_CONTENT_TYPE, "text/xml"));
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_FILE_NAME_PATTERN, ".*\\.xml"));
+        service.addParameter(new Parameter(VFSConstants.TRANSPORT_FILE_WATCH, "true"));
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_WATCH_QUIET_PERIOD, String.valueOf(quietPeriod)));
+        PollTableEntry entry = new PollTableEntry(false);
+        assertTrue(entry.loadConfiguration(service));
+        return entry;
+    }
+
+    /**
+     * Records the scans requested by the watcher, instead of scanning the directory
+     */
+    private static class RecordingListener extends VFSTransportListener {
+
+        private final List<Long> scanTimes = new ArrayList<Long>();
+
+        @Override
+        void scanOnChange(PollTableEntry entry) {
+            synchronized (scanTimes) {
+                scanTimes.add(System.currentTimeMillis());
+                scanTimes.notifyAll();
+            }
+        }
+
+        int scanCount() {
+            synchronized (scanTimes) {
+                return scanTimes.size();
+            }
+        }
+
+        boolean waitForScans(int count, long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            synchronized (scanTimes) {
+                long remaining = timeout;
+                while (scanTimes.size() < count && remaining > 0) {
+                    scanTimes.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                return scanTimes.size() >= count;
+            }
+        }
+    }
+
+    /**
+     * A watch service whose keys are signalled by the test
+     */
+    private static class TestWatchService implements WatchService {
+
+        private final BlockingQueue<WatchKey> signalled = new LinkedBlockingQueue<WatchKey>();
+
+        void signal(WatchKey key) {
+            signalled.add(key);
+        }
+
+        public void close() {
+        }
+
+        public WatchKey poll() {
+            return signalled.poll();
+        }
+
+        public WatchKey poll(long timeout, TimeUnit unit) throws InterruptedException {
+            return signalled.poll(timeout, unit);
+        }
+
+        public WatchKey take() throws InterruptedException {
+            return signalled.take();
+        }
+    }
+
+    private static class TestWatchKey implements WatchKey {
+
+        private final List<WatchEvent<?>> events = new ArrayList<WatchEvent<?>>();
+        private final boolean valid;
+
+        TestWatchKey(boolean valid) {
+            this.valid = valid;
+        }
+
+        public boolean isValid() {
+            return valid;
+        }
+
+        public List<WatchEvent<?>> pollEvents() {
+            List<WatchEvent<?>> polled = new ArrayList<WatchEvent<?>>(events);
+            events.clear();
+            return polled;
+        }
+
+        public boolean reset() {
+            return valid;
+        }
+
+        public void cancel() {
+        }
+
+        public Watchable watchable() {
+            return null;
+        }
+    }
+
+    private static class TestWatchEvent<T> implements WatchEvent<T> {
+
+        private final Kind<T> kind;
+        private final T context;
+
+        TestWatchEvent(Kind<T> kind, T context) {
+            this.kind = kind;
+            this.context = context;
+        }
+
+        public Kind<T> kind() {
+            return kind;
+        }
+
+        public int count() {
+            return 1;
+        }
+
+        public T context() {
+            return context;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *   * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+
+package org.apache.synapse.transport.vfs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.description.Parameter;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+
+public class VFSTransportListenerTest extends TestCase {
+
+    private File dir;
+    private PollTableEntry entry;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("vfs", "test");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (entry != null) {
+            entry.shutdownFileProcessingPool();
+        }
+        FileUtils.deleteDirectory(dir);
+    }
+
+    public void testParallelProcessing() throws Exception {
+        List<FileObject> files = createFiles("f1", "f2", "f3", "f4", "f5", "f6", "f7", "f8");
+        entry = createEntry(4, 0, null);
+        RecordingListener listener = new RecordingListener(200);
+
+        AtomicInteger successCount = new AtomicInteger(0);
+        int left = listener.processFiles(entry, files, successCount, new AtomicInteger(0));
+
+        assertEquals(0, left);
+        assertEquals(8, successCount.get());
+        assertEquals(8, listener.processed.size());
+        assertTrue(listener.maxActive.get() > 1);
+        assertTrue(listener.maxActive.get() <= 4);
+        assertEquals(8, entry.getLastPollFileCount());
+        assertEquals(8, entry.getProcessedFileCount());
+        assertEquals(0, entry.getBacklog());
+    }
+
+    public void testMaxFilesPerPoll() throws Exception {
+        List<FileObject> files = createFiles("f5", "f3", "f1", "f4", "f2");
+        entry = createEntry(1, 3, VFSConstants.FILE_SORT_BY_NAME);
+        RecordingListener listener = new RecordingListener(0);
+
+        AtomicInteger successCount = new AtomicInteger(0);
+        int left = listener.processFiles(entry, files, successCount, new AtomicInteger(0));
+
+        assertEquals(2, left);
+        assertEquals(3, successCount.get());
+        assertEquals(Arrays.asList("f1", "f2", "f3"), listener.processed);
+        // the backlog of the poll does not include the files left for the next poll
+        assertEquals(3, listener.firstBacklog);
+        assertEquals(3, entry.getLastPollFileCount());
+        assertEquals(0, entry.getBacklog());
+    }
+
+    public void testOrderedProcessingByName() throws Exception {
+        List<FileObject> files = createFiles("c", "a", "e", "b", "d");
+        // ordered processing ignores the parallelism
+        entry = createEntry(4, 0, VFSConstants.FILE_SORT_BY_NAME);
+        RecordingListener listener = new RecordingListener(20);
+
+        listener.processFiles(entry, files, new AtomicInteger(0), new AtomicInteger(0));
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), listener.processed);
+        assertEquals(1, listener.maxActive.get());
+    }
+
+    public void testOrderedProcessingByLastModified() throws Exception {
+        createFiles("a", "b", "c");
+        long now = System.currentTimeMillis();
+        new File(dir, "a").setLastModified(now - 1000);
+        new File(dir, "b").setLastModified(now - 3000);
+        new File(dir, "c").setLastModified(now - 2000);
+        List<FileObject> files = resolveFiles();
+        entry = createEntry(1, 0, VFSConstants.FILE_SORT_BY_LAST_MODIFIED);
+        RecordingListener listener = new RecordingListener(0);
+
+        listener.processFiles(entry, files, new AtomicInteger(0), new AtomicInteger(0));
+
+        assertEquals(Arrays.asList("b", "c", "a"), listener.processed);
+    }
+
+    public void testMoveTimestampFormat() throws Exception {
+        AxisService service = createService(1, 0, null);
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_MOVE_TIMESTAMP_FORMAT, "yyyyMMdd"));
+        entry = new PollTableEntry(false);
+        assertTrue(entry.loadConfiguration(service));
+
+        // each caller gets its own format, as files may be moved concurrently
+        assertNotNull(entry.getMoveTimestampFormat());
+        assertNotSame(entry.getMoveTimestampFormat(), entry.getMoveTimestampFormat());
+    }
+
+    private List<FileObject> createFiles(String... names) throws IOException {
+        for (String name : names) {
+            FileUtils.writeStringToFile(new File(dir, name), name);
+        }
+        return resolveFiles();
+    }
+
+    private List<FileObject> resolveFiles() throws IOException {
+        FileObject directory = VFS.getManager().resolveFile(dir.toURI().toString());
+        List<FileObject> files = new ArrayList<FileObject>(
+                Arrays.asList(directory.getChildren()));
+        // do not depend on the order in which the directory is listed
+        Collections.shuffle(files);
+        return files;
+    }
+
+    private PollTableEntry createEntry(int parallelism, int maxFilesPerPoll,
+                                       String sortAttribute) throws Exception {
+        PollTableEntry pollTableEntry = new PollTableEntry(false);
+        assertTrue(pollTableEntry.loadConfiguration(
+                createService(parallelism, maxFilesPerPoll, sortAttribute)));
+        return pollTableEntry;
+    }
+
+    private AxisService createService(int parallelism, int maxFilesPerPoll,
+                                      String sortAttribute) throws Exception {
+        AxisService service = new AxisService("VFSTestService");
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_FILE_URI, dir.toURI().toString()));
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_CONTENT_TYPE, "text/plain"));
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_PARALLELISM, String.valueOf(parallelism)));
+        service.addParameter(new Parameter(
+                VFSConstants.TRANSPORT_FILE_MAX_FILES_PER_POLL, String.valueOf(maxFilesPerPoll)));
+        if (sortAttribute != null) {
+            service.addParameter(new Parameter(
+                    VFSConstants.TRANSPORT_FILE_SORT_ATTRIBUTE, sortAttribute));
+        }
+        return service;
+    }
+
+    /**
+     * Records the files in the order they are processed and the number of files processed
+     * concurrently, instead of injecting them into the engine
+     */
+    private static class RecordingListener extends VFSTransportListener {
+
+        private final List<String> processed =
+                Collections.synchronizedList(new ArrayList<String>());
+        private final AtomicInteger active = new AtomicInteger(0);
+        private final AtomicInteger maxActive = new AtomicInteger(0);
+        private final long processingTime;
+        private volatile int firstBacklog = -1;
+
+        RecordingListener(long processingTime) {
+            this.processingTime = processingTime;
+        }
+
+        @Override
+        void processDirectoryFile(PollTableEntry entry, FileObject file,
+                                  AtomicInteger successCount, AtomicInteger failCount) {
+            int current = active.incrementAndGet();
+            try {
+                synchronized (maxActive) {
+                    if (current > maxActive.get()) {
+                        maxActive.set(current);
+                    }
+                    if (firstBacklog < 0) {
+                        firstBacklog = entry.getBacklog();
+                    }
+                }
+                processed.add(file.getName().getBaseName());
+                if (processingTime > 0) {
+                    Thread.sleep(processingTime);
+                }
+                successCount.incrementAndGet();
+                entry.fileProcessed(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
@@ -17,8 +17,10 @@ import org.apache.axis2.AxisFault;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Keeps the request/response messages until pick by the processing/response dispatching tasks.
@@ -26,13 +28,20 @@ import java.util.concurrent.LinkedBlockingQueue;
  * http://docs.oracle.com/javase/6/docs/api/java/util/concurrent/BlockingQueue.html) are used in
  * order to define an asynchronous architecture between the polling tak and actual processing which
  * will lead to higher performance.
+ * <p/>
+ * The request buffer may be bounded, in which case the polling task blocks once the buffer is
+ * full, until the processing tasks catch up.
  */
 public class AMQPTransportBuffers {
     /**
      * The request message buffer which holds the request messages
      */
-    private BlockingQueue<AMQPTransportMessage> requestBuffer =
-            new LinkedBlockingQueue<AMQPTransportMessage>();
+    private BlockingQueue<AMQPTransportMessage> requestBuffer;
+
+    /**
+     * The number of times a request message had to wait for space in the request buffer
+     */
+    private final AtomicLong blockedRequestCount = new AtomicLong(0);
 
     /**
      * The response message buffer which holds the responses for processed messages
@@ -40,6 +49,26 @@ public class AMQPTransportBuffers {
     private BlockingQueue<AMQPTransportMessage> responseBuffer =
             new LinkedBlockingQueue<AMQPTransportMessage>();
 
+    /**
+     * Create buffers with an unbounded request buffer
+     */
+    public AMQPTransportBuffers() {
+        this(0);
+    }
+
+    /**
+     * Create buffers with a request buffer bounded to the given capacity
+     *
+     * @param requestBufferSize the capacity of the request buffer, or 0 for an unbounded buffer
+     */
+    public AMQPTransportBuffers(int requestBufferSize) {
+        if (requestBufferSize > 0) {
+            requestBuffer = new ArrayBlockingQueue<AMQPTransportMessage>(requestBufferSize);
+        } else {
+            requestBuffer = new LinkedBlockingQueue<AMQPTransportMessage>();
+        }
+    }
+
     /**
      * Returns the response messages as a list
      *
@@ -76,12 +105,26 @@ public class AMQPTransportBuffers {
     }
 
     /**
-     * Add a message to the request message buffer
+     * Add a message to the request message buffer, blocking until space is available if the
+     * buffer is full
      *
      * @param msg the message to add into the buffer
+     * @throws InterruptedException if interrupted while waiting for space
+     */
+    public void addRequestMessage(AMQPTransportMessage msg) throws InterruptedException {
+        if (!requestBuffer.offer(msg)) {
+            blockedRequestCount.incrementAndGet();
+            requestBuffer.put(msg);
+        }
+    }
+
+    /**
+     * Returns the number of times a request message had to wait for space in the request buffer
+     *
+     * @return the number of blocked request messages
      */
-    public void addRequestMessage(AMQPTransportMessage msg) {
-        requestBuffer.add(msg);
+    public long getBlockedRequestCount() {
+        return blockedRequestCount.get();
     }
 
     /**
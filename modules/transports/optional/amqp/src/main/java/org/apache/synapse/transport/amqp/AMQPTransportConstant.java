@@ -225,7 +225,7 @@ public final class AMQPTransportConstant {
             "transport.amqp.ScheduledTaskTimeUnit";
 
     /**
-     * Number of concurrent consumers per polling task.
+     * Number of concurrent consumers per polling task. Each consumer uses a channel of its own.
      */
     public static final String PARAMETER_NO_OF_CONCURRENT_CONSUMERS =
             "transport.amqp.NoOfConcurrentConsumers";
@@ -236,6 +236,38 @@ public final class AMQPTransportConstant {
     public static final String PARAMETER_DISPATCHING_TASK_SIZE =
             "transport.amqp.NoOfDispatchingTask";
 
+    /**
+     * Should the consumers of a polling task use automatic acknowledgement? By default messages
+     * are acknowledged once processed, so that the channel prefetch count limits the number of
+     * messages held by the polling task.
+     */
+    public static final String PARAMETER_CONSUMER_AUTO_ACK = "transport.amqp.ConsumerAutoAck";
+
+    /**
+     * The number of processed messages acknowledged together with a single acknowledgement.
+     */
+    public static final String PARAMETER_CONSUMER_ACK_BATCH_SIZE =
+            "transport.amqp.ConsumerAckBatchSize";
+
+    /**
+     * The maximum time in milliseconds a processed message waits to be acknowledged.
+     */
+    public static final String PARAMETER_CONSUMER_ACK_INTERVAL =
+            "transport.amqp.ConsumerAckInterval";
+
+    /**
+     * The maximum number of messages a polling task processes concurrently. Defaults to the
+     * number of worker pool threads left after the consumer and dispatching tasks.
+     */
+    public static final String PARAMETER_MAX_CONCURRENT_MESSAGES =
+            "transport.amqp.MaxConcurrentMessages";
+
+    /**
+     * The capacity of the buffer holding the messages received by a polling task until they
+     * are processed. Defaults to the maximum number of concurrently processed messages.
+     */
+    public static final String PARAMETER_REQUEST_BUFFER_SIZE = "transport.amqp.RequestBufferSize";
+
     /**
      * Use the given channel number if possible. See
      * http://www.rabbitmq.com/releases/rabbitmq-java-client/v3.0.1/rabbitmq-java-client-javadoc-3.0.1/com/rabbitmq/client/Connection.html#createChannel(int)
@@ -343,6 +375,43 @@ public final class AMQPTransportConstant {
 
     public static final String PARAM_SEMAPHORE_TIME_OUT = "semaphore-time-out";
 
+    /**
+     * The number of channels used to publish messages per connection factory. Each of these
+     * channels publishes the messages in batches.
+     */
+    public static final String PARAM_CHANNEL_POOL_SIZE = "channel-pool-size";
+
+    public static final int CHANNEL_POOL_SIZE_DEFAULT = 4;
+
+    /**
+     * How long to wait for a channel in milliseconds, once the channel pool is exhausted.
+     */
+    public static final String PARAM_CHANNEL_POOL_WAIT_TIME = "channel-pool-wait-time";
+
+    public static final long CHANNEL_POOL_WAIT_TIME_DEFAULT = 30000;
+
+    /**
+     * The maximum number of messages published in a single batch.
+     */
+    public static final String PARAM_PUBLISHER_BATCH_SIZE = "publisher-batch-size";
+
+    public static final int PUBLISHER_BATCH_SIZE_DEFAULT = 100;
+
+    /**
+     * How long in milliseconds a batch waits for more messages before it is published. By
+     * default a batch only contains the messages which are already waiting to be published.
+     */
+    public static final String PARAM_PUBLISHER_LINGER_TIME = "publisher-linger-time";
+
+    public static final long PUBLISHER_LINGER_TIME_DEFAULT = 0;
+
+    /**
+     * How long in milliseconds to wait for a message to be published and confirmed.
+     */
+    public static final String PARAM_PUBLISHER_CONFIRM_TIME_OUT = "publisher-confirm-time-out";
+
+    public static final long PUBLISHER_CONFIRM_TIME_OUT_DEFAULT = 30000;
+
     public static final String AMQP_CORRELATION_ID = "AMQP_CORRELATION_ID";
 
     public static final String AMQP_TRANSPORT_BUFFER_KEY = "AMQP_TRANSPORT_BUFFER_KEY";
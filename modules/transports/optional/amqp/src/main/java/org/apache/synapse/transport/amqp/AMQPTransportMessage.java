@@ -17,6 +17,7 @@ import com.rabbitmq.client.BasicProperties;
 import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.QueueingConsumer;
 import org.apache.axis2.transport.base.BaseConstants;
+import org.apache.synapse.transport.amqp.pollingtask.AMQPBatchAcknowledger;
 
 import java.util.Date;
 import java.util.Map;
@@ -67,6 +68,11 @@ public class AMQPTransportMessage {
 
     private QueueingConsumer.Delivery delivery;
 
+    /**
+     * Acknowledges this message once processed, null if the message need not be acknowledged.
+     */
+    private AMQPBatchAcknowledger acknowledger;
+
     public AMQPTransportMessage(QueueingConsumer.Delivery delivery) {
         this.delivery = delivery;
         this.body = delivery.getBody();
@@ -170,4 +176,12 @@ public class AMQPTransportMessage {
     public Envelope getEnvelope() {
         return envelope;
     }
-}
\ No newline at end of file
+
+    public AMQPBatchAcknowledger getAcknowledger() {
+        return acknowledger;
+    }
+
+    public void setAcknowledger(AMQPBatchAcknowledger acknowledger) {
+        this.acknowledger = acknowledger;
+    }
+}
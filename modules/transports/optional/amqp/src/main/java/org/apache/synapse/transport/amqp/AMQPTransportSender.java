@@ -27,8 +27,10 @@ import org.apache.axis2.engine.AxisEngine;
 import org.apache.axis2.transport.OutTransportInfo;
 import org.apache.axis2.transport.base.AbstractTransportSender;
 import org.apache.axis2.util.MessageContextBuilder;
+import org.apache.synapse.transport.amqp.connectionfactory.AMQPTransportConnectionFactory;
 import org.apache.synapse.transport.amqp.connectionfactory.AMQPTransportConnectionFactoryManager;
 import org.apache.synapse.transport.amqp.pollingtask.AMQPSimpleConsumerTask;
+import org.apache.synapse.transport.amqp.sendertask.AMQPBatchPublisher;
 import org.apache.synapse.transport.amqp.sendertask.AMQPSender;
 import org.apache.synapse.transport.amqp.sendertask.AMQPSenderCache;
 import org.apache.synapse.transport.amqp.sendertask.AMQPSenderFactory;
@@ -70,6 +72,11 @@ public class AMQPTransportSender extends AbstractTransportSender {
 
     private long semaphoreTimeOut;
 
+    /**
+     * The batch publishers of the connection factories, created when first used
+     */
+    private ConcurrentMap<AMQPTransportConnectionFactory, AMQPBatchPublisher> publishers;
+
     @Override
     public void init(ConfigurationContext cfgCtx, TransportOutDescription transportOut)
             throws AxisFault {
@@ -92,6 +99,7 @@ public class AMQPTransportSender extends AbstractTransportSender {
         cache = new AMQPSenderCache(new ConcurrentHashMap<Integer, AMQPSender>());
         responseTracker = new ConcurrentHashMap<String, Semaphore>();
         responseMessage = new ConcurrentHashMap<String, AMQPTransportMessage>();
+        publishers = new ConcurrentHashMap<AMQPTransportConnectionFactory, AMQPBatchPublisher>();
 
         log.info("AMQP transport sender initializing..");
     }
@@ -99,6 +107,16 @@ public class AMQPTransportSender extends AbstractTransportSender {
     @Override
     public void stop() {
         super.stop();
+        for (AMQPBatchPublisher publisher : publishers.values()) {
+            publisher.stop();
+            log.info("AMQP publisher stopped after publishing " + publisher.getMessageCount() +
+                    " messages in " + publisher.getBatchCount() + " batches, average batch " +
+                    "size : " + publisher.getAverageBatchSize() + ", average confirm latency : " +
+                    publisher.getAverageConfirmLatency() + " ms, max confirm latency : " +
+                    publisher.getMaxConfirmLatency() + " ms, not confirmed : " +
+                    publisher.getNackCount());
+        }
+        publishers.clear();
         try {
             connectionFactoryManager.shutDownConnectionFactories();
         } catch (AMQPTransportException e) {
@@ -167,6 +185,7 @@ public class AMQPTransportSender extends AbstractTransportSender {
         } else {
             try {
                 amqpSender = AMQPSenderFactory.createAMQPSender(connectionFactoryManager, params);
+                amqpSender.setPublisher(getPublisher(amqpSender.getConnectionFactory()));
                 cache.add(hashKey, amqpSender);
             } catch (IOException e) {
                 throw new AxisFault("Could not create the AMQP sender", e);
@@ -194,25 +213,23 @@ public class AMQPTransportSender extends AbstractTransportSender {
 
             String useTx = (String) msgCtx.getProperty(AMQPTransportConstant.PROPERTY_PRODUCER_TX);
 
-            if (AMQPTransportConstant.AMQP_USE_LWPC.equals(useTx)) {
-                tx = new AMQPTransportProducerTx(true, amqpSender.getChannel());
-            } else if (AMQPTransportConstant.AMQP_USE_TX.equals(useTx)) {
+            // publisher confirms are handled asynchronously by the batch publisher, only
+            // transactions are run on the channel of the sender one message at a time
+            if (AMQPTransportConstant.AMQP_USE_TX.equals(useTx)) {
                 tx = new AMQPTransportProducerTx(false, amqpSender.getChannel());
-            } else {
-                tx = null;
-            }
-
-            if (tx != null) {
                 try {
                     tx.start();
                 } catch (IOException e) {
                     throw new AxisFault("Error while initiation tx for message '" +
                             msgCtx.getMessageID() + "'", e);
                 }
+                amqpSender.sendAMQPMessage(msgCtx, correlationId, replyTo);
+            } else {
+                tx = null;
+                amqpSender.publishAMQPMessage(msgCtx, correlationId, replyTo,
+                        AMQPTransportConstant.AMQP_USE_LWPC.equals(useTx));
             }
 
-            amqpSender.sendAMQPMessage(msgCtx, correlationId, replyTo);
-
             if (tx != null) {
                 try {
                     tx.end();
@@ -260,6 +277,35 @@ public class AMQPTransportSender extends AbstractTransportSender {
         }
     }
 
+    private AMQPBatchPublisher getPublisher(AMQPTransportConnectionFactory connectionFactory) {
+        AMQPBatchPublisher publisher = publishers.get(connectionFactory);
+        if (publisher == null) {
+            AMQPBatchPublisher created = new AMQPBatchPublisher(
+                    connectionFactory.getChannelPool(),
+                    AMQPTransportUtils.getIntProperty(
+                            AMQPTransportConstant.PARAM_CHANNEL_POOL_SIZE,
+                            AMQPTransportConstant.CHANNEL_POOL_SIZE_DEFAULT),
+                    AMQPTransportUtils.getIntProperty(
+                            AMQPTransportConstant.PARAM_PUBLISHER_BATCH_SIZE,
+                            AMQPTransportConstant.PUBLISHER_BATCH_SIZE_DEFAULT),
+                    AMQPTransportUtils.getLongProperty(
+                            AMQPTransportConstant.PARAM_PUBLISHER_LINGER_TIME,
+                            AMQPTransportConstant.PUBLISHER_LINGER_TIME_DEFAULT),
+                    AMQPTransportUtils.getLongProperty(
+                            AMQPTransportConstant.PARAM_PUBLISHER_CONFIRM_TIME_OUT,
+                            AMQPTransportConstant.PUBLISHER_CONFIRM_TIME_OUT_DEFAULT),
+                    metrics);
+            created.start();
+            publisher = publishers.putIfAbsent(connectionFactory, created);
+            if (publisher == null) {
+                publisher = created;
+            } else {
+                created.stop();
+            }
+        }
+        return publisher;
+    }
+
     private void handleSyncResponse(
             MessageContext requestMsgCtx,
             AMQPTransportMessage message,
@@ -0,0 +1,172 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.synapse.transport.amqp.connectionfactory;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of AMQP channels opened on the connection of a connection factory. A channel
+ * must not be used by more than one thread at a time, so a channel borrowed from the pool is
+ * owned by the borrower until it is released back to the pool or invalidated.
+ */
+public class AMQPChannelPool {
+
+    private final Connection connection;
+
+    /**
+     * The maximum number of channels opened by this pool.
+     */
+    private final int maxSize;
+
+    /**
+     * How long to wait for a channel to be released, once the pool is exhausted.
+     */
+    private final long maxWaitTime;
+
+    private final BlockingQueue<Channel> idle = new LinkedBlockingQueue<Channel>();
+
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    public AMQPChannelPool(Connection connection, int maxSize, long maxWaitTime) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    /**
+     * Borrow a channel from the pool, opening a new one if there are no idle channels and the
+     * pool is not exhausted.
+     *
+     * @return an open channel for the exclusive use of the caller
+     * @throws IOException if a channel could not be opened, or none became available in time
+     */
+    public Channel borrow() throws IOException {
+        while (true) {
+            Channel channel = idle.poll();
+            if (channel == null) {
+                int current = size.get();
+                if (current < maxSize) {
+                    if (size.compareAndSet(current, current + 1)) {
+                        return open();
+                    }
+                    continue;
+                }
+                try {
+                    channel = idle.poll(maxWaitTime, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a channel");
+                }
+                if (channel == null) {
+                    throw new IOException("No AMQP channel became available within " +
+                            maxWaitTime + " milliseconds");
+                }
+            }
+
+            if (channel.isOpen()) {
+                return channel;
+            }
+            // the channel has been closed while idle, drop it
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Return a borrowed channel to the pool.
+     *
+     * @param channel the channel to be returned
+     */
+    public void release(Channel channel) {
+        if (channel.isOpen()) {
+            idle.offer(channel);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Close a borrowed channel which is no longer usable, making room for a new one.
+     *
+     * @param channel the channel to be closed
+     */
+    public void invalidate(Channel channel) {
+        size.decrementAndGet();
+        close(channel);
+    }
+
+    /**
+     * Close all the idle channels of the pool.
+     */
+    public void close() {
+        Channel channel;
+        while ((channel = idle.poll()) != null) {
+            size.decrementAndGet();
+            close(channel);
+        }
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    private Channel open() throws IOException {
+        Channel channel;
+        try {
+            channel = connection.createChannel();
+        } catch (IOException e) {
+            size.decrementAndGet();
+            throw e;
+        }
+        if (channel == null) {
+            size.decrementAndGet();
+            throw new IOException("No channel numbers are available on the connection");
+        }
+        return channel;
+    }
+
+    private void close(Channel channel) {
+        try {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        } catch (IOException ignore) {
+            // the channel is being discarded anyway
+        }
+    }
+}
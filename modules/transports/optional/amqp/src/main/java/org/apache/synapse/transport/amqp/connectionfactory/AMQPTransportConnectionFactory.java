@@ -80,6 +80,11 @@ public class AMQPTransportConnectionFactory {
      */
     private Channel channel = null;
 
+    /**
+     * The pool of channels used to publish messages, created when it is first used.
+     */
+    private AMQPChannelPool channelPool = null;
+
     public AMQPTransportConnectionFactory(
             Map<String, String> parameters,
             ExecutorService es)
@@ -150,6 +155,12 @@ public class AMQPTransportConnectionFactory {
      * @throws IOException
      */
     public void shutDownChannel() throws IOException {
+        synchronized (this) {
+            if (channelPool != null) {
+                channelPool.close();
+                channelPool = null;
+            }
+        }
         if (channel != null && channel.isOpen()) {
             channel.close();
         }
@@ -164,6 +175,24 @@ public class AMQPTransportConnectionFactory {
         return channel;
     }
 
+    /**
+     * Get the pool of channels used to publish messages through this connection.
+     *
+     * @return the channel pool of this connection factory
+     */
+    public synchronized AMQPChannelPool getChannelPool() {
+        if (channelPool == null) {
+            channelPool = new AMQPChannelPool(connection,
+                    AMQPTransportUtils.getIntProperty(
+                            AMQPTransportConstant.PARAM_CHANNEL_POOL_SIZE,
+                            AMQPTransportConstant.CHANNEL_POOL_SIZE_DEFAULT),
+                    AMQPTransportUtils.getLongProperty(
+                            AMQPTransportConstant.PARAM_CHANNEL_POOL_WAIT_TIME,
+                            AMQPTransportConstant.CHANNEL_POOL_WAIT_TIME_DEFAULT));
+        }
+        return channelPool;
+    }
+
     /**
      * Get the connection
      * @return the connection to broker.
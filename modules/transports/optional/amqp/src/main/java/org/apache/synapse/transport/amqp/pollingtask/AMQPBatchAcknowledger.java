@@ -0,0 +1,156 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.synapse.transport.amqp.pollingtask;
+
+import com.rabbitmq.client.Channel;
+
+import java.io.IOException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Acknowledges the messages delivered through a channel once they are processed. Rather than
+ * acknowledging every message, the processed messages are acknowledged in batches with a
+ * single multiple acknowledgement. Since the messages may complete out of order, a batch only
+ * covers the messages delivered before the oldest message which is still being processed.
+ * <p/>
+ * The delivery tags are only unique within a channel, hence there should be an instance of
+ * this per consumer channel.
+ */
+public class AMQPBatchAcknowledger {
+
+    private final Channel channel;
+
+    private final int batchSize;
+
+    /**
+     * Delivery tags of the messages delivered but not yet processed.
+     */
+    private final SortedSet<Long> outstanding = new TreeSet<Long>();
+
+    /**
+     * Delivery tags of the messages processed but not yet acknowledged.
+     */
+    private final SortedSet<Long> completed = new TreeSet<Long>();
+
+    private long deliveredCount = 0;
+
+    private long ackedCount = 0;
+
+    private long ackBatchCount = 0;
+
+    /**
+     * @param channel   the channel the messages were delivered through
+     * @param batchSize the number of processed messages which triggers an acknowledgement
+     */
+    public AMQPBatchAcknowledger(Channel channel, int batchSize) {
+        this.channel = channel;
+        this.batchSize = batchSize > 0 ? batchSize : 1;
+    }
+
+    /**
+     * Record a delivery. This must be called in the order the messages are delivered, i.e. from
+     * the consumer callback, before the message is handed over for processing.
+     *
+     * @param deliveryTag the delivery tag of the message
+     */
+    public synchronized void delivered(long deliveryTag) {
+        outstanding.add(deliveryTag);
+        deliveredCount++;
+    }
+
+    /**
+     * Record that a message was processed, and acknowledge the processed messages if a batch
+     * is complete.
+     *
+     * @param deliveryTag the delivery tag of the message
+     * @throws IOException if the acknowledgement could not be sent
+     */
+    public synchronized void completed(long deliveryTag) throws IOException {
+        if (outstanding.remove(deliveryTag)) {
+            completed.add(deliveryTag);
+            if (completed.size() >= batchSize) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Acknowledge the processed messages which can be acknowledged, regardless of the batch size.
+     *
+     * @throws IOException if the acknowledgement could not be sent
+     */
+    public synchronized void flush() throws IOException {
+        if (completed.isEmpty()) {
+            return;
+        }
+        SortedSet<Long> acknowledgeable = outstanding.isEmpty() ? completed :
+                completed.headSet(outstanding.first());
+        if (acknowledgeable.isEmpty()) {
+            return;
+        }
+        long last = acknowledgeable.last();
+        int count = acknowledgeable.size();
+        if (count == 1) {
+            channel.basicAck(last, false);
+        } else {
+            channel.basicAck(last, true);
+        }
+        acknowledgeable.clear();
+        ackedCount += count;
+        ackBatchCount++;
+    }
+
+    /**
+     * Returns the number of messages delivered but not yet acknowledged.
+     */
+    public synchronized int getUnacknowledgedCount() {
+        return outstanding.size() + completed.size();
+    }
+
+    /**
+     * Returns the number of messages delivered but not yet processed.
+     */
+    public synchronized int getInFlightCount() {
+        return outstanding.size();
+    }
+
+    public synchronized long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    public synchronized long getAckedCount() {
+        return ackedCount;
+    }
+
+    /**
+     * Returns the number of acknowledgements sent to the broker.
+     */
+    public synchronized long getAckBatchCount() {
+        return ackBatchCount;
+    }
+}
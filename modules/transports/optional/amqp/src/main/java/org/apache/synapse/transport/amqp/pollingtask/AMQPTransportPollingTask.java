@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The polling task deploy for each services exposed on AMQP transport. This task
@@ -153,6 +154,37 @@ public class AMQPTransportPollingTask {
      */
     private int noOfConcurrentConsumers = 2;
 
+    /**
+     * Should the consumers use automatic acknowledgement?
+     * {@link AMQPTransportConstant#PARAMETER_CONSUMER_AUTO_ACK}
+     */
+    private boolean isAutoAck = false;
+
+    /**
+     * The number of processed messages acknowledged together.
+     * {@link AMQPTransportConstant#PARAMETER_CONSUMER_ACK_BATCH_SIZE}
+     */
+    private int ackBatchSize = 10;
+
+    /**
+     * The maximum time in milliseconds a processed message waits to be acknowledged.
+     * {@link AMQPTransportConstant#PARAMETER_CONSUMER_ACK_INTERVAL}
+     */
+    private long ackInterval = 100;
+
+    /**
+     * The maximum number of messages processed concurrently.
+     * {@link AMQPTransportConstant#PARAMETER_MAX_CONCURRENT_MESSAGES}
+     */
+    private int maxConcurrentMessages = AMQPTransportConstant.WORKER_POOL_DEFAULT;
+
+    /**
+     * The channel prefetch count of each consumer, derived from the maximum number of
+     * concurrently processed messages and the request buffer size if not configured.
+     * {@link AMQPTransportConstant#PARAMETER_CHANNEL_PREFETCH_COUNT}
+     */
+    private int prefetchCount = 0;
+
     /**
      * The name of the connectionFactory this service is bound to.
      * {@link AMQPTransportConstant#PARAMETER_CONNECTION_FACTORY_NAME}
@@ -202,14 +234,48 @@ public class AMQPTransportPollingTask {
     private AMQPTransportBuffers buffers = null;
 
     /**
-     * The AMQP channel to use.
+     * The AMQP connection to create the consumer channels from.
+     */
+    private Connection connection;
+
+    /**
+     * The AMQP channel used to declare the queue, which is also the channel of the first consumer.
      */
     private Channel channel;
 
+    /**
+     * The channels of the consumers, one per consumer.
+     */
+    private List<Channel> consumerChannels = new ArrayList<Channel>();
+
+    /**
+     * Acknowledges the processed messages of each consumer channel.
+     */
+    private List<AMQPBatchAcknowledger> acknowledgers =
+            new CopyOnWriteArrayList<AMQPBatchAcknowledger>();
+
+    /**
+     * Limits the number of messages processed concurrently.
+     */
+    private Semaphore processingPermits;
+
     private String configuredContentType = AMQPTransportConstant.DEFAULT_CONTENT_TYPE;
 
     private List<ScheduledFuture<?>> taskFutureList = new ArrayList<ScheduledFuture<?>>();
 
+    private List<Future<?>> dispatchingTaskFutureList = new ArrayList<Future<?>>();
+
+    private final AtomicLong receivedCount = new AtomicLong(0);
+
+    private final AtomicLong processedCount = new AtomicLong(0);
+
+    /**
+     * Acknowledgement counts of the consumer channels closed so far.
+     */
+    private final AtomicLong closedAckedCount = new AtomicLong(0);
+
+    private final AtomicLong closedAckBatchCount = new AtomicLong(0);
+
 
     private AMQPTransportReconnectHandler haHandler;
 
@@ -217,8 +283,8 @@ public class AMQPTransportPollingTask {
         isUseTx = useTx;
     }
 
-    public void setChannel(Channel channel) {
-        this.channel = channel;
+    public void setConnection(Connection connection) {
+        this.connection = connection;
     }
 
     public void setConfiguredContentType(String configuredContentType) {
@@ -289,6 +355,26 @@ public class AMQPTransportPollingTask {
         this.noOfConcurrentConsumers = noOfConcurrentConsumers;
     }
 
+    public void setAutoAck(boolean autoAck) {
+        isAutoAck = autoAck;
+    }
+
+    public void setAckBatchSize(int ackBatchSize) {
+        this.ackBatchSize = ackBatchSize;
+    }
+
+    public void setAckInterval(long ackInterval) {
+        this.ackInterval = ackInterval;
+    }
+
+    public void setMaxConcurrentMessages(int maxConcurrentMessages) {
+        this.maxConcurrentMessages = maxConcurrentMessages;
+    }
+
+    public void setPrefetchCount(int prefetchCount) {
+        this.prefetchCount = prefetchCount;
+    }
+
     public void setConnectionFactoryName(String connectionFactoryName) {
         this.connectionFactoryName = connectionFactoryName;
     }
@@ -369,6 +455,117 @@ public class AMQPTransportPollingTask {
         return noOfConcurrentConsumers;
     }
 
+    public boolean isAutoAck() {
+        return isAutoAck;
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public long getAckInterval() {
+        return ackInterval;
+    }
+
+    public int getMaxConcurrentMessages() {
+        return maxConcurrentMessages;
+    }
+
+    /**
+     * Returns the prefetch count of each consumer channel. Unless configured, the consumers
+     * together prefetch as many messages as can be processed concurrently and buffered.
+     *
+     * @return the prefetch count of a consumer channel
+     */
+    public int getPrefetchCount() {
+        if (prefetchCount > 0) {
+            return prefetchCount;
+        }
+        BlockingQueue<AMQPTransportMessage> requestBuffer = buffers.getRequestMessageBuffer();
+        long capacity = (long) maxConcurrentMessages + requestBuffer.size() +
+                requestBuffer.remainingCapacity();
+        long perConsumer = capacity / Math.max(1, noOfConcurrentConsumers);
+        // the prefetch count is an unsigned short
+        return (int) Math.max(1, Math.min(perConsumer, 65535));
+    }
+
+    /**
+     * Returns the number of messages received from the broker.
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * Returns the number of messages processed.
+     */
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * Returns the number of messages received but not yet processed, i.e. the messages in the
+     * request buffer and the messages being processed.
+     */
+    public long getInFlightCount() {
+        return receivedCount.get() - processedCount.get();
+    }
+
+    /**
+     * Returns the number of messages being processed.
+     */
+    public int getProcessingCount() {
+        Semaphore permits = processingPermits;
+        return permits == null ? 0 : maxConcurrentMessages - permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of messages waiting in the request buffer.
+     */
+    public int getRequestBufferSize() {
+        return buffers.getRequestMessageBuffer().size();
+    }
+
+    /**
+     * Returns the number of times a consumer had to wait for space in the request buffer.
+     */
+    public long getBlockedRequestCount() {
+        return buffers.getBlockedRequestCount();
+    }
+
+    /**
+     * Returns the number of messages delivered to the consumers but not yet acknowledged.
+     */
+    public int getUnacknowledgedCount() {
+        int count = 0;
+        for (AMQPBatchAcknowledger acknowledger : acknowledgers) {
+            count += acknowledger.getUnacknowledgedCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of messages acknowledged after processing.
+     */
+    public long getAckedCount() {
+        long count = closedAckedCount.get();
+        for (AMQPBatchAcknowledger acknowledger : acknowledgers) {
+            count += acknowledger.getAckedCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of acknowledgements sent to the broker.
+     */
+    public long getAckBatchCount() {
+        long count = closedAckBatchCount.get();
+        for (AMQPBatchAcknowledger acknowledger : acknowledgers) {
+            count += acknowledger.getAckBatchCount();
+        }
+        return count;
+    }
+
     public TimeUnit getScheduledTaskTimeUnit() {
         return scheduledTaskTimeUnit;
     }
@@ -399,6 +596,9 @@ public class AMQPTransportPollingTask {
     public synchronized void start() throws AMQPTransportException {
 
         try {
+            channel = connection.createChannel();
+            consumerChannels.add(channel);
+
             if (exchangeName != null) {
 
                 channel.exchangeDeclare(
@@ -438,20 +638,45 @@ public class AMQPTransportPollingTask {
         }
 
         // schedule dispatching tasks to handover messages from the internal buffer to actual
-        // processing task
+        // processing task, no more than maxConcurrentMessages at a time
+        processingPermits = new Semaphore(maxConcurrentMessages);
         for (int i = 0; i < noOfDispatchingTask; i++) {
-            pollingTaskScheduler.execute(new MessageDispatchTask(buffers));
+            dispatchingTaskFutureList.add(pollingTaskScheduler.submit(
+                    new MessageDispatchTask(buffers, processingPermits)));
         }
 
+        // with manual acknowledgement the broker stops delivering once a consumer holds
+        // prefetchCount unacknowledged messages, which bounds the messages held by this task
+        boolean autoAck = isAutoAck && !isUseTx;
+        int consumerPrefetchCount = getPrefetchCount();
+        int consumerAckBatchSize = Math.max(1, Math.min(ackBatchSize, consumerPrefetchCount / 2));
+
         // schedule IO task to pull messages from the broker
         for (int i = 0; i < noOfConcurrentConsumers; i++) {
-            // only channels are thread safe, so create consumer per thread
+            // only channels are thread safe, so create a channel per consumer
             try {
-                QueueingConsumer consumer = new QueueingConsumer(channel);
-                boolean isAutoAck = isUseTx == true ? false : true; // increase readability
-                channel.basicConsume(queueName, isAutoAck, consumer);
+                Channel consumerChannel = channel;
+                if (i > 0) {
+                    consumerChannel = connection.createChannel();
+                    consumerChannels.add(consumerChannel);
+                }
+
+                AMQPBatchAcknowledger acknowledger = null;
+                if (!autoAck) {
+                    consumerChannel.basicQos(consumerPrefetchCount);
+                    if (!isUseTx) {
+                        acknowledger = new AMQPBatchAcknowledger(
+                                consumerChannel, consumerAckBatchSize);
+                        acknowledgers.add(acknowledger);
+                    }
+                }
+
+                QueueingConsumer consumer = new AcknowledgingConsumer(
+                        consumerChannel, acknowledger);
+                consumerChannel.basicConsume(queueName, autoAck, consumer);
                 ScheduledFuture<?> pollingTaskFuture = pollingTaskScheduler.scheduleWithFixedDelay(
-                        new MessageIOTask(consumer, buffers, isUseTx),
+                        new MessageIOTask(
+                                consumerChannel, consumer, acknowledger, buffers, isUseTx),
                         scheduledTaskInitialDelay,
                         scheduledTaskDelay,
                         scheduledTaskTimeUnit);
@@ -462,6 +687,12 @@ public class AMQPTransportPollingTask {
             }
         }
 
+        if (!acknowledgers.isEmpty()) {
+            // acknowledge the processed messages of incomplete batches
+            taskFutureList.add(pollingTaskScheduler.scheduleWithFixedDelay(
+                    new AcknowledgementTask(), ackInterval, ackInterval, TimeUnit.MILLISECONDS));
+        }
+
         if (log.isDebugEnabled()) {
             log.debug("A polling task started listening on the queue '" + queueName + "' on " +
                     "behalf of the service '" + serviceName + "'");
@@ -469,12 +700,99 @@ public class AMQPTransportPollingTask {
     }
 
     /**
-     * Stop the polling tasks
+     * Stop the polling tasks and close the consumer channels. The messages which are not
+     * acknowledged by then are redelivered by the broker.
      */
     public synchronized void stop() {
         for (ScheduledFuture<?> pollingTaskFuture : taskFutureList) {
             pollingTaskFuture.cancel(false);
         }
+        taskFutureList.clear();
+
+        for (Future<?> dispatchingTaskFuture : dispatchingTaskFutureList) {
+            dispatchingTaskFuture.cancel(true);
+        }
+        dispatchingTaskFutureList.clear();
+
+        flushAcknowledgements();
+        for (AMQPBatchAcknowledger acknowledger : acknowledgers) {
+            closedAckedCount.addAndGet(acknowledger.getAckedCount());
+            closedAckBatchCount.addAndGet(acknowledger.getAckBatchCount());
+        }
+        acknowledgers.clear();
+
+        for (Channel consumerChannel : consumerChannels) {
+            try {
+                if (consumerChannel.isOpen()) {
+                    consumerChannel.close();
+                }
+            } catch (IOException e) {
+                log.warn("Error while closing a consumer channel of the service '" +
+                        serviceName + "'", e);
+            } catch (ShutdownSignalException e) {
+                // the channel is already closed
+            }
+        }
+        consumerChannels.clear();
+
+        if (log.isDebugEnabled()) {
+            log.debug("Polling task of the service '" + serviceName + "' stopped after " +
+                    "receiving " + getReceivedCount() + " messages, processed : " +
+                    getProcessedCount() + ", acknowledged : " + getAckedCount() + " with " +
+                    getAckBatchCount() + " acknowledgements, blocked on a full request buffer : " +
+                    getBlockedRequestCount());
+        }
+    }
+
+    /**
+     * Acknowledge the processed messages of all the consumer channels
+     */
+    private void flushAcknowledgements() {
+        for (AMQPBatchAcknowledger acknowledger : acknowledgers) {
+            try {
+                acknowledger.flush();
+            } catch (IOException e) {
+                log.error("Could not acknowledge the processed messages of the service '" +
+                        serviceName + "'", e);
+            } catch (ShutdownSignalException e) {
+                // the channel is closed, the messages will be redelivered
+            }
+        }
+    }
+
+    /**
+     * A consumer which records the deliveries with the acknowledger of its channel, in the order
+     * the broker delivers them.
+     */
+    private static final class AcknowledgingConsumer extends QueueingConsumer {
+
+        private AMQPBatchAcknowledger acknowledger;
+
+        private AcknowledgingConsumer(Channel channel, AMQPBatchAcknowledger acknowledger) {
+            super(channel);
+            this.acknowledger = acknowledger;
+        }
+
+        @Override
+        public void handleDelivery(String consumerTag,
+                                   Envelope envelope,
+                                   AMQP.BasicProperties properties,
+                                   byte[] body) throws IOException {
+            if (acknowledger != null) {
+                acknowledger.delivered(envelope.getDeliveryTag());
+            }
+            super.handleDelivery(consumerTag, envelope, properties, body);
+        }
+    }
+
+    /**
+     * Acknowledges the processed messages which are waiting for their batch to complete
+     */
+    private final class AcknowledgementTask implements Runnable {
+
+        public void run() {
+            flushAcknowledgements();
+        }
     }
 
     /**
@@ -483,18 +801,34 @@ public class AMQPTransportPollingTask {
      */
     private final class MessageIOTask implements Runnable {
 
+        private Channel channel;
         private AMQPTransportBuffers buffers;
         private QueueingConsumer queueingConsumer;
+        private AMQPBatchAcknowledger acknowledger;
         private boolean isUseTx;
 
-        private MessageIOTask(QueueingConsumer queueingConsumer,
+        private MessageIOTask(Channel channel,
+                              QueueingConsumer queueingConsumer,
+                              AMQPBatchAcknowledger acknowledger,
                               AMQPTransportBuffers buffers,
                               boolean isAutoAck) {
+            this.channel = channel;
             this.queueingConsumer = queueingConsumer;
+            this.acknowledger = acknowledger;
             this.buffers = buffers;
             this.isUseTx = isAutoAck;
         }
 
+        /**
+         * Hand over a delivery to the request buffer, blocking while the buffer is full
+         */
+        private void handOver(QueueingConsumer.Delivery delivery) throws InterruptedException {
+            AMQPTransportMessage message = new AMQPTransportMessage(delivery);
+            message.setAcknowledger(acknowledger);
+            buffers.addRequestMessage(message);
+            receivedCount.incrementAndGet();
+        }
+
         public void run() {
             try {
                 if (isUseTx) {
@@ -502,10 +836,16 @@ public class AMQPTransportPollingTask {
                 }
                 QueueingConsumer.Delivery delivery = queueingConsumer.nextDelivery();
                 if (delivery != null) {
-                    buffers.addRequestMessage(new AMQPTransportMessage(delivery));
+                    handOver(delivery);
                     if (isUseTx) {
                         channel.basicAck(delivery.getEnvelope().getDeliveryTag(), false);
                         channel.txCommit();
+                    } else {
+                        // hand over the messages already prefetched without waiting for the
+                        // next run
+                        while ((delivery = queueingConsumer.nextDelivery(0)) != null) {
+                            handOver(delivery);
+                        }
                     }
                 } else {
                     if (isUseTx) {
@@ -540,7 +880,7 @@ public class AMQPTransportPollingTask {
                     if (brokerEntry == null) {
                         log.error("No new connection factory was found for key '" + key + "'");
                     } else {
-                        setChannel(brokerEntry.getChannel());
+                        setConnection(brokerEntry.getConnection());
                         stop();
                         try {
                             start();
@@ -566,16 +906,33 @@ public class AMQPTransportPollingTask {
      */
     private final class MessageDispatchTask implements Runnable {
         private AMQPTransportBuffers buffers;
+        private Semaphore permits;
 
-        private MessageDispatchTask(AMQPTransportBuffers buffers) {
+        private MessageDispatchTask(AMQPTransportBuffers buffers, Semaphore permits) {
             this.buffers = buffers;
+            this.permits = permits;
         }
 
         public void run() {
-            while (true) {
+            while (!Thread.currentThread().isInterrupted()) {
                 AMQPTransportMessage msg = buffers.getRequestMessage();
-                if (msg != null) {
-                    pollingTaskScheduler.execute(new MessageProcessingTask(msg, buffers));
+                if (msg == null) {
+                    continue;
+                }
+                try {
+                    // wait until a message being processed completes
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    pollingTaskScheduler.execute(new MessageProcessingTask(msg, buffers, permits));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    log.error("Could not process a message of the service '" + serviceName +
+                            "', the worker pool is shut down", e);
+                    return;
                 }
             }
         }
@@ -588,14 +945,17 @@ public class AMQPTransportPollingTask {
 
         private AMQPTransportMessage message;
         private AMQPTransportBuffers buffers;
+        private Semaphore permits;
         private boolean isSOAP11;
 
         private MessageProcessingTask(
                 AMQPTransportMessage message,
-                AMQPTransportBuffers buffers) {
+                AMQPTransportBuffers buffers,
+                Semaphore permits) {
 
             this.message = message;
             this.buffers = buffers;
+            this.permits = permits;
         }
 
         public void run() {
@@ -611,6 +971,27 @@ public class AMQPTransportPollingTask {
                     log.error("Error while sending the fault message to the client. Client will " +
                             "not receive any errors!", e);
                 }
+            } finally {
+                processedCount.incrementAndGet();
+                permits.release();
+                acknowledge(message);
+            }
+        }
+
+        private void acknowledge(AMQPTransportMessage message) {
+            AMQPBatchAcknowledger acknowledger = message.getAcknowledger();
+            if (acknowledger == null) {
+                return;
+            }
+            try {
+                acknowledger.completed(message.getEnvelope().getDeliveryTag());
+            } catch (IOException e) {
+                log.error("Could not acknowledge a processed message of the service '" +
+                        serviceName + "'", e);
+            } catch (ShutdownSignalException e) {
+                log.warn("Could not acknowledge a processed message of the service '" +
+                        serviceName + "' since its channel is closed. The message will be " +
+                        "redelivered");
             }
         }
 
@@ -52,9 +52,6 @@ public class AMQPTransportPollingTaskFactory {
         pt.setPollingTaskScheduler(pool);
         pt.setHaHandler(haHandler);
 
-        // set buffers to hold request/response messages for this task
-        pt.setBuffers(new AMQPTransportBuffers());
-
         String exchangeName = AMQPTransportUtils.getOptionalStringParameter(
                 AMQPTransportConstant.PARAMETER_EXCHANGE_NAME, svcParam, conFacParam);
         pt.setExchangeName(exchangeName);
@@ -92,7 +89,7 @@ public class AMQPTransportPollingTaskFactory {
             pt.setInternalExchange(isInternalExchange);
         }
 
-        pt.setChannel(connectionFactory.getChannel());
+        pt.setConnection(connectionFactory.getConnection());
         pt.setConnectionFactoryName(connectionFactory.getName());
 
         String responseConFac = AMQPTransportUtils.getOptionalStringParameter(
@@ -186,6 +183,64 @@ public class AMQPTransportPollingTaskFactory {
             pt.setUseTx(isUseTx);
         }
 
+        Boolean isAutoAck = AMQPTransportUtils.getOptionalBooleanParameter(
+                AMQPTransportConstant.PARAMETER_CONSUMER_AUTO_ACK, svcParam, conFacParam);
+        if (isAutoAck != null) {
+            pt.setAutoAck(isAutoAck);
+        }
+
+        try {
+            Integer ackBatchSize = AMQPTransportUtils.getOptionalIntParameter(
+                    AMQPTransportConstant.PARAMETER_CONSUMER_ACK_BATCH_SIZE,
+                    svcParam, conFacParam);
+            if (ackBatchSize != null) {
+                pt.setAckBatchSize(ackBatchSize);
+            }
+            Integer ackInterval = AMQPTransportUtils.getOptionalIntParameter(
+                    AMQPTransportConstant.PARAMETER_CONSUMER_ACK_INTERVAL,
+                    svcParam, conFacParam);
+            if (ackInterval != null) {
+                pt.setAckInterval(ackInterval);
+            }
+        } catch (AMQPTransportException e) {
+            throw new AxisFault("Could not assign the acknowledgement batch size or interval", e);
+        }
+
+        // by default, process as many messages concurrently as the worker pool threads left
+        // after the consumers and the dispatching tasks, and buffer as many
+        int maxConcurrentMessages = Math.max(1, AMQPTransportUtils.getIntProperty(
+                AMQPTransportConstant.PARAM_WORKER_POOL_SIZE,
+                AMQPTransportConstant.WORKER_POOL_DEFAULT) -
+                pt.getNoOfConcurrentConsumers() - pt.getNoOfDispatchingTask());
+        int requestBufferSize;
+        try {
+            Integer maxConcurrent = AMQPTransportUtils.getOptionalIntParameter(
+                    AMQPTransportConstant.PARAMETER_MAX_CONCURRENT_MESSAGES,
+                    svcParam, conFacParam);
+            if (maxConcurrent != null && maxConcurrent > 0) {
+                maxConcurrentMessages = maxConcurrent;
+            }
+            requestBufferSize = maxConcurrentMessages;
+            Integer bufferSize = AMQPTransportUtils.getOptionalIntParameter(
+                    AMQPTransportConstant.PARAMETER_REQUEST_BUFFER_SIZE,
+                    svcParam, conFacParam);
+            if (bufferSize != null) {
+                requestBufferSize = bufferSize;
+            }
+            Integer prefetchCount = AMQPTransportUtils.getOptionalIntParameter(
+                    AMQPTransportConstant.PARAMETER_CHANNEL_PREFETCH_COUNT,
+                    svcParam, conFacParam);
+            if (prefetchCount != null) {
+                pt.setPrefetchCount(prefetchCount);
+            }
+        } catch (AMQPTransportException e) {
+            throw new AxisFault("Could not assign the flow control parameters", e);
+        }
+        pt.setMaxConcurrentMessages(maxConcurrentMessages);
+
+        // set buffers to hold request/response messages for this task
+        pt.setBuffers(new AMQPTransportBuffers(requestBufferSize));
+
         try {
             Integer initialDelay = AMQPTransportUtils.getOptionalIntParameter(
                     AMQPTransportConstant.PARAMETER_SCHEDULED_TASK_INITIAL_DELAY,
@@ -232,7 +287,12 @@ public class AMQPTransportPollingTaskFactory {
                     "Is queue auto deleted: '" + pt.isQueueAutoDelete() + "'\n" +
                     "Is blocking mode: '" + pt.isBlockingMode() + "'\n" +
                     "Number of concurrent consumers: '" + pt.getNoOfConcurrentConsumers() + "'\n" +
-                    "Number of dispatching task: '" + pt.getNoOfDispatchingTask() + "'");
+                    "Number of dispatching task: '" + pt.getNoOfDispatchingTask() + "'\n" +
+                    "Auto acknowledgement: '" + pt.isAutoAck() + "'\n" +
+                    "Acknowledgement batch size: '" + pt.getAckBatchSize() + "'\n" +
+                    "Max concurrent messages: '" + pt.getMaxConcurrentMessages() + "'\n" +
+                    "Request buffer size: '" + requestBufferSize + "'\n" +
+                    "Prefetch count per consumer: '" + pt.getPrefetchCount() + "'");
         }
 
         return pt;
@@ -0,0 +1,547 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.synapse.transport.amqp.sendertask;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.apache.axis2.transport.base.MetricsCollector;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.synapse.transport.amqp.connectionfactory.AMQPChannelPool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the messages of a connection factory in batches. The messages are queued by the
+ * sending threads, and each channel of the channel pool of the connection factory takes the
+ * queued messages in batches of up to the maximum batch size, waiting up to the linger time for
+ * a batch to fill up. The channels are in publisher confirm mode, so the messages which must be
+ * confirmed are acknowledged asynchronously by the broker, rather than one transaction at a time.
+ * A sending thread waits until its message is published, or confirmed if it asked for that.
+ * <p>
+ * The messages sent, the bytes sent, the failures and the time outs are counted by the metrics
+ * of the transport sender, so that they are exposed through its TransportView MBean. The batch
+ * sizes and confirm latencies are only available through the getters of this class, and are
+ * logged when the transport sender stops; they are not exposed through JMX.
+ */
+public class AMQPBatchPublisher {
+
+    private static Log log = LogFactory.getLog(AMQPBatchPublisher.class);
+
+    private final AMQPChannelPool channelPool;
+
+    private final int channelCount;
+
+    private final int maxBatchSize;
+
+    private final long lingerTime;
+
+    private final long confirmTimeOut;
+
+    private final MetricsCollector metrics;
+
+    private final BlockingQueue<PublishRequest> queue = new LinkedBlockingQueue<PublishRequest>();
+
+    private ExecutorService publishers;
+
+    private final List<ChannelPublisher> channelPublishers =
+            new CopyOnWriteArrayList<ChannelPublisher>();
+
+    private volatile boolean running = false;
+
+    private final AtomicLong batchCount = new AtomicLong(0);
+    private final AtomicLong messageCount = new AtomicLong(0);
+    private final AtomicLong largestBatchSize = new AtomicLong(0);
+    private final AtomicLong confirmCount = new AtomicLong(0);
+    private final AtomicLong nackCount = new AtomicLong(0);
+    private final AtomicLong totalConfirmLatency = new AtomicLong(0);
+    private final AtomicLong maxConfirmLatency = new AtomicLong(0);
+
+    /**
+     * @param channelPool    the channel pool of the connection factory
+     * @param channelCount   the number of channels publishing the messages concurrently
+     * @param maxBatchSize   the maximum number of messages in a batch
+     * @param lingerTime     how long to wait for a batch to fill up, in milliseconds
+     * @param confirmTimeOut how long to wait for a message to be published and confirmed,
+     *                       in milliseconds
+     * @param metrics        the metrics of the transport sender
+     */
+    public AMQPBatchPublisher(AMQPChannelPool channelPool, int channelCount, int maxBatchSize,
+                              long lingerTime, long confirmTimeOut, MetricsCollector metrics) {
+        this.channelPool = channelPool;
+        this.channelCount = Math.max(1, channelCount);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.lingerTime = lingerTime;
+        this.confirmTimeOut = confirmTimeOut;
+        this.metrics = metrics;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        publishers = Executors.newFixedThreadPool(channelCount);
+        for (int i = 0; i < channelCount; i++) {
+            ChannelPublisher channelPublisher = new ChannelPublisher();
+            channelPublishers.add(channelPublisher);
+            publishers.execute(channelPublisher);
+        }
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        publishers.shutdownNow();
+        PublishRequest request;
+        IOException stopped = new IOException("The AMQP publisher has been stopped");
+        while ((request = queue.poll()) != null) {
+            complete(request, stopped);
+        }
+        // the confirms of the messages in flight will not be waited for
+        for (ChannelPublisher channelPublisher : channelPublishers) {
+            channelPublisher.failUnconfirmed(stopped);
+        }
+        channelPublishers.clear();
+    }
+
+    /**
+     * Publish a message through the next batch, and wait until it has been published, or
+     * confirmed by the broker if requested.
+     *
+     * @param exchange       the exchange to publish to
+     * @param routingKey     the routing key of the message
+     * @param properties     the properties of the message
+     * @param body           the body of the message
+     * @param waitForConfirm whether to wait until the broker confirms the message
+     * @throws IOException if the message could not be published, was not confirmed by the
+     *                     broker, or the time out elapsed. A message which was not published
+     *                     within the time out is not published afterwards.
+     */
+    public void publish(String exchange, String routingKey, AMQP.BasicProperties properties,
+                        byte[] body, boolean waitForConfirm) throws IOException {
+        if (!running) {
+            throw new IOException("The AMQP publisher has been stopped");
+        }
+        PublishRequest request = new PublishRequest(exchange, routingKey, properties, body,
+                waitForConfirm);
+        queue.add(request);
+        boolean done = false;
+        boolean givenUp = false;
+        try {
+            done = request.await(confirmTimeOut);
+        } finally {
+            if (!done && request.claim()) {
+                // give up the message, so that it is not published once the sender has moved on
+                queue.remove(request);
+                metrics.incrementTimeoutsSending();
+                givenUp = true;
+            }
+        }
+        if (givenUp) {
+            throw new IOException("The AMQP message was " + (request.published ?
+                    "published but not confirmed" : "not published") + " within " +
+                    confirmTimeOut + " milliseconds");
+        }
+        request.checkOutcome();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) messageCount.get() / batches;
+    }
+
+    public long getLargestBatchSize() {
+        return largestBatchSize.get();
+    }
+
+    public long getConfirmCount() {
+        return confirmCount.get();
+    }
+
+    /**
+     * @return the number of messages rejected by the broker, or lost along with their channel
+     */
+    public long getNackCount() {
+        return nackCount.get();
+    }
+
+    /**
+     * @return the average time in milliseconds from queueing a message until it was confirmed
+     */
+    public double getAverageConfirmLatency() {
+        long confirms = confirmCount.get();
+        return confirms == 0 ? 0 : totalConfirmLatency.get() / 1000000.0 / confirms;
+    }
+
+    /**
+     * @return the longest time in milliseconds from queueing a message until it was confirmed
+     */
+    public double getMaxConfirmLatency() {
+        return maxConfirmLatency.get() / 1000000.0;
+    }
+
+    private void batchTaken(int size) {
+        batchCount.incrementAndGet();
+        messageCount.addAndGet(size);
+        updateMax(largestBatchSize, size);
+    }
+
+    /**
+     * Record the outcome of the given request, unless it is already known
+     *
+     * @param request the request which has been published, confirmed or failed
+     * @param failure the cause of the failure, or null if the request succeeded
+     */
+    private void complete(PublishRequest request, IOException failure) {
+        if (request.claim()) {
+            finish(request, failure);
+        }
+    }
+
+    private void confirmed(PublishRequest request, IOException failure) {
+        if (!request.claim()) {
+            return;
+        }
+        if (failure == null) {
+            long latency = System.nanoTime() - request.queuedTime;
+            confirmCount.incrementAndGet();
+            totalConfirmLatency.addAndGet(latency);
+            updateMax(maxConfirmLatency, latency);
+        } else {
+            nackCount.incrementAndGet();
+        }
+        finish(request, failure);
+    }
+
+    /**
+     * Count the outcome of a claimed request in the metrics of the transport sender, and
+     * release its sender
+     */
+    private void finish(PublishRequest request, IOException failure) {
+        if (failure == null) {
+            metrics.incrementMessagesSent();
+            metrics.incrementBytesSent(request.body.length);
+        } else {
+            metrics.incrementFaultsSending();
+        }
+        request.finish(failure);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publishes batches of queued messages on a channel of its own, and tracks the messages
+     * which are yet to be confirmed on that channel.
+     */
+    private class ChannelPublisher implements Runnable, ConfirmListener, ShutdownListener {
+
+        private Channel channel = null;
+
+        private final ConcurrentNavigableMap<Long, PublishRequest> unconfirmed =
+                new ConcurrentSkipListMap<Long, PublishRequest>();
+
+        private final List<PublishRequest> batch = new ArrayList<PublishRequest>();
+
+        public void run() {
+            try {
+                while (running) {
+                    PublishRequest first = queue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    fillBatch();
+                    publishBatch();
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                IOException stopped = new IOException("The AMQP publisher has been stopped");
+                for (PublishRequest request : batch) {
+                    complete(request, stopped);
+                }
+                if (channel != null) {
+                    channel.removeConfirmListener(this);
+                    channel.removeShutdownListener(this);
+                    channelPool.release(channel);
+                    channel = null;
+                }
+                // the confirms of this channel are no longer listened to
+                failUnconfirmed(stopped);
+            }
+        }
+
+        private void fillBatch() throws InterruptedException {
+            queue.drainTo(batch, maxBatchSize - batch.size());
+            if (lingerTime <= 0) {
+                return;
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerTime);
+            while (batch.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                PublishRequest next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+        }
+
+        private void publishBatch() {
+            // skip the messages given up by their senders while waiting in the queue
+            Iterator<PublishRequest> it = batch.iterator();
+            while (it.hasNext()) {
+                if (it.next().isCompleted()) {
+                    it.remove();
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            batchTaken(batch.size());
+            int published = 0;
+            try {
+                Channel ch = getChannel();
+                for (PublishRequest request : batch) {
+                    if (request.isCompleted()) {
+                        published++;
+                        continue;
+                    }
+                    if (request.waitForConfirm) {
+                        unconfirmed.put(ch.getNextPublishSeqNo(), request);
+                    }
+                    ch.basicPublish(request.exchange, request.routingKey, request.properties,
+                            request.body);
+                    request.published = true;
+                    published++;
+                    if (!request.waitForConfirm) {
+                        complete(request, null);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Error while publishing a batch of " + batch.size() +
+                        " AMQP messages", e);
+                for (int i = published; i < batch.size(); i++) {
+                    complete(batch.get(i), e);
+                }
+                discardChannel(e);
+            }
+        }
+
+        private Channel getChannel() throws IOException {
+            if (channel == null || !channel.isOpen()) {
+                if (channel != null) {
+                    discardChannel(new IOException("The AMQP channel has been closed"));
+                }
+                Channel ch = channelPool.borrow();
+                try {
+                    ch.confirmSelect();
+                } catch (IOException e) {
+                    channelPool.invalidate(ch);
+                    throw e;
+                }
+                ch.addConfirmListener(this);
+                ch.addShutdownListener(this);
+                channel = ch;
+            }
+            return channel;
+        }
+
+        private void discardChannel(IOException cause) {
+            if (channel != null) {
+                channel.removeConfirmListener(this);
+                channel.removeShutdownListener(this);
+                channelPool.invalidate(channel);
+                channel = null;
+            }
+            failUnconfirmed(cause);
+        }
+
+        private void failUnconfirmed(IOException cause) {
+            for (Map.Entry<Long, PublishRequest> entry : unconfirmed.entrySet()) {
+                if (unconfirmed.remove(entry.getKey()) != null) {
+                    confirmed(entry.getValue(), cause);
+                }
+            }
+        }
+
+        public void handleAck(long deliveryTag, boolean multiple) {
+            handleConfirm(deliveryTag, multiple, null);
+        }
+
+        public void handleNack(long deliveryTag, boolean multiple) {
+            handleConfirm(deliveryTag, multiple,
+                    new IOException("The AMQP message was not accepted by the broker"));
+        }
+
+        public void shutdownCompleted(ShutdownSignalException cause) {
+            IOException e = new IOException("The AMQP channel was shut down before the " +
+                    "message was confirmed");
+            e.initCause(cause);
+            failUnconfirmed(e);
+        }
+
+        private void handleConfirm(long deliveryTag, boolean multiple, IOException failure) {
+            if (multiple) {
+                Map<Long, PublishRequest> requests = unconfirmed.headMap(deliveryTag, true);
+                for (Map.Entry<Long, PublishRequest> entry : requests.entrySet()) {
+                    if (unconfirmed.remove(entry.getKey()) != null) {
+                        confirmed(entry.getValue(), failure);
+                    }
+                }
+            } else {
+                PublishRequest request = unconfirmed.remove(deliveryTag);
+                if (request != null) {
+                    confirmed(request, failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * A message waiting to be published, along with the outcome of publishing it.
+     */
+    private static class PublishRequest {
+
+        private final String exchange;
+        private final String routingKey;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+        private final boolean waitForConfirm;
+        private final long queuedTime = System.nanoTime();
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+        private volatile IOException failure;
+        private volatile boolean published;
+
+        private PublishRequest(String exchange, String routingKey,
+                               AMQP.BasicProperties properties, byte[] body,
+                               boolean waitForConfirm) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.properties = properties;
+            this.body = body;
+            this.waitForConfirm = waitForConfirm;
+        }
+
+        /**
+         * @return false if the outcome of the request is already known, or the request has been
+         * given up by its sender
+         */
+        private boolean claim() {
+            return completed.compareAndSet(false, true);
+        }
+
+        private boolean isCompleted() {
+            return completed.get();
+        }
+
+        private void finish(IOException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        /**
+         * @return false if the outcome of the request is not known within the time out
+         */
+        private boolean await(long timeOut) throws IOException {
+            try {
+                return done.await(timeOut, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while publishing the AMQP message");
+            }
+        }
+
+        /**
+         * Wait for the outcome of a request which has been claimed, and throw its failure
+         */
+        private void checkOutcome() throws IOException {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                IOException e = new IOException(failure.getMessage());
+                e.initCause(failure);
+                throw e;
+            }
+        }
+    }
+}
@@ -37,6 +37,7 @@ import org.apache.axis2.transport.base.BaseUtils;
 import org.apache.axis2.util.MessageProcessorSelector;
 import org.apache.synapse.transport.amqp.AMQPTransportConstant;
 import org.apache.synapse.transport.amqp.AMQPTransportException;
+import org.apache.synapse.transport.amqp.connectionfactory.AMQPTransportConnectionFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -59,10 +60,26 @@ public class AMQPSender {
 
     private String routingKey = null;
 
+    private AMQPTransportConnectionFactory connectionFactory = null;
+
+    private AMQPBatchPublisher publisher = null;
+
     public void setChannel(Channel channel) {
         this.channel = channel;
     }
 
+    public void setConnectionFactory(AMQPTransportConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public AMQPTransportConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    public void setPublisher(AMQPBatchPublisher publisher) {
+        this.publisher = publisher;
+    }
+
     public void setExchangeName(String exchangeName) {
         this.exchangeName = exchangeName;
     }
@@ -79,9 +96,42 @@ public class AMQPSender {
         return channel;
     }
 
+    /**
+     * Publish the message directly on the channel of this sender
+     */
     public void sendAMQPMessage(MessageContext mc, String correlationId, String replyTo)
             throws AMQPTransportException, IOException {
 
+        AMQP.BasicProperties properties = createProperties(mc, correlationId, replyTo);
+        byte[] msg = createBody(mc);
+        channel.basicPublish(getExchange(), getRoutingKey(), properties, msg);
+    }
+
+    /**
+     * Publish the message through the batch publisher of the connection factory of this sender,
+     * and wait until it has been published, or confirmed by the broker if requested
+     */
+    public void publishAMQPMessage(MessageContext mc, String correlationId, String replyTo,
+                                   boolean waitForConfirm)
+            throws AMQPTransportException, IOException {
+
+        AMQP.BasicProperties properties = createProperties(mc, correlationId, replyTo);
+        byte[] msg = createBody(mc);
+        publisher.publish(getExchange(), getRoutingKey(), properties, msg, waitForConfirm);
+    }
+
+    private String getExchange() {
+        return exchangeName != null ? exchangeName : "";
+    }
+
+    private String getRoutingKey() {
+        if (exchangeName != null) {
+            return routingKey != null ? routingKey : "";
+        }
+        return queueName;
+    }
+
+    private byte[] createBody(MessageContext mc) throws IOException {
         OMOutputFormat format = BaseUtils.getOMOutputFormat(mc);
         MessageFormatter formatter;
         try {
@@ -90,6 +140,14 @@ public class AMQPSender {
             throw new AxisFault("Unable to get the message formatter to use");
         }
 
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        formatter.writeTo(mc, format, out, false);
+        return out.toByteArray();
+    }
+
+    private AMQP.BasicProperties createProperties(MessageContext mc, String correlationId,
+                                                  String replyTo) {
+
         AMQP.BasicProperties.Builder builder = new
                 AMQP.BasicProperties().builder();
 
@@ -173,20 +231,7 @@ public class AMQPSender {
             }
         }
         builder.headers(headers);
-
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        formatter.writeTo(mc, format, out, false);
-        byte[] msg = out.toByteArray();
-
-        if (exchangeName != null) {
-            if (routingKey != null) {
-                channel.basicPublish(exchangeName, routingKey, builder.build(), msg);
-            } else {
-                channel.basicPublish(exchangeName, "", builder.build(), msg);
-            }
-        } else {
-            channel.basicPublish("", queueName, builder.build(), msg);
-        }
+        return builder.build();
     }
 
     private String getProperty(MessageContext mc, String key) {
@@ -39,11 +39,16 @@ import org.apache.synapse.transport.amqp.connectionfactory.AMQPTransportConnecti
 import java.io.IOException;
 import java.util.Map;
 
+/**
+ * Creates AMQP senders. A sender does not hold a channel of its own for publishing, as the
+ * messages are published through the channel pool of its connection factory, so senders can be
+ * created concurrently.
+ */
 public class AMQPSenderFactory {
 
     private static Log log = LogFactory.getLog(AMQPSenderFactory.class);
 
-    public synchronized static AMQPSender createAMQPSender(
+    public static AMQPSender createAMQPSender(
             AMQPTransportConnectionFactoryManager connectionFactoryManager,
             Map<String, String> params) throws IOException {
 
@@ -74,6 +79,7 @@ public class AMQPSenderFactory {
                     params.get(AMQPTransportConstant.PARAMETER_CONNECTION_FACTORY_NAME));
             channel = connFac.getChannel();
             as.setChannel(channel);
+            as.setConnectionFactory(connFac);
         } catch (AMQPTransportException e) {
             throw new AxisFault("Could not retrieve the channel", e);
         }
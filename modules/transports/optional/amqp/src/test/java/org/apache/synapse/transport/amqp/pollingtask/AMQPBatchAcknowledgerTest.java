@@ -0,0 +1,101 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.synapse.transport.amqp.pollingtask;
+
+import com.rabbitmq.client.Channel;
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+public class AMQPBatchAcknowledgerTest extends TestCase {
+
+    private final List<String> acks = new ArrayList<String>();
+
+    public void testProcessedMessagesAreAcknowledgedInBatches() throws Exception {
+        AMQPBatchAcknowledger acknowledger = new AMQPBatchAcknowledger(channel(), 3);
+        for (long tag = 1; tag <= 6; tag++) {
+            acknowledger.delivered(tag);
+        }
+        for (long tag = 1; tag <= 6; tag++) {
+            acknowledger.completed(tag);
+        }
+        assertEquals("[3:true, 6:true]", acks.toString());
+        assertEquals(6, acknowledger.getAckedCount());
+        assertEquals(2, acknowledger.getAckBatchCount());
+        assertEquals(0, acknowledger.getUnacknowledgedCount());
+    }
+
+    public void testMessagesBeingProcessedAreNotAcknowledged() throws Exception {
+        AMQPBatchAcknowledger acknowledger = new AMQPBatchAcknowledger(channel(), 2);
+        for (long tag = 1; tag <= 4; tag++) {
+            acknowledger.delivered(tag);
+        }
+        acknowledger.completed(2);
+        acknowledger.completed(4);
+        // message 1 is still being processed
+        assertTrue(acks.isEmpty());
+        assertEquals(2, acknowledger.getInFlightCount());
+
+        acknowledger.completed(1);
+        assertEquals("[2:true]", acks.toString());
+        assertEquals(2, acknowledger.getUnacknowledgedCount());
+
+        acknowledger.completed(3);
+        assertEquals("[2:true, 4:true]", acks.toString());
+        assertEquals(4, acknowledger.getAckedCount());
+    }
+
+    public void testFlushAcknowledgesIncompleteBatch() throws Exception {
+        AMQPBatchAcknowledger acknowledger = new AMQPBatchAcknowledger(channel(), 10);
+        acknowledger.delivered(1);
+        acknowledger.delivered(2);
+        acknowledger.completed(1);
+        assertTrue(acks.isEmpty());
+
+        acknowledger.flush();
+        assertEquals("[1:false]", acks.toString());
+        acknowledger.flush();
+        assertEquals(1, acknowledger.getAckBatchCount());
+        assertEquals(1, acknowledger.getInFlightCount());
+    }
+
+    private Channel channel() {
+        return (Channel) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{Channel.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("basicAck".equals(method.getName())) {
+                            acks.add(args[0] + ":" + args[1]);
+                        }
+                        return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.synapse.transport.amqp.sendertask;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import junit.framework.TestCase;
+import org.apache.axis2.transport.base.MetricsCollector;
+import org.apache.synapse.transport.amqp.connectionfactory.AMQPChannelPool;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AMQPBatchPublisherTest extends TestCase {
+
+    private final MetricsCollector metrics = new MetricsCollector();
+
+    /** the number of messages published to the channels */
+    private final AtomicInteger publishCount = new AtomicInteger(0);
+
+    /** if set, the channels do not return from publishing a message until it is released */
+    private CountDownLatch publishBlocker;
+
+    public void testPublishWithConfirm() throws Exception {
+        AMQPBatchPublisher publisher = new AMQPBatchPublisher(
+                new AMQPChannelPool(connection(true), 1, 1000), 1, 10, 0, 5000, metrics);
+        publisher.start();
+        try {
+            publisher.publish("", "queue", null, new byte[]{1, 2, 3}, true);
+            assertEquals(1, publisher.getMessageCount());
+            assertEquals(1, publisher.getConfirmCount());
+            assertEquals(0, publisher.getNackCount());
+            assertEquals(1, metrics.getMessagesSent());
+            assertEquals(3, metrics.getBytesSent());
+            assertEquals(0, metrics.getFaultsSending());
+        } finally {
+            publisher.stop();
+        }
+    }
+
+    public void testNackedMessageFails() throws Exception {
+        AMQPBatchPublisher publisher = new AMQPBatchPublisher(
+                new AMQPChannelPool(connection(false), 1, 1000), 1, 10, 0, 5000, metrics);
+        publisher.start();
+        try {
+            publisher.publish("", "queue", null, new byte[]{1}, true);
+            fail("A message rejected by the broker must fail");
+        } catch (IOException expected) {
+            assertEquals(1, publisher.getNackCount());
+            assertEquals(0, metrics.getMessagesSent());
+            assertEquals(1, metrics.getFaultsSending());
+        } finally {
+            publisher.stop();
+        }
+    }
+
+    public void testMessagesArePublishedInBatches() throws Exception {
+        final AMQPBatchPublisher publisher = new AMQPBatchPublisher(
+                new AMQPChannelPool(connection(true), 1, 1000), 1, 10, 500, 5000, metrics);
+        publisher.start();
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicInteger failures = new AtomicInteger(0);
+            Thread[] threads = new Thread[10];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            start.await();
+                            publisher.publish("", "queue", null, new byte[]{1}, false);
+                        } catch (Exception e) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertEquals(0, failures.get());
+            assertEquals(10, publisher.getMessageCount());
+            assertTrue(publisher.getLargestBatchSize() > 1);
+            assertTrue(publisher.getBatchCount() < 10);
+            assertEquals(10, metrics.getMessagesSent());
+        } finally {
+            publisher.stop();
+        }
+    }
+
+    public void testTimedOutMessageIsNotPublishedFromQueue() throws Exception {
+        publishBlocker = new CountDownLatch(1);
+        final AMQPBatchPublisher publisher = new AMQPBatchPublisher(
+                new AMQPChannelPool(connection(true), 1, 1000), 1, 1, 0, 500, metrics);
+        publisher.start();
+        try {
+            // the first message holds up the only channel
+            Thread first = new Thread() {
+                public void run() {
+                    try {
+                        publisher.publish("", "queue", null, new byte[]{1}, false);
+                    } catch (IOException ignored) {
+                    }
+                }
+            };
+            first.start();
+            waitForPublishCount(1);
+
+            try {
+                publisher.publish("", "queue", null, new byte[]{2}, false);
+                fail("A message which is not published within the time out must fail");
+            } catch (IOException expected) {
+            }
+            publishBlocker.countDown();
+            first.join();
+
+            // the second message has been given up, and must not be published after all
+            Thread.sleep(500);
+            assertEquals(1, publishCount.get());
+            assertTrue(metrics.getTimeoutsSending() >= 1);
+        } finally {
+            publishBlocker.countDown();
+            publisher.stop();
+        }
+    }
+
+    public void testTimedOutMessageIsNotPublishedFromBatch() throws Exception {
+        // the batch lingers longer than the senders wait for their messages
+        final AMQPBatchPublisher publisher = new AMQPBatchPublisher(
+                new AMQPChannelPool(connection(true), 1, 1000), 1, 10, 1000, 200, metrics);
+        publisher.start();
+        try {
+            Thread[] threads = new Thread[2];
+            final AtomicInteger timeOuts = new AtomicInteger(0);
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            publisher.publish("", "queue", null, new byte[]{1}, false);
+                        } catch (IOException e) {
+                            timeOuts.incrementAndGet();
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(2, timeOuts.get());
+
+            // wait for the batch to be taken, its messages have been given up
+            Thread.sleep(1500);
+            assertEquals(0, publishCount.get());
+            assertEquals(2, metrics.getTimeoutsSending());
+            assertEquals(0, metrics.getMessagesSent());
+        } finally {
+            publisher.stop();
+        }
+    }
+
+    public void testStopFailsUnconfirmedMessages() throws Exception {
+        final AMQPBatchPublisher publisher = new AMQPBatchPublisher(
+                new AMQPChannelPool(connection(null), 1, 1000), 1, 10, 0, 30000, metrics);
+        publisher.start();
+        final AtomicInteger failures = new AtomicInteger(0);
+        Thread sender = new Thread() {
+            public void run() {
+                try {
+                    publisher.publish("", "queue", null, new byte[]{1}, true);
+                } catch (IOException e) {
+                    failures.incrementAndGet();
+                }
+            }
+        };
+        sender.start();
+        waitForPublishCount(1);
+
+        long start = System.currentTimeMillis();
+        publisher.stop();
+        sender.join(10000);
+        assertFalse(sender.isAlive());
+        assertEquals(1, failures.get());
+        assertTrue(System.currentTimeMillis() - start < 10000);
+        assertEquals(1, metrics.getFaultsSending());
+    }
+
+    private void waitForPublishCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (publishCount.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, publishCount.get());
+    }
+
+    /**
+     * A connection of channels which acknowledge or reject each message as it is published
+     *
+     * @param ack whether the messages are acknowledged or rejected, or null if the channels
+     *            never confirm them
+     */
+    private Connection connection(final Boolean ack) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{Connection.class}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if ("createChannel".equals(method.getName())) {
+                            return channel(ack);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private Channel channel(final Boolean ack) {
+        return (Channel) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{Channel.class}, new InvocationHandler() {
+
+                    private long seqNo = 1;
+                    private ConfirmListener listener;
+
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        String name = method.getName();
+                        if ("isOpen".equals(name)) {
+                            return Boolean.TRUE;
+                        } else if ("getNextPublishSeqNo".equals(name)) {
+                            return seqNo;
+                        } else if ("addConfirmListener".equals(name)) {
+                            listener = (ConfirmListener) args[0];
+                        } else if ("basicPublish".equals(name)) {
+                            long tag = seqNo++;
+                            publishCount.incrementAndGet();
+                            if (publishBlocker != null) {
+                                publishBlocker.await();
+                            }
+                            if (ack == null) {
+                                return null;
+                            } else if (ack) {
+                                listener.handleAck(tag, false);
+                            } else {
+                                listener.handleNack(tag, false);
+                            }
+                        } else if ("hashCode".equals(name)) {
+                            return System.identityHashCode(proxy);
+                        } else if ("equals".equals(name)) {
+                            return proxy == args[0];
+                        } else if (method.getReturnType() == boolean.class) {
+                            return Boolean.TRUE;
+                        }
+                        return null;
+                    }
+                });
+    }
+}